@@ -0,0 +1,125 @@
+package com.cat.ddsw.bench;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares the latest JMH result file with the one before, so a change to the comparison or I/O code comes with
+ * numbers.
+ *
+ * Results are written by "gradle jmh" to benchmarks/&lt;yyyyMMdd-HHmmss&gt;-&lt;commit&gt;.json and committed with
+ * the change, so the names sort in run order and tell the commit they were taken on.
+ *
+ * ####IMPORTANT####
+ * #Run with "gradle jmhCompare", optionally -PjmhBaseline=&lt;file name&gt; to compare against an older result.
+ * #Only compare results taken on the same machine.
+ */
+public class BenchmarkHistory {
+
+    /**
+     * Changes smaller than this (in percent) are reported as noise.
+     */
+    private static final double noisePercent = 5.0;
+
+    public static void main(String[] args) throws IOException {
+
+        File directory = new File(args.length > 0 ? args[0] : "benchmarks");
+        File[] results = directory.listFiles();
+        if (results == null) {
+            System.out.println("BenchmarkHistory: no results in " + directory);
+            return;
+        }
+        results = filterJson(results);
+        Arrays.sort(results);
+        if (results.length < 2) {
+            System.out.println("BenchmarkHistory: need two results in " + directory + ", found " + results.length);
+            return;
+        }
+
+        File latest = results[results.length - 1];
+        File baseline = args.length > 1 && !args[1].isEmpty() ? new File(directory, args[1]) : results[results.length - 2];
+        System.out.print(compare(load(baseline), load(latest), baseline.getName(), latest.getName()));
+    }
+
+    /**
+     * Score per benchmark and parameters, e.g. "ResultComparatorBenchmark.typed rows=10000 table=invoice_current".
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, double[]> load(File result) throws IOException {
+
+        Map<String, double[]> scores = new TreeMap<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(result), StandardCharsets.UTF_8)) {
+            JSONArray runs = (JSONArray) JSONValue.parse(reader);
+            if (runs == null) {
+                throw new IOException("Not a JMH JSON result: " + result);
+            }
+            for (Object run : runs) {
+                JSONObject benchmark = (JSONObject) run;
+                String name = (String) benchmark.get("benchmark");
+                name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+
+                StringBuilder key = new StringBuilder(name);
+                JSONObject params = (JSONObject) benchmark.get("params");
+                if (params != null) {
+                    for (Object param : new TreeMap<Object, Object>(params).entrySet()) {
+                        key.append(' ').append(param);
+                    }
+                }
+
+                JSONObject metric = (JSONObject) benchmark.get("primaryMetric");
+                scores.put(key.toString(), new double[]{number(metric.get("score")), number(metric.get("scoreError"))});
+            }
+        }
+        return scores;
+    }
+
+    static String compare(Map<String, double[]> baseline, Map<String, double[]> latest, String baselineName,
+                          String latestName) {
+
+        StringBuilder report = new StringBuilder();
+        report.append("BenchmarkHistory: ").append(latestName).append(" against ").append(baselineName).append('\n');
+        for (Map.Entry<String, double[]> score : latest.entrySet()) {
+            double[] before = baseline.get(score.getKey());
+            report.append(String.format("%-80s %12.3f", score.getKey(), score.getValue()[0]));
+            if (before == null) {
+                report.append("  (new)\n");
+                continue;
+            }
+            double change = (score.getValue()[0] - before[0]) * 100 / before[0];
+            report.append(String.format(" %12.3f %+8.1f%%", before[0], change));
+            // Average time, higher is slower
+            if (Math.abs(change) >= noisePercent) {
+                report.append(change > 0 ? "  SLOWER" : "  faster");
+            }
+            report.append('\n');
+        }
+        return report.toString();
+    }
+
+    private static File[] filterJson(File[] files) {
+
+        int kept = 0;
+        File[] json = new File[files.length];
+        for (File file : files) {
+            if (file.getName().endsWith(".json")) {
+                json[kept++] = file;
+            }
+        }
+        return Arrays.copyOf(json, kept);
+    }
+
+    private static double number(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
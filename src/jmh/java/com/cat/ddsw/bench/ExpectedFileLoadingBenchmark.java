@@ -0,0 +1,30 @@
+package com.cat.ddsw.bench;
+
+import com.cat.ddsw.base.compare.ExpectedRowIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading an Expected file into the hash index the streaming verification checks rows off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpectedFileLoadingBenchmark {
+
+    @Benchmark
+    public long load(ExtractState extract) throws IOException {
+        return ExpectedRowIndex.load(extract.expected, StandardCharsets.UTF_8).getRemaining();
+    }
+}
@@ -0,0 +1,51 @@
+package com.cat.ddsw.bench;
+
+import com.cat.ddsw.base.compare.ColumnSpec;
+import com.cat.ddsw.base.compare.ColumnType;
+import com.cat.ddsw.base.compare.TableSpec;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Synthetic Actual and Expected extract of one Domain layout and size, shared by all iterations of a benchmark.
+ *
+ * ####IMPORTANT####
+ * #The default sizes keep a full run short, larger ones are given on the command line,
+ * # e.g. gradle jmh -PjmhParams=rows=50000000
+ */
+@State(Scope.Benchmark)
+public class ExtractState {
+
+    @Param({"invoice_current", "dealer_inventory_current"})
+    public String table;
+
+    @Param({"10000", "1000000"})
+    public long rows;
+
+    public TableSpec spec;
+    public ColumnType[] types;
+    public File actual;
+    public File expected;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+
+        spec = SyntheticExtract.layout(table);
+        SyntheticExtract extract = new SyntheticExtract(spec, rows);
+        actual = extract.actual();
+        expected = extract.expected();
+
+        List<ColumnSpec> columns = spec.getColumns();
+        types = new ColumnType[columns.size()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = columns.get(i).getType();
+        }
+    }
+}
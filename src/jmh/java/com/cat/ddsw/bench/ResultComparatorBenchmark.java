@@ -0,0 +1,36 @@
+package com.cat.ddsw.bench;
+
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.ResultComparator;
+import com.cat.ddsw.base.compare.TypedRowComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full comparison of a matching Actual and Expected extract, the path every Content Test takes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResultComparatorBenchmark {
+
+    @Benchmark
+    public ComparisonResult untyped(ExtractState extract) throws IOException {
+        return new ResultComparator("utf-8").compare(extract.actual, extract.expected);
+    }
+
+    @Benchmark
+    public ComparisonResult typed(ExtractState extract) throws IOException {
+        return new TypedRowComparator(extract.spec, "utf-8").compare(extract.actual, extract.expected);
+    }
+}
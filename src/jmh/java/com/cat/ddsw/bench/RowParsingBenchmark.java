@@ -0,0 +1,60 @@
+package com.cat.ddsw.bench;
+
+import com.cat.ddsw.base.compare.FieldTokens;
+import com.cat.ddsw.base.compare.MappedTextFile;
+import com.cat.ddsw.base.compare.RowHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a tab delimited extract row by row, as the typed comparison (fields hashed straight from the mapped
+ * bytes) and as the untyped comparison (one String per line).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowParsingBenchmark {
+
+    @Benchmark
+    public long typedFields(ExtractState extract) throws IOException {
+
+        long hash = 0;
+        FieldTokens tokens = new FieldTokens();
+        try (MappedTextFile file = new MappedTextFile(extract.actual, '\t')) {
+            while (file.nextRow(tokens)) {
+                for (int field = 0; field < tokens.getFieldCount(); field++) {
+                    hash += tokens.hash(field, extract.types[field]);
+                }
+            }
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public long lines(ExtractState extract) throws IOException {
+
+        long hash = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(extract.actual),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                hash += RowHasher.hash(line);
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,187 @@
+package com.cat.ddsw.bench;
+
+import com.cat.ddsw.base.compare.ColumnSpec;
+import com.cat.ddsw.base.compare.ColumnType;
+import com.cat.ddsw.base.compare.RowHasher;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.oozietest.DealerInventoryOozieTest;
+import com.cat.ddsw.oozietest.InvoiceOozieTest;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tab delimited Hive extracts of any size in the column layout of a Domain Test, written the way
+ * HiveQueryExecutor writes the Actual files.
+ *
+ * Row i is a pure function of the seed and i, so the files are the same on every machine and nothing is held in
+ * memory. The Expected side holds the same rows in a different order, the way Hive returns them.
+ *
+ * ####IMPORTANT####
+ * #Files are cached under the "ddsw.jmh.data" System Property (default build/jmh-data), a 50M row extract takes
+ * # a while to write and several GB of disk.
+ */
+public class SyntheticExtract {
+
+    public static final String dataDirectoryKey = "ddsw.jmh.data";
+
+    private static final long seed = 0x9E3779B97F4A7C15L;
+
+    private final TableSpec spec;
+    private final long rows;
+
+    public SyntheticExtract(TableSpec spec, long rows) {
+        this.spec = spec;
+        this.rows = rows;
+    }
+
+    /**
+     * Layout of the Content Query of a Domain Test, by table name without the database.
+     */
+    public static TableSpec layout(String table) {
+
+        switch (table) {
+            case "invoice_current":
+                return InvoiceOozieTest.invoiceCurrentSpec;
+            case "dealer_inventory_current":
+                return DealerInventoryOozieTest.dealerInventoryCurrentSpec;
+            default:
+                throw new IllegalArgumentException("No Domain Test with a layout for " + table);
+        }
+    }
+
+    public TableSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Rows in generation order, written once and reused by later runs.
+     */
+    public File actual() throws IOException {
+        return cached("actual", 1);
+    }
+
+    /**
+     * Same rows as {@link #actual()} in a shuffled order.
+     */
+    public File expected() throws IOException {
+        return cached("expected", stride());
+    }
+
+    /**
+     * Writes row (position * stride mod rows) at each position, any stride coprime to rows visits every row once.
+     */
+    public void write(File file, long stride) throws IOException {
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        StringBuilder row = new StringBuilder(1024);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8), 1 << 20)) {
+            for (long position = 0; position < rows; position++) {
+                if (position > 0) {
+                    writer.write('\n');
+                }
+                row(multiplyMod(position, stride, rows), row);
+                writer.append(row);
+            }
+        }
+    }
+
+    /**
+     * Row i, columns joined with a tab.
+     */
+    public void row(long i, StringBuilder row) {
+
+        row.setLength(0);
+        int column = 0;
+        for (ColumnSpec columnSpec : spec.getColumns()) {
+            if (column > 0) {
+                row.append('\t');
+            }
+            long random = RowHasher.mix(seed + i * 31 + column);
+            value(columnSpec, i, random, row);
+            column++;
+        }
+    }
+
+    private static void value(ColumnSpec column, long i, long random, StringBuilder row) {
+
+        String name = column.getName();
+        if (name.equals("gen_id")) {
+            row.append(i);
+        } else if (name.equals("dealer_code")) {
+            row.append("ZZZZ");
+        } else if (column.getType() == ColumnType.DECIMAL) {
+            long cents = Math.abs(random % 10000000);
+            row.append(cents / 100).append('.');
+            appendPadded(row, cents % 100, 2);
+        } else if (column.getType() == ColumnType.TIMESTAMP) {
+            long value = Math.abs(random);
+            row.append(2010 + value % 6).append('-');
+            appendPadded(row, 1 + (value >>> 8) % 12, 2);
+            row.append('-');
+            appendPadded(row, 1 + (value >>> 16) % 28, 2);
+            row.append(' ');
+            appendPadded(row, (value >>> 24) % 24, 2);
+            row.append(':');
+            appendPadded(row, (value >>> 32) % 60, 2);
+            row.append(':');
+            appendPadded(row, (value >>> 40) % 60, 2);
+        } else if ((random & 0xF) == 0) {
+            row.append("null");
+        } else {
+            row.append(name, 0, Math.min(4, name.length())).append('_').append(Math.abs(random % 100000));
+        }
+    }
+
+    private File cached(String side, long stride) throws IOException {
+
+        String table = spec.getTable().substring(spec.getTable().indexOf('.') + 1);
+        File file = new File(System.getProperty(dataDirectoryKey, "build/jmh-data"), table + "-" + rows + "-" + side + ".tsv");
+        if (!file.exists()) {
+            File partial = new File(file.getPath() + ".partial");
+            write(partial, stride);
+            if (!partial.renameTo(file)) {
+                throw new IOException("Could not move " + partial + " to " + file);
+            }
+        }
+        return file;
+    }
+
+    private long stride() {
+
+        long stride = 1000003;
+        while (gcd(stride, rows) != 1) {
+            stride += 2;
+        }
+        return stride;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * a * b mod m, both factors are below 2^31 (rows are, the stride is a little over a million).
+     */
+    private static long multiplyMod(long a, long b, long m) {
+        return (a % m) * (b % m) % m;
+    }
+
+    private static void appendPadded(StringBuilder row, long value, int width) {
+
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            row.append('0');
+        }
+        row.append(digits);
+    }
+}
@@ -0,0 +1,135 @@
+package com.cat.ddsw.base.pipeline;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the index of the Domain Test classes while the tests compile, so the Suite finds them without
+ * @Suite.SuiteClasses and without scanning the classpath.
+ *
+ * ####IMPORTANT####
+ * #Every top-level class annotated with @DomainWorkflow becomes one line of META-INF/ddsw/domain-tests.index in the test
+ * # classes output: class, domain, jobPropertiesFile, tables and expectedMillis separated by tabs.
+ * #It lives in its own source set (src/processor) because javac needs it compiled before the test sources, see
+ * # oozie-test/build.gradle. The annotation is read by name so it does not depend on the test classes.
+ */
+@SupportedAnnotationTypes(DomainTestIndexProcessor.annotation)
+public class DomainTestIndexProcessor extends AbstractProcessor {
+
+    public static final String annotation = "com.cat.ddsw.base.pipeline.DomainWorkflow";
+    public static final String indexResource = "META-INF/ddsw/domain-tests.index";
+    public static final String header = "# class\tdomain\tjobPropertiesFile\ttables\texpectedMillis";
+
+    /**
+     * Lines by class name, collected over all rounds and written in the last one.
+     */
+    private final Map<String, String> lines = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+
+        for (TypeElement type : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(type)) {
+                add(element);
+            }
+        }
+        if (round.processingOver() && !lines.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private void add(Element element) {
+
+        // Nested classes are fixtures of unit tests, not Domain Tests
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)
+                || element.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+            return;
+        }
+        if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@DomainWorkflow Test classes must be public to run in the Suite", element);
+            return;
+        }
+
+        Map<String, Object> values = values(element);
+        String jobPropertiesFile = String.valueOf(values.get("jobPropertiesFile"));
+        String domain = String.valueOf(values.get("domain"));
+        if (domain.isEmpty()) {
+            int separator = jobPropertiesFile.lastIndexOf('/');
+            domain = separator > 0 ? jobPropertiesFile.substring(0, separator) : jobPropertiesFile;
+        }
+
+        StringBuilder tables = new StringBuilder();
+        for (Object table : (List<?>) values.get("tables")) {
+            if (tables.length() > 0) {
+                tables.append(',');
+            }
+            tables.append(((AnnotationValue) table).getValue());
+        }
+
+        String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+        lines.put(className, className + '\t' + domain + '\t' + jobPropertiesFile + '\t' + tables + '\t'
+                + values.get("expectedMillis"));
+    }
+
+    /**
+     * Values of the @DomainWorkflow of the element by attribute name, defaults included.
+     */
+    private Map<String, Object> values(Element element) {
+
+        Map<String, Object> values = new TreeMap<>();
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+                values.put(entry.getKey().getSimpleName().toString(), entry.getValue().getValue());
+            }
+        }
+        return values;
+    }
+
+    private void write() {
+
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    indexResource);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(header + "\n");
+                for (String line : lines.values()) {
+                    writer.write(line + "\n");
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "DomainTestIndexProcessor: could not write " + indexResource + ": " + e);
+        }
+    }
+}
@@ -10,6 +10,6 @@ public class DDSWParallelRunner extends BlockJUnit4ClassRunner {
 
     public DDSWParallelRunner(Class<?> klass) throws InitializationError {
         super(klass);
-        setScheduler(new DDSWParallelScheduler());
+        setScheduler(new DDSWParallelScheduler(klass.getName()));
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.cat.ddsw.base;
 
+import com.cat.ddsw.base.timing.PhaseTimeline;
+import com.cat.ddsw.base.timing.PhaseTimer;
 import org.junit.runners.model.RunnerScheduler;
 
 import java.util.concurrent.ExecutorService;
@@ -8,15 +10,35 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Created by hpatel on 8/31/2015.
+ *
+ * Every Test method is timed as TEST_METHOD of its class in the {@link PhaseTimeline}.
  */
 public class DDSWParallelScheduler implements RunnerScheduler {
 
     private ExecutorService threadPool = Executors.newFixedThreadPool(
             Runtime.getRuntime().availableProcessors());
 
+    private final String testClass;
+
+    public DDSWParallelScheduler() {
+        this("unknown");
+    }
+
+    public DDSWParallelScheduler(String testClass) {
+        this.testClass = testClass;
+    }
+
     @Override
-    public void schedule(Runnable childStatement) {
-        threadPool.submit(childStatement);
+    public void schedule(final Runnable childStatement) {
+        threadPool.submit(new Runnable() {
+            @Override
+            public void run() {
+                try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.testMethod, testClass)) {
+                    childStatement.run();
+                    timer.succeeded();
+                }
+            }
+        });
     }
 
     @Override
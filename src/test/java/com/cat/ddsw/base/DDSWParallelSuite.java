@@ -1,39 +1,128 @@
 package com.cat.ddsw.base;
 
-import com.cat.ddsw.oozietest.DealerHierarchyOozieTest;
-import com.cat.ddsw.oozietest.DealerInventoryOozieTest;
-import com.cat.ddsw.oozietest.InvoiceOozieTest;
+import com.cat.ddsw.base.pipeline.DomainTestIndex;
+import com.cat.ddsw.base.pipeline.PipelinedSuiteExecutor;
+import com.cat.ddsw.base.selection.ChangeSelection;
+import org.junit.runner.Runner;
+import org.junit.runner.notification.RunListener;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.Suite;
 import org.junit.runners.model.InitializationError;
 import org.junit.runners.model.RunnerBuilder;
 
+import java.io.IOException;
+
 /**
  * Created by hpatel on 8/31/2015.
  *
  * ####IMPORTANT####
- * Every Test Case Class needs to be registered here under @Suite.SuiteClasses Block for execution in Parallel.
- * Nos. of Tests to run in Parallel is Configured in oozie-test/build.gradle under the property below,
- * Change the maxParallelForks to the number that Machine will sustain from resource perspective.
- * Currently it is 4. Meaning only 4 Tests will be running in parallel.
+ * Every Test Case Class annotated with @DomainWorkflow runs here in Parallel, it is found in the DomainTestIndex
+ * written while the tests compile. A @Suite.SuiteClasses Block on the Suite class still overrides the index.
+ * The Suite is a single Test class, so all the Domain Tests run in the one Gradle fork that gets it, and the
+ * parallelism is inside that JVM. maxParallelForks in oozie-test/build.gradle only spreads the unit tests of the
+ * framework.
+ *
+ * ####IMPORTANT####
+ * The Test classes run through the PipelinedSuiteExecutor: the Test data of every class annotated with
+ * @DomainWorkflow is staged and its Workflow submitted right away, each class runs as soon as its Workflow is done.
+ * Nos. of Tests to run in Parallel is the pool size per stage in oozie.properties (see PipelineStage), e.g.
+ * PIPELINE_VERIFY_THREADS=4 verifies 4 Test classes at once. Change them to what the Machine will sustain from
+ * resource perspective, the cluster side is limited by CAPACITY_WORKFLOWS and CAPACITY_HIVE_SESSIONS.
+ *
+ * ####IMPORTANT####
+ * Test classes whose Workflow app, shared libraries, job.properties, Test data, goldens and class are unchanged since
+ * their last green run are skipped and reported as ignored (see ChangeSelection). "gradle test -PfullRun" runs them all.
+ *
+ * The Suite is entered through DDSWTestSuite, the test task only includes that class so the Test Case Classes
+ * don't run a second time on their own.
  *
  * test {
  *    systemProperties['oozie.properties'] = 'oozie.properties'
- *    maxParallelForks = 4
+ *    include 'com/cat/ddsw/oozietest/DDSWTestSuite.class'
  * }
  *
  */
-@Suite.SuiteClasses(
-        {
-                DealerHierarchyOozieTest.class,
-                DealerInventoryOozieTest.class,
-                InvoiceOozieTest.class
-        }
-)
 public class DDSWParallelSuite extends Suite {
 
+    private final PipelinedSuiteExecutor executor;
+
     public DDSWParallelSuite(Class<?> klass, RunnerBuilder builder)
             throws InitializationError {
-        super(klass, builder);
-        setScheduler(new DDSWParallelScheduler());
+        this(klass, builder, createExecutor());
+    }
+
+    /**
+     * Suite running its classes through the given executor instead of the one of the build.
+     */
+    protected DDSWParallelSuite(Class<?> klass, RunnerBuilder builder, PipelinedSuiteExecutor executor)
+            throws InitializationError {
+        super(builder, klass, testClasses(klass));
+        this.executor = executor;
+        setScheduler(executor);
+    }
+
+    private static PipelinedSuiteExecutor createExecutor() throws InitializationError {
+        try {
+            return PipelinedSuiteExecutor.create();
+        } catch (IOException e) {
+            throw new InitializationError(e);
+        }
+    }
+
+    /**
+     * The classes of the @Suite.SuiteClasses Block if the Suite class has one, the indexed classes otherwise.
+     */
+    private static Class<?>[] testClasses(Class<?> klass) throws InitializationError {
+
+        SuiteClasses suiteClasses = klass.getAnnotation(SuiteClasses.class);
+        if (suiteClasses != null) {
+            return suiteClasses.value();
+        }
+
+        DomainTestIndex index = DomainTestIndex.get();
+        if (index.isEmpty()) {
+            throw new InitializationError("No Test classes in the DomainTestIndex of " + klass.getName()
+                    + ", compile the tests with the DomainTestIndexProcessor");
+        }
+        try {
+            Class<?>[] classes = index.getTestClasses(klass.getClassLoader());
+            System.out.println("DDSWParallelSuite: " + classes.length + " Test classes of the Domains "
+                    + index.getDomains() + " from the DomainTestIndex");
+            return classes;
+        } catch (ClassNotFoundException e) {
+            throw new InitializationError(e);
+        }
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+
+        ChangeSelection selection = executor.getChangeSelection();
+        if (selection == null) {
+            super.run(notifier);
+            return;
+        }
+        RunListener listener = selection.getListener();
+        notifier.addListener(listener);
+        try {
+            super.run(notifier);
+        } finally {
+            notifier.removeListener(listener);
+        }
+    }
+
+    @Override
+    protected void runChild(final Runner runner, final RunNotifier notifier) {
+        executor.add(runner.getDescription().getTestClass(), new Runnable() {
+            @Override
+            public void run() {
+                DDSWParallelSuite.super.runChild(runner, notifier);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                notifier.fireTestIgnored(runner.getDescription());
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.cat.ddsw.base;
+
+import com.cat.ddsw.base.fixture.DomainFixtureRegistry;
+import com.cat.ddsw.base.pipeline.DomainWorkflow;
+import com.cat.ddsw.base.pipeline.DurationHistory;
+import com.cat.ddsw.base.pipeline.PipelinePhase;
+import com.cat.ddsw.base.pipeline.PipelineStage;
+import com.cat.ddsw.base.pipeline.PipelinedSuiteExecutor;
+import com.cat.ddsw.base.pipeline.SuitePipeline;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Properties;
+
+/**
+ * The DDSWParallelSuite run through JUnitCore, with the Domain already completed in this build so nothing goes to
+ * the cluster.
+ */
+public class DDSWParallelSuiteTest {
+
+    private static final String jobPropertiesFile = "suite_test/job.properties";
+
+    private static PipelinedSuiteExecutor executor = null;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    public static class RecordingSuite extends DDSWParallelSuite {
+
+        public RecordingSuite(Class<?> klass, RunnerBuilder builder) throws InitializationError {
+            super(klass, builder, executor);
+        }
+    }
+
+    @RunWith(RecordingSuite.class)
+    @Suite.SuiteClasses(DomainTest.class)
+    public static class Entry {
+    }
+
+    @DomainWorkflow(jobPropertiesFile = jobPropertiesFile, sourceDataFile = "/ddsw/test_data/suite_test.xml",
+            targetDataFile = "/ddsw/raw/suite_test.xml.complete")
+    public static class DomainTest {
+
+        @Test
+        public void testVerified() {
+        }
+    }
+
+    @Test
+    public void testPhasesAreRecorded() throws Exception {
+
+        DomainFixtureRegistry registry = DomainFixtureRegistry.get();
+        // Completed by another fork, the STAGING and WORKFLOW phases find it done
+        Properties state = new Properties();
+        state.setProperty("buildId", registry.getBuildId());
+        state.setProperty("status", "COMPLETED");
+        state.setProperty("users", "0");
+        File stateFile = new File(registry.getStateDirectory(), "suite_test.state");
+        stateFile.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(stateFile)) {
+            state.store(out, "DDSWParallelSuiteTest");
+        }
+
+        File historyFile = new File(temp.getRoot(), "durations.properties");
+        executor = new PipelinedSuiteExecutor(new SuitePipeline(new EnumMap<PipelineStage, Integer>(PipelineStage.class)),
+                registry, DurationHistory.load(historyFile));
+        SuitePipeline pipeline = executor.getPipeline();
+        Result result;
+        try {
+            result = JUnitCore.runClasses(Entry.class);
+        } finally {
+            executor = null;
+            stateFile.delete();
+        }
+
+        Assert.assertTrue(result.getFailures().toString(), result.wasSuccessful());
+        Assert.assertEquals(1, result.getRunCount());
+
+        Assert.assertEquals(3, pipeline.getPhases().size());
+        for (PipelinePhase phase : pipeline.getPhases()) {
+            Assert.assertTrue(phase.toString(), phase.isDone());
+            Assert.assertNull(phase.toString(), phase.getFailure());
+        }
+
+        DurationHistory history = DurationHistory.load(historyFile);
+        Assert.assertEquals(1, history.getSampleCount(PipelineStage.STAGING + "." + jobPropertiesFile));
+        Assert.assertEquals(1, history.getSampleCount(PipelineStage.WORKFLOW + "." + jobPropertiesFile));
+        Assert.assertEquals(1, history.getSampleCount(PipelineStage.VERIFY + "." + DomainTest.class.getName()));
+    }
+}
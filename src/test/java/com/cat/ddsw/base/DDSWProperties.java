@@ -0,0 +1,96 @@
+package com.cat.ddsw.base;
+
+import com.cat.ddsw.base.local.LocalCluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Read access to oozie.properties for the parts of the framework that talk to HDFS, Oozie or Hive directly.
+ *
+ * ####IMPORTANT####
+ * #The file is resolved from the classpath with the name given in the "oozie.properties" System Property,
+ * # which is set under the test block of oozie-test/build.gradle. Property names are the same ones OozieRunner uses.
+ * #With EXECUTION_MODE=local the {@link LocalCluster} is started here and the properties point at it.
+ */
+public class DDSWProperties {
+
+    public static final String propertiesFileKey = "oozie.properties";
+
+    private static DDSWProperties instance = null;
+
+    private final Properties properties;
+
+    public DDSWProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * oozie.properties of this build, loaded once per JVM.
+     */
+    public static synchronized DDSWProperties get() throws IOException {
+
+        if (instance == null) {
+            Properties properties = loadResource(System.getProperty(propertiesFileKey, "oozie.properties"));
+            DDSWProperties loaded = new DDSWProperties(properties);
+            if (LocalCluster.isEnabled(loaded)) {
+                loaded = new DDSWProperties(LocalCluster.start(loaded).localize(properties));
+            }
+            instance = loaded;
+        }
+        return instance;
+    }
+
+    /**
+     * Loads a properties file from the classpath, e.g. a Domain Specific "invoice/job.properties".
+     */
+    public static Properties loadResource(String resource) throws IOException {
+
+        InputStream in = DDSWProperties.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Properties file not found on the classpath: " + resource);
+        }
+
+        Properties properties = new Properties();
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    public String getProperty(String key) {
+
+        String value = properties.getProperty(key);
+        if (value == null) {
+            throw new IllegalStateException("Missing property " + key + " in " + propertiesFileKey);
+        }
+        return value.trim();
+    }
+
+    public String getProperty(String key, String defaultValue) {
+
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public long getLong(String key, long defaultValue) {
+
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,183 @@
+package com.cat.ddsw.base.capacity;
+
+import com.cat.ddsw.base.DDSWProperties;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Machine wide limit on a cluster resource (running Workflows, Hive sessions), shared by every build and Gradle test
+ * fork on the machine.
+ *
+ * The limit is a set of slot files, a permit is an exclusive lock on one of them. A fork that dies gives its slots
+ * back with its file locks, so nothing has to be cleaned up. Inside the JVM a semaphore keeps threads from spinning
+ * on slots the JVM already holds.
+ *
+ * ####IMPORTANT####
+ * #Limits are set in oozie.properties, CAPACITY_WORKFLOWS=4 and CAPACITY_HIVE_SESSIONS=8 (0 means no limit).
+ * # They hold across all the pools of the PipelinedSuiteExecutor and across the builds running on the machine at the
+ * # same time, set them to what the YARN queue and HiveServer2 sustain.
+ * #CAPACITY_LOCK_DIR is where the slot files live, the default is the ddsw-capacity directory under java.io.tmpdir.
+ */
+public class CapacityGovernor {
+
+    public static final String workflows = "WORKFLOWS";
+    public static final String hiveSessions = "HIVE_SESSIONS";
+
+    private static final long minWaitMillis = 20;
+    private static final long maxWaitMillis = 1000;
+
+    private static final Map<String, CapacityGovernor> instances = new HashMap<>();
+
+    private final String resource;
+    private final int limit;
+    private final File directory;
+    private final Semaphore local;
+    private final RandomAccessFile[] slots;
+
+    public CapacityGovernor(String resource, int limit, File directory) {
+        this.resource = resource;
+        this.limit = Math.max(0, limit);
+        this.directory = directory;
+        this.local = new Semaphore(Math.max(1, this.limit), true);
+        this.slots = new RandomAccessFile[this.limit];
+    }
+
+    /**
+     * The governor of the resource in this JVM, limit and lock directory from oozie.properties.
+     */
+    public static synchronized CapacityGovernor get(DDSWProperties properties, String resource) {
+
+        CapacityGovernor governor = instances.get(resource);
+        if (governor == null) {
+            governor = new CapacityGovernor(resource,
+                    properties.getInt("CAPACITY_" + resource, resource.equals(workflows) ? 4 : 8),
+                    new File(properties.getProperty("CAPACITY_LOCK_DIR",
+                            new File(System.getProperty("java.io.tmpdir"), "ddsw-capacity").getPath())));
+            System.out.println("CapacityGovernor: " + governor);
+            instances.put(resource, governor);
+        }
+        return governor;
+    }
+
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * Most permits handed out at once on this machine, 0 for no limit.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Blocks until one of the slots is free on this machine.
+     */
+    public Permit acquire() throws IOException {
+
+        if (limit == 0) {
+            return new Permit(null);
+        }
+
+        try {
+            local.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a " + resource + " slot", e);
+        }
+
+        long started = System.currentTimeMillis();
+        long wait = minWaitMillis;
+        boolean reported = false;
+        try {
+            while (true) {
+                FileLock lock = tryLockSlot();
+                if (lock != null) {
+                    long waited = System.currentTimeMillis() - started;
+                    if (reported) {
+                        System.out.println("CapacityGovernor: got a " + resource + " slot after " + waited + " ms");
+                    }
+                    return new Permit(lock);
+                }
+                if (!reported) {
+                    System.out.println("CapacityGovernor: all " + limit + " " + resource
+                            + " slots in use on this machine, waiting");
+                    reported = true;
+                }
+                Thread.sleep(wait);
+                wait = Math.min(maxWaitMillis, wait * 2);
+            }
+        } catch (InterruptedException e) {
+            local.release();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a " + resource + " slot", e);
+        } catch (IOException | RuntimeException e) {
+            local.release();
+            throw e;
+        }
+    }
+
+    private synchronized FileLock tryLockSlot() throws IOException {
+
+        for (int slot = 0; slot < limit; slot++) {
+            if (slots[slot] == null) {
+                directory.mkdirs();
+                slots[slot] = new RandomAccessFile(new File(directory, resource.toLowerCase() + "-" + slot + ".lock"), "rw");
+            }
+            FileChannel channel = slots[slot].getChannel();
+            try {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException e) {
+                // Held by this JVM through another governor instance
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "at most " + (limit == 0 ? "unlimited" : String.valueOf(limit)) + " concurrent " + resource
+                + " on this machine (" + directory + ")";
+    }
+
+    /**
+     * One slot, closing gives it back.
+     */
+    public class Permit implements Closeable {
+
+        private final FileLock lock;
+        private boolean released = false;
+
+        private Permit(FileLock lock) {
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            synchronized (this) {
+                if (released || lock == null) {
+                    return;
+                }
+                released = true;
+            }
+            try {
+                lock.release();
+            } finally {
+                local.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.cat.ddsw.base.capacity;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CapacityGovernor slots, two governors on one directory stand in for two forks.
+ */
+public class CapacityGovernorTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testLimitAcrossGovernors() throws Exception {
+
+        final CapacityGovernor[] forks = {
+                new CapacityGovernor(CapacityGovernor.workflows, 3, temp.getRoot()),
+                new CapacityGovernor(CapacityGovernor.workflows, 3, temp.getRoot())
+        };
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Throwable> failures = new ArrayList<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            final CapacityGovernor governor = forks[i % 2];
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try (CapacityGovernor.Permit permit = governor.acquire()) {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning) {
+                            maxRunning.set(Math.max(maxRunning.get(), now));
+                        }
+                        Thread.sleep(30);
+                        running.decrementAndGet();
+                    } catch (Exception e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        Assert.assertTrue(failures.toString(), failures.isEmpty());
+        Assert.assertEquals(3, maxRunning.get());
+    }
+
+    @Test
+    public void testReleaseHandsSlotOn() throws Exception {
+
+        CapacityGovernor governor = new CapacityGovernor(CapacityGovernor.hiveSessions, 1, temp.getRoot());
+        final CapacityGovernor otherFork = new CapacityGovernor(CapacityGovernor.hiveSessions, 1, temp.getRoot());
+
+        CapacityGovernor.Permit permit = governor.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (CapacityGovernor.Permit other = otherFork.acquire()) {
+                    acquired.countDown();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        waiting.start();
+
+        Assert.assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        permit.close();
+        permit.close();
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+
+        CapacityGovernor governor = new CapacityGovernor(CapacityGovernor.workflows, 0, temp.getRoot());
+        List<CapacityGovernor.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            permits.add(governor.acquire());
+        }
+        for (CapacityGovernor.Permit permit : permits) {
+            permit.close();
+        }
+        Assert.assertEquals(0, temp.getRoot().list().length);
+    }
+}
@@ -0,0 +1,326 @@
+package com.cat.ddsw.base.cleanup;
+
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.cat.ddsw.base.hive.HiveQueryExecutor;
+import com.cat.ddsw.base.timing.PhaseTimeline;
+import com.cat.ddsw.base.timing.PhaseTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cleanup of Test data run in the background instead of in each @AfterClass.
+ *
+ * Partition drops queued for the same table are coalesced into one statement,
+ * ALTER TABLE t DROP IF EXISTS PARTITION (a), PARTITION (b), so a handful of Hive round trips replace one per
+ * table and class. A failed statement is queued again up to the retry limit. {@link #flush()} waits for everything
+ * queued so far and prints a summary, the Suite calls it once at the end.
+ */
+public class CleanupQueue {
+
+    private static final int defaultAttempts = 3;
+    private static final long defaultRetryMillis = 2000;
+
+    private static final String placeholderName = "no_data";
+
+    private static CleanupQueue instance = null;
+
+    private final HiveQueryExecutor hiveQueryExecutor;
+    private final int maxAttempts;
+    private final long retryMillis;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(new DaemonThreadFactory("ddsw-cleanup"));
+
+    // Guarded by this
+    private final Map<String, Set<String>> pendingDrops = new LinkedHashMap<>();
+    private final Set<String> pendingDirectories = new LinkedHashSet<>();
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private final List<String> failures = new ArrayList<>();
+    private final List<Runnable> drainedTasks = new ArrayList<>();
+    private boolean draining = false;
+    private int statements = 0;
+    private int partitionsDropped = 0;
+    private int directoriesDeleted = 0;
+
+    public CleanupQueue(HiveQueryExecutor hiveQueryExecutor, int maxAttempts, long retryMillis) {
+        this.hiveQueryExecutor = hiveQueryExecutor;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryMillis = retryMillis;
+    }
+
+    /**
+     * The queue of this JVM, flushed at the latest when the JVM exits.
+     */
+    public static synchronized CleanupQueue get(HiveQueryExecutor hiveQueryExecutor) {
+
+        if (instance == null) {
+            final CleanupQueue queue = new CleanupQueue(hiveQueryExecutor, defaultAttempts, defaultRetryMillis);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    queue.flush();
+                }
+            }, "ddsw-cleanup-flush"));
+            instance = queue;
+        }
+        return instance;
+    }
+
+    /**
+     * Queues a partition drop, e.g. dropPartition("invoice_core", "dealer_code='ZZZZ'").
+     */
+    public void dropPartition(String table, String partitionSpec) {
+
+        synchronized (this) {
+            Set<String> specs = pendingDrops.get(table);
+            if (specs == null) {
+                specs = new LinkedHashSet<>();
+                pendingDrops.put(table, specs);
+            }
+            specs.add(partitionSpec);
+        }
+        drain();
+    }
+
+    /**
+     * Queues deleting what is inside a local directory. The directory itself stays, and so do the no_data
+     * placeholder files that keep the empty actual directories in git.
+     */
+    public void deleteDirectoryContent(String directory) {
+
+        synchronized (this) {
+            pendingDirectories.add(directory);
+        }
+        drain();
+    }
+
+    /**
+     * Runs the task on the cleanup thread once everything queued so far is done or has failed for good.
+     * {@link #flush()} does not wait for the task.
+     */
+    public void whenDrained(Runnable task) {
+
+        synchronized (this) {
+            drainedTasks.add(task);
+        }
+        drain();
+    }
+
+    /**
+     * Blocks until everything queued so far is done or has failed for good, then prints the summary.
+     *
+     * @return true when nothing failed
+     */
+    public boolean flush() {
+
+        synchronized (this) {
+            try {
+                while (draining || !pendingDrops.isEmpty() || !pendingDirectories.isEmpty()) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("CleanupQueue: " + this);
+            for (String failure : failures) {
+                System.out.println("CleanupQueue: FAILED " + failure);
+            }
+            return failures.isEmpty();
+        }
+    }
+
+    public synchronized List<String> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    /**
+     * Number of Hive statements run, one per table and batch.
+     */
+    public synchronized int getStatements() {
+        return statements;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return partitionsDropped + " partitions dropped in " + statements + " statements, " + directoriesDeleted
+                + " directories emptied, " + failures.size() + " failed";
+    }
+
+    /**
+     * Builds the coalesced statement for one table.
+     */
+    static String dropStatement(String table, Set<String> partitionSpecs) {
+
+        StringBuilder statement = new StringBuilder("ALTER TABLE ").append(table).append(" DROP IF EXISTS");
+        String separator = " ";
+        for (String spec : partitionSpecs) {
+            statement.append(separator).append("PARTITION (").append(spec).append(')');
+            separator = ", ";
+        }
+        return statement.toString();
+    }
+
+    private synchronized void drain() {
+
+        if (draining) {
+            return;
+        }
+        draining = true;
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                runBatches();
+            }
+        });
+    }
+
+    private void runBatches() {
+
+        List<Runnable> drained;
+        while (true) {
+            Map<String, Set<String>> drops;
+            List<String> directories;
+            synchronized (this) {
+                if (pendingDrops.isEmpty() && pendingDirectories.isEmpty()) {
+                    draining = false;
+                    notifyAll();
+                    drained = new ArrayList<>(drainedTasks);
+                    drainedTasks.clear();
+                    break;
+                }
+                drops = new LinkedHashMap<>(pendingDrops);
+                directories = new ArrayList<>(pendingDirectories);
+                pendingDrops.clear();
+                pendingDirectories.clear();
+            }
+
+            boolean retry = false;
+            for (String directory : directories) {
+                try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.cleanup, directory)) {
+                    deleteContent(new File(directory).toPath());
+                    timer.succeeded();
+                    synchronized (this) {
+                        directoriesDeleted++;
+                    }
+                    succeeded("directory " + directory);
+                } catch (IOException e) {
+                    retry |= failed("directory " + directory, e, null, directory);
+                }
+            }
+
+            for (Map.Entry<String, Set<String>> drop : drops.entrySet()) {
+                String statement = dropStatement(drop.getKey(), drop.getValue());
+                try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.cleanup, drop.getKey())) {
+                    hiveQueryExecutor.execute(statement);
+                    timer.succeeded();
+                    synchronized (this) {
+                        statements++;
+                        partitionsDropped += drop.getValue().size();
+                    }
+                    succeeded("drop " + drop.getKey());
+                } catch (IOException e) {
+                    retry |= failed("drop " + drop.getKey(), e, drop, null);
+                }
+            }
+
+            if (retry) {
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        for (Runnable task : drained) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void succeeded(String what) {
+        attempts.remove(what);
+    }
+
+    /**
+     * Queues the work again unless it is out of attempts.
+     *
+     * @return true when it was queued again
+     */
+    private synchronized boolean failed(String what, IOException cause, Map.Entry<String, Set<String>> drop,
+                                        String directory) {
+
+        Integer tried = attempts.get(what);
+        tried = tried == null ? 1 : tried + 1;
+        if (tried >= maxAttempts) {
+            attempts.remove(what);
+            failures.add(what + " after " + tried + " attempts: " + cause.getMessage());
+            return false;
+        }
+
+        System.out.println("CleanupQueue: retrying " + what + ", " + cause.getMessage());
+        attempts.put(what, tried);
+        if (drop != null) {
+            Set<String> specs = pendingDrops.get(drop.getKey());
+            if (specs == null) {
+                specs = new LinkedHashSet<>();
+                pendingDrops.put(drop.getKey(), specs);
+            }
+            specs.addAll(drop.getValue());
+        }
+        if (directory != null) {
+            pendingDirectories.add(directory);
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            return !entries.iterator().hasNext();
+        }
+    }
+
+    private static void deleteContent(final Path directory) throws IOException {
+
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (!file.getFileName().toString().contains(placeholderName)) {
+                    Files.delete(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                if (!dir.equals(directory) && isEmpty(dir)) {
+                    Files.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,173 @@
+package com.cat.ddsw.base.cleanup;
+
+import com.cat.ddsw.base.hive.HiveQueryExecutor;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CleanupQueue batching and retries, with a HiveQueryExecutor that only records the statements.
+ */
+public class CleanupQueueTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testDropsAreCoalesced() throws Exception {
+
+        RecordingExecutor hive = new RecordingExecutor(0);
+        CleanupQueue queue = new CleanupQueue(hive, 3, 10);
+
+        // Hold the worker so the drops of several classes pile up
+        hive.block();
+        queue.dropPartition("invoice_core", "dealer_code='AAAA'");
+        Thread.sleep(50);
+        queue.dropPartition("invoice_core", "dealer_code='ZZZZ'");
+        queue.dropPartition("invoice_current", "dealer_code='ZZZZ'");
+        queue.dropPartition("invoice_core", "dealer_code='YYYY'");
+        queue.dropPartition("invoice_core", "dealer_code='ZZZZ'");
+        hive.unblock();
+
+        Assert.assertTrue(queue.flush());
+        Assert.assertEquals(3, queue.getStatements());
+        Assert.assertEquals("ALTER TABLE invoice_core DROP IF EXISTS PARTITION (dealer_code='AAAA')",
+                hive.statements.get(0));
+        Assert.assertTrue(hive.statements.contains("ALTER TABLE invoice_core DROP IF EXISTS "
+                + "PARTITION (dealer_code='ZZZZ'), PARTITION (dealer_code='YYYY')"));
+        Assert.assertTrue(hive.statements.contains("ALTER TABLE invoice_current DROP IF EXISTS "
+                + "PARTITION (dealer_code='ZZZZ')"));
+    }
+
+    @Test
+    public void testRetriesThenReports() throws Exception {
+
+        RecordingExecutor flaky = new RecordingExecutor(2);
+        CleanupQueue queue = new CleanupQueue(flaky, 3, 10);
+        queue.dropPartition("invoice_core", "dealer_code='ZZZZ'");
+        Assert.assertTrue(queue.flush());
+        Assert.assertEquals(3, flaky.statements.size());
+
+        RecordingExecutor broken = new RecordingExecutor(Integer.MAX_VALUE);
+        CleanupQueue failing = new CleanupQueue(broken, 2, 10);
+        failing.dropPartition("invoice_core", "dealer_code='ZZZZ'");
+        Assert.assertFalse(failing.flush());
+        Assert.assertEquals(1, failing.getFailures().size());
+        Assert.assertEquals(2, broken.statements.size());
+    }
+
+    @Test
+    public void testDrainedTaskRunsAfterTheDrops() throws Exception {
+
+        final RecordingExecutor hive = new RecordingExecutor(1);
+        CleanupQueue queue = new CleanupQueue(hive, 3, 10);
+        final List<Integer> statementsSeen = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        hive.block();
+        queue.dropPartition("invoice_core", "dealer_code='ZZZZ'");
+        queue.whenDrained(new Runnable() {
+            @Override
+            public void run() {
+                statementsSeen.add(hive.statements.size());
+                ran.countDown();
+            }
+        });
+        Assert.assertEquals(1, ran.getCount());
+        hive.unblock();
+
+        Assert.assertTrue(ran.await(10, TimeUnit.SECONDS));
+        // The failed drop and its retry both ran first
+        Assert.assertEquals(Collections.singletonList(2), statementsSeen);
+    }
+
+    @Test
+    public void testRequeuedTaskLetsLaterDropsRun() throws Exception {
+
+        final RecordingExecutor hive = new RecordingExecutor(0);
+        final CleanupQueue queue = new CleanupQueue(hive, 3, 10);
+        final List<Integer> statementsSeen = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        queue.whenDrained(new Runnable() {
+            @Override
+            public void run() {
+                statementsSeen.add(hive.statements.size());
+                if (statementsSeen.size() == 1) {
+                    // Busy, another Domain queues its drops meanwhile
+                    queue.dropPartition("dealer_inventory_core", "dealer_code='ZZZZ'");
+                    queue.whenDrained(this);
+                    return;
+                }
+                ran.countDown();
+            }
+        });
+
+        Assert.assertTrue(ran.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(0, 1), statementsSeen);
+    }
+
+    @Test
+    public void testDirectoryContentDeleted() throws Exception {
+
+        File actual = temp.newFolder("actual");
+        new File(actual, "nested").mkdir();
+        new File(actual, "nested/result.csv").createNewFile();
+        new File(actual, "result.csv").createNewFile();
+        new File(actual, ".oozie_no_data").createNewFile();
+
+        CleanupQueue queue = new CleanupQueue(new RecordingExecutor(0), 3, 10);
+        queue.deleteDirectoryContent(actual.getPath());
+        queue.deleteDirectoryContent(new File(temp.getRoot(), "missing").getPath());
+        Assert.assertTrue(queue.flush());
+
+        Assert.assertTrue(actual.isDirectory());
+        Assert.assertArrayEquals(new String[]{".oozie_no_data"}, actual.list());
+    }
+
+    private static class RecordingExecutor extends HiveQueryExecutor {
+
+        private final List<String> statements = Collections.synchronizedList(new ArrayList<String>());
+        private int failuresLeft;
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        RecordingExecutor(int failures) {
+            super("jdbc:hive2://localhost:10000/default", "test", "");
+            this.failuresLeft = failures;
+        }
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void unblock() {
+            gate.countDown();
+        }
+
+        @Override
+        public void execute(String statement) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            statements.add(statement);
+            synchronized (this) {
+                if (failuresLeft > 0) {
+                    failuresLeft--;
+                    throw new IOException("HiveServer2 busy");
+                }
+            }
+        }
+    }
+}
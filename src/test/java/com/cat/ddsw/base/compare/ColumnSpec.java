@@ -0,0 +1,57 @@
+package com.cat.ddsw.base.compare;
+
+/**
+ * One result column of a {@link TableSpec}.
+ */
+public class ColumnSpec {
+
+    private final String name;
+    private ColumnType type = ColumnType.STRING;
+    private boolean ignored = false;
+    private double tolerance = 0;
+
+    public ColumnSpec(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ColumnType getType() {
+        return type;
+    }
+
+    void setType(ColumnType type) {
+        this.type = type;
+    }
+
+    /**
+     * Ignored columns are still selected but never compared, e.g. load timestamps that change every run.
+     */
+    public boolean isIgnored() {
+        return ignored;
+    }
+
+    void setIgnored(boolean ignored) {
+        this.ignored = ignored;
+    }
+
+    /**
+     * Allowed absolute difference, in units for DECIMAL and in milliseconds for TIMESTAMP columns.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Columns with a tolerance can't take part in the row hash, two rows within tolerance hash differently.
+     */
+    boolean isExact() {
+        return !ignored && tolerance == 0;
+    }
+}
@@ -0,0 +1,23 @@
+package com.cat.ddsw.base.compare;
+
+/**
+ * How a result column is compared in typed mode.
+ */
+public enum ColumnType {
+
+    /**
+     * Byte for byte.
+     */
+    STRING,
+
+    /**
+     * Numeric value, so "123.45" equals "123.450". Integers are decimals with scale 0.
+     */
+    DECIMAL,
+
+    /**
+     * Instant in epoch millis, "2012-12-13 12:12:12.000" equals "2012-12-13 12:12:12 +00:00".
+     * Values without an offset are read as UTC.
+     */
+    TIMESTAMP
+}
@@ -0,0 +1,141 @@
+package com.cat.ddsw.base.compare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of comparing an actual result set with the expected one.
+ *
+ * Only the first few missing and extra rows are kept, the totals are always counted in full unless the
+ * comparison was asked to stop at the first mismatch.
+ */
+public class ComparisonResult {
+
+    private final int maxReportedRows;
+
+    private long actualRowCount;
+    private long expectedRowCount;
+
+    private long missingRowCount;
+    private long extraRowCount;
+    private final List<String> missingRows = new ArrayList<>();
+    private final List<String> extraRows = new ArrayList<>();
+
+    private boolean complete = true;
+
+    public ComparisonResult(int maxReportedRows) {
+        this.maxReportedRows = maxReportedRows;
+    }
+
+    /**
+     * Result of a comparison that only looked at some of the rows, with the row counts of the whole result sets.
+     */
+    public static ComparisonResult ofPart(ComparisonResult part, long actualRowCount, long expectedRowCount) {
+
+        ComparisonResult result = new ComparisonResult(part.maxReportedRows);
+        result.setRowCounts(actualRowCount, expectedRowCount);
+        result.missingRowCount = part.missingRowCount;
+        result.extraRowCount = part.extraRowCount;
+        result.missingRows.addAll(part.missingRows);
+        result.extraRows.addAll(part.extraRows);
+        result.complete = part.complete;
+        return result;
+    }
+
+    void setRowCounts(long actualRowCount, long expectedRowCount) {
+        this.actualRowCount = actualRowCount;
+        this.expectedRowCount = expectedRowCount;
+    }
+
+    void addMissingRow(String row) {
+        missingRowCount++;
+        if (missingRows.size() < maxReportedRows) {
+            missingRows.add(row);
+        }
+    }
+
+    void addExtraRow(String row) {
+        extraRowCount++;
+        if (extraRows.size() < maxReportedRows) {
+            extraRows.add(row);
+        }
+    }
+
+    void markIncomplete() {
+        complete = false;
+    }
+
+    public boolean isMatch() {
+        return missingRowCount == 0 && extraRowCount == 0 && actualRowCount == expectedRowCount;
+    }
+
+    public long getActualRowCount() {
+        return actualRowCount;
+    }
+
+    public long getExpectedRowCount() {
+        return expectedRowCount;
+    }
+
+    /**
+     * Rows present in the expected result but not returned by the query.
+     */
+    public List<String> getMissingRows() {
+        return Collections.unmodifiableList(missingRows);
+    }
+
+    /**
+     * Rows returned by the query that are not in the expected result.
+     */
+    public List<String> getExtraRows() {
+        return Collections.unmodifiableList(extraRows);
+    }
+
+    public long getMissingRowCount() {
+        return missingRowCount;
+    }
+
+    public long getExtraRowCount() {
+        return extraRowCount;
+    }
+
+    /**
+     * False when the comparison stopped at the first mismatch, the missing/extra totals are then lower bounds.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+
+        if (isMatch()) {
+            return "Result matches: " + actualRowCount + " rows";
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("Result mismatch: expected ").append(expectedRowCount)
+                .append(" rows, actual ").append(actualRowCount)
+                .append(" rows, ").append(missingRowCount).append(complete ? "" : "+").append(" missing, ")
+                .append(extraRowCount).append(complete ? "" : "+").append(" extra");
+
+        appendRows(report, "- ", missingRows, missingRowCount, "missing");
+        appendRows(report, "+ ", extraRows, extraRowCount, "extra");
+
+        if (!complete) {
+            report.append("\n  (stopped at first mismatch)");
+        }
+        return report.toString();
+    }
+
+    private static void appendRows(StringBuilder report, String marker, List<String> rows, long total, String kind) {
+
+        for (String row : rows) {
+            report.append("\n  ").append(marker).append(row);
+        }
+        if (total > rows.size()) {
+            report.append("\n  ... ").append(total - rows.size()).append(" more ").append(kind).append(" rows not shown");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Multiset of the expected rows, kept as row hash to remaining count.
+ *
+ * Only the 64 bit {@link RowHasher} hash of each row is held (open addressing over primitive arrays), so the
+ * index of a multi million row expected file stays a few tens of MB and actual rows can be checked off as
+ * they stream in without either side being stored as Strings.
+ */
+public class ExpectedRowIndex {
+
+    private static final float loadFactor = 0.5f;
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+    private long remaining;
+
+    public ExpectedRowIndex() {
+        this(1024);
+    }
+
+    public ExpectedRowIndex(int expectedDistinctRows) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedDistinctRows / loadFactor)) - 1) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+    }
+
+    public static ExpectedRowIndex load(File expectedDataFile, Charset charset) throws IOException {
+
+        ExpectedRowIndex index = new ExpectedRowIndex();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(expectedDataFile), charset))) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                index.add(RowHasher.hash(row));
+            }
+        }
+        return index;
+    }
+
+    public void add(long rowHash) {
+
+        long key = key(rowHash);
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key;
+            if (++size > keys.length * loadFactor) {
+                rehash();
+            }
+        }
+        counts[slot(key)]++;
+        remaining++;
+    }
+
+    /**
+     * Checks one occurrence of the row off the index.
+     *
+     * @return false when the row is not (or no longer) expected
+     */
+    public boolean consume(long rowHash) {
+
+        long key = key(rowHash);
+        int slot = slot(key);
+        if (keys[slot] == 0 || counts[slot] == 0) {
+            return false;
+        }
+        counts[slot]--;
+        remaining--;
+        return true;
+    }
+
+    /**
+     * Number of expected rows not consumed yet.
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * Hash 0 marks an empty slot.
+     */
+    private static long key(long rowHash) {
+        return rowHash == 0 ? 1 : rowHash;
+    }
+
+    private int slot(long key) {
+
+        int mask = keys.length - 1;
+        int slot = (int) RowHasher.mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length << 1];
+        counts = new int[oldKeys.length << 1];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the rows of a result file with bounded memory.
+ *
+ * Rows are collected until the in-memory budget is reached, sorted and spilled to a temporary run file.
+ * The runs are then merged lazily, so callers read the sorted rows through a {@link RowIterator} without
+ * the whole file ever being on the heap. Files that fit the budget are sorted in memory and never touch disk.
+ *
+ * ####IMPORTANT####
+ * #Rows are compared with String.compareTo, which is all the merge in ResultComparator needs.
+ */
+public class ExternalRowSorter {
+
+    /**
+     * Rough per row overhead of a String on a 64 bit JVM (object header, char[] header, list slot).
+     */
+    private static final long rowOverheadBytes = 64;
+
+    private final Charset charset;
+    private final long maxBytesInMemory;
+    private final File tempDirectory;
+
+    public ExternalRowSorter(Charset charset, long maxBytesInMemory, File tempDirectory) {
+        this.charset = charset;
+        this.maxBytesInMemory = maxBytesInMemory;
+        this.tempDirectory = tempDirectory;
+    }
+
+    public RowIterator sort(File input) throws IOException {
+
+        List<File> runs = new ArrayList<>();
+        List<String> buffer = new ArrayList<>();
+        long bufferedBytes = 0;
+
+        try (BufferedReader reader = newReader(input)) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                buffer.add(row);
+                bufferedBytes += rowOverheadBytes + 2L * row.length();
+
+                if (bufferedBytes >= maxBytesInMemory) {
+                    runs.add(spill(buffer));
+                    buffer.clear();
+                    bufferedBytes = 0;
+                }
+            }
+        } catch (IOException e) {
+            deleteRuns(runs);
+            throw e;
+        }
+
+        Collections.sort(buffer);
+        if (runs.isEmpty()) {
+            return new ListRowIterator(buffer);
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(spill(buffer));
+        }
+        return new MergingRowIterator(runs);
+    }
+
+    private File spill(List<String> rows) throws IOException {
+
+        Collections.sort(rows);
+
+        File run = File.createTempFile("ddsw-sort-", ".run", tempDirectory);
+        run.deleteOnExit();
+
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(run), charset))) {
+            for (String row : rows) {
+                writer.write(row);
+                writer.write('\n');
+            }
+        }
+        return run;
+    }
+
+    private BufferedReader newReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), charset));
+    }
+
+    private static void deleteRuns(List<File> runs) {
+        for (File run : runs) {
+            if (!run.delete()) {
+                run.deleteOnExit();
+            }
+        }
+    }
+
+    private static class ListRowIterator implements RowIterator {
+
+        private final List<String> rows;
+        private int position;
+
+        ListRowIterator(List<String> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public String next() {
+            return position < rows.size() ? rows.get(position++) : null;
+        }
+
+        @Override
+        public void close() {
+            rows.clear();
+        }
+    }
+
+    private class MergingRowIterator implements RowIterator {
+
+        private final List<File> runs;
+        private final List<BufferedReader> readers = new ArrayList<>();
+        private final PriorityQueue<RunHead> heads = new PriorityQueue<>();
+
+        MergingRowIterator(List<File> runs) throws IOException {
+            this.runs = runs;
+            try {
+                for (File run : runs) {
+                    BufferedReader reader = newReader(run);
+                    readers.add(reader);
+                    advance(reader);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void advance(BufferedReader reader) throws IOException {
+            String row = reader.readLine();
+            if (row != null) {
+                heads.add(new RunHead(row, reader));
+            }
+        }
+
+        @Override
+        public String next() throws IOException {
+
+            RunHead head = heads.poll();
+            if (head == null) {
+                return null;
+            }
+            advance(head.reader);
+            return head.row;
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            heads.clear();
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+            readers.clear();
+            deleteRuns(runs);
+        }
+    }
+
+    private static class RunHead implements Comparable<RunHead> {
+
+        private final String row;
+        private final BufferedReader reader;
+
+        RunHead(String row, BufferedReader reader) {
+            this.row = row;
+            this.reader = reader;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            return row.compareTo(other.row);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.cat.ddsw.base.compare;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Field boundaries of one row inside a {@link MappedTextFile} window, plus allocation free parsing of the fields.
+ *
+ * Values are hashed and compared straight from the mapped bytes. Strings are only created for the rows that end
+ * up in the mismatch report.
+ */
+public class FieldTokens {
+
+    private static final long nullHash = 0x5bd1e9955bd1e995L;
+
+    private ByteBuffer buffer;
+    private long rowOffset;
+    private long nextRowOffset;
+    private int rowStart;
+    private int rowEnd;
+
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int fieldCount;
+
+    private final long[] decimal = new long[2];
+    private final long[] otherDecimal = new long[2];
+
+    void reset(ByteBuffer buffer, long rowOffset, int rowStart) {
+        this.buffer = buffer;
+        this.rowOffset = rowOffset;
+        this.rowStart = rowStart;
+        this.fieldCount = 0;
+        starts[0] = rowStart;
+    }
+
+    void endField(int end) {
+
+        if (fieldCount + 1 == starts.length) {
+            int[] newStarts = new int[starts.length * 2];
+            int[] newEnds = new int[ends.length * 2];
+            System.arraycopy(starts, 0, newStarts, 0, starts.length);
+            System.arraycopy(ends, 0, newEnds, 0, ends.length);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        ends[fieldCount] = end;
+        fieldCount++;
+        starts[fieldCount] = end + 1;
+    }
+
+    void endRow(int end, long nextRowOffset) {
+        ends[fieldCount] = end;
+        fieldCount++;
+        this.rowEnd = end;
+        this.nextRowOffset = nextRowOffset;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * File offset of the row, for reading it again with {@link MappedTextFile#readRowAt(long, FieldTokens)}.
+     */
+    public long getRowOffset() {
+        return rowOffset;
+    }
+
+    long getNextRowOffset() {
+        return nextRowOffset;
+    }
+
+    public String rowString(Charset charset) {
+
+        byte[] bytes = new byte[rowEnd - rowStart];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(rowStart + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    /**
+     * "NULL" and "null" (how Hive and OozieRunner write a missing value), and empty DECIMAL or TIMESTAMP fields.
+     */
+    public boolean isNull(int field, ColumnType type) {
+
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length == 0) {
+            return type != ColumnType.STRING;
+        }
+        if (length != 4) {
+            return false;
+        }
+        return (buffer.get(start) | 0x20) == 'n' && (buffer.get(start + 1) | 0x20) == 'u'
+                && (buffer.get(start + 2) | 0x20) == 'l' && (buffer.get(start + 3) | 0x20) == 'l';
+    }
+
+    /**
+     * Hash of the typed value, equal values hash equally ("1.50" and "1.5" for DECIMAL columns).
+     */
+    public long hash(int field, ColumnType type) {
+
+        if (isNull(field, type)) {
+            return nullHash;
+        }
+        if (type == ColumnType.DECIMAL && parseDecimal(field, decimal)) {
+            return RowHasher.mix(decimal[0] * 31 + decimal[1]);
+        }
+        if (type == ColumnType.TIMESTAMP) {
+            long millis = parseTimestamp(field);
+            if (millis != Long.MIN_VALUE) {
+                return RowHasher.mix(millis);
+            }
+        }
+        return bytesHash(field);
+    }
+
+    public boolean valueEquals(int field, FieldTokens other, int otherField, ColumnSpec column) {
+
+        ColumnType type = column.getType();
+        boolean isNull = isNull(field, type);
+        boolean otherIsNull = other.isNull(otherField, type);
+        if (isNull || otherIsNull) {
+            return isNull && otherIsNull;
+        }
+
+        if (type == ColumnType.DECIMAL && parseDecimal(field, decimal) && other.parseDecimal(otherField, otherDecimal)) {
+            if (decimal[0] == otherDecimal[0] && decimal[1] == otherDecimal[1]) {
+                return true;
+            }
+            return column.getTolerance() > 0
+                    && Math.abs(toDouble(decimal) - toDouble(otherDecimal)) <= column.getTolerance();
+        }
+
+        if (type == ColumnType.TIMESTAMP) {
+            long millis = parseTimestamp(field);
+            long otherMillis = other.parseTimestamp(otherField);
+            if (millis != Long.MIN_VALUE && otherMillis != Long.MIN_VALUE) {
+                return Math.abs(millis - otherMillis) <= column.getTolerance();
+            }
+        }
+
+        return bytesEqual(field, other, otherField);
+    }
+
+    public boolean bytesEqual(int field, FieldTokens other, int otherField) {
+
+        int start = starts[field];
+        int length = ends[field] - start;
+        int otherStart = other.starts[otherField];
+        if (other.ends[otherField] - otherStart != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != other.buffer.get(otherStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bytesHash(int field) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            hash ^= buffer.get(i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return RowHasher.mix(hash);
+    }
+
+    /**
+     * Parses [-+]digits[.digits] into out[0] = unscaled value and out[1] = scale, trailing zeros stripped.
+     *
+     * @return false for anything else, including values without a digit ("-", ".") and over 18 significant digits
+     */
+    boolean parseDecimal(int field, long[] out) {
+
+        int i = starts[field];
+        int end = ends[field];
+        if (i == end) {
+            return false;
+        }
+
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long unscaled = 0;
+        int scale = -1;
+        int digits = 0;
+        boolean anyDigit = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (b < '0' || b > '9') {
+                return false;
+            }
+            anyDigit = true;
+            if (unscaled != 0 || b != '0') {
+                digits++;
+            }
+            if (digits > 18) {
+                return false;
+            }
+            unscaled = unscaled * 10 + (b - '0');
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (!anyDigit) {
+            return false;
+        }
+        if (scale < 0) {
+            scale = 0;
+        }
+
+        while (scale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+
+        out[0] = negative ? -unscaled : unscaled;
+        out[1] = unscaled == 0 ? 0 : scale;
+        return true;
+    }
+
+    /**
+     * Parses "yyyy-MM-dd[ HH:mm:ss[.fraction]][ +HH:MM]" into epoch millis, Long.MIN_VALUE if it is not one.
+     */
+    long parseTimestamp(int field) {
+
+        int i = starts[field];
+        int end = ends[field];
+        if (end - i < 10 || buffer.get(i + 4) != '-' || buffer.get(i + 7) != '-') {
+            return Long.MIN_VALUE;
+        }
+
+        int year = digits(i, 4);
+        int month = digits(i + 5, 2);
+        int day = digits(i + 8, 2);
+        i += 10;
+
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        if (i < end && (buffer.get(i) == ' ' || buffer.get(i) == 'T')) {
+            if (end - i < 9 || buffer.get(i + 3) != ':' || buffer.get(i + 6) != ':') {
+                return Long.MIN_VALUE;
+            }
+            hour = digits(i + 1, 2);
+            minute = digits(i + 4, 2);
+            second = digits(i + 7, 2);
+            i += 9;
+
+            if (i < end && buffer.get(i) == '.') {
+                i++;
+                int scale = 100;
+                for (; i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9'; i++) {
+                    millis += (buffer.get(i) - '0') * scale;
+                    scale /= 10;
+                }
+            }
+        }
+
+        int offsetMinutes = 0;
+        while (i < end && buffer.get(i) == ' ') {
+            i++;
+        }
+        if (i < end) {
+            byte sign = buffer.get(i);
+            if ((sign != '+' && sign != '-') || end - i != 6 || buffer.get(i + 3) != ':') {
+                return Long.MIN_VALUE;
+            }
+            int offsetHours = digits(i + 1, 2);
+            int offsetRest = digits(i + 4, 2);
+            if (offsetHours < 0 || offsetRest < 0) {
+                return Long.MIN_VALUE;
+            }
+            offsetMinutes = offsetHours * 60 + offsetRest;
+            if (sign == '-') {
+                offsetMinutes = -offsetMinutes;
+            }
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || minute < 0 || second < 0) {
+            return Long.MIN_VALUE;
+        }
+
+        long epochDay = epochDay(year, month, day);
+        return ((epochDay * 24 + hour) * 60 + minute - offsetMinutes) * 60000L + second * 1000L + millis;
+    }
+
+    /**
+     * @return the number, or a negative value if the bytes are not all digits
+     */
+    private int digits(int start, int count) {
+
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return Integer.MIN_VALUE / 2;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static double toDouble(long[] decimal) {
+        return decimal[0] / Math.pow(10, decimal[1]);
+    }
+}
@@ -0,0 +1,132 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads delimited rows out of a memory mapped file without decoding them into Strings.
+ *
+ * The file is mapped in windows (a single mapping is limited to 2GB), a row crossing the end of the window
+ * remaps the window at the start of that row. Field boundaries are written into a reusable {@link FieldTokens},
+ * which stays valid until the next row is read from this file.
+ *
+ * ####IMPORTANT####
+ * #The encoding must be ASCII compatible (utf-8, iso-8859-1) so Tab and New Line are single bytes.
+ * #A mapping is only released when its buffer is garbage collected, there is no unmap. close() drops the window so
+ * # it can be, but until then Windows refuses to delete the file. Callers deleting a file they compared fall back to
+ * # File.deleteOnExit when delete() fails.
+ */
+public class MappedTextFile implements Closeable {
+
+    private static final int defaultWindowSize = 64 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final byte delimiter;
+
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+    private int windowLength = 0;
+
+    private long position = 0;
+
+    public MappedTextFile(File file, char delimiter) throws IOException {
+        this(file, delimiter, defaultWindowSize);
+    }
+
+    public MappedTextFile(File file, char delimiter, int windowSize) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.delimiter = (byte) delimiter;
+    }
+
+    /**
+     * Reads the row at the current position and moves past it.
+     *
+     * @return false at the end of the file
+     */
+    public boolean nextRow(FieldTokens tokens) throws IOException {
+
+        if (position >= size) {
+            return false;
+        }
+        readRowAt(position, tokens);
+        position = tokens.getNextRowOffset();
+        return true;
+    }
+
+    /**
+     * Reads the row starting at a file offset taken from {@link FieldTokens#getRowOffset()}.
+     */
+    public void readRowAt(long offset, FieldTokens tokens) throws IOException {
+
+        int length = windowSize;
+        if (offset < windowStart || offset >= windowStart + windowLength) {
+            map(offset, length);
+        }
+
+        while (!scanRow(offset, tokens)) {
+            if (offset != windowStart) {
+                map(offset, length);
+            } else {
+                length = length > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : length * 2;
+                map(offset, length);
+            }
+        }
+    }
+
+    /**
+     * @return false when the window ends before the row does
+     */
+    private boolean scanRow(long offset, FieldTokens tokens) {
+
+        int start = (int) (offset - windowStart);
+        tokens.reset(window, offset, start);
+
+        int i = start;
+        while (i < windowLength) {
+            byte b = window.get(i);
+            if (b == '\n') {
+                int end = i > start && window.get(i - 1) == '\r' ? i - 1 : i;
+                tokens.endRow(end, windowStart + i + 1);
+                return true;
+            }
+            if (b == delimiter) {
+                tokens.endField(i);
+            }
+            i++;
+        }
+
+        if (windowStart + windowLength >= size) {
+            tokens.endRow(i, size);
+            return true;
+        }
+        return false;
+    }
+
+    private void map(long start, int length) throws IOException {
+
+        windowStart = start;
+        windowLength = (int) Math.min(length, size - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLength);
+    }
+
+    /**
+     * Closes the file and drops the mapped window, see the note on deleting above.
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        windowStart = 0;
+        windowLength = 0;
+        file.close();
+    }
+}
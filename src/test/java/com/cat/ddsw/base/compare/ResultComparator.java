@@ -0,0 +1,146 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Order insensitive comparison of query results against the expected results.
+ *
+ * Both files are treated as multisets of rows: the same rows in any order match, a duplicated row has to be
+ * duplicated on both sides. This replaces FileManager.contentEquals, which compares whole files in line order.
+ *
+ * The comparison runs in two steps,
+ *  1. Each file is streamed once into an order independent {@link RowHasher.Digest}. Equal digests mean the
+ *     results match, which is the common case and never holds more than one row in memory.
+ *  2. Only on a digest mismatch both files are sorted with {@link ExternalRowSorter} (spilling to disk above
+ *     the memory budget) and merged to find the missing and extra rows for the report.
+ *
+ * ####IMPORTANT####
+ * #Lines are read with BufferedReader.readLine, so "\r\n" line endings and a single New Line Character after
+ * # the "Last Record" no longer break the comparison.
+ */
+public class ResultComparator {
+
+    private static final long defaultMaxBytesInMemory = 64L * 1024 * 1024;
+    private static final int defaultMaxReportedRows = 10;
+
+    private final Charset charset;
+
+    private boolean stopAtFirstMismatch = false;
+    private long maxBytesInMemory = defaultMaxBytesInMemory;
+    private int maxReportedRows = defaultMaxReportedRows;
+    private File tempDirectory = null;
+
+    public ResultComparator(String encoding) {
+        this.charset = Charset.forName(encoding);
+    }
+
+    /**
+     * Stop looking for differences once the first missing or extra row is found.
+     */
+    public void setStopAtFirstMismatch(boolean stopAtFirstMismatch) {
+        this.stopAtFirstMismatch = stopAtFirstMismatch;
+    }
+
+    /**
+     * Heap budget of the external sort per file, rows beyond it are spilled to the temp directory.
+     */
+    public void setMaxBytesInMemory(long maxBytesInMemory) {
+        this.maxBytesInMemory = maxBytesInMemory;
+    }
+
+    public void setMaxReportedRows(int maxReportedRows) {
+        this.maxReportedRows = maxReportedRows;
+    }
+
+    /**
+     * Directory for the sort spill files, java.io.tmpdir when not set.
+     */
+    public void setTempDirectory(File tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public ComparisonResult compare(String actualDataFile, String expectedDataFile) throws IOException {
+        return compare(new File(actualDataFile), new File(expectedDataFile));
+    }
+
+    public ComparisonResult compare(File actualDataFile, File expectedDataFile) throws IOException {
+
+        RowHasher.Digest actualDigest = digest(actualDataFile);
+        RowHasher.Digest expectedDigest = digest(expectedDataFile);
+
+        ComparisonResult result = new ComparisonResult(maxReportedRows);
+        result.setRowCounts(actualDigest.getRowCount(), expectedDigest.getRowCount());
+
+        if (actualDigest.equals(expectedDigest)) {
+            return result;
+        }
+
+        ExternalRowSorter sorter = new ExternalRowSorter(charset, maxBytesInMemory, tempDirectory);
+        try (RowIterator actual = sorter.sort(actualDataFile);
+             RowIterator expected = sorter.sort(expectedDataFile)) {
+            diffSorted(actual, expected, result);
+        }
+        return result;
+    }
+
+    public RowHasher.Digest digest(File dataFile) throws IOException {
+
+        RowHasher.Digest digest = new RowHasher.Digest();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), charset))) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                digest.add(row);
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Merges two sorted row streams, recording rows that only one side has.
+     */
+    void diffSorted(RowIterator actual, RowIterator expected, ComparisonResult result) throws IOException {
+
+        String actualRow = actual.next();
+        String expectedRow = expected.next();
+
+        while (actualRow != null || expectedRow != null) {
+
+            int order;
+            if (actualRow == null) {
+                order = 1;
+            } else if (expectedRow == null) {
+                order = -1;
+            } else {
+                order = actualRow.compareTo(expectedRow);
+            }
+
+            if (order == 0) {
+                actualRow = actual.next();
+                expectedRow = expected.next();
+                continue;
+            }
+
+            if (order < 0) {
+                result.addExtraRow(actualRow);
+                actualRow = actual.next();
+            } else {
+                result.addMissingRow(expectedRow);
+                expectedRow = expected.next();
+            }
+
+            if (stopAtFirstMismatch) {
+                result.markIncomplete();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.cat.ddsw.base.compare;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class ResultComparatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String encoding = "utf-8";
+
+    @Test
+    public void testRowOrderIsIgnored() throws IOException {
+
+        File actual = write("actual.csv", "c\t3\r\na\t1\r\nb\t2\r\n");
+        File expected = write("expected.csv", "a\t1\nb\t2\nc\t3");
+
+        ComparisonResult result = new ResultComparator(encoding).compare(actual, expected);
+
+        Assert.assertTrue(result.toString(), result.isMatch());
+        Assert.assertEquals(3, result.getActualRowCount());
+    }
+
+    @Test
+    public void testDuplicateRowsAreCounted() throws IOException {
+
+        File actual = write("actual.csv", "a\na\nb");
+        File expected = write("expected.csv", "a\nb\nb");
+
+        ComparisonResult result = new ResultComparator(encoding).compare(actual, expected);
+
+        Assert.assertFalse(result.isMatch());
+        Assert.assertEquals(1, result.getMissingRowCount());
+        Assert.assertEquals(1, result.getExtraRowCount());
+        Assert.assertEquals("b", result.getMissingRows().get(0));
+        Assert.assertEquals("a", result.getExtraRows().get(0));
+    }
+
+    @Test
+    public void testSpilledSortFindsSameDifferences() throws IOException {
+
+        StringBuilder actualRows = new StringBuilder();
+        StringBuilder expectedRows = new StringBuilder();
+        for (int i = 5000; i > 0; i--) {
+            actualRows.append("row-").append(i).append('\n');
+        }
+        for (int i = 1; i <= 5001; i++) {
+            if (i != 1234 && i != 5000) {
+                expectedRows.append("row-").append(i).append('\n');
+            }
+        }
+
+        File spillDirectory = folder.newFolder("spill");
+        ResultComparator comparator = new ResultComparator(encoding);
+        comparator.setMaxBytesInMemory(4096);
+        comparator.setTempDirectory(spillDirectory);
+
+        ComparisonResult result = comparator.compare(write("actual.csv", actualRows.toString()),
+                write("expected.csv", expectedRows.toString()));
+
+        Assert.assertEquals(1, result.getMissingRowCount());
+        Assert.assertEquals("row-5001", result.getMissingRows().get(0));
+        Assert.assertEquals(2, result.getExtraRowCount());
+        Assert.assertTrue(result.getExtraRows().contains("row-1234"));
+        Assert.assertTrue(result.getExtraRows().contains("row-5000"));
+        Assert.assertEquals(0, spillDirectory.list().length);
+    }
+
+    @Test
+    public void testStopAtFirstMismatch() throws IOException {
+
+        ResultComparator comparator = new ResultComparator(encoding);
+        comparator.setStopAtFirstMismatch(true);
+
+        ComparisonResult result = comparator.compare(write("actual.csv", "a\nx\ny"), write("expected.csv", "a\nb\nc"));
+
+        Assert.assertFalse(result.isMatch());
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(1, result.getMissingRowCount() + result.getExtraRowCount());
+    }
+
+    private File write(String name, String content) throws IOException {
+
+        File file = new File(folder.getRoot(), name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), encoding)) {
+            writer.write(content);
+        }
+        return file;
+    }
+}
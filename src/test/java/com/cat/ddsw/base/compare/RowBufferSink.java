@@ -0,0 +1,16 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.IOException;
+
+/**
+ * {@link RowSink} that takes each row in a buffer the producer reuses for the next row, so no String is created per
+ * row. HiveQueryExecutor hands its rows over this way, other producers call {@link RowSink#accept(String)}.
+ */
+public interface RowBufferSink extends RowSink {
+
+    /**
+     * @param row only valid until the call returns, it is overwritten by the next row
+     * @return false to stop the fetch, like {@link RowSink#accept(String)}
+     */
+    boolean accept(StringBuilder row) throws IOException;
+}
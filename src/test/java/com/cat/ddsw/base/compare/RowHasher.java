@@ -0,0 +1,112 @@
+package com.cat.ddsw.base.compare;
+
+/**
+ * 64 bit hashing of result rows.
+ *
+ * Row hashes are combined with addition and xor so the combined value does not depend on the order
+ * the rows were read in. Hive returns rows in no fixed order, so this is what makes a single streaming
+ * pass over each file enough to prove two result sets hold the same rows.
+ */
+public final class RowHasher {
+
+    private static final long fnvOffsetBasis = 0xcbf29ce484222325L;
+    private static final long fnvPrime = 0x100000001b3L;
+
+    private RowHasher() {
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars of the row, finished with the murmur3 fmix64 step to spread the bits.
+     */
+    public static long hash(CharSequence row) {
+
+        long hash = fnvOffsetBasis;
+        for (int i = 0; i < row.length(); i++) {
+            hash ^= row.charAt(i);
+            hash *= fnvPrime;
+        }
+        return mix(hash);
+    }
+
+    public static long mix(long hash) {
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Order independent digest of a multiset of rows.
+     */
+    public static class Digest {
+
+        private long rowCount;
+        private long sum;
+        private long xor;
+
+        public Digest() {
+        }
+
+        /**
+         * Digest read back from its parts, e.g. one kept next to a golden result.
+         */
+        public Digest(long rowCount, long sum, long xor) {
+            this.rowCount = rowCount;
+            this.sum = sum;
+            this.xor = xor;
+        }
+
+        public void add(long rowHash) {
+            rowCount++;
+            sum += rowHash;
+            xor ^= rowHash;
+        }
+
+        public void add(CharSequence row) {
+            add(hash(row));
+        }
+
+        public void merge(Digest other) {
+            rowCount += other.rowCount;
+            sum += other.sum;
+            xor ^= other.xor;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getXor() {
+            return xor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Digest)) {
+                return false;
+            }
+            Digest other = (Digest) o;
+            return rowCount == other.rowCount && sum == other.sum && xor == other.xor;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (mix(sum ^ xor) ^ rowCount);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d sum=%016x xor=%016x", rowCount, sum, xor);
+        }
+    }
+}
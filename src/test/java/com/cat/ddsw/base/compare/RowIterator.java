@@ -0,0 +1,12 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Forward only cursor over result rows. Returns null once the rows are exhausted.
+ */
+public interface RowIterator extends Closeable {
+
+    String next() throws IOException;
+}
@@ -0,0 +1,19 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.IOException;
+
+/**
+ * Receives result rows as they are fetched.
+ */
+public interface RowSink {
+
+    /**
+     * @return false to stop the fetch, the producer then cancels the query and calls {@link #finish(boolean)}.
+     */
+    boolean accept(String row) throws IOException;
+
+    /**
+     * @param exhausted true when every row of the result was passed to {@link #accept(String)}
+     */
+    void finish(boolean exhausted) throws IOException;
+}
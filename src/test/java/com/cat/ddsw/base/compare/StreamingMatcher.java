@@ -0,0 +1,83 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * {@link RowSink} that checks streamed actual rows off an {@link ExpectedRowIndex}.
+ *
+ * Nothing of the actual result is kept except the extra rows that go into the report. With stop at first
+ * mismatch the fetch is stopped by the first row that is not expected, so a broken workflow fails the test
+ * without the rest of the result set being transferred.
+ */
+public class StreamingMatcher implements RowSink {
+
+    private final File expectedDataFile;
+    private final Charset charset;
+    private final ExpectedRowIndex index;
+    private final ComparisonResult result;
+    private final boolean stopAtFirstMismatch;
+
+    private long actualRowCount;
+    private long expectedRowCount;
+
+    public StreamingMatcher(File expectedDataFile, Charset charset, boolean stopAtFirstMismatch,
+                            int maxReportedRows) throws IOException {
+        this.expectedDataFile = expectedDataFile;
+        this.charset = charset;
+        this.stopAtFirstMismatch = stopAtFirstMismatch;
+        this.index = ExpectedRowIndex.load(expectedDataFile, charset);
+        this.expectedRowCount = index.getRemaining();
+        this.result = new ComparisonResult(maxReportedRows);
+    }
+
+    @Override
+    public boolean accept(String row) {
+
+        actualRowCount++;
+        if (index.consume(RowHasher.hash(row))) {
+            return true;
+        }
+
+        result.addExtraRow(row);
+        return !stopAtFirstMismatch;
+    }
+
+    @Override
+    public void finish(boolean exhausted) throws IOException {
+
+        result.setRowCounts(actualRowCount, expectedRowCount);
+
+        if (!exhausted) {
+            result.markIncomplete();
+            return;
+        }
+
+        if (index.getRemaining() > 0) {
+            collectMissingRows();
+        }
+    }
+
+    public ComparisonResult getResult() {
+        return result;
+    }
+
+    /**
+     * Second pass over the expected file to turn the hashes left in the index back into rows.
+     */
+    private void collectMissingRows() throws IOException {
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(expectedDataFile), charset))) {
+            String row;
+            while (index.getRemaining() > 0 && (row = reader.readLine()) != null) {
+                if (index.consume(RowHasher.hash(row))) {
+                    result.addMissingRow(row);
+                }
+            }
+        }
+    }
+}
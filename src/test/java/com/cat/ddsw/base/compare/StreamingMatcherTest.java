@@ -0,0 +1,75 @@
+package com.cat.ddsw.base.compare;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+public class StreamingMatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Charset charset = Charset.forName("utf-8");
+
+    @Test
+    public void testStreamedRowsMatchInAnyOrder() throws IOException {
+
+        StreamingMatcher matcher = new StreamingMatcher(write("a\nb\nb\nc"), charset, true, 10);
+
+        Assert.assertTrue(matcher.accept("b"));
+        Assert.assertTrue(matcher.accept("c"));
+        Assert.assertTrue(matcher.accept("a"));
+        Assert.assertTrue(matcher.accept("b"));
+        matcher.finish(true);
+
+        Assert.assertTrue(matcher.getResult().toString(), matcher.getResult().isMatch());
+    }
+
+    @Test
+    public void testUnexpectedRowStopsTheFetch() throws IOException {
+
+        StreamingMatcher matcher = new StreamingMatcher(write("a\nb"), charset, true, 10);
+
+        Assert.assertTrue(matcher.accept("a"));
+        Assert.assertFalse(matcher.accept("a"));
+        matcher.finish(false);
+
+        ComparisonResult result = matcher.getResult();
+        Assert.assertFalse(result.isMatch());
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals("a", result.getExtraRows().get(0));
+    }
+
+    @Test
+    public void testMissingRowsAreReported() throws IOException {
+
+        StreamingMatcher matcher = new StreamingMatcher(write("a\nb\nc\nc"), charset, false, 10);
+
+        matcher.accept("c");
+        matcher.accept("x");
+        matcher.finish(true);
+
+        ComparisonResult result = matcher.getResult();
+        Assert.assertTrue(result.isComplete());
+        Assert.assertEquals(3, result.getMissingRowCount());
+        Assert.assertEquals(1, result.getExtraRowCount());
+        Assert.assertTrue(result.getMissingRows().contains("c"));
+    }
+
+    private File write(String content) throws IOException {
+
+        File file = folder.newFile();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), charset)) {
+            writer.write(content);
+        }
+        return file;
+    }
+}
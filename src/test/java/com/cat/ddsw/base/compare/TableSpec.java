@@ -0,0 +1,103 @@
+package com.cat.ddsw.base.compare;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Column layout of a verification query for typed comparison.
+ *
+ * The spec is the single place the selected columns are listed: {@link #selectQuery(String)} builds the
+ * SELECT from it, so the query and the way each result column is compared can't drift apart.
+ *
+ * <pre>
+ * TableSpec spec = new TableSpec("ddsw_qa.dealer_inventory_current")
+ *         .columns("file_name", "gen_id", "min_qty", "first_activity_date", "dealer_code")
+ *         .decimal("min_qty")
+ *         .timestamp("first_activity_date");
+ * </pre>
+ */
+public class TableSpec {
+
+    private final String table;
+    private final List<ColumnSpec> columns = new ArrayList<>();
+
+    public TableSpec(String table) {
+        this.table = table;
+    }
+
+    public TableSpec columns(String... names) {
+
+        for (String name : names) {
+            columns.add(new ColumnSpec(name.trim()));
+        }
+        return this;
+    }
+
+    public TableSpec decimal(String... names) {
+
+        for (String name : names) {
+            column(name).setType(ColumnType.DECIMAL);
+        }
+        return this;
+    }
+
+    public TableSpec timestamp(String... names) {
+
+        for (String name : names) {
+            column(name).setType(ColumnType.TIMESTAMP);
+        }
+        return this;
+    }
+
+    /**
+     * Skips volatile columns in the comparison, they don't have to be removed from the SELECT.
+     */
+    public TableSpec ignore(String... names) {
+
+        for (String name : names) {
+            column(name).setIgnored(true);
+        }
+        return this;
+    }
+
+    public TableSpec tolerance(String name, double tolerance) {
+
+        column(name).setTolerance(tolerance);
+        return this;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<ColumnSpec> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    public ColumnSpec column(String name) {
+
+        for (ColumnSpec column : columns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("Column " + name + " is not part of " + table);
+    }
+
+    public String selectQuery(String where) {
+
+        StringBuilder query = new StringBuilder("select ");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(columns.get(i).getName());
+        }
+        query.append(" from ").append(table);
+        if (where != null) {
+            query.append(" where ").append(where);
+        }
+        return query.toString();
+    }
+}
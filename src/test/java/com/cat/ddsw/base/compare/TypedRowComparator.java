@@ -0,0 +1,134 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Order insensitive comparison of result files by typed column values, driven by a {@link TableSpec}.
+ *
+ * Both files are memory mapped and tokenized in place (see {@link MappedTextFile}), decimals and timestamps are
+ * parsed straight from the bytes into primitives. No String is created per cell, only for the rows that make it
+ * into the report, which keeps multi GB extracts from turning into GC time.
+ *
+ * How it works,
+ *  1. Every Expected row is reduced to a hash of its exact columns (not ignored, no tolerance) and its file offset.
+ *     The two are kept in primitive arrays sorted by hash.
+ *  2. Every Actual row looks up the Expected rows with the same hash and is matched against the first one not yet
+ *     taken whose columns compare equal, ignored columns skipped and tolerances applied.
+ *  3. Actual rows without a match are extra, Expected rows never taken are missing.
+ * The matching is done by {@link TypedStreamingMatcher}, which also takes the actual rows straight from a query.
+ */
+public class TypedRowComparator {
+
+    private static final int defaultMaxReportedRows = 10;
+
+    private final TableSpec spec;
+    private final Charset charset;
+    private final char delimiter;
+
+    private boolean stopAtFirstMismatch = false;
+    private int maxReportedRows = defaultMaxReportedRows;
+    private int windowSize = 64 * 1024 * 1024;
+
+    public TypedRowComparator(TableSpec spec, String encoding) {
+        this(spec, encoding, '\t');
+    }
+
+    public TypedRowComparator(TableSpec spec, String encoding, char delimiter) {
+
+        this.spec = spec;
+        this.charset = Charset.forName(encoding);
+        this.delimiter = delimiter;
+
+        if (!"\t\n".equals(new String("\t\n".getBytes(charset), charset)) || "\n".getBytes(charset).length != 1) {
+            throw new IllegalArgumentException("Typed comparison needs an ASCII compatible encoding, not " + encoding);
+        }
+    }
+
+    public void setStopAtFirstMismatch(boolean stopAtFirstMismatch) {
+        this.stopAtFirstMismatch = stopAtFirstMismatch;
+    }
+
+    public void setMaxReportedRows(int maxReportedRows) {
+        this.maxReportedRows = maxReportedRows;
+    }
+
+    /**
+     * Size of the memory mapped window per file.
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public ComparisonResult compare(String actualDataFile, String expectedDataFile) throws IOException {
+        return compare(new File(actualDataFile), new File(expectedDataFile));
+    }
+
+    public ComparisonResult compare(File actualDataFile, File expectedDataFile) throws IOException {
+
+        try (TypedStreamingMatcher matcher = new TypedStreamingMatcher(spec, expectedDataFile, charset, delimiter,
+                stopAtFirstMismatch, maxReportedRows, windowSize);
+             MappedTextFile actual = new MappedTextFile(actualDataFile, delimiter, windowSize)) {
+
+            FieldTokens actualRow = new FieldTokens();
+            boolean stopped = false;
+            while (!stopped && actual.nextRow(actualRow)) {
+                stopped = !matcher.accept(actualRow);
+            }
+            matcher.finish(!stopped);
+            return matcher.getResult();
+        }
+    }
+
+    /**
+     * Hash over the exact columns only, rows within tolerance of each other must land on the same hash.
+     * Rows that don't have the spec's column count are hashed on every field as plain bytes.
+     */
+    static long keyHash(FieldTokens row, List<ColumnSpec> columns) {
+
+        int fields = row.getFieldCount();
+        long hash = fields;
+
+        if (fields != columns.size()) {
+            for (int i = 0; i < fields; i++) {
+                hash = hash * 31 + row.bytesHash(i);
+            }
+            return RowHasher.mix(hash);
+        }
+
+        for (int i = 0; i < fields; i++) {
+            ColumnSpec column = columns.get(i);
+            if (column.isExact()) {
+                hash = hash * 31 + row.hash(i, column.getType());
+            }
+        }
+        return RowHasher.mix(hash);
+    }
+
+    static boolean rowsEqual(FieldTokens actual, FieldTokens expected, List<ColumnSpec> columns) {
+
+        int fields = actual.getFieldCount();
+        if (fields != expected.getFieldCount()) {
+            return false;
+        }
+
+        if (fields != columns.size()) {
+            for (int i = 0; i < fields; i++) {
+                if (!actual.bytesEqual(i, expected, i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        for (int i = 0; i < fields; i++) {
+            ColumnSpec column = columns.get(i);
+            if (!column.isIgnored() && !actual.valueEquals(i, expected, i, column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
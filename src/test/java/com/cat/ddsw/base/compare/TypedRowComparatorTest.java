@@ -0,0 +1,140 @@
+package com.cat.ddsw.base.compare;
+
+import com.cat.ddsw.base.fixture.DealerPartition;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+public class TypedRowComparatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String encoding = "utf-8";
+
+    private final TableSpec spec = new TableSpec("ddsw_qa.dealer_inventory_current")
+            .columns("part_number", "min_qty", "first_activity_date", "load_ts", "dealer_code")
+            .decimal("min_qty")
+            .timestamp("first_activity_date", "load_ts")
+            .ignore("load_ts");
+
+    @Test
+    public void testTypedValuesCompareByValue() throws IOException {
+
+        File actual = write("actual.csv",
+                "B\t7\t2012-12-13 12:12:12 +00:00\t2015-01-01 00:00:00\tZZZZ\n"
+                        + "A\t123.450\t2012-12-13 13:12:12 +01:00\t2016-01-01 00:00:00\tZZZZ");
+        File expected = write("expected.csv",
+                "A\t123.45\t2012-12-13 12:12:12.000\t2000-01-01 00:00:00\tZZZZ\n"
+                        + "B\t7.0\t2012-12-13 12:12:12\tNULL\tZZZZ\n");
+
+        ComparisonResult result = new TypedRowComparator(spec, encoding).compare(actual, expected);
+
+        Assert.assertTrue(result.toString(), result.isMatch());
+    }
+
+    @Test
+    public void testNullsAndToleranceAreApplied() throws IOException {
+
+        TableSpec tolerant = new TableSpec("t").columns("key", "amount", "note").decimal("amount")
+                .tolerance("amount", 0.01);
+
+        File actual = write("actual.csv", "1\t10.004\tnull\n2\t20.5\tx");
+        File expected = write("expected.csv", "1\t10\tNULL\n2\t20.6\tx");
+
+        ComparisonResult result = new TypedRowComparator(tolerant, encoding).compare(actual, expected);
+
+        Assert.assertEquals(1, result.getMissingRowCount());
+        Assert.assertEquals(1, result.getExtraRowCount());
+        Assert.assertEquals("2\t20.6\tx", result.getMissingRows().get(0));
+        Assert.assertEquals("2\t20.5\tx", result.getExtraRows().get(0));
+    }
+
+    @Test
+    public void testDecimalsWithoutDigitsAreNotZero() throws IOException {
+
+        TableSpec decimals = new TableSpec("t").columns("key", "amount").decimal("amount");
+
+        File actual = write("actual.csv", "1\t-\n2\t+\n3\t.\n4\t-.\n5\t-0.\n6\t.50");
+        File expected = write("expected.csv", "1\t0\n2\t0.00\n3\t0\n4\t0.0\n5\t0\n6\t0.5");
+
+        ComparisonResult result = new TypedRowComparator(decimals, encoding).compare(actual, expected);
+
+        Assert.assertEquals(4, result.getMissingRowCount());
+        Assert.assertEquals(4, result.getExtraRowCount());
+        Assert.assertFalse(result.getExtraRows().contains("5\t-0."));
+        Assert.assertFalse(result.getExtraRows().contains("6\t.50"));
+    }
+
+    @Test
+    public void testRowsAcrossMappedWindows() throws IOException {
+
+        StringBuilder actualRows = new StringBuilder();
+        StringBuilder expectedRows = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            actualRows.append("P").append(i).append('\t').append(i).append(".10\t2012-12-13\tx\tZZZZ\r\n");
+            expectedRows.append("P").append(1999 - i).append('\t').append(1999 - i).append(".1\t2012-12-13 00:00:00\ty\tZZZZ\n");
+        }
+
+        TypedRowComparator comparator = new TypedRowComparator(spec, encoding);
+        comparator.setWindowSize(1000);
+
+        ComparisonResult result = comparator.compare(write("actual.csv", actualRows.toString()),
+                write("expected.csv", expectedRows.toString()));
+
+        Assert.assertTrue(result.toString(), result.isMatch());
+        Assert.assertEquals(2000, result.getActualRowCount());
+    }
+
+    @Test
+    public void testStreamedRowsMatchInTheReusedBuffer() throws IOException {
+
+        File expected = write("expected.csv",
+                "A\t123.45\t2012-12-13 12:12:12\tx\tZZZZ\n"
+                        + "B\t7\t2012-12-13 12:12:12\tx\tZZZZ\n"
+                        + "C\t1\t2012-12-13 12:12:12\tx\tZZZZ\n");
+
+        TypedStreamingMatcher matcher = new TypedStreamingMatcher(spec, expected, StandardCharsets.UTF_8, false, 10);
+        RowBufferSink sink = (RowBufferSink) new DealerPartition("ZQ01").normalize(matcher);
+        StringBuilder row = new StringBuilder();
+        for (String actual : new String[]{"B\t7.00\t2012-12-13 12:12:12.0\ty\tZQ01",
+                "A\t123.450\t2012-12-13 12:12:12\ty\tZQ01", "D\t1\t2012-12-13 12:12:12\ty\tZQ01"}) {
+            row.setLength(0);
+            row.append(actual);
+            sink.accept(row);
+        }
+        sink.finish(true);
+        matcher.close();
+
+        ComparisonResult result = matcher.getResult();
+        Assert.assertEquals(3, result.getActualRowCount());
+        Assert.assertEquals(Collections.singletonList("D\t1\t2012-12-13 12:12:12\ty\tZZZZ"), result.getExtraRows());
+        Assert.assertEquals(Collections.singletonList("C\t1\t2012-12-13 12:12:12\tx\tZZZZ"), result.getMissingRows());
+    }
+
+    @Test
+    public void testTableSpecBuildsSelectQuery() {
+
+        Assert.assertEquals("select part_number, min_qty, first_activity_date, load_ts, dealer_code "
+                        + "from ddsw_qa.dealer_inventory_current where dealer_code ='ZZZZ'",
+                spec.selectQuery("dealer_code ='ZZZZ'"));
+    }
+
+    private File write(String name, String content) throws IOException {
+
+        File file = new File(folder.getRoot(), name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), encoding)) {
+            writer.write(content);
+        }
+        return file;
+    }
+}
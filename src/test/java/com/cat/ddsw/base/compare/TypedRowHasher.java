@@ -0,0 +1,54 @@
+package com.cat.ddsw.base.compare;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Hash of a result row given as a String, built like the key hash {@link TypedRowComparator} builds from the mapped
+ * file: over the exact columns by typed value. Rows the comparator takes as equal hash equally, so the hash can go
+ * into a {@link RowHasher.Digest} of a typed result.
+ *
+ * Not thread safe, the tokens of the row are reused.
+ */
+public class TypedRowHasher {
+
+    private final List<ColumnSpec> columns;
+    private final Charset charset;
+    private final byte delimiter;
+    private final FieldTokens tokens = new FieldTokens();
+    private final boolean exact;
+
+    public TypedRowHasher(TableSpec spec, Charset charset, char delimiter) {
+
+        this.columns = spec.getColumns();
+        this.charset = charset;
+        this.delimiter = (byte) delimiter;
+
+        boolean allExact = true;
+        for (ColumnSpec column : columns) {
+            allExact &= column.isExact() || column.isIgnored();
+        }
+        this.exact = allExact;
+    }
+
+    public long hash(String row) {
+
+        byte[] bytes = row.getBytes(charset);
+        tokens.reset(ByteBuffer.wrap(bytes), 0, 0);
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == delimiter) {
+                tokens.endField(i);
+            }
+        }
+        tokens.endRow(bytes.length, bytes.length);
+        return TypedRowComparator.keyHash(tokens, columns);
+    }
+
+    /**
+     * False when columns with a tolerance are left out of the hash, equal hashes then don't prove equal rows.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+}
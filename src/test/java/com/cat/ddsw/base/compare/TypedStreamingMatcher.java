@@ -0,0 +1,263 @@
+package com.cat.ddsw.base.compare;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * {@link RowSink} that matches streamed actual rows against an Expected file by typed column values, the streaming
+ * form of {@link TypedRowComparator}.
+ *
+ * The Expected file is memory mapped and indexed by key hash up front. Every actual row is encoded into a reused
+ * byte buffer and tokenized in place, so neither a row nor a cell String is kept, only the rows that make it into
+ * the report are turned into Strings.
+ *
+ * ####IMPORTANT####
+ * #The result is complete after {@link #finish(boolean)}, close the matcher afterwards to release the Expected file.
+ * #With stop at first mismatch the first extra row stops the fetch and the missing rows are not collected.
+ */
+public class TypedStreamingMatcher implements RowBufferSink, Closeable {
+
+    private final List<ColumnSpec> columns;
+    private final Charset charset;
+    private final byte delimiter;
+    private final boolean stopAtFirstMismatch;
+    private final ComparisonResult result;
+
+    private final MappedTextFile expectedLookup;
+    private final RowIndex index = new RowIndex();
+    private final BitSet taken;
+
+    private final FieldTokens actualRow = new FieldTokens();
+    private final FieldTokens expectedRow = new FieldTokens();
+    private final CharsetEncoder encoder;
+    private ByteBuffer bytes = ByteBuffer.allocate(4096);
+
+    private long actualRowCount = 0;
+
+    public TypedStreamingMatcher(TableSpec spec, File expectedDataFile, Charset charset, boolean stopAtFirstMismatch,
+                                 int maxReportedRows) throws IOException {
+        this(spec, expectedDataFile, charset, '\t', stopAtFirstMismatch, maxReportedRows, 64 * 1024 * 1024);
+    }
+
+    public TypedStreamingMatcher(TableSpec spec, File expectedDataFile, Charset charset, char delimiter,
+                                 boolean stopAtFirstMismatch, int maxReportedRows, int windowSize) throws IOException {
+
+        this.columns = spec.getColumns();
+        this.charset = charset;
+        this.delimiter = (byte) delimiter;
+        this.stopAtFirstMismatch = stopAtFirstMismatch;
+        this.result = new ComparisonResult(maxReportedRows);
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try (MappedTextFile expected = new MappedTextFile(expectedDataFile, delimiter, windowSize)) {
+            while (expected.nextRow(expectedRow)) {
+                index.add(TypedRowComparator.keyHash(expectedRow, columns), expectedRow.getRowOffset());
+            }
+        }
+        index.sort();
+        this.taken = new BitSet(index.size);
+        this.expectedLookup = new MappedTextFile(expectedDataFile, delimiter, windowSize);
+    }
+
+    @Override
+    public boolean accept(String row) throws IOException {
+        return accept((CharSequence) row);
+    }
+
+    @Override
+    public boolean accept(StringBuilder row) throws IOException {
+        return accept((CharSequence) row);
+    }
+
+    private boolean accept(CharSequence row) throws IOException {
+
+        encode(row);
+        int length = bytes.position();
+        actualRow.reset(bytes, actualRowCount, 0);
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(i) == delimiter) {
+                actualRow.endField(i);
+            }
+        }
+        actualRow.endRow(length, length);
+        return accept(actualRow);
+    }
+
+    /**
+     * Matches a row tokenized by the caller, e.g. read from a {@link MappedTextFile}.
+     *
+     * @return false when the row is extra and the matcher stops at the first mismatch
+     */
+    boolean accept(FieldTokens row) throws IOException {
+
+        actualRowCount++;
+        long key = TypedRowComparator.keyHash(row, columns);
+        for (int i = index.first(key); i >= 0 && i < index.size && index.keys[i] == key; i++) {
+            if (taken.get(i)) {
+                continue;
+            }
+            readExpected(i);
+            if (TypedRowComparator.rowsEqual(row, expectedRow, columns)) {
+                taken.set(i);
+                return true;
+            }
+        }
+
+        result.addExtraRow(row.rowString(charset));
+        return !stopAtFirstMismatch;
+    }
+
+    @Override
+    public void finish(boolean exhausted) throws IOException {
+
+        result.setRowCounts(actualRowCount, index.size);
+        if (!exhausted) {
+            result.markIncomplete();
+            return;
+        }
+
+        for (int i = taken.nextClearBit(0); i < index.size; i = taken.nextClearBit(i + 1)) {
+            readExpected(i);
+            result.addMissingRow(expectedRow.rowString(charset));
+            if (stopAtFirstMismatch) {
+                result.markIncomplete();
+                break;
+            }
+        }
+    }
+
+    public ComparisonResult getResult() {
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        expectedLookup.close();
+    }
+
+    private void readExpected(int i) throws IOException {
+        expectedLookup.readRowAt(index.offsets[i], expectedRow);
+    }
+
+    /**
+     * The row into the reused byte buffer, grown when a row does not fit.
+     */
+    private void encode(CharSequence row) {
+
+        CharBuffer chars = CharBuffer.wrap(row);
+        bytes.clear();
+        encoder.reset();
+        while (true) {
+            CoderResult coded = encoder.encode(chars, bytes, true);
+            if (!coded.isOverflow()) {
+                coded = encoder.flush(bytes);
+            }
+            if (!coded.isOverflow()) {
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+        }
+    }
+
+    /**
+     * Parallel primitive arrays of key hash and file offset, sorted by key hash.
+     */
+    private static class RowIndex {
+
+        private long[] keys = new long[1024];
+        private long[] offsets = new long[1024];
+        private int size;
+
+        void add(long key, long offset) {
+
+            if (size == keys.length) {
+                long[] newKeys = new long[size * 2];
+                long[] newOffsets = new long[size * 2];
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                System.arraycopy(offsets, 0, newOffsets, 0, size);
+                keys = newKeys;
+                offsets = newOffsets;
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            size++;
+        }
+
+        void sort() {
+            sort(0, size - 1);
+        }
+
+        private void sort(int low, int high) {
+
+            while (low < high) {
+                long pivot = keys[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (keys[i] < pivot) {
+                        i++;
+                    }
+                    while (keys[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+                if (j - low < high - i) {
+                    sort(low, j);
+                    low = i;
+                } else {
+                    sort(i, high);
+                    high = j;
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+
+            long offset = offsets[i];
+            offsets[i] = offsets[j];
+            offsets[j] = offset;
+        }
+
+        /**
+         * @return the lowest index holding the key, or -1
+         */
+        int first(long key) {
+
+            int low = 0;
+            int high = size - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    if (keys[mid] == key) {
+                        found = mid;
+                    }
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+}
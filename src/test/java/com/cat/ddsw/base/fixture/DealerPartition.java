@@ -0,0 +1,215 @@
+package com.cat.ddsw.base.fixture;
+
+import com.cat.ddsw.base.compare.RowBufferSink;
+import com.cat.ddsw.base.compare.RowHasher;
+import com.cat.ddsw.base.compare.RowSink;
+import com.cat.ddsw.base.staging.StagingEntry;
+import com.cat.ddsw.base.staging.StagingManifest;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The synthetic dealer the Test data of this build is loaded as, so several builds (CI pipelines, branches) can run
+ * against one cluster at the same time, each in Hive partitions of its own.
+ *
+ * The fixture files and goldens are written with the dealer code ZZZZ. Staging rewrites it to the code of the build,
+ * in the target file names and in the file contents. The Test queries and partition drops filter on {@link #where()}.
+ * The result rows are read back with the code of the build turned into ZZZZ again, so they compare to the goldens
+ * unchanged.
+ *
+ * ####IMPORTANT####
+ * #The code is derived from the build id, so every fork of a build uses the same one: Z followed by 3 upper case
+ * # letters or digits.
+ * #"gradle test -PdealerCode=ZQ01" sets it through the "ddsw.dealer.code" System Property, e.g. to look at the
+ * # partitions of a known code. With ZZZZ the Test data is staged unchanged, as before.
+ * #Only whole words are rewritten, the code next to other letters or digits is part of a longer value.
+ * #The partitions of a build that died before its cleanup stay behind, drop them by their dealer code.
+ */
+public class DealerPartition {
+
+    public static final String dealerCodeKey = "ddsw.dealer.code";
+
+    /**
+     * Dealer code the fixture files and goldens are written with.
+     */
+    public static final String fixtureCode = "ZZZZ";
+
+    private static final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    private final String code;
+
+    public DealerPartition(String code) {
+
+        if (!code.matches("[A-Z0-9]{4}")) {
+            throw new IllegalArgumentException("Dealer codes are 4 upper case letters or digits, not " + code);
+        }
+        this.code = code;
+    }
+
+    /**
+     * Dealer of this build, see {@link DomainFixtureRegistry#getDealerPartition()}.
+     */
+    public static DealerPartition get() {
+        return DomainFixtureRegistry.get().getDealerPartition();
+    }
+
+    /**
+     * The code from the System Property, otherwise derived from the build id.
+     */
+    static DealerPartition forBuild(String buildId) {
+
+        String code = System.getProperty(dealerCodeKey, "").trim();
+        return new DealerPartition(code.isEmpty() ? derive(buildId) : code.toUpperCase(Locale.ROOT));
+    }
+
+    static String derive(String buildId) {
+
+        long hash = RowHasher.hash(buildId) >>> 1;
+        StringBuilder code = new StringBuilder("Z");
+        for (int i = 0; i < 3; i++) {
+            code.append(alphabet.charAt((int) (hash % alphabet.length())));
+            hash /= alphabet.length();
+        }
+        // ZZZZ would share the partitions of builds that don't rewrite
+        return code.toString().equals(fixtureCode) ? "Z000" : code.toString();
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * False when the build runs as ZZZZ and nothing is rewritten.
+     */
+    public boolean isRewriting() {
+        return !code.equals(fixtureCode);
+    }
+
+    /**
+     * Filter on the partitions of this build, e.g. "dealer_code='ZQ01'".
+     */
+    public String where() {
+        return "dealer_code='" + code + "'";
+    }
+
+    /**
+     * The path with ZZZZ in the file name replaced by the code, e.g. .../ZQ01_Invoice.xml_88888888_0001_1429071717.complete
+     */
+    public String target(String path) {
+
+        int slash = path.lastIndexOf('/');
+        return path.substring(0, slash + 1) + replace(path.substring(slash + 1), fixtureCode, code);
+    }
+
+    /**
+     * The manifest staged as this dealer: target file names and content with the code instead of ZZZZ.
+     */
+    public StagingManifest stage(StagingManifest manifest) {
+
+        if (!isRewriting()) {
+            return manifest;
+        }
+        StagingManifest staged = new StagingManifest();
+        for (StagingEntry entry : manifest.getEntries()) {
+            staged.add(entry.rewrite(target(entry.getTarget()), fixtureCode, code));
+        }
+        return staged;
+    }
+
+    /**
+     * A result row as the goldens have it, with ZZZZ instead of the code.
+     */
+    public String normalize(String row) {
+        return isRewriting() ? replace(row, code, fixtureCode) : row;
+    }
+
+    /**
+     * Sink getting the result rows normalized, see {@link #normalize(String)}. A {@link RowBufferSink} stays one, its
+     * rows are normalized in the buffer.
+     */
+    public RowSink normalize(final RowSink sink) {
+
+        if (!isRewriting()) {
+            return sink;
+        }
+        if (sink instanceof RowBufferSink) {
+            return new RowBufferSink() {
+                @Override
+                public boolean accept(StringBuilder row) throws IOException {
+                    replace(row, code, fixtureCode);
+                    return ((RowBufferSink) sink).accept(row);
+                }
+
+                @Override
+                public boolean accept(String row) throws IOException {
+                    return sink.accept(normalize(row));
+                }
+
+                @Override
+                public void finish(boolean exhausted) throws IOException {
+                    sink.finish(exhausted);
+                }
+            };
+        }
+        return new RowSink() {
+            @Override
+            public boolean accept(String row) throws IOException {
+                return sink.accept(normalize(row));
+            }
+
+            @Override
+            public void finish(boolean exhausted) throws IOException {
+                sink.finish(exhausted);
+            }
+        };
+    }
+
+    /**
+     * Replaces the whole word occurrences, like the staging does in the file contents.
+     */
+    static String replace(String text, String word, String replacement) {
+
+        int found = text.indexOf(word);
+        if (found < 0) {
+            return text;
+        }
+        StringBuilder replaced = new StringBuilder(text.length());
+        int from = 0;
+        while (found >= 0) {
+            int after = found + word.length();
+            if ((found == 0 || !isWordChar(text.charAt(found - 1)))
+                    && (after == text.length() || !isWordChar(text.charAt(after)))) {
+                replaced.append(text, from, found).append(replacement);
+                from = after;
+            }
+            found = text.indexOf(word, after);
+        }
+        return replaced.append(text, from, text.length()).toString();
+    }
+
+    /**
+     * {@link #replace(String, String, String)} in place, the codes are all 4 characters long.
+     */
+    static void replace(StringBuilder text, String word, String replacement) {
+
+        int found = text.indexOf(word);
+        while (found >= 0) {
+            int after = found + word.length();
+            if ((found == 0 || !isWordChar(text.charAt(found - 1)))
+                    && (after == text.length() || !isWordChar(text.charAt(after)))) {
+                text.replace(found, after, replacement);
+            }
+            found = text.indexOf(word, after);
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
@@ -0,0 +1,79 @@
+package com.cat.ddsw.base.fixture;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Domain whose Workflow has been run for this build, shared by every Test class of that Domain.
+ */
+public class DomainFixture {
+
+    private final String domain;
+    private final String jobPropertiesFile;
+
+    // Not a monitor: a pipelined DomainRun is started and finished on different threads
+    private final Semaphore permit = new Semaphore(1);
+
+    private long completedAt;
+    private String completedBy;
+
+    DomainFixture(String domain, String jobPropertiesFile) {
+        this.domain = domain;
+        this.jobPropertiesFile = jobPropertiesFile;
+    }
+
+    /**
+     * domainType from the Domain Specific job.properties.
+     */
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getJobPropertiesFile() {
+        return jobPropertiesFile;
+    }
+
+    /**
+     * When the Workflow finished, possibly in another fork.
+     */
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * pid@host of the fork that ran the Workflow.
+     */
+    public String getCompletedBy() {
+        return completedBy;
+    }
+
+    void lock() {
+        permit.acquireUninterruptibly();
+    }
+
+    /**
+     * @return false when the Domain is still locked after the timeout
+     */
+    boolean tryLock(long timeoutMillis) {
+        try {
+            return permit.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    void unlock() {
+        permit.release();
+    }
+
+    void setCompleted(long completedAt, String completedBy) {
+        this.completedAt = completedAt;
+        this.completedBy = completedBy;
+    }
+
+    @Override
+    public String toString() {
+        return domain + " (" + jobPropertiesFile + ", completed by " + completedBy + ")";
+    }
+}
@@ -0,0 +1,355 @@
+package com.cat.ddsw.base.fixture;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.cleanup.CleanupQueue;
+import com.cat.ddsw.base.hive.HiveQueryExecutor;
+import com.cat.ddsw.base.oozie.WorkflowSubmitter;
+import com.cat.ddsw.base.staging.HdfsStager;
+import com.cat.ddsw.base.trace.WorkflowTracer;
+import org.apache.oozie.client.OozieClientException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs each Domain Workflow once per build and shares it with every Test class of that Domain.
+ *
+ * Domains are keyed by domainType in the Domain Specific job.properties. Inside a JVM there is one
+ * {@link DomainFixture} per Domain. Across the Gradle test forks the Domains are
+ * coordinated through a locked state file per Domain under the fixture directory: the first fork copies the
+ * Test data and submits the Workflow while holding the lock, later forks find it COMPLETED and just use it.
+ *
+ * ####IMPORTANT####
+ * #The build id is passed to every fork as the "ddsw.build.id" System Property from oozie-test/build.gradle.
+ * # Without it (e.g. a single Test run from the IDE) the Workflows are only shared inside the JVM.
+ * #With DDSWTestSuite every Domain Test runs in one fork, so the state files only order the threads of that fork.
+ * # They keep the Workflows shared if Domain Test classes are ever spread over forks again.
+ * #Cleanup (dropPartition) is queued when the last user in the build releases the Domain and runs in the
+ * # background on the {@link CleanupQueue}. The Domain is CLEANING until the drops have run in that fork, then
+ * # CLEANED. A class acquiring the Domain after that waits for the drops and submits the Workflow again.
+ * #The Workflow is submitted through the {@link WorkflowSubmitter}, completion comes from the Oozie job notification.
+ * # While it runs the {@link WorkflowTracer} follows it, a failed or slow Workflow leaves a trace report behind.
+ * #The Test data is staged as the {@link DealerPartition} of the build, so builds sharing the cluster don't meet.
+ */
+public class DomainFixtureRegistry {
+
+    public static final String buildIdKey = "ddsw.build.id";
+    public static final String fixtureDirectoryKey = "ddsw.fixture.dir";
+
+    /**
+     * How long a fork waits for the partition drops of another fork before it runs the Workflow anyway, e.g. when
+     * that fork died before it could mark the Domain CLEANED.
+     */
+    private static final long cleanupWaitMillis = 5 * 60 * 1000;
+    private static final long cleanupPollMillis = 500;
+
+    private static DomainFixtureRegistry instance = null;
+
+    private final String buildId;
+    private final File stateDirectory;
+    private final String owner;
+    private final DealerPartition dealerPartition;
+
+    private final Map<String, DomainFixture> fixtures = new HashMap<>();
+    private HiveQueryExecutor hiveQueryExecutor = null;
+    private WorkflowSubmitter workflowSubmitter = null;
+    private WorkflowTracer workflowTracer = null;
+    private boolean workflowTracerCreated = false;
+    private HdfsStager hdfsStager = null;
+    private volatile Executor cleanupExecutor = null;
+
+    DomainFixtureRegistry(String buildId, File stateDirectory) {
+        this.buildId = buildId;
+        this.stateDirectory = stateDirectory;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName();
+        this.dealerPartition = DealerPartition.forBuild(buildId);
+    }
+
+    public static synchronized DomainFixtureRegistry get() {
+
+        if (instance == null) {
+            instance = new DomainFixtureRegistry(
+                    System.getProperty(buildIdKey, UUID.randomUUID().toString()),
+                    new File(System.getProperty(fixtureDirectoryKey, "build/ddsw-fixtures")));
+        }
+        return instance;
+    }
+
+    /**
+     * Id of the build, the same in every fork.
+     */
+    public String getBuildId() {
+        return buildId;
+    }
+
+    /**
+     * Directory of the locked state files, one &lt;domain&gt;.state per Domain.
+     */
+    public File getStateDirectory() {
+        return stateDirectory;
+    }
+
+    /**
+     * The synthetic dealer this build loads its Test data as, the same in every fork.
+     */
+    public DealerPartition getDealerPartition() {
+        return dealerPartition;
+    }
+
+    /**
+     * Makes sure the Domain Workflow has run in this build, running it if no fork has yet.
+     *
+     * @param sourceDataFile Test data on HDFS copied to the target before the Workflow is submitted
+     * @param targetDataFile Test data file the Domain Workflow picks up
+     */
+    public DomainFixture acquire(String jobPropertiesFile, String sourceDataFile, String targetDataFile)
+            throws OozieClientException, IOException {
+
+        try (DomainRun run = begin(jobPropertiesFile)) {
+
+            if (run.isCompleted()) {
+                System.out.println("DomainFixtureRegistry: reusing " + run.getFixture().getDomain()
+                        + " Workflow completed by " + run.getFixture().getCompletedBy());
+            } else {
+                run.stage(sourceDataFile, targetDataFile);
+                run.finish(run.submit());
+            }
+            return run.use();
+        }
+    }
+
+    /**
+     * Locks the Domain for running its Workflow step by step, the caller must close the run.
+     * Blocks while another thread or fork has the Domain locked, and while the partition drops of its last run are
+     * still pending.
+     */
+    public DomainRun begin(String jobPropertiesFile) throws OozieClientException, IOException {
+
+        DomainFixture fixture = fixture(jobPropertiesFile);
+        long waitUntil = System.currentTimeMillis() + cleanupWaitMillis;
+
+        while (true) {
+            fixture.lock();
+
+            DomainRun run = null;
+            boolean ownDrops;
+            try {
+                FixtureStateFile state = new FixtureStateFile(stateFile(fixture.getDomain()));
+                run = new DomainRun(this, fixture, state, buildId, owner);
+
+                FixtureStateFile.Status status = state.getStatus(buildId);
+                if (status == FixtureStateFile.Status.FAILED) {
+                    throw new IOException("Workflow of Domain " + fixture.getDomain() + " already failed in this build on "
+                            + state.getCompletedBy() + ": " + state.getMessage());
+                }
+                if (status == FixtureStateFile.Status.COMPLETED) {
+                    fixture.setCompleted(state.getCompletedAt(), state.getCompletedBy());
+                    return run;
+                }
+                if (status != FixtureStateFile.Status.CLEANING) {
+                    return run;
+                }
+                if (System.currentTimeMillis() > waitUntil) {
+                    System.out.println("DomainFixtureRegistry: WARNING partition drops of " + fixture.getDomain()
+                            + " still pending on " + state.getCleaningBy() + ", running its Workflow anyway");
+                    return run;
+                }
+                ownDrops = owner.equals(state.getCleaningBy());
+                run.close();
+
+            } catch (Exception e) {
+                if (run != null) {
+                    run.close();
+                } else {
+                    fixture.unlock();
+                }
+                throw e;
+            }
+
+            // The queued partition drops must not hit the data of the new run. They are waited for without the lock,
+            // the fork running them marks the Domain CLEANED
+            if (ownDrops) {
+                flushCleanup();
+            }
+            try {
+                Thread.sleep(cleanupPollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for the cleanup of Domain " + fixture.getDomain(), e);
+            }
+        }
+    }
+
+    /**
+     * Gives the Domain back, the last user of the build runs the cleanup while the Domain is still locked.
+     * With a cleanup executor set the cleanup is handed to it and release returns right away.
+     */
+    public void release(final DomainFixture fixture, final FixtureCleanup cleanup) throws IOException {
+
+        fixture.lock();
+        try (FixtureStateFile state = new FixtureStateFile(stateFile(fixture.getDomain()))) {
+
+            int users = Math.max(0, state.getUsers() - 1);
+            state.setUsers(users);
+            state.save();
+            if (users > 0 && state.getStatus(buildId) == FixtureStateFile.Status.COMPLETED) {
+                return;
+            }
+
+            if (cleanupExecutor == null) {
+                cleanup(fixture, state, cleanup);
+                return;
+            }
+        } finally {
+            fixture.unlock();
+        }
+
+        cleanupExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                fixture.lock();
+                try (FixtureStateFile state = new FixtureStateFile(stateFile(fixture.getDomain()))) {
+
+                    // Acquired again since the release, the new last user cleans up
+                    if (state.getUsers() == 0) {
+                        cleanup(fixture, state, cleanup);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    fixture.unlock();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the cleanup of released Domains on the executor instead of the releasing thread, null to run it inline.
+     */
+    public void setCleanupExecutor(Executor cleanupExecutor) {
+        this.cleanupExecutor = cleanupExecutor;
+    }
+
+    /**
+     * One HiveServer2 client shared by all Test classes in the JVM.
+     */
+    public synchronized HiveQueryExecutor getHiveQueryExecutor() throws IOException {
+
+        if (hiveQueryExecutor == null) {
+            hiveQueryExecutor = new HiveQueryExecutor(DDSWProperties.get());
+        }
+        return hiveQueryExecutor;
+    }
+
+    /**
+     * One Oozie client and notification listener shared by all Test classes in the JVM.
+     */
+    public synchronized WorkflowSubmitter getWorkflowSubmitter() throws IOException {
+
+        if (workflowSubmitter == null) {
+            workflowSubmitter = WorkflowSubmitter.create(DDSWProperties.get());
+        }
+        return workflowSubmitter;
+    }
+
+    /**
+     * One tracer of the running Workflows shared by all Test classes in the JVM, null when TRACE_ENABLED=false.
+     */
+    public synchronized WorkflowTracer getWorkflowTracer() throws IOException {
+
+        if (!workflowTracerCreated) {
+            workflowTracer = WorkflowTracer.create(DDSWProperties.get(), getWorkflowSubmitter().getClient());
+            workflowTracerCreated = true;
+        }
+        return workflowTracer;
+    }
+
+    /**
+     * One HDFS client for staging Test data, shared by all Test classes in the JVM.
+     */
+    public synchronized HdfsStager getHdfsStager() throws IOException {
+
+        if (hdfsStager == null) {
+            hdfsStager = HdfsStager.create(DDSWProperties.get());
+        }
+        return hdfsStager;
+    }
+
+    /**
+     * Background cleanup shared by all Test classes in the JVM.
+     */
+    public CleanupQueue getCleanupQueue() throws IOException {
+        return CleanupQueue.get(getHiveQueryExecutor());
+    }
+
+    /**
+     * Waits for the queued cleanup, the Suite calls this once at the end.
+     *
+     * @return true when nothing failed
+     */
+    public boolean flushCleanup() throws IOException {
+        return getCleanupQueue().flush();
+    }
+
+    private void cleanup(final DomainFixture fixture, FixtureStateFile state, FixtureCleanup cleanup)
+            throws IOException {
+
+        System.out.println("DomainFixtureRegistry: cleaning up " + fixture.getDomain());
+        final CleanupQueue cleanupQueue = getCleanupQueue();
+        cleanup.cleanup(cleanupQueue);
+
+        state.setStatus(buildId, FixtureStateFile.Status.CLEANING);
+        state.setCleaningBy(owner);
+        state.setUsers(0);
+        state.save();
+
+        // CLEANED only once the drops have run, a fork beginning the Domain waits for it
+        cleanupQueue.whenDrained(new Runnable() {
+            @Override
+            public void run() {
+                // Runs on the only cleanup thread, while the Domain is held it goes back in the queue instead of
+                // stalling the cleanup of every other Domain
+                if (!fixture.tryLock(cleanupPollMillis)) {
+                    cleanupQueue.whenDrained(this);
+                    return;
+                }
+                try (FixtureStateFile state = new FixtureStateFile(stateFile(fixture.getDomain()))) {
+                    if (state.getStatus(buildId) == FixtureStateFile.Status.CLEANING
+                            && owner.equals(state.getCleaningBy())) {
+                        state.setStatus(buildId, FixtureStateFile.Status.CLEANED);
+                        state.save();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    fixture.unlock();
+                }
+            }
+        });
+    }
+
+    private synchronized DomainFixture fixture(String jobPropertiesFile) throws OozieClientException, IOException {
+
+        String domain = DDSWProperties.loadResource(jobPropertiesFile).getProperty("domainType");
+        if (domain == null) {
+            throw new IOException("domainType is missing in " + jobPropertiesFile);
+        }
+        domain = domain.trim();
+
+        DomainFixture fixture = fixtures.get(domain);
+        if (fixture == null) {
+            fixture = new DomainFixture(domain, jobPropertiesFile);
+            fixtures.put(domain, fixture);
+        }
+        return fixture;
+    }
+
+    private File stateFile(String domain) {
+        return new File(stateDirectory, domain + ".state");
+    }
+}
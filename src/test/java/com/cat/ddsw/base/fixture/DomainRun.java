@@ -0,0 +1,198 @@
+package com.cat.ddsw.base.fixture;
+
+import com.cat.ddsw.base.oozie.WorkflowHandle;
+import com.cat.ddsw.base.oozie.WorkflowSubmitter;
+import com.cat.ddsw.base.staging.StagingManifest;
+import com.cat.ddsw.base.staging.StagingReport;
+import com.cat.ddsw.base.timing.PhaseTimeline;
+import com.cat.ddsw.base.timing.PhaseTimer;
+import com.cat.ddsw.base.trace.WorkflowTrace;
+import com.cat.ddsw.base.trace.WorkflowTracer;
+import org.apache.oozie.client.OozieClientException;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * One Domain locked for running its Workflow, see {@link DomainFixtureRegistry#begin(String)}.
+ *
+ * The steps can run on different threads (staging on one pool, the Workflow on another), the Domain stays locked
+ * in this JVM and across forks until the run is closed.
+ */
+public class DomainRun implements Closeable {
+
+    private final DomainFixtureRegistry registry;
+    private final DomainFixture fixture;
+    private final FixtureStateFile state;
+    private final String buildId;
+    private final String owner;
+
+    private boolean completed;
+    private boolean closed = false;
+    private long submittedAt = 0;
+    private WorkflowTrace trace = null;
+
+    DomainRun(DomainFixtureRegistry registry, DomainFixture fixture, FixtureStateFile state, String buildId, String owner) {
+        this.registry = registry;
+        this.fixture = fixture;
+        this.state = state;
+        this.buildId = buildId;
+        this.owner = owner;
+        this.completed = state.getStatus(buildId) == FixtureStateFile.Status.COMPLETED;
+    }
+
+    public DomainFixture getFixture() {
+        return fixture;
+    }
+
+    /**
+     * True when the Workflow already ran in this build, nothing is left to do.
+     */
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Copies the Test data the Domain Workflow picks up, unless the target already has the same content.
+     */
+    public void stage(String sourceDataFile, String targetDataFile) throws OozieClientException, IOException {
+        stage(new StagingManifest().addHdfs(sourceDataFile, targetDataFile));
+    }
+
+    /**
+     * Copies all Test data of the manifest at once, unchanged targets are skipped. The data is staged as the
+     * DealerPartition of the build, ZZZZ in the target names and contents becomes its dealer code.
+     */
+    public void stage(StagingManifest manifest) throws IOException {
+
+        System.out.println("DomainRun: staging " + fixture.getDomain() + " on " + owner + " as dealer "
+                + registry.getDealerPartition());
+        try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.staging, fixture.getDomain())) {
+            StagingReport report = registry.getHdfsStager().stage(registry.getDealerPartition().stage(manifest));
+            timer.addBytes(report.getBytesCopied());
+            if (!report.isSuccess()) {
+                throw new IOException("Staging Test data of Domain " + fixture.getDomain() + " failed: " + report);
+            }
+            timer.succeeded();
+        } catch (Exception e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the Domain Workflow and traces it while it runs, {@link #finish(WorkflowHandle)} must follow.
+     */
+    public WorkflowHandle submit() throws OozieClientException, IOException {
+
+        System.out.println("DomainRun: submitting " + fixture.getDomain() + " Workflow on " + owner);
+        submittedAt = System.currentTimeMillis();
+        try {
+            WorkflowSubmitter submitter = registry.getWorkflowSubmitter();
+            Properties jobConf = submitter.createJobConf(fixture.getJobPropertiesFile());
+            WorkflowHandle handle = submitter.submit(jobConf);
+            WorkflowTracer tracer = registry.getWorkflowTracer();
+            if (tracer != null) {
+                trace = tracer.trace(fixture.getDomain(), fixture.getJobPropertiesFile(), handle, jobConf);
+            }
+            return handle;
+        } catch (Exception e) {
+            fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the final Workflow status (waiting for it if need be), anything but SUCCEEDED fails the Domain for the
+     * rest of the build. A failed or slow Workflow has its trace report written, the failure names it.
+     */
+    public void finish(WorkflowHandle handle) throws IOException {
+
+        WorkflowJob.Status status = registry.getWorkflowSubmitter().await(handle);
+        System.out.println("DomainRun: " + fixture.getDomain() + " Workflow " + handle);
+        timeWorkflow(handle, status);
+        File report = trace == null ? null : trace.finish(handle);
+
+        if (status != WorkflowJob.Status.SUCCEEDED) {
+            IOException e = new IOException("Workflow " + handle.getJobId() + " of Domain " + fixture.getDomain()
+                    + " ended " + status + (report == null ? "" : ", trace in " + report));
+            fail(e);
+            throw e;
+        }
+
+        state.setStatus(buildId, FixtureStateFile.Status.COMPLETED);
+        state.setCompleted(System.currentTimeMillis(), owner);
+        state.setMessage(null);
+        state.setUsers(0);
+        state.save();
+        completed = true;
+    }
+
+    /**
+     * Records the failure, forks acquiring the Domain later in the build fail fast.
+     */
+    public void fail(Exception cause) throws IOException {
+
+        state.setStatus(buildId, FixtureStateFile.Status.FAILED);
+        state.setCompleted(System.currentTimeMillis(), owner);
+        state.setMessage(String.valueOf(cause));
+        state.setUsers(0);
+        state.save();
+    }
+
+    /**
+     * Splits the Workflow into the wait for a capacity slot and the Oozie queue, up to the Job start time Oozie
+     * reports, and the run itself.
+     */
+    private void timeWorkflow(WorkflowHandle handle, WorkflowJob.Status status) {
+
+        long startedAt = submittedAt > 0 ? submittedAt : handle.getSubmittedAt();
+        long runningAt = startedAt;
+        try {
+            Date startTime = registry.getWorkflowSubmitter().getClient().getJobInfo(handle.getJobId()).getStartTime();
+            if (startTime != null) {
+                // Clocks of the Oozie server and this machine differ a little
+                runningAt = Math.max(startedAt, Math.min(handle.getCompletedAt(), startTime.getTime()));
+            }
+        } catch (OozieClientException | IOException e) {
+            // Only the split between queue and run is lost
+        }
+
+        PhaseTimeline timeline = PhaseTimeline.get();
+        timeline.record(PhaseTimeline.workflowQueue, fixture.getDomain(), startedAt, runningAt, false);
+        timeline.record(PhaseTimeline.workflowRun, fixture.getDomain(), runningAt, handle.getCompletedAt(),
+                status != WorkflowJob.Status.SUCCEEDED);
+    }
+
+    /**
+     * Counts one more user of the completed Domain.
+     */
+    DomainFixture use() throws IOException {
+
+        fixture.setCompleted(state.getCompletedAt(), state.getCompletedBy());
+        state.setUsers(state.getUsers() + 1);
+        state.save();
+        return fixture;
+    }
+
+    /**
+     * Unlocks the Domain.
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            state.close();
+        } finally {
+            fixture.unlock();
+        }
+    }
+}
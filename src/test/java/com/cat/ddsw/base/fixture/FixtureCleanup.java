@@ -0,0 +1,14 @@
+package com.cat.ddsw.base.fixture;
+
+import com.cat.ddsw.base.cleanup.CleanupQueue;
+
+import java.io.IOException;
+
+/**
+ * Cleanup of the Test data a Domain Workflow created, run once by the last user of a {@link DomainFixture}.
+ * The cleanup queues its work (partition drops etc.), the queue runs it in the background.
+ */
+public interface FixtureCleanup {
+
+    void cleanup(CleanupQueue cleanupQueue) throws IOException;
+}
@@ -0,0 +1,124 @@
+package com.cat.ddsw.base.fixture;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Properties;
+
+/**
+ * State of one Domain shared by the Gradle test forks, guarded by an exclusive lock on the file itself.
+ *
+ * Opening the file blocks until no other fork holds it, so a fork running the Workflow keeps every other
+ * fork of the same Domain waiting until the state says COMPLETED.
+ */
+class FixtureStateFile implements Closeable {
+
+    /**
+     * CLEANING while the partition drops of the last user are still queued in its fork, CLEANED once they have run.
+     */
+    enum Status {
+        NONE, COMPLETED, FAILED, CLEANING, CLEANED
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final Properties state = new Properties();
+
+    FixtureStateFile(File stateFile) throws IOException {
+
+        stateFile.getParentFile().mkdirs();
+        file = new RandomAccessFile(stateFile, "rw");
+        channel = file.getChannel();
+        lock = channel.lock();
+
+        if (channel.size() > 0) {
+            ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            channel.read(content, 0);
+            state.load(new ByteArrayInputStream(content.array()));
+        }
+    }
+
+    /**
+     * State written by an earlier build counts as no state at all.
+     */
+    Status getStatus(String buildId) {
+
+        if (!buildId.equals(state.getProperty("buildId"))) {
+            return Status.NONE;
+        }
+        return Status.valueOf(state.getProperty("status", Status.NONE.name()));
+    }
+
+    void setStatus(String buildId, Status status) {
+        state.setProperty("buildId", buildId);
+        state.setProperty("status", status.name());
+    }
+
+    int getUsers() {
+        return Integer.parseInt(state.getProperty("users", "0"));
+    }
+
+    void setUsers(int users) {
+        state.setProperty("users", String.valueOf(users));
+    }
+
+    long getCompletedAt() {
+        return Long.parseLong(state.getProperty("completedAt", "0"));
+    }
+
+    /**
+     * pid@host of the fork that ran the Workflow.
+     */
+    String getCompletedBy() {
+        return state.getProperty("completedBy", "");
+    }
+
+    void setCompleted(long completedAt, String completedBy) {
+        state.setProperty("completedAt", String.valueOf(completedAt));
+        state.setProperty("completedBy", completedBy);
+    }
+
+    /**
+     * pid@host of the fork whose CleanupQueue holds the partition drops while the Domain is CLEANING.
+     */
+    String getCleaningBy() {
+        return state.getProperty("cleaningBy", "");
+    }
+
+    void setCleaningBy(String cleaningBy) {
+        state.setProperty("cleaningBy", cleaningBy);
+    }
+
+    String getMessage() {
+        return state.getProperty("message", "");
+    }
+
+    void setMessage(String message) {
+        state.setProperty("message", message == null ? "" : message);
+    }
+
+    void save() throws IOException {
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        state.store(content, "DDSW Domain Fixture");
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(content.toByteArray()), 0);
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.cat.ddsw.base.generator;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.compare.ColumnSpec;
+import com.cat.ddsw.base.compare.ColumnType;
+import com.cat.ddsw.base.compare.RowHasher;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.oozietest.DealerInventoryOozieTest;
+import com.cat.ddsw.oozietest.InvoiceOozieTest;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams Domain XML of any size for load testing the ingest Workflows, one record element after the other with
+ * StAX, so memory stays the same for a thousand or a hundred million records.
+ *
+ * The record element and its key come from the Domain Specific job.properties (startTag, endTag, topLevelNodeName,
+ * domainKey), the fields from the typed Column Spec of the Domain's current table: one element per column, named in
+ * camel case (tot_invc_amt becomes totInvcAmt). Record i only depends on the seed and i, so the same seed gives the
+ * same file, and the count and DECIMAL sums the Workflow has to end up with are known without reading it back.
+ *
+ * ####IMPORTANT####
+ * #Generated and derived columns (gen_id, file_name, key_*) are left out, the Workflow fills them in.
+ * #A target ending in .gz is written gzip compressed.
+ * #Large files are generated with "gradle generateDomainXml", see oozie-test/build.gradle.
+ */
+public class DomainXmlGenerator {
+
+    private static final String defaultDealerCode = "ZZZZ";
+
+    private final String topLevelNodeName;
+    private final String rootElement;
+    private final String domainKey;
+    private final TableSpec layout;
+    private final List<Field> fields = new ArrayList<>();
+    private final long seed;
+
+    private String dealerCode = defaultDealerCode;
+
+    public DomainXmlGenerator(Properties jobProperties, TableSpec layout, long seed) throws IOException {
+
+        this.topLevelNodeName = required(jobProperties, "topLevelNodeName");
+        this.domainKey = required(jobProperties, "domainKey");
+        this.rootElement = topLevelNodeName + "List";
+        this.layout = layout;
+        this.seed = seed;
+
+        // The ingest splits the file on these, so records must be written exactly like them
+        String startTag = required(jobProperties, "startTag");
+        String endTag = required(jobProperties, "endTag");
+        if (!startTag.equals("<" + topLevelNodeName + ">") || !endTag.equals("</" + topLevelNodeName + ">")) {
+            throw new IOException("startTag " + startTag + " and endTag " + endTag + " do not match topLevelNodeName "
+                    + topLevelNodeName);
+        }
+
+        for (ColumnSpec column : layout.getColumns()) {
+            String name = column.getName();
+            // The Domain key is written first for every record, e.g. store_number of dealer_inventory
+            if (name.equals("gen_id") || name.equals("file_name") || name.startsWith("key_")
+                    || camelCase(name).equals(domainKey)) {
+                continue;
+            }
+            fields.add(new Field(column, camelCase(name)));
+        }
+    }
+
+    /**
+     * Generator for the Domain of the job.properties on the classpath, e.g. "invoice/job.properties".
+     */
+    public static DomainXmlGenerator forDomain(String jobPropertiesFile, TableSpec layout, long seed)
+            throws IOException {
+        return new DomainXmlGenerator(DDSWProperties.loadResource(jobPropertiesFile), layout, seed);
+    }
+
+    /**
+     * Command line for generating large files outside the Tests,
+     *  jobPropertiesFile records seed target [dealerCode], e.g. invoice/job.properties 5000000 42 build/invoice.xml.gz
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 4) {
+            System.out.println("DomainXmlGenerator: jobPropertiesFile records seed target [dealerCode]");
+            return;
+        }
+        Properties jobProperties = DDSWProperties.loadResource(args[0]);
+        DomainXmlGenerator generator = new DomainXmlGenerator(jobProperties,
+                layout(jobProperties.getProperty("domainType", "").trim()), Long.parseLong(args[2]));
+        if (args.length > 4) {
+            generator.setDealerCode(args[4]);
+        }
+
+        long start = System.currentTimeMillis();
+        GeneratedExtract extract = generator.generate(new File(args[3]), Long.parseLong(args[1]));
+        System.out.println("DomainXmlGenerator: wrote " + extract + " to " + args[3] + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Column Spec of the Domain's current table, from the Domain's Test class.
+     */
+    public static TableSpec layout(String domainType) throws IOException {
+
+        switch (domainType) {
+            case "invoice":
+                return InvoiceOozieTest.invoiceCurrentSpec;
+            case "dealer_inventory":
+                return DealerInventoryOozieTest.dealerInventoryCurrentSpec;
+            default:
+                throw new IOException("No Column Spec for Domain " + domainType + ", pass one to the constructor");
+        }
+    }
+
+    /**
+     * Dealer code written into every record, the Tests filter the Hive tables on it.
+     */
+    public void setDealerCode(String dealerCode) {
+        this.dealerCode = dealerCode;
+    }
+
+    public String getTopLevelNodeName() {
+        return topLevelNodeName;
+    }
+
+    /**
+     * Writes the records and the Expected count and aggregates next to the target, as
+     * &lt;target&gt;.count.csv and &lt;target&gt;.aggregates.csv.
+     */
+    public GeneratedExtract generate(File target, long records) throws IOException {
+
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        GeneratedExtract extract;
+        try (OutputStream out = new FileOutputStream(target)) {
+            OutputStream stream = target.getName().endsWith(".gz") ? new GZIPOutputStream(out, 1 << 16) : out;
+            extract = generate(stream, records);
+            stream.close();
+        }
+        extract.writeExpected(new File(target.getPath() + ".count.csv"), new File(target.getPath() + ".aggregates.csv"));
+        return extract;
+    }
+
+    /**
+     * Writes the records to the stream, which is left open.
+     */
+    public GeneratedExtract generate(OutputStream target, long records) throws IOException {
+
+        CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(target, 1 << 20));
+        GeneratedExtract extract = new GeneratedExtract(layout, seed);
+        StringBuilder value = new StringBuilder(64);
+
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement(rootElement);
+
+            for (long i = 0; i < records; i++) {
+                writer.writeCharacters("\n");
+                writer.writeStartElement(topLevelNodeName);
+
+                writer.writeStartElement(domainKey);
+                writer.writeCharacters(key(i));
+                writer.writeEndElement();
+
+                int column = 0;
+                for (Field field : fields) {
+                    long random = RowHasher.mix(seed + i * 1031 + column++);
+                    value.setLength(0);
+                    if (field.column.getName().equals("dealer_code")) {
+                        value.append(dealerCode);
+                    } else if (field.column.getType() == ColumnType.DECIMAL) {
+                        long cents = Math.abs(random % 10000000);
+                        extract.addDecimal(field.column.getName(), cents);
+                        appendCents(value, cents);
+                    } else if (field.column.getType() == ColumnType.TIMESTAMP) {
+                        appendTimestamp(value, Math.abs(random));
+                    } else {
+                        value.append(field.prefix).append(Math.abs(random % 1000000));
+                    }
+                    writer.writeStartElement(field.element);
+                    writer.writeCharacters(value.toString());
+                    writer.writeEndElement();
+                }
+
+                writer.writeEndElement();
+                extract.addRecord();
+            }
+
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+            out.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not write " + topLevelNodeName + " records", e);
+        }
+
+        extract.setBytes(out.count);
+        return extract;
+    }
+
+    /**
+     * Unique Domain key of record i.
+     */
+    String key(long i) {
+        return dealerCode + String.format("%011d", i);
+    }
+
+    static String camelCase(String column) {
+
+        StringBuilder name = new StringBuilder(column.length());
+        boolean upper = false;
+        for (char c : column.toCharArray()) {
+            if (c == '_') {
+                upper = name.length() > 0;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    static void appendCents(StringBuilder value, long cents) {
+        value.append(cents / 100).append('.');
+        if (cents % 100 < 10) {
+            value.append('0');
+        }
+        value.append(cents % 100);
+    }
+
+    private static void appendTimestamp(StringBuilder value, long random) {
+        value.append(2010 + random % 6).append('-');
+        appendTwoDigits(value, 1 + (random >>> 8) % 12);
+        value.append('-');
+        appendTwoDigits(value, 1 + (random >>> 16) % 28);
+        value.append('T');
+        appendTwoDigits(value, (random >>> 24) % 24);
+        value.append(':');
+        appendTwoDigits(value, (random >>> 32) % 60);
+        value.append(':');
+        appendTwoDigits(value, (random >>> 40) % 60);
+    }
+
+    private static void appendTwoDigits(StringBuilder value, long number) {
+        if (number < 10) {
+            value.append('0');
+        }
+        value.append(number);
+    }
+
+    private static String required(Properties jobProperties, String key) throws IOException {
+
+        String value = jobProperties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IOException(key + " is missing in the job.properties");
+        }
+        return value.trim();
+    }
+
+    private static class Field {
+
+        private final ColumnSpec column;
+        private final String element;
+        private final String prefix;
+
+        Field(ColumnSpec column, String element) {
+            this.column = column;
+            this.element = element;
+            this.prefix = element.substring(0, Math.min(3, element.length())).toUpperCase();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The caller closes the target
+            flush();
+        }
+    }
+}
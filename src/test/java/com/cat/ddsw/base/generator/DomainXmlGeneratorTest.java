@@ -0,0 +1,130 @@
+package com.cat.ddsw.base.generator;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.compare.TableSpec;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+public class DomainXmlGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TableSpec layout = new TableSpec("ddsw_qa.dealer_inventory_current")
+            .columns("gen_id", "store_number", "part_number", "on_hand_qty", "first_activity_date", "dealer_code")
+            .decimal("on_hand_qty")
+            .timestamp("first_activity_date");
+
+    @Test
+    public void recordsMatchTheDomainSettings() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GeneratedExtract extract = generator(7).generate(out, 500);
+        byte[] xml = out.toByteArray();
+
+        Assert.assertEquals(500, extract.getRecords());
+        Assert.assertEquals(xml.length, extract.getBytes());
+
+        String text = new String(xml, StandardCharsets.UTF_8);
+        Assert.assertEquals(500, count(text, "<DealerInventory>"));
+        Assert.assertEquals(500, count(text, "</DealerInventory>"));
+        Assert.assertEquals(500, count(text, "<storeNumber>"));
+        Assert.assertFalse(text.contains("genId"));
+
+        // Keys are unique and the sums add up to what the extract reports
+        Set<String> keys = new HashSet<>();
+        BigDecimal sum = BigDecimal.ZERO;
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml));
+        String element = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                element = reader.getLocalName();
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                element = null;
+            } else if (event == XMLStreamConstants.CHARACTERS && element != null) {
+                if (element.equals("storeNumber")) {
+                    Assert.assertTrue(keys.add(reader.getText()));
+                } else if (element.equals("onHandQty")) {
+                    sum = sum.add(new BigDecimal(reader.getText()));
+                } else if (element.equals("dealerCode")) {
+                    Assert.assertEquals("ZZZZ", reader.getText());
+                }
+            }
+        }
+        Assert.assertEquals(500, keys.size());
+        Assert.assertEquals(0, sum.compareTo(new BigDecimal(extract.getSum("on_hand_qty"))));
+    }
+
+    @Test
+    public void sameSeedSameFile() throws Exception {
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        generator(42).generate(first, 100);
+        generator(42).generate(second, 100);
+        generator(43).generate(other, 100);
+
+        Assert.assertArrayEquals(first.toByteArray(), second.toByteArray());
+        Assert.assertFalse(new String(first.toByteArray(), StandardCharsets.UTF_8)
+                .equals(new String(other.toByteArray(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void gzipTargetWithExpectedFiles() throws Exception {
+
+        File target = new File(folder.getRoot(), "ZZZZ_Dealer_Inventory.xml.gz");
+        GeneratedExtract extract = generator(1).generate(target, 50);
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(target))) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            int records = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("DealerInventory")) {
+                    records++;
+                }
+            }
+            Assert.assertEquals(50, records);
+        }
+
+        Assert.assertEquals("50", read(new File(target.getPath() + ".count.csv")));
+        Assert.assertEquals("50\t" + extract.getSum("on_hand_qty"), read(new File(target.getPath() + ".aggregates.csv")));
+        Assert.assertEquals("select count(*), sum(on_hand_qty) from ddsw_qa.dealer_inventory_current where dealer_code ='ZZZZ'",
+                extract.getAggregateSpec().selectQuery("dealer_code ='ZZZZ'"));
+    }
+
+    private DomainXmlGenerator generator(long seed) throws Exception {
+        return new DomainXmlGenerator(DDSWProperties.loadResource("dealer_inventory/job.properties"), layout, seed);
+    }
+
+    private static int count(String text, String part) {
+
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
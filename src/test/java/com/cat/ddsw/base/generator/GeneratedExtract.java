@@ -0,0 +1,125 @@
+package com.cat.ddsw.base.generator;
+
+import com.cat.ddsw.base.compare.ColumnSpec;
+import com.cat.ddsw.base.compare.ColumnType;
+import com.cat.ddsw.base.compare.TableSpec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a {@link DomainXmlGenerator} run wrote: records, bytes and the sum of every DECIMAL column, which is what the
+ * Domain's current table has to hold for the dealer code once the Workflow has loaded the file.
+ *
+ * ####IMPORTANT####
+ * #The aggregates are checked with HiveResultVerifier.verify(getAggregateSpec(), "dealer_code ='...'", expected, actual),
+ * # the sums are compared as DECIMAL so the scale Hive prints does not matter.
+ */
+public class GeneratedExtract {
+
+    private final TableSpec layout;
+    private final long seed;
+    private final Map<String, Long> centSums = new LinkedHashMap<>();
+    private long records = 0;
+    private long bytes = 0;
+
+    GeneratedExtract(TableSpec layout, long seed) {
+        this.layout = layout;
+        this.seed = seed;
+        for (ColumnSpec column : layout.getColumns()) {
+            if (column.getType() == ColumnType.DECIMAL) {
+                centSums.put(column.getName(), 0L);
+            }
+        }
+    }
+
+    void addRecord() {
+        records++;
+    }
+
+    void addDecimal(String column, long cents) {
+        centSums.put(column, centSums.get(column) + cents);
+    }
+
+    void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Sum of the DECIMAL column over all records, e.g. "123456.78".
+     */
+    public String getSum(String column) {
+
+        Long cents = centSums.get(column);
+        if (cents == null) {
+            throw new IllegalArgumentException(column + " is not a DECIMAL column of " + layout.getTable());
+        }
+        StringBuilder sum = new StringBuilder();
+        DomainXmlGenerator.appendCents(sum, cents);
+        return sum.toString();
+    }
+
+    /**
+     * "select count(*), sum(...), ..." over the Domain's current table, typed so the sums compare by value.
+     */
+    public TableSpec getAggregateSpec() {
+
+        List<String> columns = new ArrayList<>();
+        List<String> decimals = new ArrayList<>();
+        columns.add("count(*)");
+        decimals.add("count(*)");
+        for (String column : centSums.keySet()) {
+            columns.add("sum(" + column + ")");
+            decimals.add("sum(" + column + ")");
+        }
+        return new TableSpec(layout.getTable())
+                .columns(columns.toArray(new String[columns.size()]))
+                .decimal(decimals.toArray(new String[decimals.size()]));
+    }
+
+    /**
+     * Expected files in the format of the Tests: the count on one line, the aggregates as one tab delimited row in
+     * the column order of {@link #getAggregateSpec()}.
+     */
+    public void writeExpected(File countFile, File aggregatesFile) throws IOException {
+
+        write(countFile, String.valueOf(records));
+
+        StringBuilder row = new StringBuilder(String.valueOf(records));
+        for (String column : centSums.keySet()) {
+            row.append('\t').append(getSum(column));
+        }
+        write(aggregatesFile, row.toString());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return records + " " + layout.getTable() + " records, " + bytes + " bytes, seed " + seed;
+    }
+}
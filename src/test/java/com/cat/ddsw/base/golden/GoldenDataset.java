@@ -0,0 +1,205 @@
+package com.cat.ddsw.base.golden;
+
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.ResultComparator;
+import com.cat.ddsw.base.compare.RowHasher;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.base.compare.TypedRowComparator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One Expected result of a {@link GoldenStore}: the compressed rows, their digest per chunk and the layout the
+ * rows were hashed with.
+ */
+public class GoldenDataset {
+
+    private final String name;
+    private final String object;
+    private final File objectFile;
+    private final String layout;
+    private final RowHasher.Digest[] chunks;
+
+    GoldenDataset(String name, String object, File objectFile, String layout, RowHasher.Digest[] chunks) {
+        this.name = name;
+        this.object = object;
+        this.objectFile = objectFile;
+        this.layout = layout;
+        this.chunks = chunks;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * SHA-256 of the rows, which is also the name of the compressed object.
+     */
+    public String getObject() {
+        return object;
+    }
+
+    public String getLayout() {
+        return layout;
+    }
+
+    public long getRows() {
+
+        long rows = 0;
+        for (RowHasher.Digest chunk : chunks) {
+            rows += chunk.getRowCount();
+        }
+        return rows;
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    public RowHasher.Digest getChunk(int chunk) {
+        return chunks[chunk];
+    }
+
+    /**
+     * True when the digests were taken with the same Column Spec (or both as text) and that spec has no tolerances,
+     * only then does a matching digest prove a matching result.
+     */
+    public boolean isDigestComparable(TableSpec spec, Charset charset) {
+        return layout.equals(GoldenDigest.layout(spec)) && newDigest(spec, charset).isExact();
+    }
+
+    /**
+     * Empty digest of the Actual rows, chunked like this golden.
+     */
+    public GoldenDigest newDigest(TableSpec spec, Charset charset) {
+        return new GoldenDigest(spec, charset, chunks.length);
+    }
+
+    /**
+     * {@link #newDigest(TableSpec, Charset)} that stops the stream at the first row a chunk of this golden has no
+     * room for, see {@link GoldenDigest#isStopped()}.
+     */
+    public GoldenDigest newDigest(TableSpec spec, Charset charset, boolean stopAtFirstMismatch) {
+
+        if (!stopAtFirstMismatch) {
+            return newDigest(spec, charset);
+        }
+        long[] rowLimits = new long[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            rowLimits[i] = chunks[i].getRowCount();
+        }
+        return new GoldenDigest(spec, charset, chunks.length, rowLimits);
+    }
+
+    /**
+     * Chunks whose digest differs from the Actual rows' digest.
+     */
+    public BitSet differingChunks(GoldenDigest actual) {
+
+        BitSet differing = new BitSet(chunks.length);
+        for (int i = 0; i < chunks.length; i++) {
+            if (!chunks[i].equals(actual.getChunk(i))) {
+                differing.set(i);
+            }
+        }
+        return differing;
+    }
+
+    public BitSet allChunks() {
+
+        BitSet all = new BitSet(chunks.length);
+        all.set(0, chunks.length);
+        return all;
+    }
+
+    /**
+     * The rows, decompressed, utf-8 encoded.
+     */
+    public InputStream open() throws IOException {
+        return new GZIPInputStream(new FileInputStream(objectFile), 1 << 16);
+    }
+
+    /**
+     * Compares only the rows of the given chunks, with {@link TypedRowComparator} when there is a Column Spec and
+     * {@link ResultComparator} when there is not. The row counts of the result are those of the whole result sets.
+     */
+    public ComparisonResult compare(File actualDataFile, BitSet chunks, TableSpec spec, String encoding,
+                                    int maxReportedRows) throws IOException {
+
+        Charset charset = Charset.forName(encoding);
+        GoldenDigest hasher = newDigest(spec, charset);
+        File expectedPart = File.createTempFile("golden-expected", ".csv");
+        File actualPart = File.createTempFile("golden-actual", ".csv");
+        try {
+            long expectedRows;
+            try (Reader reader = new InputStreamReader(open(), StandardCharsets.UTF_8)) {
+                expectedRows = copyChunks(reader, expectedPart, chunks, hasher, charset);
+            }
+            long actualRows;
+            try (Reader reader = new InputStreamReader(new FileInputStream(actualDataFile), charset)) {
+                actualRows = copyChunks(reader, actualPart, chunks, hasher, charset);
+            }
+
+            ComparisonResult part;
+            if (spec == null) {
+                ResultComparator comparator = new ResultComparator(encoding);
+                comparator.setMaxReportedRows(maxReportedRows);
+                part = comparator.compare(actualPart, expectedPart);
+            } else {
+                TypedRowComparator comparator = new TypedRowComparator(spec, encoding);
+                comparator.setMaxReportedRows(maxReportedRows);
+                part = comparator.compare(actualPart, expectedPart);
+            }
+            return ComparisonResult.ofPart(part, actualRows, expectedRows);
+        } finally {
+            if (!expectedPart.delete()) {
+                expectedPart.deleteOnExit();
+            }
+            if (!actualPart.delete()) {
+                actualPart.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Copies the rows of the chunks into the target.
+     *
+     * @return all rows read
+     */
+    private static long copyChunks(Reader source, File target, BitSet chunks, GoldenDigest hasher, Charset charset)
+            throws IOException {
+
+        long rows = 0;
+        BufferedReader reader = new BufferedReader(source, 1 << 16);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), charset), 1 << 16)) {
+            String row;
+            while ((row = reader.readLine()) != null) {
+                rows++;
+                if (chunks.get(GoldenDigest.chunkOf(hasher.hash(row), hasher.getChunkCount()))) {
+                    writer.write(row);
+                    writer.write('\n');
+                }
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + getRows() + " rows, " + chunks.length + " chunks, " + object.substring(0, 12) + ")";
+    }
+}
@@ -0,0 +1,125 @@
+package com.cat.ddsw.base.golden;
+
+import com.cat.ddsw.base.compare.ColumnSpec;
+import com.cat.ddsw.base.compare.RowHasher;
+import com.cat.ddsw.base.compare.RowSink;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.base.compare.TypedRowHasher;
+
+import java.nio.charset.Charset;
+
+/**
+ * {@link RowSink} that folds streamed rows into one order independent digest per chunk.
+ *
+ * A row goes to the chunk picked by its hash, not by its position, so the same rows land in the same chunks
+ * whatever order Hive returns them in. With a Column Spec rows are hashed by typed value like
+ * {@link com.cat.ddsw.base.compare.TypedRowComparator} compares them, without one by their exact text.
+ *
+ * With row limits per chunk (stop at first mismatch) the stream is stopped as soon as a chunk holds more rows than
+ * the golden's chunk, the result can't match any more then.
+ */
+public class GoldenDigest implements RowSink {
+
+    static final String textLayout = "text";
+
+    private final TypedRowHasher typedHasher;
+    private final RowHasher.Digest[] chunks;
+    private final long[] rowLimits;
+    private boolean stopped = false;
+
+    public GoldenDigest(TableSpec spec, Charset charset, int chunkCount) {
+        this(spec, charset, chunkCount, null);
+    }
+
+    /**
+     * @param rowLimits most rows per chunk before the stream is stopped, null to take every row
+     */
+    public GoldenDigest(TableSpec spec, Charset charset, int chunkCount, long[] rowLimits) {
+
+        this.typedHasher = spec == null ? null : new TypedRowHasher(spec, charset, '\t');
+        this.chunks = new RowHasher.Digest[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = new RowHasher.Digest();
+        }
+        this.rowLimits = rowLimits;
+    }
+
+    /**
+     * Names the way rows are hashed, a golden is only comparable by digest with rows hashed the same way.
+     */
+    static String layout(TableSpec spec) {
+
+        if (spec == null) {
+            return textLayout;
+        }
+        StringBuilder layout = new StringBuilder();
+        for (ColumnSpec column : spec.getColumns()) {
+            layout.append(column.getName()).append(':').append(column.getType()).append(':')
+                    .append(column.isIgnored() ? "ignored" : column.getTolerance()).append(';');
+        }
+        return String.format("%016x", RowHasher.hash(layout));
+    }
+
+    /**
+     * Chunks for a golden of this many rows, a few thousand rows each and at most 256.
+     */
+    static int chunkCount(long rows) {
+        return (int) Math.max(1, Math.min(256, Long.highestOneBit(Math.max(1, rows / 4096))));
+    }
+
+    static int chunkOf(long rowHash, int chunkCount) {
+        return (int) ((rowHash >>> 1) % chunkCount);
+    }
+
+    public long hash(String row) {
+        return typedHasher == null ? RowHasher.hash(row) : typedHasher.hash(row);
+    }
+
+    /**
+     * False when the Column Spec has tolerances, rows within tolerance of each other then digest differently.
+     */
+    public boolean isExact() {
+        return typedHasher == null || typedHasher.isExact();
+    }
+
+    @Override
+    public boolean accept(String row) {
+
+        long rowHash = hash(row);
+        int chunk = chunkOf(rowHash, chunks.length);
+        chunks[chunk].add(rowHash);
+        if (rowLimits != null && chunks[chunk].getRowCount() > rowLimits[chunk]) {
+            stopped = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * True when a chunk went over its row limit, the digests then only hold the rows up to that one.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    @Override
+    public void finish(boolean exhausted) {
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    public RowHasher.Digest getChunk(int chunk) {
+        return chunks[chunk];
+    }
+
+    public long getRowCount() {
+
+        long rows = 0;
+        for (RowHasher.Digest chunk : chunks) {
+            rows += chunk.getRowCount();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,435 @@
+package com.cat.ddsw.base.golden;
+
+import com.cat.ddsw.base.compare.RowHasher;
+import com.cat.ddsw.base.compare.TableSpec;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content addressed store of the Expected results the Domain Tests verify against.
+ *
+ * A golden is a small index file, &lt;name&gt;.golden, holding the SHA-256 of its rows, the layout they were hashed
+ * with and an order independent digest per chunk. The rows themselves are kept gzip compressed under
+ * objects/&lt;sha-256&gt;.gz, so goldens with the same rows share one object. A run that matches is confirmed by
+ * streaming the Hive result into the same chunked digest, without reading the rows back. Only when a digest differs
+ * are the rows of the differing chunks compared to report what changed, see HiveResultVerifier.verifyGolden.
+ *
+ * ####IMPORTANT####
+ * #The store is src/test/resources/golden, set by the "ddsw.golden.dir" System Property in oozie-test/build.gradle.
+ * #"gradle test -PupdateGoldens" records the results of the run as the new goldens instead of comparing, only run it
+ * # when the Workflows are known to be good and commit the changed .golden files and objects with the change.
+ * #"gradle goldenStore -PgoldenArgs=..." lists, exports (to read a golden as a file), imports and prunes, see main.
+ * #A golden verified on the cluster has its {@link PushdownDigest} next to it as &lt;name&gt;.pushdown, recorded in the
+ * # same update run.
+ */
+public class GoldenStore {
+
+    public static final String directoryKey = "ddsw.golden.dir";
+    public static final String updateKey = "ddsw.golden.update";
+
+    private static final String indexSuffix = ".golden";
+    private static final String objectSuffix = ".gz";
+    private static final String pushdownSuffix = ".pushdown";
+
+    private static GoldenStore instance = null;
+
+    private final File directory;
+    private final boolean update;
+
+    public GoldenStore(File directory, boolean update) {
+        this.directory = directory;
+        this.update = update;
+    }
+
+    /**
+     * Store of this build, from the System Properties.
+     */
+    public static synchronized GoldenStore get() {
+
+        if (instance == null) {
+            instance = new GoldenStore(new File(System.getProperty(directoryKey, "src/test/resources/golden")),
+                    Boolean.getBoolean(updateKey));
+        }
+        return instance;
+    }
+
+    /**
+     * Command line,
+     *  list                    every golden with its rows and object
+     *  export name file        the rows of a golden as a plain file
+     *  import file name        a plain Expected file as a golden, hashed as text
+ *  import file name spec   the same hashed with the TableSpec of its Test, given as Class#field, so it verifies
+ *                          through the digest pass, e.g. com.cat.ddsw.oozietest.InvoiceOozieTest#invoiceCurrentSpec
+     *  prune                   deletes objects no golden refers to any more
+     */
+    public static void main(String[] args) throws IOException {
+
+        GoldenStore store = new GoldenStore(new File(System.getProperty(directoryKey, "src/test/resources/golden")),
+                false);
+        String command = args.length > 0 ? args[0] : "list";
+        if (command.equals("list")) {
+            for (String name : store.list()) {
+                System.out.println(store.load(name));
+            }
+        } else if (command.equals("export") && args.length > 2) {
+            store.export(args[1], new File(args[2]));
+        } else if (command.equals("import") && args.length > 2) {
+            TableSpec spec = args.length > 3 ? tableSpec(args[3]) : null;
+            System.out.println("GoldenStore: imported " + store.record(args[2], new File(args[1]), spec, "utf-8"));
+        } else if (command.equals("prune")) {
+            System.out.println("GoldenStore: deleted " + store.prune() + " unused objects");
+        } else {
+            System.out.println("GoldenStore: list | export name file | import file name [Class#spec] | prune");
+        }
+    }
+
+    /**
+     * The public static TableSpec named by Class#field.
+     */
+    private static TableSpec tableSpec(String reference) throws IOException {
+
+        int hash = reference.indexOf('#');
+        if (hash < 0) {
+            throw new IOException("TableSpec " + reference + " is not Class#field");
+        }
+        try {
+            Class<?> owner = Class.forName(reference.substring(0, hash));
+            return (TableSpec) owner.getField(reference.substring(hash + 1)).get(null);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IOException("No TableSpec " + reference, e);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * True when results are recorded as the new goldens instead of being compared.
+     */
+    public boolean isUpdate() {
+        return update;
+    }
+
+    public boolean exists(String name) {
+        return indexFile(name).isFile();
+    }
+
+    public GoldenDataset load(String name) throws IOException {
+
+        File index = indexFile(name);
+        if (!index.isFile()) {
+            throw new IOException("No golden result " + name + " in " + directory
+                    + ", record it from a known good run with gradle test -PupdateGoldens");
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(index)) {
+            properties.load(in);
+        }
+
+        String object = properties.getProperty("object");
+        int chunkCount = Integer.parseInt(properties.getProperty("chunks", "1"));
+        RowHasher.Digest[] chunks = new RowHasher.Digest[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            String[] parts = properties.getProperty("chunk." + i, "0,0,0").split(",");
+            chunks[i] = new RowHasher.Digest(Long.parseLong(parts[0]), new BigInteger(parts[1], 16).longValue(),
+                    new BigInteger(parts[2], 16).longValue());
+        }
+
+        File objectFile = objectFile(object);
+        if (!objectFile.isFile()) {
+            throw new IOException("Golden result " + name + " refers to the missing object " + objectFile);
+        }
+        return new GoldenDataset(name, object, objectFile, properties.getProperty("layout"), chunks);
+    }
+
+    /**
+     * Stores the rows of the file as the golden of the name, replacing the one before.
+     *
+     * @param spec Column Spec the rows are verified with, null for results compared as text
+     */
+    public synchronized GoldenDataset record(String name, File rows, TableSpec spec, String encoding)
+            throws IOException {
+
+        Charset charset = Charset.forName(encoding);
+        // Taken at the most chunks and folded down once the row count is known, chunkOf is modulo a power of two
+        GoldenDigest digest = new GoldenDigest(spec, charset, 256);
+        MessageDigest sha = sha256();
+
+        File objects = new File(directory, "objects");
+        objects.mkdirs();
+        File temp = File.createTempFile("object", ".partial", objects);
+        try {
+            try (Reader source = new InputStreamReader(new FileInputStream(rows), charset);
+                 OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), 1 << 16);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+                BufferedReader reader = new BufferedReader(source, 1 << 16);
+                String row;
+                while ((row = reader.readLine()) != null) {
+                    digest.accept(row);
+                    sha.update(row.getBytes(StandardCharsets.UTF_8));
+                    sha.update((byte) '\n');
+                    writer.write(row);
+                    writer.write('\n');
+                }
+            }
+
+            String object = hex(sha.digest());
+            File objectFile = objectFile(object);
+            if (objectFile.isFile()) {
+                // Same rows as a golden stored before
+                temp.delete();
+            } else {
+                objectFile.getParentFile().mkdirs();
+                if (!temp.renameTo(objectFile)) {
+                    throw new IOException("Could not move " + temp + " to " + objectFile);
+                }
+            }
+
+            RowHasher.Digest[] chunks = new RowHasher.Digest[GoldenDigest.chunkCount(digest.getRowCount())];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new RowHasher.Digest();
+            }
+            for (int i = 0; i < digest.getChunkCount(); i++) {
+                chunks[i % chunks.length].merge(digest.getChunk(i));
+            }
+
+            writeIndex(name, object, GoldenDigest.layout(spec), chunks);
+            return new GoldenDataset(name, object, objectFile, GoldenDigest.layout(spec), chunks);
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * The Hive aggregates of the golden, null when none were recorded for it yet.
+     */
+    public PushdownDigest loadPushdown(String name) throws IOException {
+
+        File file = pushdownFile(name);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String label : properties.getProperty("labels", "").split(",")) {
+            if (!label.isEmpty()) {
+                values.put(label, properties.getProperty("value." + label, ""));
+            }
+        }
+        int bucketCount = Integer.parseInt(properties.getProperty("buckets", "1"));
+        Map<Integer, String> buckets = new TreeMap<>();
+        for (int i = 0; i < bucketCount; i++) {
+            String bucket = properties.getProperty("bucket." + i);
+            if (bucket != null) {
+                buckets.put(i, bucket);
+            }
+        }
+        return new PushdownDigest(properties.getProperty("layout"), values, bucketCount, buckets,
+                Boolean.parseBoolean(properties.getProperty("mirrored")));
+    }
+
+    /**
+     * Stores the Hive aggregates of the golden of the name, replacing the ones before.
+     */
+    public synchronized void recordPushdown(String name, PushdownDigest digest) throws IOException {
+
+        File file = pushdownFile(name);
+        file.getParentFile().mkdirs();
+        StringBuilder labels = new StringBuilder();
+        for (String label : digest.getValues().keySet()) {
+            labels.append(labels.length() == 0 ? "" : ",").append(label);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+            writer.write("#Pushdown digest, written by GoldenStore. Update with gradle test -PupdateGoldens\n");
+            writer.write("layout=" + digest.getLayout() + "\n");
+            writer.write("mirrored=" + digest.isMirrored() + "\n");
+            writer.write("labels=" + labels + "\n");
+            for (Map.Entry<String, String> value : digest.getValues().entrySet()) {
+                writer.write("value." + value.getKey() + "=" + escape(value.getValue()) + "\n");
+            }
+            writer.write("buckets=" + digest.getBucketCount() + "\n");
+            for (Map.Entry<Integer, String> bucket : digest.getBuckets().entrySet()) {
+                writer.write("bucket." + bucket.getKey() + "=" + bucket.getValue() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Writes the rows of a golden to a plain file.
+     */
+    public void export(String name, File target) throws IOException {
+
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = load(name).open(); OutputStream out = new FileOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Names of every golden in the store, sorted.
+     */
+    public List<String> list() {
+
+        List<String> names = new ArrayList<>();
+        collect(directory, "", names);
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Deletes the objects no golden refers to, e.g. the rows of goldens that were updated since.
+     */
+    public int prune() throws IOException {
+
+        Set<String> referenced = new HashSet<>();
+        for (String name : list()) {
+            referenced.add(load(name).getObject());
+        }
+
+        int deleted = 0;
+        File[] prefixes = new File(directory, "objects").listFiles();
+        for (File prefix : prefixes == null ? new File[0] : prefixes) {
+            File[] objects = prefix.listFiles();
+            for (File object : objects == null ? new File[0] : objects) {
+                String name = object.getName();
+                if (name.endsWith(objectSuffix)
+                        && !referenced.contains(name.substring(0, name.length() - objectSuffix.length()))
+                        && object.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private void writeIndex(String name, String object, String layout, RowHasher.Digest[] chunks) throws IOException {
+
+        File index = indexFile(name);
+        index.getParentFile().mkdirs();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(index), StandardCharsets.UTF_8)) {
+            writer.write("#Golden result, written by GoldenStore. Update with gradle test -PupdateGoldens\n");
+            writer.write("object=" + object + "\n");
+            writer.write("layout=" + layout + "\n");
+            writer.write("chunks=" + chunks.length + "\n");
+            for (int i = 0; i < chunks.length; i++) {
+                writer.write(String.format("chunk.%d=%d,%016x,%016x\n", i, chunks[i].getRowCount(), chunks[i].getSum(),
+                        chunks[i].getXor()));
+            }
+        }
+    }
+
+    private void collect(File folder, String prefix, List<String> names) {
+
+        File[] files = folder.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            if (file.isDirectory() && !(prefix.isEmpty() && file.getName().equals("objects"))) {
+                collect(file, prefix + file.getName() + "/", names);
+            } else if (file.getName().endsWith(indexSuffix)) {
+                names.add(prefix + file.getName().substring(0, file.getName().length() - indexSuffix.length()));
+            }
+        }
+    }
+
+    private File indexFile(String name) {
+
+        if (name.contains("..") || name.startsWith("/")) {
+            throw new IllegalArgumentException("Golden names are relative paths inside the store, not " + name);
+        }
+        return new File(directory, name + indexSuffix);
+    }
+
+    private File pushdownFile(String name) {
+
+        File index = indexFile(name);
+        return new File(index.getParentFile(), index.getName().substring(0, index.getName().length()
+                - indexSuffix.length()) + pushdownSuffix);
+    }
+
+    /**
+     * A value as Properties.load reads it back, min and max of a column can hold any text.
+     */
+    static String escape(String value) {
+
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '=' || c == ':' || c == '#' || c == '!' || (c == ' ' && i == 0)) {
+                escaped.append('\\').append(c);
+            } else if (c == '\t') {
+                escaped.append("\\t");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else if (c < 0x20 || c > 0x7e) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private File objectFile(String object) {
+        return new File(new File(new File(directory, "objects"), object.substring(0, 2)), object + objectSuffix);
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,212 @@
+package com.cat.ddsw.base.golden;
+
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.TableSpec;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * GoldenStore recording and the digest and chunk checks of GoldenDataset.
+ */
+public class GoldenStoreTest {
+
+    private static final Charset utf8 = StandardCharsets.UTF_8;
+
+    private static final TableSpec spec = new TableSpec("ddsw_qa.invoice_current")
+            .columns("invoice_number", "tot_invc_amt", "invoice_dt")
+            .decimal("tot_invc_amt")
+            .timestamp("invoice_dt");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private GoldenStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new GoldenStore(temp.newFolder("golden"), false);
+    }
+
+    @Test
+    public void testMatchingRowsInAnyOrderConfirmByDigest() throws Exception {
+
+        List<String> rows = rows(20000);
+        GoldenDataset golden = store.record("invoice/content", write("expected.csv", rows), spec, "utf-8");
+        Assert.assertEquals(20000, golden.getRows());
+        Assert.assertTrue(golden.getChunkCount() > 1);
+
+        golden = store.load("invoice/content");
+        Assert.assertTrue(golden.isDigestComparable(spec, utf8));
+
+        Collections.reverse(rows);
+        GoldenDigest actual = golden.newDigest(spec, utf8);
+        for (String row : rows) {
+            actual.accept(row);
+        }
+        Assert.assertTrue(golden.differingChunks(actual).isEmpty());
+    }
+
+    @Test
+    public void testExtraRowStopsTheDigest() throws Exception {
+
+        List<String> rows = rows(20000);
+        GoldenDataset golden = store.record("invoice/content", write("expected.csv", rows), spec, "utf-8");
+
+        GoldenDigest actual = golden.newDigest(spec, utf8, true);
+        Collections.reverse(rows);
+        for (String row : rows) {
+            Assert.assertTrue(actual.accept(row));
+        }
+        Assert.assertFalse(actual.isStopped());
+        Assert.assertTrue(golden.differingChunks(actual).isEmpty());
+
+        // Its chunk is full, the result can't match any more
+        Assert.assertFalse(actual.accept("INV99999999\t1.00\t2015-08-31 10:00:00"));
+        Assert.assertTrue(actual.isStopped());
+
+        Assert.assertTrue(golden.newDigest(spec, utf8, false).accept(rows.get(0)));
+    }
+
+    @Test
+    public void testTypedValuesDigestEqually() throws Exception {
+
+        GoldenDataset golden = store.record("invoice/content",
+                write("expected.csv", Collections.singletonList("INV1\t123.450\t2015-08-31 10:00:00")), spec, "utf-8");
+
+        GoldenDigest actual = golden.newDigest(spec, utf8);
+        actual.accept("INV1\t123.45\t2015-08-31 10:00:00.000");
+        Assert.assertTrue(golden.differingChunks(actual).isEmpty());
+
+        // Hashed by typed value, so a check comparing as text can't use the digests
+        Assert.assertFalse(golden.isDigestComparable(null, utf8));
+    }
+
+    @Test
+    public void testChunkComparisonFindsTheDifferingRows() throws Exception {
+
+        List<String> rows = rows(20000);
+        GoldenDataset golden = store.record("invoice/content", write("expected.csv", rows), spec, "utf-8");
+
+        List<String> actualRows = new ArrayList<>(rows);
+        actualRows.remove(777);
+        actualRows.add("INV99999999\t1.00\t2015-08-31 10:00:00");
+        File actualFile = write("actual.csv", actualRows);
+
+        GoldenDigest actual = golden.newDigest(spec, utf8);
+        for (String row : actualRows) {
+            actual.accept(row);
+        }
+        BitSet differing = golden.differingChunks(actual);
+        Assert.assertTrue(differing.cardinality() >= 1 && differing.cardinality() <= 2);
+
+        ComparisonResult result = golden.compare(actualFile, differing, spec, "utf-8", 10);
+        Assert.assertFalse(result.isMatch());
+        Assert.assertEquals(20000, result.getActualRowCount());
+        Assert.assertEquals(20000, result.getExpectedRowCount());
+        Assert.assertEquals(Collections.singletonList(rows.get(777)), result.getMissingRows());
+        Assert.assertEquals(Collections.singletonList("INV99999999\t1.00\t2015-08-31 10:00:00"), result.getExtraRows());
+    }
+
+    @Test
+    public void testToleranceNeedsTheChunkComparison() throws Exception {
+
+        TableSpec tolerant = new TableSpec("ddsw_qa.invoice_current")
+                .columns("invoice_number", "tot_invc_amt", "invoice_dt")
+                .decimal("tot_invc_amt")
+                .timestamp("invoice_dt")
+                .tolerance("tot_invc_amt", 0.01);
+
+        GoldenDataset golden = store.record("invoice/content",
+                write("expected.csv", Collections.singletonList("INV1\t123.45\t2015-08-31 10:00:00")), tolerant, "utf-8");
+        Assert.assertFalse(golden.isDigestComparable(tolerant, utf8));
+
+        ComparisonResult result = golden.compare(
+                write("actual.csv", Collections.singletonList("INV1\t123.46\t2015-08-31 10:00:00")),
+                golden.allChunks(), tolerant, "utf-8", 10);
+        Assert.assertTrue(result.toString(), result.isMatch());
+    }
+
+    @Test
+    public void testSameRowsShareOneObject() throws Exception {
+
+        GoldenDataset first = store.record("invoice/count", write("a.csv", Collections.singletonList("5")), null, "utf-8");
+        GoldenDataset second = store.record("dealer_inventory/count", write("b.csv", Collections.singletonList("5")),
+                null, "utf-8");
+        Assert.assertEquals(first.getObject(), second.getObject());
+        Assert.assertEquals(2, store.list().size());
+
+        store.record("invoice/count", write("c.csv", Collections.singletonList("6")), null, "utf-8");
+        Assert.assertEquals(0, store.prune());
+        store.record("dealer_inventory/count", write("d.csv", Collections.singletonList("6")), null, "utf-8");
+        Assert.assertEquals(1, store.prune());
+
+        File exported = new File(temp.getRoot(), "exported.csv");
+        store.export("invoice/count", exported);
+        Assert.assertEquals(Collections.singletonList("6"), Files.readAllLines(exported.toPath(), utf8));
+    }
+
+    @Test
+    public void testPushdownDigestRoundTrip() throws Exception {
+
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("rows", "2");
+        values.put("invoice_number.min", " INV=1:\t#\u00e9\\");
+        values.put("tot_invc_amt.sum", "null");
+        Map<Integer, String> buckets = new TreeMap<>();
+        buckets.put(5, "2,-123,456");
+
+        Assert.assertNull(store.loadPushdown("invoice/content"));
+        store.recordPushdown("invoice/content", new PushdownDigest(spec, values, 16, buckets, true));
+        Assert.assertEquals(Collections.emptyList(), store.list());
+
+        PushdownDigest loaded = store.loadPushdown("invoice/content");
+        Assert.assertEquals(values, loaded.getValues());
+        Assert.assertEquals(new ArrayList<>(values.keySet()), new ArrayList<>(loaded.getValues().keySet()));
+        Assert.assertEquals(buckets, loaded.getBuckets());
+        Assert.assertEquals(16, loaded.getBucketCount());
+        Assert.assertTrue(loaded.isMirrored());
+        Assert.assertTrue(loaded.isComparable(spec));
+        Assert.assertFalse(loaded.isComparable(null));
+
+        values.put("rows", "3");
+        Assert.assertEquals(Collections.singletonList("rows"), loaded.differingValues(values));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingGolden() throws Exception {
+        store.load("invoice/missing");
+    }
+
+    private static List<String> rows(int count) {
+
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(String.format("INV%08d\t%d.%02d\t2015-%02d-%02d 10:00:00", i, i % 1000, i % 100, 1 + i % 12,
+                    1 + i % 28));
+        }
+        return rows;
+    }
+
+    private File write(String name, List<String> rows) throws IOException {
+
+        File file = new File(temp.getRoot(), name);
+        Files.write(file.toPath(), rows, utf8);
+        return file;
+    }
+}
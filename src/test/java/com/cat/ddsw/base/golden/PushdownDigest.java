@@ -0,0 +1,124 @@
+package com.cat.ddsw.base.golden;
+
+import com.cat.ddsw.base.compare.TableSpec;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Expected aggregates of a golden as Hive computes them on the cluster, kept next to the golden as
+ * &lt;name&gt;.pushdown, see HiveResultVerifier.verifyPushdown.
+ *
+ * The digest holds the values of the single aggregate row by label (row count, combined row hashes, nulls, sums,
+ * min and max per column) and the row count and hash sums of every hash bucket, which are only looked at when the
+ * aggregate row differs.
+ *
+ * ####IMPORTANT####
+ * #A digest is only comparable with results taken with the same Column Spec, the layout is checked like the one of
+ * # the golden.
+ * #mirrored is true when the buckets the rows of the golden are put in by PushdownQuery.bucketOf agree with the
+ * # buckets Hive put them in when the digest was recorded. Only then can the drill down compare a bucket's rows to
+ * # the golden rows of the same bucket, otherwise the whole golden is compared.
+ */
+public class PushdownDigest {
+
+    private final String layout;
+    private final Map<String, String> values;
+    private final int bucketCount;
+    private final SortedMap<Integer, String> buckets;
+    private final boolean mirrored;
+
+    public PushdownDigest(TableSpec spec, Map<String, String> values, int bucketCount, Map<Integer, String> buckets,
+                          boolean mirrored) {
+        this(GoldenDigest.layout(spec), values, bucketCount, buckets, mirrored);
+    }
+
+    PushdownDigest(String layout, Map<String, String> values, int bucketCount, Map<Integer, String> buckets,
+                   boolean mirrored) {
+        this.layout = layout;
+        this.values = new LinkedHashMap<>(values);
+        this.bucketCount = bucketCount;
+        this.buckets = new TreeMap<>(buckets);
+        this.mirrored = mirrored;
+    }
+
+    public String getLayout() {
+        return layout;
+    }
+
+    /**
+     * True when the digest was taken with the same Column Spec.
+     */
+    public boolean isComparable(TableSpec spec) {
+        return layout.equals(GoldenDigest.layout(spec));
+    }
+
+    public Map<String, String> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * "rows,hash,hash2" of every bucket holding rows, by bucket.
+     */
+    public SortedMap<Integer, String> getBuckets() {
+        return Collections.unmodifiableSortedMap(buckets);
+    }
+
+    public boolean isMirrored() {
+        return mirrored;
+    }
+
+    /**
+     * Labels whose value differs from the actual aggregate row, in the order of the digest.
+     */
+    public List<String> differingValues(Map<String, String> actual) {
+
+        List<String> differing = new ArrayList<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (!entry.getValue().equals(actual.get(entry.getKey()))) {
+                differing.add(entry.getKey());
+            }
+        }
+        for (String label : actual.keySet()) {
+            if (!values.containsKey(label)) {
+                differing.add(label);
+            }
+        }
+        return differing;
+    }
+
+    /**
+     * Buckets whose rows or hashes differ from the actual ones, a bucket only one side has rows in differs too.
+     */
+    public BitSet differingBuckets(Map<Integer, String> actual) {
+
+        BitSet differing = new BitSet(bucketCount);
+        for (Map.Entry<Integer, String> entry : buckets.entrySet()) {
+            if (!entry.getValue().equals(actual.get(entry.getKey()))) {
+                differing.set(entry.getKey());
+            }
+        }
+        for (Integer bucket : actual.keySet()) {
+            if (!buckets.containsKey(bucket)) {
+                differing.set(bucket);
+            }
+        }
+        return differing;
+    }
+
+    @Override
+    public String toString() {
+        return values.get("rows") + " rows, " + values.size() + " values, " + buckets.size() + " of " + bucketCount
+                + " buckets" + (mirrored ? "" : ", not mirrored");
+    }
+}
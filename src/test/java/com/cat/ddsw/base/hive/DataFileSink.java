@@ -0,0 +1,49 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.compare.RowSink;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the rows to a data file, one record per line like OozieRunner.executeHiveQuery. The caller closes it.
+ */
+public class DataFileSink implements RowSink, Closeable {
+
+    private final Writer writer;
+    private boolean first = true;
+
+    public DataFileSink(String dataFile, String encoding) throws IOException {
+
+        File file = new File(dataFile);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), encoding));
+    }
+
+    @Override
+    public boolean accept(String row) throws IOException {
+
+        if (!first) {
+            writer.write('\n');
+        }
+        first = false;
+        writer.write(row);
+        return true;
+    }
+
+    @Override
+    public void finish(boolean exhausted) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,290 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.capacity.CapacityGovernor;
+import com.cat.ddsw.base.compare.RowBufferSink;
+import com.cat.ddsw.base.compare.RowSink;
+import com.cat.ddsw.base.timing.PhaseTimeline;
+import com.cat.ddsw.base.timing.PhaseTimer;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Runs Hive queries over HiveServer2 JDBC and pushes the result rows into a {@link RowSink} as they are fetched.
+ *
+ * Rows are rendered the way OozieRunner.executeHiveQuery writes them to the Actual files: columns joined with the
+ * delimiter and SQL NULL written as "null", so the existing Expected files stay valid.
+ *
+ * ####IMPORTANT####
+ * #Connection details come from oozie.properties (HIVE_HOST, HIVE_PORT, HIVE_DATABASE, OOZIE_USER, OOZIE_PASSWORD).
+ * #HIVE_JDBC_DRIVER and HIVE_JDBC_URL may be set to point the framework at a different driver or URL.
+ * #Queries run on pooled sessions of the {@link HiveSessionPool}, see there for pool size, fetch size and keep-alive.
+ * #Every query holds a CAPACITY_HIVE_SESSIONS slot of the {@link CapacityGovernor} while it has its session.
+ * #A {@link RowBufferSink} gets the row in the reused buffer, no String is made of it. String cells are appended as
+ * # the driver holds them and whole numbers and doubles as primitives, so only the other types format a String.
+ */
+public class HiveQueryExecutor {
+
+    public static final String defaultDelimiter = "\t";
+
+    private static final String defaultDriver = "org.apache.hive.jdbc.HiveDriver";
+    private static final String nullValue = "null";
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final HiveSessionPool sessionPool;
+
+    public HiveQueryExecutor(DDSWProperties properties) throws IOException {
+
+        this.jdbcUrl = properties.getProperty("HIVE_JDBC_URL",
+                "jdbc:hive2://" + properties.getProperty("HIVE_HOST") + ":" + properties.getProperty("HIVE_PORT")
+                        + "/" + properties.getProperty("HIVE_DATABASE", "default"));
+        this.user = properties.getProperty("OOZIE_USER", "");
+        this.password = properties.getProperty("OOZIE_PASSWORD", "");
+        this.sessionPool = new HiveSessionPool(connectionFactory(),
+                properties.getInt("HIVE_POOL_SIZE", 4),
+                properties.getInt("HIVE_FETCH_SIZE", 10000),
+                properties.getLong("HIVE_KEEPALIVE_MILLIS", 60000),
+                properties.getLong("HIVE_SESSION_MAX_IDLE_MILLIS", 600000),
+                properties.getProperty("HIVE_KEEPALIVE_QUERY", "SELECT 1"));
+        this.sessionPool.setCapacityGovernor(CapacityGovernor.get(properties, CapacityGovernor.hiveSessions));
+
+        String driver = properties.getProperty("HIVE_JDBC_DRIVER", defaultDriver);
+        try {
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Hive JDBC driver not on the classpath: " + driver, e);
+        }
+    }
+
+    /**
+     * Executor for the given connection details with the default pool size and fetch size.
+     */
+    protected HiveQueryExecutor(String jdbcUrl, String user, String password) {
+        this(jdbcUrl, user, password, 4, 10000);
+    }
+
+    /**
+     * Executor for the given connection details, without a capacity limit and without keep-alive.
+     */
+    protected HiveQueryExecutor(String jdbcUrl, String user, String password, int poolSize, int fetchSize) {
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.sessionPool = new HiveSessionPool(connectionFactory(), poolSize, fetchSize, 0, 0, "SELECT 1");
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public HiveSessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    /**
+     * Limits the Hive sessions in use at once across the forks on this machine, null for no limit.
+     */
+    public void setCapacityGovernor(CapacityGovernor capacityGovernor) {
+        sessionPool.setCapacityGovernor(capacityGovernor);
+    }
+
+    /**
+     * Borrows a session for running several queries in a row, closing it gives it back to the pool.
+     */
+    public HiveSession openSession() throws IOException {
+        return sessionPool.borrow();
+    }
+
+    /**
+     * Executes the query and passes every row to the sink until the rows run out or the sink asks to stop.
+     *
+     * @return number of rows passed to the sink
+     */
+    public long stream(String query, RowSink sink, String delimiter) throws IOException {
+
+        try (HiveSession session = openSession()) {
+            return stream(session, query, sink, delimiter);
+        }
+    }
+
+    /**
+     * {@link #stream(String, RowSink, String)} on a session the caller holds.
+     */
+    public long stream(HiveSession session, String query, RowSink sink, String delimiter) throws IOException {
+
+        long rows = 0;
+        boolean exhausted = false;
+
+        try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.hiveFetch, table(query));
+             Statement statement = session.createStatement()) {
+
+            try (ResultSet resultSet = statement.executeQuery(query)) {
+                int columns = resultSet.getMetaData().getColumnCount();
+                StringBuilder row = new StringBuilder(256);
+
+                boolean stopped = false;
+                while (!stopped && resultSet.next()) {
+                    formatRow(resultSet, columns, delimiter, row);
+                    rows++;
+                    timer.addBytes(utf8Length(row));
+                    stopped = !(sink instanceof RowBufferSink ? ((RowBufferSink) sink).accept(row)
+                            : sink.accept(row.toString()));
+                }
+                exhausted = !stopped;
+            }
+
+            if (!exhausted) {
+                cancelQuietly(statement);
+            }
+            timer.addRows(rows);
+            timer.succeeded();
+        } catch (SQLException e) {
+            session.invalidate();
+            throw new IOException("Hive query failed: " + query, e);
+        }
+
+        sink.finish(exhausted);
+        return rows;
+    }
+
+    /**
+     * Executes a statement without a result, e.g. ALTER TABLE ... DROP PARTITION.
+     */
+    public void execute(String statement) throws IOException {
+
+        try (HiveSession session = openSession()) {
+            execute(session, statement);
+        }
+    }
+
+    /**
+     * {@link #execute(String)} on a session the caller holds.
+     */
+    public void execute(HiveSession session, String statement) throws IOException {
+
+        try (Statement jdbcStatement = session.createStatement()) {
+            jdbcStatement.execute(statement);
+        } catch (SQLException e) {
+            session.invalidate();
+            throw new IOException("Hive statement failed: " + statement, e);
+        }
+    }
+
+    /**
+     * Same output as OozieRunner.executeHiveQuery: one record per line in the given file.
+     */
+    public long export(String query, String dataFile, String delimiter, String encoding) throws IOException {
+
+        try (HiveSession session = openSession()) {
+            return export(session, query, dataFile, delimiter, encoding);
+        }
+    }
+
+    /**
+     * {@link #export(String, String, String, String)} on a session the caller holds.
+     */
+    public long export(HiveSession session, String query, String dataFile, String delimiter, String encoding)
+            throws IOException {
+
+        try (DataFileSink file = new DataFileSink(dataFile, encoding)) {
+            return stream(session, query, file, delimiter);
+        }
+    }
+
+    /**
+     * New HiveServer2 connection for the session pool.
+     */
+    protected Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(jdbcUrl, user, password);
+    }
+
+    private HiveSessionPool.ConnectionFactory connectionFactory() {
+        return new HiveSessionPool.ConnectionFactory() {
+            @Override
+            public Connection open() throws SQLException {
+                return openConnection();
+            }
+        };
+    }
+
+    /**
+     * Table the query reads from, for the timeline.
+     */
+    static String table(String query) {
+
+        String[] words = query.trim().split("\\s+");
+        for (int i = 0; i < words.length - 1; i++) {
+            if (words[i].equalsIgnoreCase("from") || words[i].equalsIgnoreCase("table")) {
+                return words[i + 1];
+            }
+        }
+        return words[0];
+    }
+
+    /**
+     * Bytes of the text in UTF-8, without encoding it.
+     */
+    static long utf8Length(CharSequence text) {
+
+        long bytes = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired, encoded as '?'
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static void formatRow(ResultSet resultSet, int columns, String delimiter, StringBuilder row)
+            throws SQLException {
+
+        row.setLength(0);
+        for (int column = 1; column <= columns; column++) {
+            if (column > 1) {
+                row.append(delimiter);
+            }
+            Object value = resultSet.getObject(column);
+            if (value == null) {
+                row.append(nullValue);
+            } else if (value instanceof String) {
+                row.append((String) value);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte) {
+                row.append(((Number) value).longValue());
+            } else if (value instanceof Double) {
+                row.append(((Double) value).doubleValue());
+            } else {
+                // Same text as getString, e.g. decimals, timestamps and binary values
+                String text = resultSet.getString(column);
+                row.append(text == null ? nullValue : text);
+            }
+        }
+    }
+
+    private static void cancelQuietly(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            // The operation is closed with the statement anyway
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.cat.ddsw.base.hive;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bytes counted for the phase timeline of a fetch.
+ */
+public class HiveQueryExecutorTest {
+
+    @Test
+    public void testUtf8Length() {
+
+        String[] rows = {"", "ZZZZ\t100000A\t123.45", "Caterpillar\u00ae\tM\u00fcnchen", "\u20ac 12\t\u65e5\u672c",
+                "\ud83d\ude9c tractor", "unpaired \ud83d"};
+        for (String row : rows) {
+            Assert.assertEquals(row, row.getBytes(StandardCharsets.UTF_8).length,
+                    HiveQueryExecutor.utf8Length(new StringBuilder(row)));
+        }
+    }
+}
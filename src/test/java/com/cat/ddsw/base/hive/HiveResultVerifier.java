@@ -0,0 +1,466 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.ResultComparator;
+import com.cat.ddsw.base.compare.RowSink;
+import com.cat.ddsw.base.compare.StreamingMatcher;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.base.compare.TypedRowComparator;
+import com.cat.ddsw.base.compare.TypedStreamingMatcher;
+import com.cat.ddsw.base.fixture.DealerPartition;
+import com.cat.ddsw.base.golden.GoldenDataset;
+import com.cat.ddsw.base.golden.GoldenDigest;
+import com.cat.ddsw.base.golden.GoldenStore;
+import com.cat.ddsw.base.golden.PushdownDigest;
+import com.cat.ddsw.base.timing.PhaseTimeline;
+import com.cat.ddsw.base.timing.PhaseTimer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies a Hive query against an Expected file by streaming the result rows straight into the comparison.
+ *
+ * Replaces the executeHiveQuery + compare files round trip: the Actual file is not written when the rows match,
+ * and the fetch is cancelled as soon as a row turns up that is not expected.
+ *
+ * ####IMPORTANT####
+ * #On a mismatch the query is run a second time into the Actual file (if one is given), so the failing result
+ * # is available for inspection and the report lists every missing and extra row.
+ * #Several checks of one table are best run through {@link #table(TableSpec, String)}, which runs them on one
+ * # Hive session and derives the count from the content rows.
+ * #The verifyGolden methods check against a golden of the {@link GoldenStore} instead of an Expected file.
+ * #verifyPushdown checks against a golden by Hive aggregates computed on the cluster, see {@link PushdownQuery}.
+ * #Result rows are compared with the dealer code of the build's {@link DealerPartition} turned back into ZZZZ, the
+ * # code the Expected files and goldens are written with.
+ */
+public class HiveResultVerifier {
+
+    private static final int defaultMaxReportedRows = 10;
+
+    private final HiveQueryExecutor executor;
+    private final String encoding;
+    private final Charset charset;
+
+    private boolean stopAtFirstMismatch = true;
+    private boolean writeActualOnFailure = true;
+    private int maxReportedRows = defaultMaxReportedRows;
+    private DealerPartition dealerPartition;
+
+    public HiveResultVerifier(HiveQueryExecutor executor, String encoding) {
+        this.executor = executor;
+        this.encoding = encoding;
+        this.charset = Charset.forName(encoding);
+        this.dealerPartition = DealerPartition.get();
+    }
+
+    /**
+     * Dealer whose code is turned back into ZZZZ in the result rows, the build's by default.
+     */
+    public void setDealerPartition(DealerPartition dealerPartition) {
+        this.dealerPartition = dealerPartition;
+    }
+
+    public void setStopAtFirstMismatch(boolean stopAtFirstMismatch) {
+        this.stopAtFirstMismatch = stopAtFirstMismatch;
+    }
+
+    public void setWriteActualOnFailure(boolean writeActualOnFailure) {
+        this.writeActualOnFailure = writeActualOnFailure;
+    }
+
+    public void setMaxReportedRows(int maxReportedRows) {
+        this.maxReportedRows = maxReportedRows;
+    }
+
+    public HiveQueryExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Count and Content checks of the table and filter, run together on one session, see {@link TableVerification}.
+     */
+    public TableVerification table(TableSpec spec, String where) {
+        return new TableVerification(this, spec, where);
+    }
+
+    /**
+     * @param actualDataFile where the result is written when it does not match, may be null
+     */
+    public ComparisonResult verify(String query, String expectedDataFile, String actualDataFile) throws IOException {
+
+        try (HiveSession session = executor.openSession()) {
+            return verify(session, query, expectedDataFile, actualDataFile);
+        }
+    }
+
+    /**
+     * {@link #verify(String, String, String)} on a session the caller holds.
+     */
+    public ComparisonResult verify(HiveSession session, String query, String expectedDataFile, String actualDataFile)
+            throws IOException {
+
+        StreamingMatcher matcher = new StreamingMatcher(new File(expectedDataFile), charset, stopAtFirstMismatch,
+                maxReportedRows);
+        stream(session, query, matcher);
+
+        ComparisonResult result = matcher.getResult();
+        if (result.isMatch() || actualDataFile == null || !writeActualOnFailure) {
+            return result;
+        }
+
+        export(session, query, actualDataFile);
+
+        ResultComparator comparator = new ResultComparator(encoding);
+        comparator.setMaxReportedRows(maxReportedRows);
+        try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.compare, HiveQueryExecutor.table(query))) {
+            result = comparator.compare(actualDataFile, expectedDataFile);
+            timer.addRows(result.getActualRowCount());
+            timer.succeeded();
+        }
+        return result;
+    }
+
+    /**
+     * Typed mode: the spec's SELECT is streamed into a {@link TypedStreamingMatcher} and compared column by column
+     * like {@link TypedRowComparator} does, so decimals, timestamps, ignored columns and tolerances are honoured.
+     * The Actual file is only written when the result does not match, by running the query a second time.
+     */
+    public ComparisonResult verify(TableSpec spec, String where, String expectedDataFile, String actualDataFile)
+            throws IOException {
+
+        try (HiveSession session = executor.openSession()) {
+            return verify(session, spec, where, expectedDataFile, actualDataFile);
+        }
+    }
+
+    /**
+     * {@link #verify(TableSpec, String, String, String)} on a session the caller holds.
+     */
+    public ComparisonResult verify(HiveSession session, TableSpec spec, String where, String expectedDataFile,
+                                   String actualDataFile) throws IOException {
+
+        String query = spec.selectQuery(where);
+        ComparisonResult result;
+        try (TypedStreamingMatcher matcher = new TypedStreamingMatcher(spec, new File(expectedDataFile), charset, false,
+                maxReportedRows)) {
+            stream(session, query, matcher);
+            result = matcher.getResult();
+        }
+
+        if (!result.isMatch() && actualDataFile != null && writeActualOnFailure) {
+            export(session, query, actualDataFile);
+        }
+        return result;
+    }
+
+    /**
+     * {@link #verifyGolden(HiveSession, String, String, String)} on a session of its own.
+     */
+    public ComparisonResult verifyGolden(String query, String goldenName, String actualDataFile) throws IOException {
+
+        try (HiveSession session = executor.openSession()) {
+            return verifyGolden(session, query, goldenName, actualDataFile);
+        }
+    }
+
+    /**
+     * Plain mode against a golden: the rows are compared as text, see {@link #verifyGolden(HiveSession, TableSpec,
+     * String, String, String)}.
+     */
+    public ComparisonResult verifyGolden(HiveSession session, String query, String goldenName, String actualDataFile)
+            throws IOException {
+        return verifyGolden(session, query, null, goldenName, actualDataFile);
+    }
+
+    /**
+     * Typed mode against a golden of the {@link GoldenStore}.
+     *
+     * The rows are streamed into a digest per chunk and nothing else is kept, a result whose digests all match the
+     * golden's is confirmed without the golden being read. On a difference the query is run again into the Actual
+     * file and only the rows of the differing chunks are compared, which finds the missing and extra rows. Column
+     * Specs with tolerances always take the chunk comparison, digests can't honour a tolerance.
+     * In update mode (gradle test -PupdateGoldens) the result is recorded as the new golden instead.
+     */
+    public ComparisonResult verifyGolden(HiveSession session, TableSpec spec, String where, String goldenName,
+                                         String actualDataFile) throws IOException {
+        return verifyGolden(session, spec.selectQuery(where), spec, goldenName, actualDataFile);
+    }
+
+    /**
+     * A row count that is already known against a golden holding the count on a single row.
+     */
+    public ComparisonResult verifyCountGolden(long count, String goldenName, String actualDataFile)
+            throws IOException {
+
+        GoldenStore store = GoldenStore.get();
+        if (store.isUpdate()) {
+            writeCount(count, actualDataFile);
+            return record(store, goldenName, actualDataFile, null, 1);
+        }
+
+        GoldenDataset golden = store.load(goldenName);
+        GoldenDigest digest = golden.newDigest(null, charset);
+        digest.accept(String.valueOf(count));
+        BitSet differing = golden.differingChunks(digest);
+        if (differing.isEmpty()) {
+            return matched(1);
+        }
+
+        writeCount(count, actualDataFile);
+        return golden.compare(new File(actualDataFile), differing, null, encoding, maxReportedRows);
+    }
+
+    private ComparisonResult verifyGolden(HiveSession session, String query, TableSpec spec, String goldenName,
+                                          String actualDataFile) throws IOException {
+
+        GoldenStore store = GoldenStore.get();
+        if (store.isUpdate()) {
+            long rows = export(session, query, actualDataFile);
+            return record(store, goldenName, actualDataFile, spec, rows);
+        }
+
+        GoldenDataset golden = store.load(goldenName);
+        BitSet differing;
+        if (golden.isDigestComparable(spec, charset)) {
+            GoldenDigest digest = golden.newDigest(spec, charset, stopAtFirstMismatch);
+            stream(session, query, digest);
+            if (digest.isStopped()) {
+                // More rows than the golden in a chunk, the digests of the rows not fetched are unknown
+                differing = golden.allChunks();
+            } else {
+                differing = golden.differingChunks(digest);
+                if (differing.isEmpty()) {
+                    return matched(digest.getRowCount());
+                }
+            }
+        } else {
+            System.out.println("HiveResultVerifier: " + goldenName + " can't be confirmed by digest with the Column Spec "
+                    + "of " + HiveQueryExecutor.table(query) + ", comparing it in full");
+            differing = golden.allChunks();
+        }
+
+        export(session, query, actualDataFile);
+        ComparisonResult result;
+        try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.compare, HiveQueryExecutor.table(query))) {
+            result = golden.compare(new File(actualDataFile), differing, spec, encoding, maxReportedRows);
+            timer.addBytes(new File(actualDataFile).length());
+            timer.addRows(result.getActualRowCount());
+            timer.succeeded();
+        }
+
+        if (result.isMatch() && !new File(actualDataFile).delete()) {
+            new File(actualDataFile).deleteOnExit();
+        }
+        return result;
+    }
+
+    /**
+     * Pushdown mode against a golden: the spec's SELECT is reduced by Hive to one aggregate row (row count, row hash
+     * sums, nulls, min, max and sums per column, see {@link PushdownQuery}) and only that row is fetched and compared
+     * with the {@link PushdownDigest} recorded with the golden.
+     *
+     * When a value differs the rows are grouped into hash buckets on the cluster, and only the rows of the buckets
+     * that differ are fetched into the Actual file and compared with the golden rows of the same buckets. The row
+     * counts of the result are those of the whole result sets.
+     * Without a pushdown digest (not recorded yet, or for another Column Spec) and for specs with tolerances this is
+     * {@link #verifyGolden(HiveSession, TableSpec, String, String, String)}. In update mode the golden and its
+     * pushdown digest are recorded.
+     */
+    public ComparisonResult verifyPushdown(HiveSession session, TableSpec spec, String where, String goldenName,
+                                           String actualDataFile) throws IOException {
+
+        if (!PushdownQuery.isComparable(spec)) {
+            System.out.println("HiveResultVerifier: " + goldenName + " can't be confirmed by Hive aggregates with the "
+                    + "Column Spec of " + spec.getTable() + ", comparing it by golden digest");
+            return verifyGolden(session, spec, where, goldenName, actualDataFile);
+        }
+
+        GoldenStore store = GoldenStore.get();
+        PushdownQuery pushdown = new PushdownQuery(spec, where, dealerPartition);
+        if (store.isUpdate()) {
+            return recordPushdown(session, store, pushdown, spec, where, goldenName, actualDataFile);
+        }
+
+        PushdownDigest expected = store.loadPushdown(goldenName);
+        if (expected == null || !expected.isComparable(spec)) {
+            System.out.println("HiveResultVerifier: " + goldenName + " has no pushdown digest for the Column Spec of "
+                    + spec.getTable() + ", record it with gradle test -PupdateGoldens. Comparing it by golden digest");
+            return verifyGolden(session, spec, where, goldenName, actualDataFile);
+        }
+
+        Map<String, String> actual = pushdown.values(fetch(session, pushdown.digestQuery()).get(0));
+        long actualRows = Long.parseLong(actual.get(PushdownQuery.rowsLabel));
+        List<String> differingValues = expected.differingValues(actual);
+        if (differingValues.isEmpty()) {
+            return matched(actualRows);
+        }
+
+        StringBuilder differences = new StringBuilder();
+        for (String label : differingValues) {
+            differences.append(differences.length() == 0 ? "" : ", ").append(label).append(' ')
+                    .append(expected.getValues().get(label)).append(" -> ").append(actual.get(label));
+        }
+        System.out.println("HiveResultVerifier: " + goldenName + " differs in " + differences);
+
+        int bucketCount = expected.getBucketCount();
+        BitSet differing = expected.differingBuckets(
+                PushdownQuery.buckets(fetch(session, pushdown.bucketQuery(bucketCount))));
+        if (!expected.isMirrored() || differing.isEmpty()) {
+            System.out.println("HiveResultVerifier: the buckets of " + goldenName + " can't be compared by row, "
+                    + "comparing it by golden digest");
+            return verifyGolden(session, spec, where, goldenName, actualDataFile);
+        }
+
+        System.out.println("HiveResultVerifier: fetching " + differing.cardinality() + " of " + bucketCount
+                + " buckets of " + spec.getTable() + " into " + actualDataFile);
+        export(session, pushdown.bucketRowsQuery(bucketCount, differing), actualDataFile);
+
+        GoldenDataset golden = store.load(goldenName);
+        File expectedPart = File.createTempFile("pushdown-expected", ".csv");
+        try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.compare, spec.getTable())) {
+            try (Reader reader = new InputStreamReader(golden.open(), StandardCharsets.UTF_8);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(expectedPart), charset),
+                         1 << 16)) {
+                BufferedReader rows = new BufferedReader(reader, 1 << 16);
+                String row;
+                while ((row = rows.readLine()) != null) {
+                    if (differing.get(pushdown.bucketOf(row, bucketCount))) {
+                        writer.write(row);
+                        writer.write('\n');
+                    }
+                }
+            }
+
+            TypedRowComparator comparator = new TypedRowComparator(spec, encoding);
+            comparator.setMaxReportedRows(maxReportedRows);
+            ComparisonResult part = comparator.compare(new File(actualDataFile), expectedPart);
+            timer.addBytes(new File(actualDataFile).length());
+            timer.addRows(part.getActualRowCount());
+            timer.succeeded();
+            return ComparisonResult.ofPart(part, actualRows, golden.getRows());
+        } finally {
+            if (!expectedPart.delete()) {
+                expectedPart.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Records the golden from the rows and the pushdown digest from the aggregates, checking that
+     * {@link PushdownQuery#bucketOf(String, int)} puts the rows in the buckets Hive put them in.
+     */
+    private ComparisonResult recordPushdown(HiveSession session, GoldenStore store, PushdownQuery pushdown,
+                                            TableSpec spec, String where, String goldenName, String actualDataFile)
+            throws IOException {
+
+        long rows = export(session, spec.selectQuery(where), actualDataFile);
+        GoldenDataset golden = store.record(goldenName, new File(actualDataFile), spec, encoding);
+
+        Map<String, String> values = pushdown.values(fetch(session, pushdown.digestQuery()).get(0));
+        int bucketCount = PushdownQuery.bucketCount(rows);
+        Map<Integer, String> buckets = PushdownQuery.buckets(fetch(session, pushdown.bucketQuery(bucketCount)));
+        PushdownQuery.BucketMirror mirror = pushdown.mirror(bucketCount);
+        try (Reader reader = new InputStreamReader(new FileInputStream(actualDataFile), charset)) {
+            BufferedReader lines = new BufferedReader(reader, 1 << 16);
+            String row;
+            while ((row = lines.readLine()) != null) {
+                mirror.accept(row);
+            }
+        }
+
+        PushdownDigest digest = new PushdownDigest(spec, values, bucketCount, buckets,
+                mirror.getBuckets().equals(buckets));
+        store.recordPushdown(goldenName, digest);
+        System.out.println("HiveResultVerifier: recorded golden " + golden + " with pushdown digest " + digest);
+        if (!new File(actualDataFile).delete()) {
+            new File(actualDataFile).deleteOnExit();
+        }
+        return matched(rows);
+    }
+
+    private ComparisonResult record(GoldenStore store, String goldenName, String actualDataFile, TableSpec spec,
+                                    long rows) throws IOException {
+
+        GoldenDataset golden = store.record(goldenName, new File(actualDataFile), spec, encoding);
+        System.out.println("HiveResultVerifier: recorded golden " + golden);
+        if (!new File(actualDataFile).delete()) {
+            new File(actualDataFile).deleteOnExit();
+        }
+        return matched(rows);
+    }
+
+    private long stream(HiveSession session, String query, RowSink sink) throws IOException {
+        return executor.stream(session, query, dealerPartition.normalize(sink), HiveQueryExecutor.defaultDelimiter);
+    }
+
+    private List<String> fetch(HiveSession session, String query) throws IOException {
+
+        final List<String> rows = new ArrayList<>();
+        stream(session, query, new RowSink() {
+            @Override
+            public boolean accept(String row) {
+                rows.add(row);
+                return true;
+            }
+
+            @Override
+            public void finish(boolean exhausted) {
+            }
+        });
+        return rows;
+    }
+
+    private long export(HiveSession session, String query, String actualDataFile) throws IOException {
+        try (DataFileSink file = new DataFileSink(actualDataFile, encoding)) {
+            return stream(session, query, file);
+        }
+    }
+
+    private ComparisonResult matched(long rows) {
+        return ComparisonResult.ofPart(new ComparisonResult(maxReportedRows), rows, rows);
+    }
+
+    private void writeCount(long count, String actualDataFile) throws IOException {
+
+        File file = new File(actualDataFile);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), encoding)) {
+            writer.write(String.valueOf(count));
+        }
+    }
+
+    /**
+     * Checks a row count that is already known (e.g. from a Content check) against the Expected count file,
+     * the count is written to the Actual file when it does not match.
+     */
+    public ComparisonResult verifyCount(long count, String expectedDataFile, String actualDataFile)
+            throws IOException {
+
+        StreamingMatcher matcher = new StreamingMatcher(new File(expectedDataFile), charset, false, maxReportedRows);
+        matcher.accept(String.valueOf(count));
+        matcher.finish(true);
+
+        ComparisonResult result = matcher.getResult();
+        if (!result.isMatch() && actualDataFile != null && writeActualOnFailure) {
+            writeCount(count, actualDataFile);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.capacity.CapacityGovernor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A HiveServer2 session borrowed from the {@link HiveSessionPool}, closing hands it back for the next query.
+ */
+public class HiveSession implements Closeable {
+
+    private final HiveSessionPool pool;
+    private final Connection connection;
+    private final long openedAt = System.currentTimeMillis();
+
+    private volatile long lastUsedAt = openedAt;
+    private CapacityGovernor.Permit permit = null;
+    private boolean broken = false;
+    private boolean returned = false;
+
+    HiveSession(HiveSessionPool pool, Connection connection) {
+        this.pool = pool;
+        this.connection = connection;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * New statement with the pool's fetch size.
+     */
+    public Statement createStatement() throws SQLException {
+
+        Statement statement = connection.createStatement();
+        if (pool.getFetchSize() > 0) {
+            statement.setFetchSize(pool.getFetchSize());
+        }
+        return statement;
+    }
+
+    /**
+     * Keeps the session out of the pool when it is given back, e.g. after the connection failed.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    void used() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    void borrowed() {
+        returned = false;
+    }
+
+    void setPermit(CapacityGovernor.Permit permit) {
+        this.permit = permit;
+    }
+
+    CapacityGovernor.Permit takePermit() {
+        CapacityGovernor.Permit taken = permit;
+        permit = null;
+        return taken;
+    }
+
+    void closeConnection() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Gone already
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (!returned) {
+            returned = true;
+            pool.giveBack(this);
+        }
+    }
+}
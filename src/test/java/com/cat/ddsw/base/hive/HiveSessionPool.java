@@ -0,0 +1,257 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.cat.ddsw.base.capacity.CapacityGovernor;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HiveServer2 sessions shared by all queries of the JVM, so the seconds of session setup are paid once per session
+ * instead of once per query.
+ *
+ * Idle sessions are kept alive with a cheap query every keep-alive interval, a session that fails it (or any
+ * query) is dropped and replaced by a new one on the next borrow. Sessions idle for longer than the maximum idle
+ * time are closed.
+ *
+ * ####IMPORTANT####
+ * #Settings in oozie.properties (all optional),
+ * # HIVE_POOL_SIZE=4, HIVE_FETCH_SIZE=10000, HIVE_KEEPALIVE_MILLIS=60000, HIVE_SESSION_MAX_IDLE_MILLIS=600000,
+ * # HIVE_KEEPALIVE_QUERY=SELECT 1
+ */
+public class HiveSessionPool {
+
+    /**
+     * Opens a new HiveServer2 connection.
+     */
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSessions;
+    private final int fetchSize;
+    private final long maxIdleMillis;
+    private final String keepAliveQuery;
+    private final ScheduledExecutorService keepAlive;
+
+    // Guarded by this
+    private final Deque<HiveSession> idle = new ArrayDeque<>();
+    private int open = 0;
+    private int opened = 0;
+    private boolean closed = false;
+
+    private volatile CapacityGovernor capacityGovernor = null;
+
+    public HiveSessionPool(ConnectionFactory factory, int maxSessions, int fetchSize, long keepAliveMillis,
+                           long maxIdleMillis, String keepAliveQuery) {
+        this.factory = factory;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.fetchSize = fetchSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.keepAliveQuery = keepAliveQuery;
+
+        this.keepAlive = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ddsw-hive-keepalive"));
+        if (keepAliveMillis > 0) {
+            keepAlive.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    keepAlive();
+                }
+            }, keepAliveMillis, keepAliveMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Limits the sessions in use at once across the forks on this machine, null for no limit.
+     */
+    public void setCapacityGovernor(CapacityGovernor capacityGovernor) {
+        this.capacityGovernor = capacityGovernor;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sessions opened since the pool was created, for telling how often setup was paid.
+     */
+    public synchronized int getOpened() {
+        return opened;
+    }
+
+    public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * An idle session, or a new one while the pool is below its size. Blocks otherwise.
+     */
+    public HiveSession borrow() throws IOException {
+
+        CapacityGovernor governor = capacityGovernor;
+        CapacityGovernor.Permit permit = governor == null ? null : governor.acquire();
+        try {
+            HiveSession session = take();
+            session.setPermit(permit);
+            session.borrowed();
+            return session;
+        } catch (IOException | RuntimeException e) {
+            if (permit != null) {
+                permit.close();
+            }
+            throw e;
+        }
+    }
+
+    private HiveSession take() throws IOException {
+
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("Hive session pool is closed");
+                }
+                if (!idle.isEmpty()) {
+                    return idle.pollLast();
+                }
+                if (open < maxSessions) {
+                    open++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for a Hive session", e);
+                }
+            }
+        }
+
+        // Connect outside the lock, it takes seconds
+        try {
+            HiveSession session = new HiveSession(this, factory.open());
+            synchronized (this) {
+                opened++;
+            }
+            return session;
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            throw new IOException("Could not open a Hive session", e);
+        }
+    }
+
+    void giveBack(HiveSession session) throws IOException {
+
+        CapacityGovernor.Permit permit = session.takePermit();
+        try {
+            boolean keep;
+            synchronized (this) {
+                keep = !closed && !session.isBroken();
+                if (keep) {
+                    session.used();
+                    idle.addLast(session);
+                } else {
+                    open--;
+                }
+                notifyAll();
+            }
+            if (!keep) {
+                session.closeConnection();
+            }
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+    }
+
+    /**
+     * Pings the sessions idle for a while and closes the ones idle for too long.
+     */
+    void keepAlive() {
+
+        List<HiveSession> due = new ArrayList<>();
+        List<HiveSession> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Iterator<HiveSession> sessions = idle.iterator(); sessions.hasNext(); ) {
+                HiveSession session = sessions.next();
+                if (maxIdleMillis > 0 && now - session.getLastUsedAt() > maxIdleMillis) {
+                    expired.add(session);
+                } else {
+                    due.add(session);
+                }
+                sessions.remove();
+            }
+            open -= expired.size();
+            notifyAll();
+        }
+
+        for (HiveSession session : expired) {
+            session.closeConnection();
+        }
+        for (HiveSession session : due) {
+            try (Statement statement = session.getConnection().createStatement()) {
+                statement.execute(keepAliveQuery);
+            } catch (SQLException e) {
+                System.out.println("HiveSessionPool: dropping a session that failed the keep-alive, " + e.getMessage());
+                session.invalidate();
+            }
+            try {
+                // Straight back to the pool, without touching the idle time
+                giveBackIdle(session);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void giveBackIdle(HiveSession session) {
+
+        boolean keep;
+        synchronized (this) {
+            keep = !closed && !session.isBroken();
+            if (keep) {
+                idle.addFirst(session);
+            } else {
+                open--;
+            }
+            notifyAll();
+        }
+        if (!keep) {
+            session.closeConnection();
+        }
+    }
+
+    /**
+     * Closes the idle sessions, sessions in use are closed when they are given back.
+     */
+    public void close() {
+
+        List<HiveSession> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            open -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        keepAlive.shutdownNow();
+        for (HiveSession session : toClose) {
+            session.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.TableSpec;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the session pool against in-memory JDBC proxies, no HiveServer2 needed.
+ */
+public class HiveSessionPoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sessionIsReusedAcrossQueries() throws Exception {
+
+        FakeHive hive = new FakeHive();
+        hive.rows("select a from t", "1", "2");
+        FakeExecutor executor = new FakeExecutor(hive, 2, 500);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(2, executor.export("select a from t", new File(folder.getRoot(), "out" + i).getPath(),
+                    HiveQueryExecutor.defaultDelimiter, "utf-8"));
+        }
+
+        Assert.assertEquals(1, hive.connections.get());
+        Assert.assertEquals(1, executor.getSessionPool().getOpened());
+        Assert.assertEquals(Collections.nCopies(5, 500), hive.fetchSizes);
+    }
+
+    @Test
+    public void borrowBlocksAtPoolSize() throws Exception {
+
+        FakeHive hive = new FakeHive();
+        final FakeExecutor executor = new FakeExecutor(hive, 1, 0);
+
+        HiveSession first = executor.openSession();
+        final CountDownLatch borrowed = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (HiveSession second = executor.openSession()) {
+                    borrowed.countDown();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        waiter.start();
+
+        Assert.assertFalse(borrowed.await(200, TimeUnit.MILLISECONDS));
+        first.close();
+        Assert.assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+        waiter.join();
+
+        Assert.assertEquals(1, hive.connections.get());
+    }
+
+    @Test
+    public void brokenSessionIsReplaced() throws Exception {
+
+        FakeHive hive = new FakeHive();
+        hive.rows("select a from t", "1");
+        FakeExecutor executor = new FakeExecutor(hive, 1, 0);
+
+        try (HiveSession session = executor.openSession()) {
+            Assert.assertEquals(1, executor.getSessionPool().getOpened());
+        }
+
+        // Keep-alive finds the session gone and drops it
+        hive.down = true;
+        executor.getSessionPool().keepAlive();
+        Assert.assertEquals(0, executor.getSessionPool().getIdle());
+
+        hive.down = false;
+        Assert.assertEquals(1, executor.export("select a from t", new File(folder.getRoot(), "out").getPath(),
+                HiveQueryExecutor.defaultDelimiter, "utf-8"));
+        Assert.assertEquals(2, hive.connections.get());
+    }
+
+    @Test
+    public void countAndContentRunAsOneQuery() throws Exception {
+
+        TableSpec spec = new TableSpec("db.t").columns("id", "amount").decimal("amount");
+        FakeHive hive = new FakeHive();
+        hive.rows(spec.selectQuery("dealer_code ='ZZZZ'"), "1\t1.50", "2\t2.00");
+        FakeExecutor executor = new FakeExecutor(hive, 2, 0);
+
+        File expectedCount = write("count.csv", "2");
+        File expectedContent = write("content.csv", "2\t2.0\n1\t1.5");
+
+        TableVerification verification = new HiveResultVerifier(executor, "utf-8")
+                .table(spec, "dealer_code ='ZZZZ'")
+                .count(expectedCount.getPath(), new File(folder.getRoot(), "actual_count.csv").getPath())
+                .content(expectedContent.getPath(), new File(folder.getRoot(), "actual_content.csv").getPath());
+
+        ComparisonResult count = verification.getCountResult();
+        ComparisonResult content = verification.getContentResult();
+
+        Assert.assertTrue(count.toString(), count.isMatch());
+        Assert.assertTrue(content.toString(), content.isMatch());
+        Assert.assertEquals(Arrays.asList(spec.selectQuery("dealer_code ='ZZZZ'")), hive.queries);
+        Assert.assertEquals(1, hive.connections.get());
+    }
+
+    private File write(String name, String content) throws IOException {
+
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static class FakeExecutor extends HiveQueryExecutor {
+
+        private final FakeHive hive;
+
+        FakeExecutor(FakeHive hive, int poolSize, int fetchSize) {
+            super("jdbc:hive2://localhost:10000/default", "test", "", poolSize, fetchSize);
+            this.hive = hive;
+        }
+
+        @Override
+        protected Connection openConnection() {
+            return hive.connect();
+        }
+    }
+
+    /**
+     * Query results by query text, served through java.sql proxies.
+     */
+    private static class FakeHive {
+
+        private final Map<String, List<String[]>> results = new HashMap<>();
+        private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Integer> fetchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile boolean down = false;
+
+        void rows(String query, String... rows) {
+
+            List<String[]> parsed = new ArrayList<>();
+            for (String row : rows) {
+                parsed.add(row.split("\t", -1));
+            }
+            results.put(query, parsed);
+        }
+
+        Connection connect() {
+
+            connections.incrementAndGet();
+            return proxy(Connection.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                    if (method.getName().equals("createStatement")) {
+                        return statement();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private Statement statement() {
+
+            final int[] fetchSize = {0};
+            return proxy(Statement.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                    switch (method.getName()) {
+                        case "setFetchSize":
+                            fetchSize[0] = (Integer) args[0];
+                            return null;
+                        case "execute":
+                            check();
+                            return false;
+                        case "executeQuery":
+                            check();
+                            String query = (String) args[0];
+                            queries.add(query);
+                            fetchSizes.add(fetchSize[0]);
+                            List<String[]> rows = results.get(query);
+                            if (rows == null) {
+                                throw new SQLException("Table not found: " + query);
+                            }
+                            return resultSet(rows);
+                        default:
+                            return null;
+                    }
+                }
+            });
+        }
+
+        private ResultSet resultSet(final List<String[]> rows) {
+
+            final int columns = rows.isEmpty() ? 1 : rows.get(0).length;
+            final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("getColumnCount") ? columns : null;
+                }
+            });
+            final int[] position = {-1};
+            return proxy(ResultSet.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return metaData;
+                        case "next":
+                            return ++position[0] < rows.size();
+                        case "getString":
+                        case "getObject":
+                            return rows.get(position[0])[(Integer) args[0] - 1];
+                        default:
+                            return null;
+                    }
+                }
+            });
+        }
+
+        private void check() throws SQLException {
+            if (down) {
+                throw new SQLException("Connection reset");
+            }
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.compare.ColumnSpec;
+import com.cat.ddsw.base.compare.ColumnType;
+import com.cat.ddsw.base.compare.RowSink;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.base.fixture.DealerPartition;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The SELECT of a {@link TableSpec} rewritten into Hive aggregates, so the cluster reduces the result to one small
+ * row and only that row is fetched, see HiveResultVerifier.verifyPushdown.
+ *
+ * The aggregate row holds the row count, two order independent sums of row hashes and, per compared column, the
+ * nulls, min and max, plus the sum of DECIMAL columns. The row hashes are Hive's hash() over the columns as
+ * strings, once in column order and once reversed, so a single 32 bit collision doesn't hide a change. The bucket
+ * queries group the same hash by pmod(hash, buckets), to fetch only the rows of the buckets that differ.
+ *
+ * ####IMPORTANT####
+ * #Ignored columns are left out. Column Specs with tolerances can't be verified by aggregates, see isComparable.
+ * #STRING columns are aggregated with the dealer code of the build replaced by ZZZZ, like
+ * # {@link DealerPartition#normalize(String)} does with fetched rows, so the aggregates are the same in every build.
+ * #{@link #bucketOf(String, int)} puts a fetched row in the bucket Hive put it in by mirroring hash() on the text
+ * # the JDBC driver returns. Timestamps and decimals are formatted by JDBC differently than by a cast to string,
+ * # see fieldText, the mirror is checked when the digest is recorded.
+ */
+public class PushdownQuery {
+
+    static final String rowsLabel = "rows";
+    static final String hashLabel = "hash";
+    static final String reverseHashLabel = "hash2";
+
+    private static final String nullValue = "null";
+
+    private final TableSpec spec;
+    private final String where;
+    private final DealerPartition dealerPartition;
+    private final List<ColumnSpec> compared = new ArrayList<>();
+    private final List<Integer> positions = new ArrayList<>();
+
+    public PushdownQuery(TableSpec spec, String where, DealerPartition dealerPartition) {
+
+        this.spec = spec;
+        this.where = where;
+        this.dealerPartition = dealerPartition;
+        List<ColumnSpec> columns = spec.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            if (!columns.get(i).isIgnored()) {
+                compared.add(columns.get(i));
+                positions.add(i);
+            }
+        }
+    }
+
+    /**
+     * False when the spec has tolerances or compares no column, aggregates only confirm exact results.
+     */
+    public static boolean isComparable(TableSpec spec) {
+
+        boolean any = false;
+        for (ColumnSpec column : spec.getColumns()) {
+            if (!column.isIgnored()) {
+                if (column.getTolerance() != 0) {
+                    return false;
+                }
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Buckets for a result of this many rows, a few thousand rows each, at least 16 and at most 1024.
+     */
+    public static int bucketCount(long rows) {
+        return (int) Math.max(16, Math.min(1024, Long.highestOneBit(Math.max(1, rows / 2048))));
+    }
+
+    /**
+     * Labels of the aggregate row, e.g. rows, hash, hash2, tot_invc_amt.nulls, tot_invc_amt.min, ...
+     */
+    public List<String> labels() {
+
+        List<String> labels = new ArrayList<>();
+        labels.add(rowsLabel);
+        labels.add(hashLabel);
+        labels.add(reverseHashLabel);
+        for (ColumnSpec column : compared) {
+            labels.add(column.getName() + ".nulls");
+            labels.add(column.getName() + ".min");
+            labels.add(column.getName() + ".max");
+            if (column.getType() == ColumnType.DECIMAL) {
+                labels.add(column.getName() + ".sum");
+            }
+        }
+        return labels;
+    }
+
+    /**
+     * The single row aggregate query, its columns in the order of {@link #labels()}.
+     */
+    public String digestQuery() {
+
+        StringBuilder query = new StringBuilder("select count(*), ")
+                .append("sum(cast(").append(rowHash(false)).append(" as bigint)), ")
+                .append("sum(cast(").append(rowHash(true)).append(" as bigint))");
+        for (ColumnSpec column : compared) {
+            String value = column.getType() == ColumnType.STRING ? hashed(column) : column.getName();
+            query.append(", sum(if(").append(column.getName()).append(" is null, 1, 0))")
+                    .append(", min(").append(value).append("), max(").append(value).append(')');
+            if (column.getType() == ColumnType.DECIMAL) {
+                query.append(", sum(").append(column.getName()).append(')');
+            }
+        }
+        return query.append(from()).toString();
+    }
+
+    /**
+     * The aggregate row by label.
+     */
+    public Map<String, String> values(String row) {
+
+        List<String> labels = labels();
+        String[] fields = row.split(HiveQueryExecutor.defaultDelimiter, -1);
+        if (fields.length != labels.size()) {
+            throw new IllegalArgumentException("Aggregate row of " + spec.getTable() + " has " + fields.length
+                    + " values instead of " + labels.size());
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            values.put(labels.get(i), fields[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Bucket, rows and both hash sums of every bucket holding rows.
+     */
+    public String bucketQuery(int bucketCount) {
+
+        String bucket = bucket(bucketCount);
+        return "select " + bucket + ", count(*), sum(cast(" + rowHash(false) + " as bigint)), sum(cast("
+                + rowHash(true) + " as bigint))" + from() + " group by " + bucket;
+    }
+
+    /**
+     * Rows of the {@link #bucketQuery(int)} by bucket, as "rows,hash,hash2".
+     */
+    public static Map<Integer, String> buckets(List<String> bucketRows) {
+
+        Map<Integer, String> buckets = new TreeMap<>();
+        for (String row : bucketRows) {
+            String[] fields = row.split(HiveQueryExecutor.defaultDelimiter, -1);
+            buckets.put(Integer.parseInt(fields[0]), fields[1] + "," + fields[2] + "," + fields[3]);
+        }
+        return buckets;
+    }
+
+    /**
+     * The spec's SELECT limited to the rows of the buckets.
+     */
+    public String bucketRowsQuery(int bucketCount, BitSet buckets) {
+
+        StringBuilder in = new StringBuilder();
+        for (int bucket = buckets.nextSetBit(0); bucket >= 0; bucket = buckets.nextSetBit(bucket + 1)) {
+            in.append(in.length() == 0 ? "" : ", ").append(bucket);
+        }
+        return spec.selectQuery(null) + " where " + (where == null ? "" : "(" + where + ") and ")
+                + bucket(bucketCount) + " in (" + in + ")";
+    }
+
+    /**
+     * Bucket Hive puts the fetched row in, see {@link #bucketQuery(int)}.
+     */
+    public int bucketOf(String row, int bucketCount) {
+        return pmod(rowHashes(row)[0], bucketCount);
+    }
+
+    /**
+     * Empty mirror of the {@link #bucketQuery(int)}, taken over fetched rows.
+     */
+    BucketMirror mirror(int bucketCount) {
+        return new BucketMirror(bucketCount);
+    }
+
+    /**
+     * Hive's hash() of the row and of the row reversed.
+     */
+    int[] rowHashes(String row) {
+
+        String[] fields = row.split(HiveQueryExecutor.defaultDelimiter, -1);
+        int hash = 0;
+        int reverseHash = 0;
+        for (int i = 0; i < compared.size(); i++) {
+            int position = positions.get(i);
+            hash = hash * 31 + stringHash(position < fields.length ? fieldText(compared.get(i), fields[position]) : null);
+            int reverse = positions.get(compared.size() - 1 - i);
+            reverseHash = reverseHash * 31 + stringHash(reverse < fields.length
+                    ? fieldText(compared.get(compared.size() - 1 - i), fields[reverse]) : null);
+        }
+        return new int[]{hash, reverseHash};
+    }
+
+    /**
+     * The field as Hive casts the column to string. JDBC returns timestamps with ".0" for whole seconds and
+     * decimals as BigDecimal.toString, a cast to string drops the ".0" and writes the decimal plain without
+     * trailing zeros.
+     */
+    static String fieldText(ColumnSpec column, String field) {
+
+        if (field.equals(nullValue)) {
+            return null;
+        }
+        if (column.getType() == ColumnType.TIMESTAMP && field.endsWith(".0")) {
+            return field.substring(0, field.length() - 2);
+        }
+        if (column.getType() == ColumnType.DECIMAL) {
+            try {
+                BigDecimal value = new BigDecimal(field);
+                return value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException e) {
+                return field;
+            }
+        }
+        return field;
+    }
+
+    /**
+     * Hive's hash of a string: the bytes folded like String.hashCode, which it equals for ascii. 0 for null.
+     */
+    static int stringHash(String value) {
+
+        if (value == null) {
+            return 0;
+        }
+        int hash = 0;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash = hash * 31 + b;
+        }
+        return hash;
+    }
+
+    static int pmod(int value, int divisor) {
+        return ((value % divisor) + divisor) % divisor;
+    }
+
+    private String rowHash(boolean reversed) {
+
+        StringBuilder hash = new StringBuilder("hash(");
+        for (int i = 0; i < compared.size(); i++) {
+            hash.append(i == 0 ? "" : ", ").append(hashed(compared.get(reversed ? compared.size() - 1 - i : i)));
+        }
+        return hash.append(')').toString();
+    }
+
+    private String bucket(int bucketCount) {
+        return "pmod(" + rowHash(false) + ", " + bucketCount + ")";
+    }
+
+    /**
+     * The column as string, STRING columns with the dealer code of the build as ZZZZ.
+     */
+    private String hashed(ColumnSpec column) {
+
+        String text = "cast(" + column.getName() + " as string)";
+        if (column.getType() != ColumnType.STRING || !dealerPartition.isRewriting()) {
+            return text;
+        }
+        // Whole words only, like DealerPartition.replace
+        return "regexp_replace(" + text + ", '(?<![A-Za-z0-9])" + dealerPartition.getCode() + "(?![A-Za-z0-9])', '"
+                + DealerPartition.fixtureCode + "')";
+    }
+
+    private String from() {
+        return " from " + spec.getTable() + (where == null ? "" : " where " + where);
+    }
+
+    /**
+     * Row count and hash sums per bucket of the rows it is given, "rows,hash,hash2" like {@link #buckets(List)}.
+     */
+    class BucketMirror implements RowSink {
+
+        private final int bucketCount;
+        private final Map<Integer, long[]> buckets = new TreeMap<>();
+
+        BucketMirror(int bucketCount) {
+            this.bucketCount = bucketCount;
+        }
+
+        @Override
+        public boolean accept(String row) {
+
+            int[] hashes = rowHashes(row);
+            int bucket = pmod(hashes[0], bucketCount);
+            long[] sums = buckets.get(bucket);
+            if (sums == null) {
+                sums = new long[3];
+                buckets.put(bucket, sums);
+            }
+            sums[0]++;
+            sums[1] += hashes[0];
+            sums[2] += hashes[1];
+            return true;
+        }
+
+        @Override
+        public void finish(boolean exhausted) {
+        }
+
+        Map<Integer, String> getBuckets() {
+
+            Map<Integer, String> result = new TreeMap<>();
+            for (Map.Entry<Integer, long[]> bucket : buckets.entrySet()) {
+                long[] sums = bucket.getValue();
+                result.put(bucket.getKey(), sums[0] + "," + sums[1] + "," + sums[2]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.base.fixture.DealerPartition;
+import com.cat.ddsw.base.golden.PushdownDigest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregate queries built from a Column Spec and the client side mirror of their hash buckets, no Hive needed.
+ */
+public class PushdownQueryTest {
+
+    private static final TableSpec spec = new TableSpec("ddsw_qa.invoice_current")
+            .columns("invoice_number", "tot_invc_amt", "invoice_dt", "load_ts", "dealer_code")
+            .decimal("tot_invc_amt")
+            .timestamp("invoice_dt", "load_ts")
+            .ignore("load_ts");
+
+    @Test
+    public void testDigestQueryAggregatesTheComparedColumns() {
+
+        PushdownQuery query = new PushdownQuery(spec, "dealer_code='ZQ01'", new DealerPartition("ZQ01"));
+        String digest = query.digestQuery();
+
+        Assert.assertTrue(digest, digest.startsWith("select count(*), sum(cast(hash("));
+        Assert.assertTrue(digest, digest.endsWith(" from ddsw_qa.invoice_current where dealer_code='ZQ01'"));
+        Assert.assertTrue(digest, digest.contains("sum(tot_invc_amt)"));
+        Assert.assertTrue(digest, digest.contains("regexp_replace(cast(dealer_code as string), "
+                + "'(?<![A-Za-z0-9])ZQ01(?![A-Za-z0-9])', 'ZZZZ')"));
+        Assert.assertFalse(digest, digest.contains("load_ts"));
+        Assert.assertFalse(digest, digest.contains("sum(invoice_number)"));
+
+        // rows, hash, hash2, then nulls/min/max per column and the sum of the decimal
+        Assert.assertEquals(3 + 3 * 4 + 1, query.labels().size());
+        Assert.assertEquals("ddsw_qa.invoice_current", HiveQueryExecutor.table(digest));
+
+        Assert.assertFalse(new PushdownQuery(spec, null, new DealerPartition("ZZZZ")).digestQuery().contains("regexp"));
+        Assert.assertFalse(PushdownQuery.isComparable(new TableSpec("ddsw_qa.invoice_current")
+                .columns("invoice_number", "tot_invc_amt").decimal("tot_invc_amt").tolerance("tot_invc_amt", 0.01)));
+    }
+
+    @Test
+    public void testBucketRowsQueryKeepsTheFilter() {
+
+        PushdownQuery query = new PushdownQuery(spec, "dealer_code='ZQ01' or dealer_code='ZZZZ'",
+                new DealerPartition("ZQ01"));
+        BitSet buckets = new BitSet();
+        buckets.set(3);
+        buckets.set(17);
+
+        String rows = query.bucketRowsQuery(64, buckets);
+        Assert.assertTrue(rows, rows.startsWith("select invoice_number, tot_invc_amt, invoice_dt, load_ts, dealer_code "
+                + "from ddsw_qa.invoice_current where (dealer_code='ZQ01' or dealer_code='ZZZZ') and pmod(hash("));
+        Assert.assertTrue(rows, rows.endsWith(", 64) in (3, 17)"));
+        Assert.assertTrue(query.bucketQuery(64).endsWith(" group by pmod(" + rows.substring(rows.indexOf("hash("),
+                rows.indexOf(", 64)")) + ", 64)"));
+    }
+
+    @Test
+    public void testHashMirrorsHiveOnTheFetchedText() {
+
+        Assert.assertEquals("INV1".hashCode(), PushdownQuery.stringHash("INV1"));
+        Assert.assertEquals(0, PushdownQuery.stringHash(null));
+        Assert.assertEquals(63, PushdownQuery.pmod(-65, 64));
+
+        PushdownQuery query = new PushdownQuery(spec, null, new DealerPartition("ZZZZ"));
+        // JDBC text of a whole second timestamp and a decimal with trailing zeros hash like Hive's casts
+        Assert.assertArrayEquals(query.rowHashes("INV1\t123.45\t2015-08-31 10:00:00\tx\tZZZZ"),
+                query.rowHashes("INV1\t123.450\t2015-08-31 10:00:00.0\ty\tZZZZ"));
+        Assert.assertEquals(31 * 31 * 31 * "INV1".hashCode() + 31 * 31 * "123.45".hashCode()
+                        + 31 * "2015-08-31 10:00:00".hashCode(),
+                query.rowHashes("INV1\t123.45\t2015-08-31 10:00:00\tx\tnull")[0]);
+    }
+
+    @Test
+    public void testOnlyTheBucketsOfChangedRowsDiffer() {
+
+        PushdownQuery query = new PushdownQuery(spec, null, new DealerPartition("ZZZZ"));
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(String.format("INV%08d\t%d.%02d\t2015-%02d-%02d 10:00:00\t2016-01-01 00:00:00\tZZZZ", i,
+                    i % 1000, i % 100, 1 + i % 12, 1 + i % 28));
+        }
+        int bucketCount = PushdownQuery.bucketCount(rows.size());
+        Assert.assertEquals(16, bucketCount);
+
+        PushdownDigest expected = new PushdownDigest(spec, Collections.<String, String>emptyMap(), bucketCount,
+                buckets(query, bucketCount, rows), true);
+
+        List<String> actualRows = new ArrayList<>(rows);
+        String changed = actualRows.set(1234, rows.get(1234).replace("ZZZZ", "ZZZ1"));
+        Collections.reverse(actualRows);
+        BitSet differing = expected.differingBuckets(buckets(query, bucketCount, actualRows));
+
+        BitSet changedBuckets = new BitSet();
+        changedBuckets.set(query.bucketOf(changed, bucketCount));
+        changedBuckets.set(query.bucketOf(actualRows.get(rows.size() - 1 - 1234), bucketCount));
+        Assert.assertEquals(changedBuckets, differing);
+
+        // The load timestamp is ignored, it doesn't move a row
+        Assert.assertEquals(query.bucketOf(rows.get(0), bucketCount),
+                query.bucketOf(rows.get(0).replace("2016-01-01", "2017-02-02"), bucketCount));
+    }
+
+    private static Map<Integer, String> buckets(PushdownQuery query, int bucketCount, List<String> rows) {
+
+        PushdownQuery.BucketMirror mirror = query.mirror(bucketCount);
+        for (String row : rows) {
+            mirror.accept(row);
+        }
+        return mirror.getBuckets();
+    }
+}
@@ -0,0 +1,126 @@
+package com.cat.ddsw.base.hive;
+
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.TableSpec;
+
+import java.io.IOException;
+
+/**
+ * Count and Content checks of one table and filter, run together on a single Hive session the first time a
+ * result is asked for. Test methods of a class share the instance and each asserts on its own result.
+ *
+ * With a Content check the count is taken from the rows fetched for it, so count and content cost one query.
+ * Only a Count check on its own runs "select count(*)".
+ *
+ * ####IMPORTANT####
+ * #The Expected count file holds the count on a single line, as written by executeHiveQuery.
+ * #goldenCount and goldenContent check against goldens of the GoldenStore instead of Expected files, the Content
+ * # check is then confirmed by digest, see HiveResultVerifier.verifyGolden.
+ * #pushdownContent checks against the same goldens by Hive aggregates, the rows are only fetched when they differ,
+ * # see HiveResultVerifier.verifyPushdown. The count is then the row count of the aggregates.
+ */
+public class TableVerification {
+
+    private final HiveResultVerifier verifier;
+    private final TableSpec spec;
+    private final String where;
+
+    private String expectedCountFile = null;
+    private String actualCountFile = null;
+    private String expectedContentFile = null;
+    private String actualContentFile = null;
+    private String countGolden = null;
+    private String contentGolden = null;
+    private boolean pushdown = false;
+
+    private boolean done = false;
+    private IOException failure = null;
+    private ComparisonResult countResult = null;
+    private ComparisonResult contentResult = null;
+
+    TableVerification(HiveResultVerifier verifier, TableSpec spec, String where) {
+        this.verifier = verifier;
+        this.spec = spec;
+        this.where = where;
+    }
+
+    public synchronized TableVerification count(String expectedDataFile, String actualDataFile) {
+        this.expectedCountFile = expectedDataFile;
+        this.actualCountFile = actualDataFile;
+        return this;
+    }
+
+    public synchronized TableVerification content(String expectedDataFile, String actualDataFile) {
+        this.expectedContentFile = expectedDataFile;
+        this.actualContentFile = actualDataFile;
+        return this;
+    }
+
+    public synchronized TableVerification goldenCount(String goldenName, String actualDataFile) {
+        this.countGolden = goldenName;
+        this.actualCountFile = actualDataFile;
+        return this;
+    }
+
+    public synchronized TableVerification goldenContent(String goldenName, String actualDataFile) {
+        this.contentGolden = goldenName;
+        this.actualContentFile = actualDataFile;
+        this.pushdown = false;
+        return this;
+    }
+
+    public synchronized TableVerification pushdownContent(String goldenName, String actualDataFile) {
+        goldenContent(goldenName, actualDataFile);
+        this.pushdown = true;
+        return this;
+    }
+
+    public ComparisonResult getCountResult() throws IOException {
+        run();
+        return countResult;
+    }
+
+    public ComparisonResult getContentResult() throws IOException {
+        run();
+        return contentResult;
+    }
+
+    /**
+     * Runs the checks once, later calls get the same results (or the same failure).
+     */
+    public synchronized void run() throws IOException {
+
+        if (!done) {
+            done = true;
+            try (HiveSession session = verifier.getExecutor().openSession()) {
+                if (contentGolden != null && pushdown) {
+                    contentResult = verifier.verifyPushdown(session, spec, where, contentGolden, actualContentFile);
+                } else if (contentGolden != null) {
+                    contentResult = verifier.verifyGolden(session, spec, where, contentGolden, actualContentFile);
+                } else if (expectedContentFile != null) {
+                    contentResult = verifier.verify(session, spec, where, expectedContentFile, actualContentFile);
+                }
+                if (countGolden != null) {
+                    countResult = contentResult == null
+                            ? verifier.verifyGolden(session, countQuery(), countGolden, actualCountFile)
+                            : verifier.verifyCountGolden(contentResult.getActualRowCount(), countGolden,
+                            actualCountFile);
+                } else if (expectedCountFile != null) {
+                    countResult = contentResult == null
+                            ? verifier.verify(session, countQuery(), expectedCountFile, actualCountFile)
+                            : verifier.verifyCount(contentResult.getActualRowCount(), expectedCountFile,
+                            actualCountFile);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private String countQuery() {
+        return "select count(*) from " + spec.getTable() + (where == null ? "" : " where " + where);
+    }
+}
@@ -0,0 +1,365 @@
+package com.cat.ddsw.base.local;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.w3c.dom.Element;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs the action nodes of local mode Workflows on this machine.
+ *
+ * ####IMPORTANT####
+ * #shell: the exec with its arguments and env-vars, in a work directory holding the file elements. HADOOP_CONF_DIR
+ * # points at the local mode configuration, so hadoop/hdfs commands in the scripts see the same local HDFS.
+ * #hive, hive2: the script on the embedded Hive, the params set as hivevar.
+ * #java: the main class in a child JVM with the test classpath, the Workflow lib directory and oozie.libpath.
+ * #fs: delete, mkdir, move, chmod and touchz. prepare sections of the other actions are honoured too.
+ * #email is skipped. Any other action type (map-reduce, pig, sqoop, sub-workflow ...) ends in ERROR.
+ */
+class LocalActionRunner {
+
+    /**
+     * Failure of an action, ends the node in ERROR with the code and message.
+     */
+    static class ActionException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String errorCode;
+
+        ActionException(String errorCode, String message) {
+            super(message);
+            this.errorCode = errorCode;
+        }
+
+        ActionException(String errorCode, String message, Throwable cause) {
+            super(message, cause);
+            this.errorCode = errorCode;
+        }
+
+        String getErrorCode() {
+            return errorCode;
+        }
+    }
+
+    private final LocalCluster cluster;
+    private final Configuration conf;
+
+    LocalActionRunner(LocalCluster cluster) {
+        this.cluster = cluster;
+        this.conf = cluster.getConf();
+    }
+
+    /**
+     * Runs the action of the node.
+     *
+     * @param appPath Workflow application directory relative paths are resolved against
+     * @return the captured output, empty unless the action has capture-output
+     */
+    Properties run(String jobId, LocalWorkflow.WorkflowNode node, WorkflowExpression.Context context, String appPath,
+                   StringBuffer log) throws ActionException {
+
+        Element action = node.getActionElement();
+        String type = action == null ? "none" : action.getLocalName();
+        try {
+            switch (type) {
+                case "shell":
+                    prepare(action, context, appPath);
+                    return shell(jobId, node.name, action, context, appPath, log);
+                case "hive":
+                case "hive2":
+                    prepare(action, context, appPath);
+                    hive(action, context, appPath, log);
+                    return new Properties();
+                case "java":
+                    prepare(action, context, appPath);
+                    return java(jobId, node.name, action, context, appPath, log);
+                case "fs":
+                    fs(action, context, appPath);
+                    return new Properties();
+                case "email":
+                    log.append("email to ").append(value(action, "to", context)).append(" skipped in local mode\n");
+                    return new Properties();
+                default:
+                    throw new ActionException("LOCAL_UNSUPPORTED", "Action type " + type + " of " + node.name
+                            + " is not supported in local mode");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ActionException("EL_ERROR", e.getMessage(), e);
+        } catch (IOException e) {
+            throw new ActionException("LOCAL_IO", String.valueOf(e), e);
+        }
+    }
+
+    private Properties shell(String jobId, String node, Element action, WorkflowExpression.Context context,
+                             String appPath, StringBuffer log) throws IOException, ActionException {
+
+        File work = workDirectory(jobId, node, action, context, appPath);
+        String exec = value(action, "exec", context);
+        File local = new File(work, exec);
+
+        List<String> command = new ArrayList<>();
+        command.add(local.isFile() ? local.getAbsolutePath() : exec);
+        command.addAll(values(action, "argument", context));
+
+        ProcessBuilder builder = new ProcessBuilder(command).directory(work);
+        for (String variable : values(action, "env-var", context)) {
+            int separator = variable.indexOf('=');
+            if (separator > 0) {
+                builder.environment().put(variable.substring(0, separator), variable.substring(separator + 1));
+            }
+        }
+
+        String output = execute(builder, log);
+        return action.getElementsByTagNameNS("*", "capture-output").getLength() > 0 ? load(output) : new Properties();
+    }
+
+    private Properties java(String jobId, String node, Element action, WorkflowExpression.Context context,
+                            String appPath, StringBuffer log) throws IOException, ActionException {
+
+        File work = workDirectory(jobId, node, action, context, appPath);
+        File output = new File(work, "output.properties");
+
+        StringBuilder classpath = new StringBuilder(cluster.getConfDirectory().getAbsolutePath());
+        classpath.append(File.pathSeparator).append(System.getProperty("java.class.path"));
+        List<Path> libraries = new ArrayList<>();
+        libraries.add(new Path(resolve(appPath, "lib")));
+        String libPath = context.property("oozie.libpath");
+        if (libPath != null) {
+            for (String path : libPath.split(",")) {
+                libraries.add(new Path(resolve(appPath, path.trim())));
+            }
+        }
+        for (Path library : libraries) {
+            FileSystem fileSystem = library.getFileSystem(conf);
+            if (fileSystem.isDirectory(library)) {
+                for (FileStatus jar : fileSystem.listStatus(library)) {
+                    if (jar.getPath().getName().endsWith(".jar")) {
+                        classpath.append(File.pathSeparator).append(cluster.toLocalFile(jar.getPath()).getAbsolutePath());
+                    }
+                }
+            }
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        String javaOpts = value(action, "java-opts", context);
+        if (javaOpts != null) {
+            for (String option : javaOpts.split("\\s+")) {
+                if (!option.isEmpty()) {
+                    command.add(option);
+                }
+            }
+        }
+        command.addAll(values(action, "java-opt", context));
+        command.add("-Doozie.action.output.properties=" + output.getAbsolutePath());
+        command.add("-cp");
+        command.add(classpath.toString());
+        command.add(value(action, "main-class", context));
+        command.addAll(values(action, "arg", context));
+
+        execute(new ProcessBuilder(command).directory(work), log);
+        if (action.getElementsByTagNameNS("*", "capture-output").getLength() == 0 || !output.isFile()) {
+            return new Properties();
+        }
+        Properties data = new Properties();
+        try (InputStream in = new FileInputStream(output)) {
+            data.load(in);
+        }
+        return data;
+    }
+
+    private void hive(Element action, WorkflowExpression.Context context, String appPath, StringBuffer log)
+            throws IOException, ActionException {
+
+        Path script = new Path(resolve(appPath, value(action, "script", context)));
+        String text;
+        try (InputStream in = script.getFileSystem(conf).open(script)) {
+            text = new String(LocalCluster.readFully(in), StandardCharsets.UTF_8);
+        }
+
+        Properties variables = new Properties();
+        for (String param : values(action, "param", context)) {
+            int separator = param.indexOf('=');
+            if (separator > 0) {
+                variables.setProperty(param.substring(0, separator), param.substring(separator + 1));
+            }
+        }
+
+        try {
+            cluster.executeHive(text, variables, log);
+        } catch (SQLException e) {
+            throw new ActionException("HIVE_ERROR", script.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void fs(Element action, WorkflowExpression.Context context, String appPath) throws IOException {
+
+        for (Element operation : LocalWorkflow.children(action)) {
+            Path path = operation.hasAttribute("path")
+                    ? new Path(resolve(appPath, attribute(operation, "path", context))) : null;
+            switch (operation.getLocalName()) {
+                case "delete":
+                    path.getFileSystem(conf).delete(path, true);
+                    break;
+                case "mkdir":
+                    path.getFileSystem(conf).mkdirs(path);
+                    break;
+                case "touchz":
+                    path.getFileSystem(conf).create(path, true).close();
+                    break;
+                case "move":
+                    Path source = new Path(resolve(appPath, attribute(operation, "source", context)));
+                    Path target = new Path(resolve(appPath, attribute(operation, "target", context)));
+                    FileSystem fileSystem = source.getFileSystem(conf);
+                    fileSystem.mkdirs(target.getParent());
+                    if (!fileSystem.rename(source, target)) {
+                        throw new IOException("Moving " + source + " to " + target + " failed");
+                    }
+                    break;
+                case "chmod":
+                    String permissions = attribute(operation, "permissions", context);
+                    if (permissions.matches("[0-7]{3,4}")) {
+                        path.getFileSystem(conf).setPermission(path, new FsPermission(Short.parseShort(permissions, 8)));
+                    }
+                    break;
+                default:
+                    throw new IOException("fs operation " + operation.getLocalName() + " is not supported in local mode");
+            }
+        }
+    }
+
+    private void prepare(Element action, WorkflowExpression.Context context, String appPath) throws IOException {
+
+        for (Element section : LocalWorkflow.children(action)) {
+            if (!section.getLocalName().equals("prepare")) {
+                continue;
+            }
+            for (Element operation : LocalWorkflow.children(section)) {
+                Path path = new Path(resolve(appPath, attribute(operation, "path", context)));
+                if (operation.getLocalName().equals("delete")) {
+                    path.getFileSystem(conf).delete(path, true);
+                } else if (operation.getLocalName().equals("mkdir")) {
+                    path.getFileSystem(conf).mkdirs(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * A fresh work directory for the node holding the file and archive elements, under their link names.
+     */
+    private File workDirectory(String jobId, String node, Element action, WorkflowExpression.Context context,
+                               String appPath) throws IOException {
+
+        File work = cluster.getWorkDirectory(jobId, node);
+        FileUtil.fullyDelete(work);
+        if (!work.mkdirs()) {
+            throw new IOException("Cannot create work directory " + work);
+        }
+
+        List<String> files = values(action, "file", context);
+        files.addAll(values(action, "archive", context));
+        for (String file : files) {
+            int link = file.indexOf('#');
+            Path source = new Path(resolve(appPath, link < 0 ? file : file.substring(0, link)));
+            File target = new File(work, link < 0 ? source.getName() : file.substring(link + 1));
+            FileUtil.copy(source.getFileSystem(conf), source, target, false, conf);
+            target.setExecutable(true);
+        }
+        return work;
+    }
+
+    /**
+     * Runs the process with the local mode environment, its output goes to the job log.
+     *
+     * @return the output of the process
+     */
+    private String execute(ProcessBuilder builder, StringBuffer log) throws IOException, ActionException {
+
+        Map<String, String> environment = builder.environment();
+        environment.put("HADOOP_CONF_DIR", cluster.getConfDirectory().getAbsolutePath());
+        environment.put("DDSW_LOCAL_ROOT", cluster.getRoot().getAbsolutePath());
+        builder.redirectErrorStream(true);
+
+        Process process = builder.start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+                log.append(line).append('\n');
+            }
+        }
+
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new ActionException("LOCAL_INTERRUPTED", "Interrupted running " + builder.command().get(0));
+        }
+        if (exitCode != 0) {
+            throw new ActionException("1", builder.command().get(0) + " exit code [" + exitCode + "]");
+        }
+        return output.toString();
+    }
+
+    /**
+     * The path as a local file URI: schemeless absolute paths are on the local HDFS, relative ones in the
+     * application directory.
+     */
+    private String resolve(String appPath, String path) {
+
+        if (path.contains(":/")) {
+            return path;
+        }
+        if (path.startsWith("/")) {
+            return cluster.getFileSystemUri() + path;
+        }
+        return appPath + "/" + path;
+    }
+
+    private static Properties load(String output) throws IOException {
+
+        Properties data = new Properties();
+        data.load(new StringReader(output));
+        return data;
+    }
+
+    private static String value(Element parent, String name, WorkflowExpression.Context context) {
+        return WorkflowExpression.substitute(LocalWorkflow.text(parent, name), context);
+    }
+
+    private static List<String> values(Element parent, String name, WorkflowExpression.Context context) {
+
+        List<String> values = new ArrayList<>();
+        for (String text : LocalWorkflow.texts(parent, name)) {
+            values.add(WorkflowExpression.substitute(text, context));
+        }
+        return values;
+    }
+
+    private static String attribute(Element element, String name, WorkflowExpression.Context context) {
+        return WorkflowExpression.substitute(element.getAttribute(name), context);
+    }
+}
@@ -0,0 +1,416 @@
+package com.cat.ddsw.base.local;
+
+import com.cat.ddsw.base.DDSWProperties;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Local execution mode: HDFS, Oozie and Hive stand-ins inside the test JVM, so a developer run needs no cluster,
+ * no VPN and no slot in the ddsw queue.
+ *
+ * The local HDFS is a directory laid out like HDFS (build/ddsw-local/projects/ddsw/qa/...), reached through a
+ * viewfs mount table. Workflows run on the {@link LocalOozieServer}, Hive is an embedded HiveServer2 with a Derby
+ * metastore under the same directory. Everything is started once per JVM, when oozie.properties is first read, and
+ * shared by all Test classes of the JVM.
+ *
+ * ####IMPORTANT####
+ * #Switched on with EXECUTION_MODE=local in oozie.properties. The framework then talks to the local stand-ins
+ * # instead of HDFS_HOST, OOZIE_HOST and HIVE_HOST, the Test classes don't change.
+ * #Settings in oozie.properties (all optional),
+ * # LOCAL_ROOT=build/ddsw-local, LOCAL_MOUNTS=/projects,/user,/tmp, LOCAL_OOZIE_PORT=0, LOCAL_WORKFLOW_THREADS=3
+ * # LOCAL_SEED_DIR, a directory laid out like the local HDFS (Workflow applications, libraries, Test data), copied
+ * #  into it at startup where it changed
+ * # LOCAL_HIVE_ENABLED=true, LOCAL_HIVE_INIT_SCRIPTS, comma separated Hive scripts on the local HDFS (table DDL)
+ * #  run when the metastore is created. Delete LOCAL_ROOT/metastore_db to create it again.
+ * #The Derby metastore takes one JVM at a time, oozie-test/build.gradle runs the tests in a single fork in local mode.
+ * # The instance of the JVM is never stopped, the CleanupQueue still drops partitions on the embedded Hive while the
+ * # JVM exits. Derby is then shut down by JVM exit and recovers from its log on the next start.
+ * #Hive needs hive-service on the test runtime classpath (oozie-test/build.gradle), its queries run in the local
+ * # MapReduce runner. Paths in the Hive scripts must carry the ${nameNode} prefix to land in the local HDFS.
+ */
+public class LocalCluster {
+
+    public static final String executionModeKey = "EXECUTION_MODE";
+    public static final String local = "local";
+
+    private static final String mountTable = "ddsw";
+    private static final String hiveDriver = "org.apache.hive.jdbc.HiveDriver";
+
+    private static LocalCluster instance = null;
+
+    private final File root;
+    private final String fileSystemUri;
+    private final Configuration conf;
+    private final FileSystem fileSystem;
+    private final File confDirectory;
+    private final String hiveDatabase;
+    private final String user;
+    private LocalOozieServer oozieServer = null;
+    private boolean hiveStarted = false;
+
+    LocalCluster(File root, DDSWProperties properties) throws IOException {
+
+        this.root = root.getAbsoluteFile();
+        this.fileSystemUri = "file://" + this.root.toURI().getPath().replaceAll("/$", "");
+        this.hiveDatabase = properties.getProperty("HIVE_DATABASE", "default");
+        this.user = properties.getProperty("OOZIE_USER", System.getProperty("user.name"));
+        this.confDirectory = new File(this.root, "conf");
+
+        conf = new Configuration();
+        Configuration site = new Configuration(false);
+        site.set("fs.defaultFS", "viewfs://" + mountTable + "/");
+        site.set("mapreduce.framework.name", "local");
+        for (String mount : properties.getProperty("LOCAL_MOUNTS", "/projects,/user,/tmp").split(",")) {
+            String link = "fs.viewfs.mounttable." + mountTable + ".link." + mount.trim();
+            String target = fileSystemUri + mount.trim();
+            new File(this.root, mount.trim()).mkdirs();
+            conf.set(link, target);
+            site.set(link, target);
+        }
+
+        // hadoop commands of the shell actions and the java action JVMs see the same local HDFS
+        confDirectory.mkdirs();
+        try (OutputStream out = new FileOutputStream(new File(confDirectory, "core-site.xml"))) {
+            site.writeXml(out);
+        }
+
+        try {
+            fileSystem = FileSystem.get(URI.create("viewfs://" + mountTable + "/"), conf, user);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted opening the local HDFS", e);
+        }
+
+        String seed = properties.getProperty("LOCAL_SEED_DIR", "");
+        if (!seed.isEmpty()) {
+            System.out.println("LocalCluster: seeded " + mirror(new File(seed), this.root) + " files from " + seed);
+        }
+    }
+
+    public static boolean isEnabled(DDSWProperties properties) {
+        return local.equalsIgnoreCase(properties.getProperty(executionModeKey, "cluster"));
+    }
+
+    /**
+     * Starts the local stand-ins unless this JVM already has.
+     */
+    public static synchronized LocalCluster start(DDSWProperties properties) throws IOException {
+
+        if (instance == null) {
+            long started = System.currentTimeMillis();
+            LocalCluster cluster = new LocalCluster(new File(properties.getProperty("LOCAL_ROOT", "build/ddsw-local")),
+                    properties);
+            cluster.startOozie(properties.getInt("LOCAL_OOZIE_PORT", 0), properties.getInt("LOCAL_WORKFLOW_THREADS", 3));
+            if (properties.getBoolean("LOCAL_HIVE_ENABLED", true)) {
+                cluster.startHive(properties.getProperty("LOCAL_HIVE_INIT_SCRIPTS", ""));
+            }
+            instance = cluster;
+            System.out.println("LocalCluster: started in " + (System.currentTimeMillis() - started) + " ms on "
+                    + cluster.root);
+        }
+        return instance;
+    }
+
+    /**
+     * The stand-ins of this JVM, {@link #start(DDSWProperties)} must have run.
+     */
+    public static synchronized LocalCluster get() {
+
+        if (instance == null) {
+            throw new IllegalStateException("Local mode is not started, set " + executionModeKey + "=" + local
+                    + " in oozie.properties");
+        }
+        return instance;
+    }
+
+    /**
+     * oozie.properties pointing at the local stand-ins: OOZIE_URL, OOZIE_NOTIFICATION_HOST and HIVE_JDBC_URL.
+     */
+    public Properties localize(Properties properties) {
+
+        Properties localized = new Properties();
+        localized.putAll(properties);
+        if (oozieServer != null) {
+            localized.setProperty("OOZIE_URL", oozieServer.getOozieUrl());
+            localized.setProperty("OOZIE_NOTIFICATION_HOST", "localhost");
+        }
+        localized.setProperty("HIVE_JDBC_URL", getHiveJdbcUrl());
+        localized.setProperty("HIVE_JDBC_DRIVER", hiveDriver);
+        return localized;
+    }
+
+    void startOozie(int port, int workflowThreads) throws IOException {
+        oozieServer = new LocalOozieServer(this, port, workflowThreads);
+    }
+
+    /**
+     * Starts the embedded HiveServer2 and creates the database, on a new metastore the init scripts run too.
+     */
+    synchronized void startHive(String initScripts) throws IOException {
+
+        if (hiveStarted) {
+            return;
+        }
+        File metastore = new File(root, "metastore_db");
+        boolean created = !metastore.exists();
+
+        setDefault("javax.jdo.option.ConnectionURL", "jdbc:derby:;databaseName=" + metastore.getPath() + ";create=true");
+        setDefault("derby.stream.error.file", new File(root, "derby.log").getPath());
+        setDefault("hive.metastore.uris", "");
+        setDefault("hive.metastore.warehouse.dir", fileSystemUri + "/user/hive/warehouse");
+        setDefault("hive.metastore.schema.verification", "false");
+        setDefault("datanucleus.autoCreateSchema", "true");
+        setDefault("hive.exec.scratchdir", fileSystemUri + "/tmp/hive");
+        setDefault("hive.exec.local.scratchdir", new File(root, "tmp/hive-local").getPath());
+        setDefault("hive.downloaded.resources.dir", new File(root, "tmp/hive-resources").getPath());
+        setDefault("hive.querylog.location", new File(root, "tmp/hive-log").getPath());
+        setDefault("hive.server2.enable.doAs", "false");
+        setDefault("hive.support.concurrency", "false");
+        setDefault("hive.stats.autogather", "false");
+
+        try {
+            Class.forName(hiveDriver);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Local mode needs the Hive JDBC driver and hive-service on the classpath", e);
+        }
+
+        long started = System.currentTimeMillis();
+        try (Connection connection = DriverManager.getConnection("jdbc:hive2:///default", user, "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE IF NOT EXISTS " + hiveDatabase);
+        } catch (SQLException e) {
+            throw new IOException("Starting the embedded Hive failed", e);
+        }
+        hiveStarted = true;
+        System.out.println("LocalCluster: embedded Hive started in " + (System.currentTimeMillis() - started) + " ms");
+
+        if (created && !initScripts.isEmpty()) {
+            StringBuilder log = new StringBuilder();
+            for (String script : initScripts.split(",")) {
+                Path path = new Path(script.trim());
+                try (InputStream in = fileSystem.open(path)) {
+                    executeHive(new String(readFully(in), StandardCharsets.UTF_8), new Properties(), log);
+                } catch (SQLException e) {
+                    System.out.println(log);
+                    throw new IOException("Hive init script " + path + " failed", e);
+                }
+                System.out.println("LocalCluster: ran Hive init script " + path);
+            }
+        }
+    }
+
+    /**
+     * Runs the statements of a Hive script on a session of its own, hdfs:// locations point at the local HDFS.
+     *
+     * @param variables set as hivevar before the script runs
+     */
+    void executeHive(String script, Properties variables, Appendable log) throws SQLException, IOException {
+
+        if (!hiveStarted) {
+            throw new IOException("The embedded Hive is not started (LOCAL_HIVE_ENABLED=false)");
+        }
+        try (Connection connection = DriverManager.getConnection(getHiveJdbcUrl(), user, "");
+             Statement statement = connection.createStatement()) {
+
+            for (String name : variables.stringPropertyNames()) {
+                statement.execute("set hivevar:" + name + "=" + variables.getProperty(name));
+            }
+            for (String sql : statements(script.replaceAll("hdfs://[^/\\s'\"]*", fileSystemUri))) {
+                log.append(sql).append(";\n");
+                statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * The statements of a script, split at the semicolons outside of quotes, without -- comments.
+     */
+    static List<String> statements(String script) {
+
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quote = 0;
+        for (String line : script.split("\r?\n")) {
+            if (quote == 0 && line.trim().startsWith("--")) {
+                continue;
+            }
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quote != 0) {
+                    if (c == quote && (i == 0 || line.charAt(i - 1) != '\\')) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == ';') {
+                    add(statements, current);
+                    continue;
+                }
+                current.append(c);
+            }
+            current.append('\n');
+        }
+        add(statements, current);
+        return statements;
+    }
+
+    private static void add(List<String> statements, StringBuilder current) {
+
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * URI of the local HDFS root as the Workflows and Hive see it, e.g. file:///home/me/oozie-test/build/ddsw-local
+     */
+    public String getFileSystemUri() {
+        return fileSystemUri;
+    }
+
+    /**
+     * The local HDFS with the paths of the cluster, e.g. /projects/ddsw/qa/data/raw/nas
+     */
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    public String getHiveJdbcUrl() {
+        return "jdbc:hive2:///" + hiveDatabase;
+    }
+
+    public LocalOozieServer getOozieServer() {
+        return oozieServer;
+    }
+
+    Configuration getConf() {
+        return conf;
+    }
+
+    /**
+     * Hadoop configuration for the processes the actions start.
+     */
+    File getConfDirectory() {
+        return confDirectory;
+    }
+
+    File getWorkDirectory(String jobId, String node) {
+        return new File(root, "oozie/" + jobId + "/" + node);
+    }
+
+    /**
+     * The file behind a path of the local HDFS, given with or without the local file URI.
+     */
+    File toLocalFile(Path path) {
+
+        URI uri = path.toUri();
+        return "file".equals(uri.getScheme()) ? new File(uri.getPath()) : new File(root, uri.getPath());
+    }
+
+    /**
+     * Stops the local Oozie, shuts the Derby metastore down and closes the local HDFS. The embedded HiveServer2 has
+     * no server of its own, it lives in the JDBC connections, which are closed after every script and query.
+     */
+    public synchronized void stop() throws IOException {
+
+        if (oozieServer != null) {
+            oozieServer.stop();
+        }
+        IOException failure = null;
+        if (hiveStarted) {
+            hiveStarted = false;
+            try {
+                DriverManager.getConnection("jdbc:derby:;shutdown=true").close();
+            } catch (SQLException e) {
+                // XJ015 is how Derby reports that the engine shut down
+                if (!"XJ015".equals(e.getSQLState())) {
+                    failure = new IOException("Shutting down the Derby metastore failed", e);
+                }
+            }
+        }
+        try {
+            fileSystem.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = new IOException("Closing the local HDFS failed", e);
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void setDefault(String key, String value) {
+
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * Copies the files of the source directory that are missing or changed in the target.
+     *
+     * @return number of files copied
+     */
+    static int mirror(File source, File target) throws IOException {
+
+        if (source.isDirectory()) {
+            int copied = 0;
+            File[] children = source.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    copied += mirror(child, new File(target, child.getName()));
+                }
+            }
+            return copied;
+        }
+        if (!source.isFile()) {
+            throw new IOException("LOCAL_SEED_DIR not found: " + source);
+        }
+        if (target.isFile() && target.length() == source.length() && target.lastModified() >= source.lastModified()) {
+            return 0;
+        }
+        target.getParentFile().mkdirs();
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.COPY_ATTRIBUTES);
+        return 1;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
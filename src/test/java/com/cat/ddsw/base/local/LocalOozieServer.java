@@ -0,0 +1,519 @@
+package com.cat.ddsw.base.local;
+
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.cat.ddsw.base.oozie.OozieRest;
+import com.cat.ddsw.base.oozie.WorkflowSubmitter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.oozie.client.OozieClient;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lightweight Oozie for local mode: serves the part of the Oozie REST API OozieClient uses and runs the submitted
+ * Workflows on this machine, so the {@link WorkflowSubmitter} works against it unchanged.
+ *
+ * Each job reads the workflow.xml under oozie.wf.application.path and walks its nodes, the actions are run by the
+ * {@link LocalActionRunner}. The paths of the forks run one after the other. Re-runs with oozie.wf.rerun.failnodes
+ * skip the actions that ended OK, oozie.wf.rerun.skip.nodes the listed ones. Job notifications are sent to
+ * oozie.wf.workflow.notification.url like the real server does.
+ *
+ * ####IMPORTANT####
+ * #hdfs://<name service> in the job configuration is replaced by the local HDFS root, so ${nameNode} and the
+ * # hdfs:// directories of job.properties resolve to local files.
+ * #Jobs are kept in memory only, they are gone with the JVM.
+ */
+public class LocalOozieServer {
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final ExecutorService engine;
+    private final LocalActionRunner runner;
+    private final Configuration conf;
+    private final String fileSystemUri;
+    private final String idSuffix;
+
+    private final Map<String, LocalJob> jobs = new LinkedHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    LocalOozieServer(LocalCluster cluster, int port, int workflowThreads) throws IOException {
+
+        this.runner = new LocalActionRunner(cluster);
+        this.conf = cluster.getConf();
+        this.fileSystemUri = cluster.getFileSystemUri();
+        this.idSuffix = new SimpleDateFormat("yyMMddHHmmssSSS").format(new Date()) + "-oozie-local-W";
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 64);
+        httpExecutor = Executors.newFixedThreadPool(4, new DaemonThreadFactory("ddsw-local-oozie-http"));
+        engine = Executors.newFixedThreadPool(Math.max(1, workflowThreads), new DaemonThreadFactory("ddsw-local-oozie"));
+        server.setExecutor(httpExecutor);
+        server.createContext("/oozie", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    OozieRest.respond(exchange, 500, "text/plain", String.valueOf(e));
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * URL to hand to new OozieClient(...), OOZIE_URL in local mode.
+     */
+    public String getOozieUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/oozie";
+    }
+
+    public void stop() {
+        server.stop(0);
+        httpExecutor.shutdownNow();
+        engine.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(HttpExchange exchange) throws IOException {
+
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> params = OozieRest.params(exchange.getRequestURI().getRawQuery());
+        String method = exchange.getRequestMethod();
+
+        if (path.equals("/oozie/versions")) {
+            JSONArray versions = new JSONArray();
+            versions.add(0L);
+            versions.add(1L);
+            versions.add(2L);
+            OozieRest.respond(exchange, 200, "application/json", versions.toJSONString());
+            return;
+        }
+
+        String[] parts = path.substring("/oozie/".length()).split("/");
+        String collection = parts.length > 1 ? parts[1] : "";
+        String jobId = parts.length > 2 ? parts[2] : null;
+
+        if (collection.equals("jobs") && method.equals("POST")) {
+            LocalJob job;
+            try {
+                job = newJob(OozieRest.readConf(exchange.getRequestBody()));
+            } catch (IOException e) {
+                OozieRest.respondError(exchange, "E0701", String.valueOf(e));
+                return;
+            }
+            if ("start".equals(params.get("action"))) {
+                start(job);
+            }
+            JSONObject json = new JSONObject();
+            json.put("id", job.id);
+            OozieRest.respond(exchange, 201, "application/json", json.toJSONString());
+            return;
+        }
+
+        LocalJob job;
+        synchronized (jobs) {
+            job = jobId == null ? null : jobs.get(jobId);
+        }
+        if (!collection.equals("job") || job == null) {
+            OozieRest.respondError(exchange, "E0604", "Job does not exist [" + jobId + "]");
+            return;
+        }
+
+        if (method.equals("GET") && "info".equals(params.get("show"))) {
+            OozieRest.respond(exchange, 200, "application/json", job.toJson().toJSONString());
+        } else if (method.equals("GET") && "log".equals(params.get("show"))) {
+            OozieRest.respond(exchange, 200, "text/plain", job.log.toString());
+        } else if (method.equals("PUT") && "rerun".equals(params.get("action"))) {
+            if (!job.rerun(localize(OozieRest.readConf(exchange.getRequestBody())))) {
+                OozieRest.respondError(exchange, "E0805", "Workflow " + job.id + " is not in a final state");
+                return;
+            }
+            start(job);
+            OozieRest.respond(exchange, 200, "application/json", "{}");
+        } else if (method.equals("PUT") && "kill".equals(params.get("action"))) {
+            job.finish("KILLED");
+            OozieRest.respond(exchange, 200, "application/json", "{}");
+        } else if (method.equals("PUT") && "start".equals(params.get("action"))) {
+            start(job);
+            OozieRest.respond(exchange, 200, "application/json", "{}");
+        } else {
+            OozieRest.respond(exchange, 400, "text/plain", "");
+        }
+    }
+
+    private LocalJob newJob(Properties submitted) throws IOException {
+
+        Properties jobConf = localize(submitted);
+        String appPath = jobConf.getProperty(OozieClient.APP_PATH);
+        if (appPath == null) {
+            throw new IOException(OozieClient.APP_PATH + " is missing");
+        }
+        Path definition = appPath.endsWith(".xml") ? new Path(appPath) : new Path(appPath, "workflow.xml");
+        LocalWorkflow workflow;
+        try (InputStream in = definition.getFileSystem(conf).open(definition)) {
+            workflow = LocalWorkflow.parse(in);
+        }
+
+        String id = String.format("%07d-%s", sequence.incrementAndGet(), idSuffix);
+        LocalJob job = new LocalJob(id, jobConf, workflow, definition.getParent().toString());
+        synchronized (jobs) {
+            jobs.put(id, job);
+        }
+        return job;
+    }
+
+    /**
+     * The configuration with the hdfs:// name service replaced by the local HDFS root.
+     */
+    private Properties localize(Properties submitted) {
+
+        Properties localized = new Properties();
+        for (String key : submitted.stringPropertyNames()) {
+            localized.setProperty(key, submitted.getProperty(key).replaceAll("hdfs://[^/\\s]*", fileSystemUri));
+        }
+        return localized;
+    }
+
+    private void start(final LocalJob job) {
+
+        synchronized (job) {
+            if (!job.status.equals("PREP")) {
+                return;
+            }
+            job.status = "RUNNING";
+            if (job.startTime == null) {
+                job.startTime = new Date();
+            }
+        }
+        job.notifyStatus();
+
+        engine.execute(new Runnable() {
+            @Override
+            public void run() {
+                String status;
+                try {
+                    status = walk(job, job.workflow.getStartNode(), null);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    job.log.append(new Date()).append(" ERROR ").append(e).append('\n');
+                    status = "FAILED";
+                }
+                if (status != null) {
+                    job.finish(status);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the job from the node until it ends or reaches the join, the paths of a fork one after the other.
+     *
+     * @return the final job status, null at the join or when the job was killed meanwhile
+     */
+    private String walk(LocalJob job, String name, String join) throws IOException {
+
+        String current = name;
+        while (!current.equals(join)) {
+            if (job.isFinal()) {
+                return null;
+            }
+
+            LocalWorkflow.WorkflowNode node = job.workflow.node(current);
+            switch (node.kind) {
+                case LocalWorkflow.end:
+                    return "SUCCEEDED";
+                case LocalWorkflow.kill:
+                    job.log.append(new Date()).append(" INFO kill ").append(node.name).append(": ")
+                            .append(WorkflowExpression.substitute(node.message, job)).append('\n');
+                    return "KILLED";
+                case LocalWorkflow.decision:
+                    current = decide(job, node);
+                    break;
+                case LocalWorkflow.fork:
+                    String forkJoin = job.workflow.joinOf(node);
+                    for (String path : node.paths) {
+                        String status = walk(job, path, forkJoin);
+                        if (status != null || job.isFinal()) {
+                            return status;
+                        }
+                    }
+                    current = job.workflow.node(forkJoin).to;
+                    break;
+                case LocalWorkflow.join:
+                    throw new IOException("Join " + node.name + " reached outside of its fork");
+                default:
+                    current = runAction(job, node);
+                    if (current == null) {
+                        return "FAILED";
+                    }
+            }
+        }
+        return null;
+    }
+
+    private String decide(LocalJob job, LocalWorkflow.WorkflowNode node) {
+
+        for (String[] choice : node.cases) {
+            if (WorkflowExpression.isTrue(choice[0], job)) {
+                return choice[1];
+            }
+        }
+        return node.to;
+    }
+
+    /**
+     * @return the next node, null when the action failed without an error transition
+     */
+    private String runAction(LocalJob job, LocalWorkflow.WorkflowNode node) {
+
+        LocalAction action;
+        synchronized (job) {
+            action = job.actions.get(node.name);
+            if (action != null && action.status.equals("OK")) {
+                // Completed before the re-run
+                return node.to;
+            }
+            action = new LocalAction(node);
+            job.actions.put(node.name, action);
+        }
+
+        job.log.append(new Date()).append(" INFO action ").append(node.name).append(" started\n");
+        try {
+            Properties data = runner.run(job.id, node, job, job.appPath, job.log);
+            synchronized (job) {
+                action.end("OK", null, null);
+                action.data = data;
+            }
+            job.log.append(new Date()).append(" INFO action ").append(node.name).append(" OK\n");
+            return node.to;
+
+        } catch (LocalActionRunner.ActionException e) {
+            synchronized (job) {
+                action.end("ERROR", e.getErrorCode(), e.getMessage());
+                job.lastErrorNode = node.name;
+            }
+            job.log.append(new Date()).append(" ERROR action ").append(node.name).append(" [")
+                    .append(e.getErrorCode()).append("] ").append(e.getMessage()).append('\n');
+            return node.error;
+        }
+    }
+
+    private static class LocalAction {
+
+        private final String name;
+        private final String type;
+        private final Date startTime = new Date();
+
+        private String status = "RUNNING";
+        private Date endTime = null;
+        private String errorCode = null;
+        private String errorMessage = null;
+        private Properties data = new Properties();
+
+        LocalAction(LocalWorkflow.WorkflowNode node) {
+            this.name = node.name;
+            this.type = node.getActionElement() == null ? "none" : node.getActionElement().getLocalName();
+        }
+
+        void end(String status, String errorCode, String errorMessage) {
+            this.status = status;
+            this.endTime = new Date();
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private class LocalJob implements WorkflowExpression.Context {
+
+        private final String id;
+        private final Properties conf;
+        private final LocalWorkflow workflow;
+        private final String appPath;
+        private final Map<String, LocalAction> actions = new LinkedHashMap<>();
+        private final StringBuffer log = new StringBuffer();
+        private final Date createdTime = new Date();
+
+        private String status = "PREP";
+        private int run = 0;
+        private String lastErrorNode = null;
+        private Date startTime = null;
+        private Date endTime = null;
+
+        LocalJob(String id, Properties conf, LocalWorkflow workflow, String appPath) {
+            this.id = id;
+            this.conf = conf;
+            this.workflow = workflow;
+            this.appPath = appPath;
+        }
+
+        synchronized boolean isFinal() {
+            return status.equals("SUCCEEDED") || status.equals("KILLED") || status.equals("FAILED");
+        }
+
+        /**
+         * Prepares the job for running again, false while it is not done.
+         */
+        synchronized boolean rerun(Properties rerunConf) {
+
+            if (!isFinal()) {
+                return false;
+            }
+            conf.putAll(rerunConf);
+            Set<String> skip = new HashSet<>();
+            String skipNodes = rerunConf.getProperty(OozieClient.RERUN_SKIP_NODES);
+            if (skipNodes != null) {
+                skip.addAll(Arrays.asList(skipNodes.trim().split("\\s*,\\s*")));
+            }
+            boolean failNodes = Boolean.parseBoolean(rerunConf.getProperty(OozieClient.RERUN_FAIL_NODES));
+
+            for (Map.Entry<String, LocalAction> entry : new HashMap<>(actions).entrySet()) {
+                boolean keep = failNodes ? entry.getValue().status.equals("OK") : skip.contains(entry.getKey());
+                if (!keep) {
+                    actions.remove(entry.getKey());
+                }
+            }
+            run++;
+            status = "PREP";
+            endTime = null;
+            lastErrorNode = null;
+            log.append(new Date()).append(" INFO rerun ").append(run).append(", skipping ").append(actions.keySet())
+                    .append('\n');
+            return true;
+        }
+
+        void finish(String finalStatus) {
+
+            synchronized (this) {
+                if (isFinal()) {
+                    return;
+                }
+                status = finalStatus;
+                endTime = new Date();
+                log.append(endTime).append(" INFO workflow ").append(finalStatus).append('\n');
+            }
+            System.out.println("LocalOozieServer: " + id + " (" + workflow.getName() + ") " + finalStatus);
+            notifyStatus();
+        }
+
+        void notifyStatus() {
+
+            String url = conf.getProperty(WorkflowSubmitter.notificationUrlKey);
+            if (url != null) {
+                String status;
+                synchronized (this) {
+                    status = this.status;
+                }
+                OozieRest.notify(url.replace("$jobId", id).replace("$status", status));
+            }
+        }
+
+        @Override
+        public String property(String name) {
+
+            String value = conf.getProperty(name);
+            return value != null ? value : workflow.getParameters().getProperty(name);
+        }
+
+        @Override
+        public synchronized Object function(String name, List<Object> args) {
+
+            String node = args.isEmpty() ? null : WorkflowExpression.asString(args.get(0));
+            LocalAction action = node == null ? null : actions.get(node);
+            switch (name) {
+                case "wf:id":
+                    return id;
+                case "wf:name":
+                    return workflow.getName();
+                case "wf:appPath":
+                    return appPath;
+                case "wf:user":
+                    return conf.getProperty(OozieClient.USER_NAME, System.getProperty("user.name"));
+                case "wf:group":
+                    return conf.getProperty("group.name", "");
+                case "wf:run":
+                    return String.valueOf(run);
+                case "wf:conf":
+                    return property(node);
+                case "wf:lastErrorNode":
+                    return lastErrorNode == null ? "" : lastErrorNode;
+                case "wf:errorCode":
+                    return action == null || action.errorCode == null ? "" : action.errorCode;
+                case "wf:errorMessage":
+                    return action == null || action.errorMessage == null ? "" : action.errorMessage;
+                case "wf:actionData":
+                    return action == null ? new HashMap<String, String>() : toMap(action.data);
+                case "wf:actionExternalId":
+                    return action == null ? "" : id + "@" + node;
+                case "wf:transition":
+                    return action == null ? "" : action.status.equals("OK") ? "ok" : "error";
+                default:
+                    throw new IllegalArgumentException("EL_ERROR function " + name + " is not supported in local mode");
+            }
+        }
+
+        private Map<String, String> toMap(Properties data) {
+
+            Map<String, String> map = new HashMap<>();
+            for (String key : data.stringPropertyNames()) {
+                map.put(key, data.getProperty(key));
+            }
+            return map;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized JSONObject toJson() {
+
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("appName", workflow.getName());
+            json.put("appPath", appPath);
+            json.put("status", status);
+            json.put("user", conf.getProperty(OozieClient.USER_NAME));
+            json.put("run", (long) run);
+            json.put("createdTime", OozieRest.rfc822(createdTime));
+            json.put("startTime", OozieRest.rfc822(startTime));
+            json.put("lastModTime", OozieRest.rfc822(endTime != null ? endTime : new Date()));
+            json.put("endTime", OozieRest.rfc822(endTime));
+            json.put("consoleUrl", getOozieUrl() + "?job=" + id);
+
+            JSONArray actionsJson = new JSONArray();
+            for (LocalAction action : actions.values()) {
+                JSONObject actionJson = new JSONObject();
+                actionJson.put("id", id + "@" + action.name);
+                actionJson.put("name", action.name);
+                actionJson.put("type", action.type);
+                actionJson.put("status", action.status);
+                actionJson.put("startTime", OozieRest.rfc822(action.startTime));
+                actionJson.put("endTime", OozieRest.rfc822(action.endTime));
+                actionJson.put("externalId", id + "@" + action.name);
+                actionJson.put("errorCode", action.errorCode);
+                actionJson.put("errorMessage", action.errorMessage);
+                actionJson.put("retries", 0L);
+                actionsJson.add(actionJson);
+            }
+            json.put("actions", actionsJson);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.cat.ddsw.base.local;
+
+import com.cat.ddsw.base.DDSWProperties;
+import org.apache.hadoop.fs.Path;
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.WorkflowAction;
+import org.apache.oozie.client.WorkflowJob;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * LocalOozieServer running Workflows on the local HDFS through the OozieClient, without the embedded Hive.
+ */
+public class LocalOozieServerTest {
+
+    private static final String workflow = ""
+            + "<workflow-app xmlns=\"uri:oozie:workflow:0.4\" name=\"local-test-wf\">\n"
+            + "  <start to=\"makeOutput\"/>\n"
+            + "  <action name=\"makeOutput\">\n"
+            + "    <fs><mkdir path=\"${nameNode}/projects/ddsw/out/${wf:id()}\"/></fs>\n"
+            + "    <ok to=\"countRows\"/><error to=\"fail\"/>\n"
+            + "  </action>\n"
+            + "  <action name=\"countRows\">\n"
+            + "    <shell xmlns=\"uri:oozie:shell-action:0.2\">\n"
+            + "      <exec>echo</exec><argument>rows=${rows}</argument><capture-output/>\n"
+            + "    </shell>\n"
+            + "    <ok to=\"hasRows\"/><error to=\"fail\"/>\n"
+            + "  </action>\n"
+            + "  <decision name=\"hasRows\">\n"
+            + "    <switch>\n"
+            + "      <case to=\"split\">${wf:actionData('countRows')['rows'] gt 0}</case>\n"
+            + "      <default to=\"fail\"/>\n"
+            + "    </switch>\n"
+            + "  </decision>\n"
+            + "  <fork name=\"split\"><path start=\"left\"/><path start=\"right\"/></fork>\n"
+            + "  <action name=\"left\">\n"
+            + "    <fs><touchz path=\"${nameNode}/projects/ddsw/out/left\"/></fs>\n"
+            + "    <ok to=\"merge\"/><error to=\"fail\"/>\n"
+            + "  </action>\n"
+            + "  <action name=\"right\">\n"
+            + "    <shell xmlns=\"uri:oozie:shell-action:0.2\">\n"
+            + "      <exec>test</exec><argument>-e</argument><argument>${flag}</argument>\n"
+            + "    </shell>\n"
+            + "    <ok to=\"merge\"/><error to=\"fail\"/>\n"
+            + "  </action>\n"
+            + "  <join name=\"merge\" to=\"end\"/>\n"
+            + "  <kill name=\"fail\"><message>${wf:lastErrorNode()} failed</message></kill>\n"
+            + "  <end name=\"end\"/>\n"
+            + "</workflow-app>\n";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private LocalCluster cluster;
+    private OozieClient client;
+    private File flag;
+
+    @Before
+    public void setUp() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("LOCAL_HIVE_ENABLED", "false");
+        cluster = new LocalCluster(temp.newFolder("ddsw-local"), new DDSWProperties(properties));
+        cluster.startOozie(0, 2);
+        client = new OozieClient(cluster.getOozieServer().getOozieUrl());
+
+        File app = new File(cluster.getRoot(), "projects/ddsw/qa/code/local_test");
+        app.mkdirs();
+        Files.write(new File(app, "workflow.xml").toPath(), workflow.getBytes(StandardCharsets.UTF_8));
+        flag = new File(temp.getRoot(), "flag");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cluster.stop();
+    }
+
+    @Test
+    public void testRunsWorkflow() throws Exception {
+
+        Files.write(flag.toPath(), new byte[0]);
+        WorkflowJob job = waitFor(client.run(conf("3")));
+
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, job.getStatus());
+        Assert.assertEquals("local-test-wf", job.getAppName());
+        Assert.assertEquals(Arrays.asList("makeOutput", "countRows", "left", "right"), names(job));
+        Assert.assertTrue(new File(cluster.getRoot(), "projects/ddsw/out/" + job.getId()).isDirectory());
+        Assert.assertTrue(new File(cluster.getRoot(), "projects/ddsw/out/left").isFile());
+        Assert.assertTrue(cluster.getFileSystem().exists(new Path("/projects/ddsw/out/left")));
+    }
+
+    @Test
+    public void testDecisionKills() throws Exception {
+
+        WorkflowJob job = waitFor(client.run(conf("0")));
+        Assert.assertEquals(WorkflowJob.Status.KILLED, job.getStatus());
+        Assert.assertEquals(Arrays.asList("makeOutput", "countRows"), names(job));
+    }
+
+    @Test
+    public void testRerunFailedNodes() throws Exception {
+
+        String id = client.run(conf("3"));
+        WorkflowJob failed = waitFor(id);
+        Assert.assertEquals(WorkflowJob.Status.KILLED, failed.getStatus());
+        Assert.assertEquals("ERROR", action(failed, "right").getStatus().toString());
+        Assert.assertEquals("1", action(failed, "right").getErrorCode());
+
+        Files.write(flag.toPath(), new byte[0]);
+        Properties rerun = conf("3");
+        rerun.setProperty(OozieClient.RERUN_FAIL_NODES, "true");
+        client.reRun(id, rerun);
+        WorkflowJob succeeded = waitFor(id);
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, succeeded.getStatus());
+        Assert.assertEquals(1, succeeded.getRun());
+        Assert.assertEquals(action(failed, "countRows").getStartTime(),
+                action(succeeded, "countRows").getStartTime());
+    }
+
+    @Test
+    public void testExpressions() {
+
+        final Map<String, String> data = new HashMap<>();
+        data.put("fileCount", "12");
+        WorkflowExpression.Context context = new WorkflowExpression.Context() {
+            @Override
+            public String property(String name) {
+                return name.equals("dealerCode") ? "ZZZZ" : null;
+            }
+
+            @Override
+            public Object function(String name, List<Object> args) {
+                return name.equals("wf:actionData") ? data : "0000001-local-W";
+            }
+        };
+
+        Assert.assertEquals("/out/ZZZZ/0000001-local-W",
+                WorkflowExpression.substitute("/out/${dealerCode}/${wf:id()}", context));
+        Assert.assertEquals("ZZZZ-x", WorkflowExpression.substitute("${concat(dealerCode, '-x')}", context));
+        Assert.assertTrue(WorkflowExpression.isTrue("${wf:actionData('check')['fileCount'] gt 9}", context));
+        Assert.assertFalse(WorkflowExpression.isTrue("${empty dealerCode or dealerCode eq 'AAAA'}", context));
+        Assert.assertEquals(Collections.singletonList("select 'a;b' from t"),
+                LocalCluster.statements("-- comment\nselect 'a;b' from t;\n"));
+        try {
+            WorkflowExpression.substitute("${missing}", context);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("missing"));
+        }
+    }
+
+    private Properties conf(String rows) {
+
+        Properties conf = client.createConfiguration();
+        conf.setProperty(OozieClient.APP_PATH, "hdfs://nameservice1/projects/ddsw/qa/code/local_test");
+        conf.setProperty(OozieClient.USER_NAME, System.getProperty("user.name"));
+        conf.setProperty("nameNode", "hdfs://nameservice1");
+        conf.setProperty("rows", rows);
+        conf.setProperty("flag", flag.getAbsolutePath());
+        return conf;
+    }
+
+    private WorkflowJob waitFor(String id) throws Exception {
+
+        long deadline = System.currentTimeMillis() + 30000;
+        WorkflowJob job = client.getJobInfo(id);
+        while (job.getStatus() == WorkflowJob.Status.PREP || job.getStatus() == WorkflowJob.Status.RUNNING) {
+            Assert.assertTrue(id + " still " + job.getStatus(), System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+            job = client.getJobInfo(id);
+        }
+        return job;
+    }
+
+    private static List<String> names(WorkflowJob job) {
+
+        List<String> names = new ArrayList<>();
+        for (WorkflowAction action : job.getActions()) {
+            names.add(action.getName());
+        }
+        return names;
+    }
+
+    private static WorkflowAction action(WorkflowJob job, String name) {
+
+        for (WorkflowAction action : job.getActions()) {
+            if (action.getName().equals(name)) {
+                return action;
+            }
+        }
+        throw new AssertionError(job.getId() + " has no action " + name);
+    }
+}
@@ -0,0 +1,230 @@
+package com.cat.ddsw.base.local;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A workflow.xml as the {@link LocalOozieServer} walks it: start, end, kill, action, decision, fork and join nodes
+ * by name. The schema version is not checked, global and credentials sections are ignored.
+ */
+class LocalWorkflow {
+
+    static final String start = "start";
+    static final String end = "end";
+    static final String kill = "kill";
+    static final String action = "action";
+    static final String decision = "decision";
+    static final String fork = "fork";
+    static final String join = "join";
+
+    /**
+     * One node of the Workflow.
+     */
+    static class WorkflowNode {
+
+        final String name;
+        final String kind;
+        final Element element;
+
+        /**
+         * Next node: "to" of start and join, "ok to" of an action, default of a decision.
+         */
+        String to;
+        String error;
+        String message;
+        final List<String> paths = new ArrayList<>();
+        final List<String[]> cases = new ArrayList<>();
+
+        WorkflowNode(String name, String kind, Element element) {
+            this.name = name;
+            this.kind = kind;
+            this.element = element;
+        }
+
+        /**
+         * The action type element of an action node, e.g. the shell or hive element.
+         */
+        Element getActionElement() {
+            for (Element child : children(element)) {
+                if (!child.getLocalName().equals("ok") && !child.getLocalName().equals("error")) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String name;
+    private final String startNode;
+    private final Map<String, WorkflowNode> nodes = new LinkedHashMap<>();
+    private final Properties parameters = new Properties();
+
+    private LocalWorkflow(String name, String startNode) {
+        this.name = name;
+        this.startNode = startNode;
+    }
+
+    static LocalWorkflow parse(InputStream in) throws IOException {
+
+        Document doc;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            doc = factory.newDocumentBuilder().parse(in);
+        } catch (Exception e) {
+            throw new IOException("Invalid workflow.xml", e);
+        }
+
+        Element root = doc.getDocumentElement();
+        String startNode = null;
+        for (Element child : children(root)) {
+            if (child.getLocalName().equals(start)) {
+                startNode = child.getAttribute("to");
+            }
+        }
+        if (startNode == null) {
+            throw new IOException("workflow.xml has no start node");
+        }
+
+        LocalWorkflow workflow = new LocalWorkflow(root.getAttribute("name"), startNode);
+        for (Element child : children(root)) {
+            String kind = child.getLocalName();
+            if (kind.equals("parameters")) {
+                for (Element property : children(child)) {
+                    String value = text(property, "value");
+                    if (value != null) {
+                        workflow.parameters.setProperty(text(property, "name"), value);
+                    }
+                }
+                continue;
+            }
+            if (!kind.equals(end) && !kind.equals(kill) && !kind.equals(action) && !kind.equals(decision)
+                    && !kind.equals(fork) && !kind.equals(join)) {
+                continue;
+            }
+
+            WorkflowNode node = new WorkflowNode(child.getAttribute("name"), kind, child);
+            if (kind.equals(kill)) {
+                node.message = text(child, "message");
+            } else if (kind.equals(join)) {
+                node.to = child.getAttribute("to");
+            } else if (kind.equals(fork)) {
+                for (Element path : children(child)) {
+                    node.paths.add(path.getAttribute("start"));
+                }
+            } else if (kind.equals(action)) {
+                for (Element transition : children(child)) {
+                    if (transition.getLocalName().equals("ok")) {
+                        node.to = transition.getAttribute("to");
+                    } else if (transition.getLocalName().equals("error")) {
+                        node.error = transition.getAttribute("to");
+                    }
+                }
+            } else if (kind.equals(decision)) {
+                for (Element choice : children(children(child).get(0))) {
+                    if (choice.getLocalName().equals("default")) {
+                        node.to = choice.getAttribute("to");
+                    } else {
+                        node.cases.add(new String[]{choice.getTextContent(), choice.getAttribute("to")});
+                    }
+                }
+            }
+            workflow.nodes.put(node.name, node);
+        }
+        return workflow;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getStartNode() {
+        return startNode;
+    }
+
+    /**
+     * Defaults from the parameters section, the job configuration overrides them.
+     */
+    Properties getParameters() {
+        return parameters;
+    }
+
+    WorkflowNode node(String name) throws IOException {
+
+        WorkflowNode node = nodes.get(name);
+        if (node == null) {
+            throw new IOException("workflow.xml has no node " + name);
+        }
+        return node;
+    }
+
+    /**
+     * The join the paths of the fork meet at, found by following the first path.
+     */
+    String joinOf(WorkflowNode forkNode) throws IOException {
+
+        Set<String> seen = new HashSet<>();
+        String current = forkNode.paths.get(0);
+        while (seen.add(current)) {
+            WorkflowNode node = node(current);
+            if (node.kind.equals(join)) {
+                return node.name;
+            }
+            current = node.kind.equals(fork) ? node(joinOf(node)).to : node.to;
+            if (current == null) {
+                break;
+            }
+        }
+        throw new IOException("Fork " + forkNode.name + " has no join");
+    }
+
+    static List<Element> children(Element parent) {
+
+        List<Element> children = new ArrayList<>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Trimmed text of the first child element with the name, null if there is none.
+     */
+    static String text(Element parent, String name) {
+
+        for (Element child : children(parent)) {
+            if (child.getLocalName().equals(name)) {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Trimmed texts of all child elements with the name, in document order.
+     */
+    static List<String> texts(Element parent, String name) {
+
+        List<String> texts = new ArrayList<>();
+        for (Element child : children(parent)) {
+            if (child.getLocalName().equals(name)) {
+                texts.add(child.getTextContent().trim());
+            }
+        }
+        return texts;
+    }
+}
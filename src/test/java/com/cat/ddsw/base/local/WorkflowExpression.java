@@ -0,0 +1,311 @@
+package com.cat.ddsw.base.local;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of the Oozie EL the Domain Workflows use: ${property} from the job configuration, wf: functions,
+ * concat/trim/firstNotNull/replaceAll, string and number literals, comparisons (eq ne lt gt le ge == != ...),
+ * and/or/not/empty and ${wf:actionData('node')['key']}.
+ *
+ * Anything else fails with an IllegalArgumentException, which ends the node in EL_ERROR like Oozie does.
+ */
+class WorkflowExpression {
+
+    /**
+     * Resolves the properties and wf: functions of one Workflow Job.
+     */
+    interface Context {
+
+        /**
+         * @return null when the job has no such property
+         */
+        String property(String name);
+
+        /**
+         * @return a String, a Boolean or a Map (wf:actionData) for the function, e.g. "wf:id"
+         */
+        Object function(String name, List<Object> args);
+    }
+
+    private final String text;
+    private final Context context;
+    private final List<String> tokens = new ArrayList<>();
+    private int position = 0;
+
+    private WorkflowExpression(String text, Context context) {
+        this.text = text;
+        this.context = context;
+    }
+
+    /**
+     * Replaces every ${...} of the text with its value.
+     */
+    static String substitute(String text, Context context) {
+
+        if (text == null || !text.contains("${")) {
+            return text;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        int from = 0;
+        int start;
+        while ((start = text.indexOf("${", from)) >= 0) {
+            int end = closing(text, start + 2);
+            result.append(text, from, start);
+            result.append(asString(new WorkflowExpression(text.substring(start + 2, end), context).evaluate()));
+            from = end + 1;
+        }
+        return result.append(text, from, text.length()).toString();
+    }
+
+    /**
+     * A decision predicate, e.g. ${wf:actionData('checkSourceFiles')['fileCount'] gt 0}.
+     */
+    static boolean isTrue(String predicate, Context context) {
+
+        String trimmed = predicate.trim();
+        if (trimmed.startsWith("${") && closing(trimmed, 2) == trimmed.length() - 1) {
+            return asBoolean(new WorkflowExpression(trimmed.substring(2, trimmed.length() - 1), context).evaluate());
+        }
+        return asBoolean(substitute(trimmed, context));
+    }
+
+    private static int closing(String text, int from) {
+
+        char quote = 0;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '}') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated expression in " + text);
+    }
+
+    private Object evaluate() {
+
+        tokenize();
+        Object value = or();
+        if (position < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "' in ${" + text + "}");
+        }
+        return value;
+    }
+
+    private Object or() {
+
+        Object value = and();
+        while (accept("or") || accept("||")) {
+            boolean right = asBoolean(and());
+            value = asBoolean(value) || right;
+        }
+        return value;
+    }
+
+    private Object and() {
+
+        Object value = not();
+        while (accept("and") || accept("&&")) {
+            boolean right = asBoolean(not());
+            value = asBoolean(value) && right;
+        }
+        return value;
+    }
+
+    private Object not() {
+
+        if (accept("not") || accept("!")) {
+            return !asBoolean(not());
+        }
+        if (accept("empty")) {
+            Object value = not();
+            return value == null || asString(value).isEmpty() || (value instanceof Map && ((Map) value).isEmpty());
+        }
+        return comparison();
+    }
+
+    private Object comparison() {
+
+        Object left = primary();
+        String operator = peek();
+        if (operator == null) {
+            return left;
+        }
+        switch (operator) {
+            case "eq": case "==": case "ne": case "!=":
+                position++;
+                boolean equal = compare(left, primary()) == 0;
+                return operator.equals("eq") || operator.equals("==") ? equal : !equal;
+            case "lt": case "<":
+                position++;
+                return compare(left, primary()) < 0;
+            case "gt": case ">":
+                position++;
+                return compare(left, primary()) > 0;
+            case "le": case "<=":
+                position++;
+                return compare(left, primary()) <= 0;
+            case "ge": case ">=":
+                position++;
+                return compare(left, primary()) >= 0;
+            default:
+                return left;
+        }
+    }
+
+    private Object primary() {
+
+        String token = next();
+        Object value;
+        if (token.equals("(")) {
+            value = or();
+            expect(")");
+        } else if (token.startsWith("'") || token.startsWith("\"")) {
+            value = token.substring(1, token.length() - 1);
+        } else if (token.equals("true") || token.equals("false")) {
+            value = Boolean.valueOf(token);
+        } else if (token.equals("null")) {
+            value = null;
+        } else if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '-') {
+            value = token;
+        } else if (accept("(")) {
+            List<Object> args = new ArrayList<>();
+            if (!accept(")")) {
+                do {
+                    args.add(or());
+                } while (accept(","));
+                expect(")");
+            }
+            value = function(token, args);
+        } else {
+            value = context.property(token);
+            if (value == null) {
+                throw new IllegalArgumentException("EL_ERROR variable [" + token + "] cannot be resolved");
+            }
+        }
+
+        while (accept("[")) {
+            Object key = or();
+            expect("]");
+            value = value instanceof Map ? ((Map) value).get(asString(key)) : null;
+        }
+        return value;
+    }
+
+    private Object function(String name, List<Object> args) {
+
+        switch (name) {
+            case "concat":
+                return asString(arg(args, 0)) + asString(arg(args, 1));
+            case "trim":
+                return asString(arg(args, 0)).trim();
+            case "firstNotNull":
+                return arg(args, 0) != null ? arg(args, 0) : arg(args, 1);
+            case "replaceAll":
+                return arg(args, 0) == null ? null
+                        : asString(arg(args, 0)).replaceAll(asString(arg(args, 1)), asString(arg(args, 2)));
+            default:
+                return context.function(name, args);
+        }
+    }
+
+    private static Object arg(List<Object> args, int index) {
+        return index < args.size() ? args.get(index) : null;
+    }
+
+    private static int compare(Object left, Object right) {
+
+        String a = asString(left);
+        String b = asString(right);
+        try {
+            return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+        } catch (NumberFormatException e) {
+            return a.compareTo(b);
+        }
+    }
+
+    static String asString(Object value) {
+        return value == null ? "" : String.valueOf(value);
+    }
+
+    static boolean asBoolean(Object value) {
+        return value instanceof Boolean ? (Boolean) value : Boolean.parseBoolean(asString(value).trim());
+    }
+
+    private void tokenize() {
+
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = text.indexOf(c, i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated string in ${" + text + "}");
+                }
+                tokens.add(text.substring(i, end + 1));
+                i = end + 1;
+            } else if ("=!<>&|".indexOf(c) >= 0) {
+                int end = i + 1;
+                if (end < text.length() && "=&|".indexOf(text.charAt(end)) >= 0) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else if ("()[],".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int end = i + 1;
+                while (end < text.length() && isNameChar(text.charAt(end))) {
+                    end++;
+                }
+                if (!isNameChar(c) && c != '-') {
+                    throw new IllegalArgumentException("Unexpected '" + c + "' in ${" + text + "}");
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == ':' || c == '-';
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+
+        if (position >= tokens.size()) {
+            throw new IllegalArgumentException("Incomplete expression ${" + text + "}");
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean accept(String token) {
+
+        if (token.equals(peek())) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+
+        if (!accept(token)) {
+            throw new IllegalArgumentException("Expected '" + token + "' in ${" + text + "}");
+        }
+    }
+}
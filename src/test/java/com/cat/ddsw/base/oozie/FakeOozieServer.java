@@ -0,0 +1,404 @@
+package com.cat.ddsw.base.oozie;
+
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the Oozie REST API (the part OozieClient uses) for exercising the framework without a cluster.
+ *
+ * Each submitted job walks through the configured action nodes one after the other, every node taking the node
+ * duration. Nodes can be set to fail a number of times, the job is then KILLED at that node. Re-runs honour
+ * oozie.wf.rerun.failnodes: only the failed node onwards runs again. Job notifications are sent to
+ * oozie.wf.workflow.notification.url like the real server does.
+ *
+ * <pre>
+ * FakeOozieServer oozie = new FakeOozieServer();
+ * oozie.setNodes("xmlIngest", "alterTables", "sanityCheck");
+ * oozie.setNodeDurationMillis(50);
+ * OozieClient client = new OozieClient(oozie.getOozieUrl());
+ * </pre>
+ */
+public class FakeOozieServer {
+
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final ScheduledExecutorService engine;
+
+    private final Map<String, FakeJob> jobs = new LinkedHashMap<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicInteger nodeExecutions = new AtomicInteger();
+
+    private volatile List<String> nodes = Arrays.asList("ingest");
+    private volatile long nodeDurationMillis = 100;
+    private volatile boolean notificationsEnabled = true;
+    private volatile long notificationDelayMillis = 0;
+    private final Map<String, Integer> nodeFailures = new HashMap<>();
+
+    public FakeOozieServer() throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 64);
+        httpExecutor = Executors.newFixedThreadPool(4, new DaemonThreadFactory("fake-oozie-http"));
+        engine = Executors.newScheduledThreadPool(4, new DaemonThreadFactory("fake-oozie-engine"));
+        server.setExecutor(httpExecutor);
+        server.createContext("/oozie", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    OozieRest.respond(exchange, 500, "text/plain", String.valueOf(e));
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * URL to hand to new OozieClient(...).
+     */
+    public String getOozieUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/oozie";
+    }
+
+    public void setNodes(String... nodes) {
+        this.nodes = Arrays.asList(nodes);
+    }
+
+    public void setNodeDurationMillis(long nodeDurationMillis) {
+        this.nodeDurationMillis = nodeDurationMillis;
+    }
+
+    public void setNotificationsEnabled(boolean notificationsEnabled) {
+        this.notificationsEnabled = notificationsEnabled;
+    }
+
+    /**
+     * Sends the job notifications this much later than the status changed, like a busy Oozie server does.
+     */
+    public void setNotificationDelayMillis(long notificationDelayMillis) {
+        this.notificationDelayMillis = notificationDelayMillis;
+    }
+
+    /**
+     * Makes the next runs of the node end in ERROR.
+     */
+    public void failNode(String node, int times) {
+        synchronized (nodeFailures) {
+            nodeFailures.put(node, times);
+        }
+    }
+
+    public int getSubmittedJobs() {
+        synchronized (jobs) {
+            return jobs.size();
+        }
+    }
+
+    /**
+     * Action nodes executed so far over all jobs and runs.
+     */
+    public int getNodeExecutions() {
+        return nodeExecutions.get();
+    }
+
+    /**
+     * Configuration the job was submitted with (re-run configuration merged in).
+     */
+    public Properties getJobConf(String jobId) {
+        synchronized (jobs) {
+            return jobs.get(jobId).conf;
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        httpExecutor.shutdownNow();
+        engine.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(HttpExchange exchange) throws IOException {
+
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> params = OozieRest.params(exchange.getRequestURI().getRawQuery());
+        String method = exchange.getRequestMethod();
+
+        if (path.equals("/oozie/versions")) {
+            JSONArray versions = new JSONArray();
+            versions.add(0L);
+            versions.add(1L);
+            versions.add(2L);
+            OozieRest.respond(exchange, 200, "application/json", versions.toJSONString());
+            return;
+        }
+
+        String[] parts = path.substring("/oozie/".length()).split("/");
+        String collection = parts.length > 1 ? parts[1] : "";
+        String jobId = parts.length > 2 ? parts[2] : null;
+
+        if (collection.equals("jobs") && method.equals("POST")) {
+            FakeJob job = newJob(OozieRest.readConf(exchange.getRequestBody()));
+            if ("start".equals(params.get("action"))) {
+                start(job, 0);
+            }
+            JSONObject json = new JSONObject();
+            json.put("id", job.id);
+            OozieRest.respond(exchange, 201, "application/json", json.toJSONString());
+            return;
+        }
+
+        FakeJob job;
+        synchronized (jobs) {
+            job = jobId == null ? null : jobs.get(jobId);
+        }
+        if (!collection.equals("job") || job == null) {
+            OozieRest.respondError(exchange, "E0604", "Job does not exist [" + jobId + "]");
+            return;
+        }
+
+        if (method.equals("GET") && "info".equals(params.get("show"))) {
+            OozieRest.respond(exchange, 200, "application/json", job.toJson().toJSONString());
+        } else if (method.equals("GET") && "log".equals(params.get("show"))) {
+            OozieRest.respond(exchange, 200, "text/plain", job.log());
+        } else if (method.equals("PUT") && "rerun".equals(params.get("action"))) {
+            rerun(job, OozieRest.readConf(exchange.getRequestBody()));
+            OozieRest.respond(exchange, 200, "application/json", "{}");
+        } else if (method.equals("PUT") && "kill".equals(params.get("action"))) {
+            job.finish("KILLED");
+            OozieRest.respond(exchange, 200, "application/json", "{}");
+        } else if (method.equals("PUT") && "start".equals(params.get("action"))) {
+            start(job, 0);
+            OozieRest.respond(exchange, 200, "application/json", "{}");
+        } else {
+            OozieRest.respond(exchange, 400, "text/plain", "");
+        }
+    }
+
+    private FakeJob newJob(Properties conf) {
+
+        String id = String.format("%07d-%s-oozie-oozi-W", sequence.incrementAndGet(), "150831000000000");
+        FakeJob job = new FakeJob(id, conf, nodes);
+        synchronized (jobs) {
+            jobs.put(id, job);
+        }
+        return job;
+    }
+
+    private void rerun(FakeJob job, Properties rerunConf) {
+
+        synchronized (job) {
+            if (!job.isFinal()) {
+                throw new IllegalStateException("E0805: Workflow " + job.id + " is not in a final state");
+            }
+            job.conf.putAll(rerunConf);
+
+            int from = 0;
+            if (Boolean.parseBoolean(rerunConf.getProperty("oozie.wf.rerun.failnodes"))) {
+                from = job.failedNode < 0 ? job.nodes.size() : job.failedNode;
+            }
+            job.run++;
+            for (int i = from; i < job.nodeStatus.length; i++) {
+                job.nodeStatus[i] = "PREP";
+            }
+            job.status = "RUNNING";
+            job.log.append(new Date()).append(" INFO rerun ").append(job.run).append(" from node ").append(from).append('\n');
+            start(job, from);
+        }
+    }
+
+    private void start(final FakeJob job, final int node) {
+
+        synchronized (job) {
+            job.status = "RUNNING";
+            if (job.startTime == null) {
+                job.startTime = new Date();
+            }
+            job.nodeStarted(node);
+        }
+        notifyStatus(job);
+
+        engine.schedule(new Runnable() {
+            @Override
+            public void run() {
+                runNode(job, node);
+            }
+        }, nodeDurationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runNode(final FakeJob job, final int node) {
+
+        synchronized (job) {
+            if (job.isFinal()) {
+                return;
+            }
+            if (node >= job.nodes.size()) {
+                job.failedNode = -1;
+                job.finishLocked("SUCCEEDED");
+            } else {
+                String name = job.nodes.get(node);
+                nodeExecutions.incrementAndGet();
+                boolean fail;
+                synchronized (nodeFailures) {
+                    Integer left = nodeFailures.get(name);
+                    fail = left != null && left > 0;
+                    if (fail) {
+                        nodeFailures.put(name, left - 1);
+                    }
+                }
+                job.log.append(new Date()).append(" INFO action ").append(name).append(fail ? " ERROR" : " OK").append('\n');
+                if (fail) {
+                    job.nodeStatus[node] = "ERROR";
+                    job.nodeEnd[node] = new Date();
+                    job.failedNode = node;
+                    job.finishLocked("KILLED");
+                } else {
+                    job.nodeStatus[node] = "OK";
+                    job.nodeEnd[node] = new Date();
+                    job.nodeStarted(node + 1);
+                    engine.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            runNode(job, node + 1);
+                        }
+                    }, node + 1 < job.nodes.size() ? nodeDurationMillis : 0, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+        }
+        notifyStatus(job);
+    }
+
+    private void notifyStatus(FakeJob job) {
+
+        String url = job.conf.getProperty(WorkflowSubmitter.notificationUrlKey);
+        if (!notificationsEnabled || url == null) {
+            return;
+        }
+        final String notification = url.replace("$jobId", job.id).replace("$status", job.status);
+        if (notificationDelayMillis <= 0) {
+            OozieRest.notify(notification);
+            return;
+        }
+        engine.schedule(new Runnable() {
+            @Override
+            public void run() {
+                OozieRest.notify(notification);
+            }
+        }, notificationDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private class FakeJob {
+
+        private final String id;
+        private final Properties conf;
+        private final List<String> nodes;
+        private final String[] nodeStatus;
+        private final Date[] nodeStart;
+        private final Date[] nodeEnd;
+        private final StringBuilder log = new StringBuilder();
+        private final Date createdTime = new Date();
+
+        private String status = "PREP";
+        private int run = 0;
+        private int failedNode = -1;
+        private Date startTime = null;
+        private Date endTime = null;
+
+        FakeJob(String id, Properties conf, List<String> nodes) {
+            this.id = id;
+            this.conf = conf;
+            this.nodes = new ArrayList<>(nodes);
+            this.nodeStatus = new String[nodes.size()];
+            Arrays.fill(nodeStatus, "PREP");
+            this.nodeStart = new Date[nodes.size()];
+            this.nodeEnd = new Date[nodes.size()];
+        }
+
+        void nodeStarted(int node) {
+            if (node < nodes.size()) {
+                nodeStart[node] = new Date();
+                nodeEnd[node] = null;
+            }
+        }
+
+        boolean isFinal() {
+            return status.equals("SUCCEEDED") || status.equals("KILLED") || status.equals("FAILED");
+        }
+
+        void finish(String finalStatus) {
+            synchronized (this) {
+                if (isFinal()) {
+                    return;
+                }
+                finishLocked(finalStatus);
+            }
+            notifyStatus(this);
+        }
+
+        private void finishLocked(String finalStatus) {
+            status = finalStatus;
+            endTime = new Date();
+            log.append(endTime).append(" INFO workflow ").append(finalStatus).append('\n');
+        }
+
+        synchronized String log() {
+            return log.toString();
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized JSONObject toJson() {
+
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("appName", conf.getProperty("domainType", "fake-wf"));
+            json.put("appPath", conf.getProperty("oozie.wf.application.path"));
+            json.put("status", status);
+            json.put("user", conf.getProperty("user.name"));
+            json.put("run", (long) run);
+            json.put("createdTime", OozieRest.rfc822(createdTime));
+            json.put("startTime", OozieRest.rfc822(startTime));
+            json.put("lastModTime", OozieRest.rfc822(endTime != null ? endTime : new Date()));
+            json.put("endTime", OozieRest.rfc822(endTime));
+            json.put("consoleUrl", getOozieUrl() + "?job=" + id);
+
+            JSONArray actions = new JSONArray();
+            for (int i = 0; i < nodes.size(); i++) {
+                JSONObject action = new JSONObject();
+                action.put("id", id + "@" + nodes.get(i));
+                action.put("name", nodes.get(i));
+                action.put("type", "shell");
+                action.put("status", nodeStatus[i]);
+                action.put("startTime", OozieRest.rfc822(nodeStart[i]));
+                action.put("endTime", OozieRest.rfc822(nodeEnd[i]));
+                action.put("externalId", "job_150831000000_" + String.format("%04d", i));
+                action.put("errorCode", "ERROR".equals(nodeStatus[i]) ? "JA018" : null);
+                action.put("errorMessage", "ERROR".equals(nodeStatus[i]) ? "Main class exit code [1]" : null);
+                action.put("retries", 0L);
+                actions.add(action);
+            }
+            json.put("actions", actions);
+            return json;
+        }
+    }
+}
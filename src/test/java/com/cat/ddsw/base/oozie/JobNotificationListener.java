@@ -0,0 +1,220 @@
+package com.cat.ddsw.base.oozie;
+
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded HTTP endpoint receiving the Oozie Workflow job notifications.
+ *
+ * Submitted jobs carry {@link #getNotificationUrl()} as oozie.wf.workflow.notification.url, Oozie calls it on every
+ * status change of the Workflow with $jobId and $status filled in. A final status completes the registered
+ * {@link WorkflowHandle} the moment it arrives.
+ *
+ * A notification for a job without a registered handle is kept for the handle about to be registered, see
+ * {@link #register(WorkflowHandle)}. It is dropped when the job's handle completes by polling, when the job is re-run
+ * and after {@link #earlyMillis} at the latest.
+ *
+ * ####IMPORTANT####
+ * #The host must be reachable from the Oozie server. Set OOZIE_NOTIFICATION_HOST (and OOZIE_NOTIFICATION_PORT if
+ * # the build agent only opens certain ports) in oozie.properties when the canonical host name of the agent is not.
+ * # The listener only binds to that host, not to every interface of the agent.
+ * #The URL carries a random token of the listener, a request without it or with a malformed job id is refused,
+ * # so nothing but the Oozie server of the build can complete a handle.
+ */
+public class JobNotificationListener {
+
+    private static final String contextPath = "/ddsw/notify";
+
+    /**
+     * How long a notification waits for its handle, the handle is registered as soon as Oozie returned the job id.
+     */
+    private static final long earlyMillis = 10 * 60 * 1000;
+
+    /**
+     * Oozie Workflow job ids, e.g. 0000001-150831000000000-oozie-oozi-W.
+     */
+    private static final Pattern jobIdPattern = Pattern.compile("\\d+-\\d+-[\\w.-]+-W");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String token;
+    private final String notificationUrl;
+
+    private final Map<String, WorkflowHandle> handles = new HashMap<>();
+    private final Map<String, EarlyNotification> early = new LinkedHashMap<>();
+
+    public JobNotificationListener(String host, int port) throws IOException {
+
+        token = newToken();
+        server = HttpServer.create(new InetSocketAddress(host, port), 16);
+        executor = Executors.newFixedThreadPool(2, new DaemonThreadFactory("ddsw-oozie-notify"));
+        server.setExecutor(executor);
+        server.createContext(contextPath, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int code = HttpURLConnection.HTTP_BAD_REQUEST;
+                try {
+                    code = notified(exchange.getRequestURI().getRawQuery());
+                } finally {
+                    exchange.sendResponseHeaders(code, -1);
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+
+        notificationUrl = "http://" + host + ":" + server.getAddress().getPort() + contextPath
+                + "?jobId=$jobId&status=$status&token=" + token;
+    }
+
+    private static String newToken() {
+
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Value for oozie.wf.workflow.notification.url.
+     */
+    public String getNotificationUrl() {
+        return notificationUrl;
+    }
+
+    void register(WorkflowHandle handle) {
+
+        EarlyNotification notification;
+        synchronized (handles) {
+            handles.put(handle.getJobId(), handle);
+            notification = early.remove(handle.getJobId());
+        }
+        if (notification != null) {
+            handle.notified(notification.status);
+        }
+    }
+
+    /**
+     * Takes the handle out along with a notification of its job nobody picked up, e.g. when polling completed it.
+     */
+    void unregister(WorkflowHandle handle) {
+        synchronized (handles) {
+            if (handles.get(handle.getJobId()) == handle) {
+                handles.remove(handle.getJobId());
+            }
+            early.remove(handle.getJobId());
+        }
+    }
+
+    /**
+     * Drops a notification of the job that is still waiting for a handle, called before the job is re-run so the
+     * final status of the run before does not complete the handle of the re-run.
+     */
+    void forget(String jobId) {
+        synchronized (handles) {
+            early.remove(jobId);
+        }
+    }
+
+    /**
+     * @return the HTTP status of the response, 403 without the token of the listener
+     */
+    private int notified(String query) throws UnsupportedEncodingException {
+
+        Map<String, String> params = parse(query);
+        String sent = params.get("token");
+        if (sent == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                sent.getBytes(StandardCharsets.UTF_8))) {
+            System.out.println("JobNotificationListener: refused a notification without the token of the listener");
+            return HttpURLConnection.HTTP_FORBIDDEN;
+        }
+        String jobId = params.get("jobId");
+        WorkflowJob.Status status;
+        try {
+            status = WorkflowJob.Status.valueOf(params.get("status"));
+        } catch (RuntimeException e) {
+            return HttpURLConnection.HTTP_BAD_REQUEST;
+        }
+        if (jobId == null || !jobIdPattern.matcher(jobId).matches()) {
+            return HttpURLConnection.HTTP_BAD_REQUEST;
+        }
+        if (!WorkflowHandle.isFinal(status)) {
+            return HttpURLConnection.HTTP_OK;
+        }
+
+        WorkflowHandle handle;
+        synchronized (handles) {
+            handle = handles.get(jobId);
+            if (handle == null) {
+                // Notification came in before run() returned the job id
+                expireEarly();
+                early.put(jobId, new EarlyNotification(status));
+                return HttpURLConnection.HTTP_OK;
+            }
+        }
+        handle.notified(status);
+        return HttpURLConnection.HTTP_OK;
+    }
+
+    private void expireEarly() {
+
+        long expired = System.currentTimeMillis() - earlyMillis;
+        Iterator<EarlyNotification> notifications = early.values().iterator();
+        while (notifications.hasNext() && notifications.next().arrivedAt < expired) {
+            notifications.remove();
+        }
+    }
+
+    private static Map<String, String> parse(String query) throws UnsupportedEncodingException {
+
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static class EarlyNotification {
+
+        private final WorkflowJob.Status status;
+        private final long arrivedAt = System.currentTimeMillis();
+
+        EarlyNotification(WorkflowJob.Status status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.cat.ddsw.base.oozie;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * Wire format helpers of the Oozie REST API, shared by the servers standing in for Oozie
+ * ({@link FakeOozieServer} and the local mode one).
+ */
+public class OozieRest {
+
+    private OozieRest() {
+    }
+
+    /**
+     * Job configuration as OozieClient posts it, a Hadoop configuration XML.
+     */
+    public static Properties readConf(InputStream in) throws IOException {
+
+        Properties conf = new Properties();
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+            NodeList properties = doc.getElementsByTagName("property");
+            for (int i = 0; i < properties.getLength(); i++) {
+                Element property = (Element) properties.item(i);
+                conf.setProperty(property.getElementsByTagName("name").item(0).getTextContent(),
+                        property.getElementsByTagName("value").item(0).getTextContent());
+            }
+        } catch (Exception e) {
+            throw new IOException("Bad job configuration", e);
+        }
+        return conf;
+    }
+
+    public static Map<String, String> params(String query) throws IOException {
+
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+
+    public static void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+        exchange.close();
+    }
+
+    /**
+     * Error response OozieClient turns into an OozieClientException with the code.
+     */
+    public static void respondError(HttpExchange exchange, String errorCode, String message) throws IOException {
+
+        exchange.getResponseHeaders().add("oozie-error-code", errorCode);
+        exchange.getResponseHeaders().add("oozie-error-message", message);
+        respond(exchange, 400, "text/plain", "");
+    }
+
+    /**
+     * Sends a job notification, a lost one is not retried (the real server gives up on notifications too).
+     */
+    public static void notify(String url) {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(1000);
+            connection.getResponseCode();
+            connection.disconnect();
+        } catch (IOException e) {
+            // Polling picks the status up
+        }
+    }
+
+    public static String rfc822(Date date) {
+
+        if (date == null) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(date);
+    }
+}
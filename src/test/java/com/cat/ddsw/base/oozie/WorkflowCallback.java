@@ -0,0 +1,9 @@
+package com.cat.ddsw.base.oozie;
+
+/**
+ * Called once a submitted Workflow reaches SUCCEEDED, KILLED or FAILED.
+ */
+public interface WorkflowCallback {
+
+    void completed(WorkflowHandle handle);
+}
@@ -0,0 +1,206 @@
+package com.cat.ddsw.base.oozie;
+
+import org.apache.oozie.client.OozieClientException;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future of a submitted Workflow Job, completed with its final status by a job notification or by polling,
+ * whichever sees it first.
+ */
+public class WorkflowHandle implements Future<WorkflowJob.Status> {
+
+    private final String jobId;
+    private final int run;
+    private final WorkflowSubmitter submitter;
+    private final long submittedAt;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<WorkflowCallback> callbacks = new ArrayList<>();
+
+    private volatile WorkflowJob.Status status = null;
+    private volatile long completedAt = 0;
+    private volatile String completedThrough = null;
+    private volatile boolean cancelled = false;
+    private volatile int reruns = 0;
+    private volatile long rerunSavedMillis = 0;
+
+    WorkflowHandle(String jobId, WorkflowSubmitter submitter) {
+        this(jobId, 0, submitter);
+    }
+
+    /**
+     * @param run first run of the Job whose final status completes the handle, 0 for any
+     */
+    WorkflowHandle(String jobId, int run, WorkflowSubmitter submitter) {
+        this.jobId = jobId;
+        this.run = run;
+        this.submitter = submitter;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    public static boolean isFinal(WorkflowJob.Status status) {
+        return status == WorkflowJob.Status.SUCCEEDED || status == WorkflowJob.Status.KILLED
+                || status == WorkflowJob.Status.FAILED;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * First run of the Job the handle follows, 0 for any, e.g. 1 for the first re-run.
+     */
+    public int getRun() {
+        return run;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    /**
+     * Final status, null while the Job is running.
+     */
+    public WorkflowJob.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Times the Job was re-run from its failed nodes.
+     */
+    public int getReruns() {
+        return reruns;
+    }
+
+    /**
+     * How long the nodes skipped by the re-runs took, the time resubmitting the whole Workflow would have added.
+     */
+    public long getRerunSavedMillis() {
+        return rerunSavedMillis;
+    }
+
+    /**
+     * "notification" or "poll".
+     */
+    public String getCompletedThrough() {
+        return completedThrough;
+    }
+
+    /**
+     * Registers a callback, run right away on the calling thread when the Workflow is already done.
+     */
+    public void addCallback(WorkflowCallback callback) {
+
+        synchronized (callbacks) {
+            if (status == null) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        callback.completed(this);
+    }
+
+    synchronized void addRerun(long savedMillis) {
+        reruns++;
+        rerunSavedMillis += savedMillis;
+    }
+
+    /**
+     * A job notification with a final status arrived.
+     */
+    void notified(WorkflowJob.Status finalStatus) {
+        submitter.notified(this, finalStatus);
+    }
+
+    /**
+     * @return false if the handle was already completed
+     */
+    boolean complete(WorkflowJob.Status finalStatus, String through) {
+
+        List<WorkflowCallback> toRun;
+        synchronized (callbacks) {
+            if (status != null) {
+                return false;
+            }
+            completedAt = System.currentTimeMillis();
+            completedThrough = through;
+            status = finalStatus;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        done.countDown();
+
+        for (WorkflowCallback callback : toRun) {
+            try {
+                callback.completed(this);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Kills the Workflow Job on the Oozie server.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+
+        if (isDone()) {
+            return false;
+        }
+        // The kill notification can beat kill() back, so mark the cancel first
+        cancelled = true;
+        try {
+            submitter.kill(jobId);
+        } catch (OozieClientException e) {
+            e.printStackTrace();
+            cancelled = false;
+            return false;
+        }
+        complete(WorkflowJob.Status.KILLED, "cancel");
+        return isCancelled();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled && status == WorkflowJob.Status.KILLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return status != null;
+    }
+
+    @Override
+    public WorkflowJob.Status get() throws InterruptedException {
+        done.await();
+        return status;
+    }
+
+    @Override
+    public WorkflowJob.Status get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Workflow " + jobId + " still running after " + unit.toMillis(timeout) + " ms");
+        }
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return jobId + (status == null ? " (running)" : " (" + status + " through " + completedThrough + ")")
+                + (reruns == 0 ? "" : ", " + reruns + " re-runs from the failed nodes saved " + rerunSavedMillis + " ms");
+    }
+}
@@ -0,0 +1,355 @@
+package com.cat.ddsw.base.oozie;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.cat.ddsw.base.capacity.CapacityGovernor;
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.OozieClientException;
+import org.apache.oozie.client.WorkflowAction;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non blocking Workflow Job submission.
+ *
+ * {@link #submit(Properties)} returns a {@link WorkflowHandle} as soon as Oozie has accepted the job. Completion is
+ * picked up from the job notification sent to the {@link JobNotificationListener}. Polling is only the fallback for
+ * a lost notification: it starts at the minimum interval and backs off up to the maximum, so a handful of threads
+ * can follow dozens of Workflows without hammering the Oozie server.
+ *
+ * ####IMPORTANT####
+ * #Settings in oozie.properties (all optional),
+ * # OOZIE_NOTIFICATION_ENABLED=true, OOZIE_NOTIFICATION_HOST, OOZIE_NOTIFICATION_PORT=0
+ * # OOZIE_POLL_MIN_MILLIS=5000, OOZIE_POLL_MAX_MILLIS=60000
+ * # OOZIE_RERUN_ATTEMPTS=1
+ * #A running Workflow holds a CAPACITY_WORKFLOWS slot of the {@link CapacityGovernor} from submit until it is done.
+ *
+ * ####IMPORTANT####
+ * #A Workflow that ends KILLED or FAILED is re-run up to OOZIE_RERUN_ATTEMPTS times as the same Job, from its
+ * # failed nodes only (oozie.wf.rerun.failnodes=true), so a failure in e.g. alterTablesScript does not redo the XML
+ * # ingest. The handle only completes once the Job succeeds or the attempts are used up, it reports the re-runs and
+ * # how long the skipped nodes took, which is the time a full resubmission would have spent on them again.
+ * #A job.properties with oozie.wf.rerun.failnodes=false is never re-run.
+ * #Each run is followed by its own handle. A notification reaching the handle of a re-run is only taken once Oozie
+ * # reports that run as ended, a late KILLED of the run before must not end the Job.
+ */
+public class WorkflowSubmitter {
+
+    public static final String notificationUrlKey = "oozie.wf.workflow.notification.url";
+
+    private static final double backoffFactor = 1.5;
+
+    private final OozieClient client;
+    private final JobNotificationListener listener;
+    private final ScheduledExecutorService poller;
+    private final long minPollMillis;
+    private final long maxPollMillis;
+    private final String user;
+    private CapacityGovernor capacityGovernor = null;
+    private volatile int rerunAttempts = 0;
+
+    public WorkflowSubmitter(OozieClient client, JobNotificationListener listener, long minPollMillis,
+                             long maxPollMillis, String user) {
+        this.client = client;
+        this.listener = listener;
+        this.minPollMillis = minPollMillis;
+        this.maxPollMillis = maxPollMillis;
+        this.user = user;
+        this.poller = Executors.newScheduledThreadPool(2, new DaemonThreadFactory("ddsw-oozie-poll"));
+    }
+
+    /**
+     * Submitter for the Oozie server in oozie.properties, with the notification listener started unless disabled.
+     */
+    public static WorkflowSubmitter create(DDSWProperties properties) throws IOException {
+
+        OozieClient client = new OozieClient(properties.getProperty("OOZIE_URL",
+                "http://" + properties.getProperty("OOZIE_HOST") + ":" + properties.getProperty("OOZIE_PORT") + "/oozie"));
+
+        JobNotificationListener listener = null;
+        if (properties.getBoolean("OOZIE_NOTIFICATION_ENABLED", true)) {
+            listener = new JobNotificationListener(
+                    properties.getProperty("OOZIE_NOTIFICATION_HOST", InetAddress.getLocalHost().getCanonicalHostName()),
+                    properties.getInt("OOZIE_NOTIFICATION_PORT", 0));
+        }
+
+        WorkflowSubmitter submitter = new WorkflowSubmitter(client, listener,
+                properties.getLong("OOZIE_POLL_MIN_MILLIS", 5000),
+                properties.getLong("OOZIE_POLL_MAX_MILLIS", 60000),
+                properties.getProperty("OOZIE_USER", System.getProperty("user.name")));
+        submitter.setCapacityGovernor(CapacityGovernor.get(properties, CapacityGovernor.workflows));
+        submitter.setRerunAttempts(properties.getInt("OOZIE_RERUN_ATTEMPTS", 1));
+        return submitter;
+    }
+
+    /**
+     * Limits the Workflows running at once across the builds on this machine, null for no limit.
+     */
+    public void setCapacityGovernor(CapacityGovernor capacityGovernor) {
+        this.capacityGovernor = capacityGovernor;
+    }
+
+    /**
+     * Times a failed Workflow is re-run from its failed nodes before its handle completes with the failure, 0 for never.
+     */
+    public void setRerunAttempts(int rerunAttempts) {
+        this.rerunAttempts = Math.max(0, rerunAttempts);
+    }
+
+    public OozieClient getClient() {
+        return client;
+    }
+
+    /**
+     * Job configuration from a Domain Specific job.properties on the classpath.
+     */
+    public Properties createJobConf(String jobPropertiesFile) throws IOException {
+
+        Properties conf = client.createConfiguration();
+        conf.putAll(DDSWProperties.loadResource(jobPropertiesFile));
+        if (user != null) {
+            conf.setProperty(OozieClient.USER_NAME, user);
+        }
+        return conf;
+    }
+
+    /**
+     * Starts the Workflow Job and returns without waiting for it to finish.
+     * Blocks while the machine is at its Workflow capacity.
+     */
+    public WorkflowHandle submit(Properties jobConf) throws OozieClientException, IOException {
+
+        Properties conf = new Properties();
+        conf.putAll(jobConf);
+        if (listener != null) {
+            conf.setProperty(notificationUrlKey, listener.getNotificationUrl());
+        }
+
+        final CapacityGovernor.Permit permit = capacityGovernor == null ? null : capacityGovernor.acquire();
+        WorkflowHandle handle;
+        try {
+            handle = follow(client.run(conf));
+            if (rerunAttempts > 0 && !"false".equalsIgnoreCase(conf.getProperty(OozieClient.RERUN_FAIL_NODES))) {
+                handle = rerunning(handle, conf);
+            }
+        } catch (Exception e) {
+            if (permit != null) {
+                permit.close();
+            }
+            throw e;
+        }
+
+        if (permit != null) {
+            handle.addCallback(new WorkflowCallback() {
+                @Override
+                public void completed(WorkflowHandle completed) {
+                    try {
+                        permit.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        return handle;
+    }
+
+    /**
+     * Follows a job that is already running.
+     */
+    public WorkflowHandle follow(String jobId) {
+        return follow(jobId, 0);
+    }
+
+    /**
+     * Follows a job from the given run on, the final status of an earlier run does not complete the handle.
+     */
+    WorkflowHandle follow(String jobId, int run) {
+
+        final WorkflowHandle handle = new WorkflowHandle(jobId, run, this);
+        if (listener != null) {
+            listener.register(handle);
+            handle.addCallback(new WorkflowCallback() {
+                @Override
+                public void completed(WorkflowHandle completed) {
+                    listener.unregister(completed);
+                }
+            });
+        }
+        schedulePoll(handle, minPollMillis);
+        return handle;
+    }
+
+    /**
+     * Blocks until the Workflow Job is done.
+     */
+    public WorkflowJob.Status await(WorkflowHandle handle) throws IOException {
+        try {
+            return handle.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for Workflow " + handle.getJobId(), e);
+        }
+    }
+
+    /**
+     * Handle of the Job over all its runs, the first run is followed by the given handle.
+     */
+    private WorkflowHandle rerunning(WorkflowHandle firstRun, Properties conf) {
+
+        WorkflowHandle job = new WorkflowHandle(firstRun.getJobId(), this);
+        firstRun.addCallback(new Rerun(job, conf));
+        return job;
+    }
+
+    /**
+     * Time the nodes that ended OK took, the nodes a re-run from the failed nodes skips.
+     */
+    private static long completedNodeMillis(WorkflowJob job) {
+
+        long millis = 0;
+        for (WorkflowAction action : job.getActions()) {
+            Date start = action.getStartTime();
+            Date end = action.getEndTime();
+            if (action.getStatus() == WorkflowAction.Status.OK && start != null && end != null) {
+                millis += Math.max(0, end.getTime() - start.getTime());
+            }
+        }
+        return millis;
+    }
+
+    void kill(String jobId) throws OozieClientException {
+        client.kill(jobId);
+    }
+
+    /**
+     * Completes the handle with the notified status. A handle following a re-run asks Oozie first: the notification
+     * can be a late one of the run before, only a final status of the followed run counts.
+     */
+    void notified(WorkflowHandle handle, WorkflowJob.Status status) {
+
+        if (handle.getRun() > 0) {
+            try {
+                WorkflowJob job = client.getJobInfo(handle.getJobId());
+                if (!isFinal(job, handle)) {
+                    System.out.println("WorkflowSubmitter: ignoring the " + status + " notification of "
+                            + handle.getJobId() + ", run " + job.getRun() + " is " + job.getStatus());
+                    return;
+                }
+                status = job.getStatus();
+            } catch (OozieClientException e) {
+                // Polling picks the status up
+                return;
+            }
+        }
+        handle.complete(status, "notification");
+    }
+
+    /**
+     * True when the Job has ended in the run the handle follows or a later one.
+     */
+    private static boolean isFinal(WorkflowJob job, WorkflowHandle handle) {
+        return WorkflowHandle.isFinal(job.getStatus()) && job.getRun() >= handle.getRun();
+    }
+
+    private void schedulePoll(final WorkflowHandle handle, final long delay) {
+
+        if (handle.isDone() || poller.isShutdown()) {
+            return;
+        }
+
+        poller.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (handle.isDone()) {
+                    return;
+                }
+                try {
+                    WorkflowJob job = client.getJobInfo(handle.getJobId());
+                    if (isFinal(job, handle)) {
+                        handle.complete(job.getStatus(), "poll");
+                        return;
+                    }
+                } catch (OozieClientException e) {
+                    System.out.println("WorkflowSubmitter: polling " + handle.getJobId() + " failed, " + e.getMessage());
+                }
+                schedulePoll(handle, Math.min(maxPollMillis, (long) (delay * backoffFactor)));
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Re-runs the Job from its failed nodes when a run fails, until a run succeeds or the attempts are used up.
+     */
+    private class Rerun implements WorkflowCallback {
+
+        private final WorkflowHandle job;
+        private final Properties rerunConf = new Properties();
+
+        Rerun(WorkflowHandle job, Properties conf) {
+            this.job = job;
+            rerunConf.putAll(conf);
+            rerunConf.remove(OozieClient.RERUN_SKIP_NODES);
+            rerunConf.setProperty(OozieClient.RERUN_FAIL_NODES, "true");
+        }
+
+        @Override
+        public void completed(WorkflowHandle run) {
+
+            WorkflowJob.Status status = run.getStatus();
+            if (job.isDone()) {
+                // Cancelled
+                return;
+            }
+            if (status == WorkflowJob.Status.SUCCEEDED || job.getReruns() >= rerunAttempts) {
+                job.complete(status, run.getCompletedThrough());
+                return;
+            }
+
+            int nextRun;
+            try {
+                WorkflowJob ended = client.getJobInfo(job.getJobId());
+                long savedMillis = completedNodeMillis(ended);
+                System.out.println("WorkflowSubmitter: " + job.getJobId() + " ended " + status + ", re-running its failed"
+                        + " nodes (" + (job.getReruns() + 1) + " of " + rerunAttempts + "), skipping " + savedMillis
+                        + " ms of completed nodes");
+                if (listener != null) {
+                    listener.forget(job.getJobId());
+                }
+                client.reRun(job.getJobId(), rerunConf);
+                job.addRerun(savedMillis);
+                nextRun = ended.getRun() + 1;
+            } catch (OozieClientException e) {
+                e.printStackTrace();
+                job.complete(status, run.getCompletedThrough());
+                return;
+            }
+
+            if (job.isDone()) {
+                // Cancelled while the re-run was being started
+                try {
+                    kill(job.getJobId());
+                } catch (OozieClientException e) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            follow(job.getJobId(), nextRun).addCallback(this);
+        }
+    }
+
+    public void shutdown() {
+
+        poller.shutdownNow();
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+}
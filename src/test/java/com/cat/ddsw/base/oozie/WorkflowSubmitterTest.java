@@ -0,0 +1,173 @@
+package com.cat.ddsw.base.oozie;
+
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.WorkflowJob;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WorkflowSubmitter against the FakeOozieServer.
+ */
+public class WorkflowSubmitterTest {
+
+    private FakeOozieServer oozie;
+    private WorkflowSubmitter submitter;
+
+    @Before
+    public void setUp() throws Exception {
+        oozie = new FakeOozieServer();
+        oozie.setNodes("xmlIngest", "alterTables");
+        oozie.setNodeDurationMillis(50);
+    }
+
+    @After
+    public void tearDown() {
+        if (submitter != null) {
+            submitter.shutdown();
+        }
+        oozie.stop();
+    }
+
+    @Test
+    public void testNotificationCompletesJob() throws Exception {
+
+        // Polling alone would not see the job finish within the timeout
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                new JobNotificationListener("localhost", 0), 60000, 60000, "test");
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, handle.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("notification", handle.getCompletedThrough());
+        Assert.assertEquals(2, oozie.getNodeExecutions());
+    }
+
+    @Test
+    public void testNotificationWithoutTokenIsRefused() throws Exception {
+
+        oozie.setNodeDurationMillis(2000);
+        JobNotificationListener listener = new JobNotificationListener("localhost", 0);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()), listener, 60000, 60000, "test");
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        String url = listener.getNotificationUrl().replace("$jobId", handle.getJobId()).replace("$status", "KILLED");
+        String forged = url.substring(0, url.indexOf("&token="));
+
+        Assert.assertEquals(HttpURLConnection.HTTP_FORBIDDEN, responseCode(forged));
+        Assert.assertEquals(HttpURLConnection.HTTP_FORBIDDEN, responseCode(forged + "&token=0"));
+        Assert.assertEquals(HttpURLConnection.HTTP_BAD_REQUEST, responseCode(url.replace(handle.getJobId(), "x")));
+        Assert.assertFalse(handle.isDone());
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, handle.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPollingWithoutNotification() throws Exception {
+
+        oozie.setNotificationsEnabled(false);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                new JobNotificationListener("localhost", 0), 20, 100, "test");
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, handle.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("poll", handle.getCompletedThrough());
+    }
+
+    @Test
+    public void testFailedNodeKillsJob() throws Exception {
+
+        oozie.failNode("alterTables", 1);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()), null, 20, 100, "test");
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertEquals(WorkflowJob.Status.KILLED, submitter.await(handle));
+        Assert.assertTrue(handle.getCompletedAt() >= handle.getSubmittedAt());
+    }
+
+    @Test
+    public void testFailedNodesAreRerun() throws Exception {
+
+        oozie.setNodes("xmlIngest", "xslTransform", "alterTables");
+        oozie.setNodeDurationMillis(600);
+        oozie.failNode("alterTables", 1);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                new JobNotificationListener("localhost", 0), 20, 100, "test");
+        submitter.setRerunAttempts(2);
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, handle.get(20, TimeUnit.SECONDS));
+        Assert.assertEquals(1, oozie.getSubmittedJobs());
+        Assert.assertEquals(1, handle.getReruns());
+        // Only alterTables ran again
+        Assert.assertEquals(4, oozie.getNodeExecutions());
+        Assert.assertEquals("true", oozie.getJobConf(handle.getJobId()).getProperty(OozieClient.RERUN_FAIL_NODES));
+        // The Oozie times have whole seconds, the skipped nodes took 1.2 seconds
+        Assert.assertTrue(handle.toString(), handle.getRerunSavedMillis() >= 1000);
+    }
+
+    @Test
+    public void testLateNotificationDoesNotEndTheRerun() throws Exception {
+
+        // The KILLED notification of the first run arrives after polling completed it, while the re-run is running
+        oozie.setNodeDurationMillis(300);
+        oozie.setNotificationDelayMillis(150);
+        oozie.failNode("alterTables", 1);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                new JobNotificationListener("localhost", 0), 20, 50, "test");
+        submitter.setRerunAttempts(1);
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, handle.get(20, TimeUnit.SECONDS));
+        Assert.assertEquals(1, handle.getReruns());
+        Assert.assertEquals(3, oozie.getNodeExecutions());
+        Assert.assertEquals("poll", handle.getCompletedThrough());
+    }
+
+    @Test
+    public void testRerunAttemptsRunOut() throws Exception {
+
+        oozie.failNode("alterTables", 3);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()), null, 20, 100, "test");
+        submitter.setRerunAttempts(2);
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertEquals(WorkflowJob.Status.KILLED, handle.get(20, TimeUnit.SECONDS));
+        Assert.assertEquals(2, handle.getReruns());
+        Assert.assertEquals(4, oozie.getNodeExecutions());
+    }
+
+    @Test
+    public void testCancelKillsJob() throws Exception {
+
+        oozie.setNodeDurationMillis(5000);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                new JobNotificationListener("localhost", 0), 60000, 60000, "test");
+
+        WorkflowHandle handle = submitter.submit(jobConf());
+        Assert.assertTrue(handle.cancel(true));
+        Assert.assertTrue(handle.isDone());
+        Assert.assertEquals(WorkflowJob.Status.KILLED,
+                submitter.getClient().getJobInfo(handle.getJobId()).getStatus());
+    }
+
+    private static int responseCode(String url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static Properties jobConf() {
+        Properties conf = new Properties();
+        conf.setProperty(OozieClient.APP_PATH, "hdfs:///ddsw/test/workflow.xml");
+        conf.setProperty(OozieClient.USER_NAME, "test");
+        return conf;
+    }
+}
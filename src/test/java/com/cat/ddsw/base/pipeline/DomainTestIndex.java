@@ -0,0 +1,166 @@
+package com.cat.ddsw.base.pipeline;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The Domain Test classes of the build with their domain, tables and expected cost, as written by the
+ * {@link DomainTestIndexProcessor} while the tests compiled.
+ *
+ * ####IMPORTANT####
+ * #Read from META-INF/ddsw/domain-tests.index on the classpath, every classpath entry with an index adds its classes.
+ * # Nothing is scanned, so startup does not grow with the Hadoop/Oozie jars or the number of Domains.
+ * #A class missing from the index was compiled without the processor, "gradle clean test" writes it again.
+ */
+public class DomainTestIndex {
+
+    private static DomainTestIndex instance = null;
+
+    /**
+     * One indexed Test class.
+     */
+    public static class Entry {
+
+        private final String className;
+        private final String domain;
+        private final String jobPropertiesFile;
+        private final List<String> tables;
+        private final long expectedMillis;
+
+        Entry(String className, String domain, String jobPropertiesFile, List<String> tables, long expectedMillis) {
+            this.className = className;
+            this.domain = domain;
+            this.jobPropertiesFile = jobPropertiesFile;
+            this.tables = tables;
+            this.expectedMillis = expectedMillis;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getDomain() {
+            return domain;
+        }
+
+        public String getJobPropertiesFile() {
+            return jobPropertiesFile;
+        }
+
+        public List<String> getTables() {
+            return tables;
+        }
+
+        /**
+         * Declared in @DomainWorkflow, -1 when unknown.
+         */
+        public long getExpectedMillis() {
+            return expectedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return className + " (" + domain + ", " + tables + ")";
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    DomainTestIndex() {
+    }
+
+    /**
+     * Index of the test classpath, empty when none was written.
+     */
+    public static synchronized DomainTestIndex get() {
+
+        if (instance == null) {
+            try {
+                instance = load(DomainTestIndex.class.getClassLoader());
+            } catch (IOException e) {
+                e.printStackTrace();
+                instance = new DomainTestIndex();
+            }
+        }
+        return instance;
+    }
+
+    public static DomainTestIndex load(ClassLoader classLoader) throws IOException {
+
+        DomainTestIndex index = new DomainTestIndex();
+        Enumeration<URL> resources = classLoader.getResources(DomainTestIndexProcessor.indexResource);
+        while (resources.hasMoreElements()) {
+            try (InputStream in = resources.nextElement().openStream()) {
+                index.read(in);
+            }
+        }
+        return index;
+    }
+
+    void read(InputStream in) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 5) {
+                throw new IOException("Invalid " + DomainTestIndexProcessor.indexResource + " line: " + line);
+            }
+            List<String> tables = fields[3].isEmpty() ? Collections.<String>emptyList()
+                    : Collections.unmodifiableList(Arrays.asList(fields[3].split(",")));
+            entries.put(fields[0], new Entry(fields[0], fields[1], fields[2], tables, Long.parseLong(fields[4])));
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @return null when the class is not indexed
+     */
+    public Entry getEntry(String className) {
+        return entries.get(className);
+    }
+
+    public Set<String> getDomains() {
+
+        Set<String> domains = new TreeSet<>();
+        for (Entry entry : entries.values()) {
+            domains.add(entry.domain);
+        }
+        return domains;
+    }
+
+    /**
+     * The indexed classes in index order, loaded without initializing them.
+     */
+    public Class<?>[] getTestClasses(ClassLoader classLoader) throws ClassNotFoundException {
+
+        List<Class<?>> classes = new ArrayList<>();
+        for (String className : entries.keySet()) {
+            classes.add(Class.forName(className, false, classLoader));
+        }
+        return classes.toArray(new Class<?>[classes.size()]);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+}
@@ -0,0 +1,107 @@
+package com.cat.ddsw.base.pipeline;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * DomainTestIndexProcessor run by the compiler of this JVM over small annotated classes, and the DomainTestIndex
+ * read back from the classes it compiled.
+ */
+public class DomainTestIndexTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testIndexesAnnotatedClasses() throws Exception {
+
+        File classes = temp.newFolder("classes");
+        Assert.assertTrue(compile(classes,
+                source("InvoiceSample", "@DomainWorkflow(jobPropertiesFile = InvoiceSample.jobPropertiesFile, "
+                        + "sourceDataFile = \"/source\", targetDataFile = \"/target\", "
+                        + "tables = {\"ddsw_qa.invoice_current\", \"ddsw_qa.invoice_line\"}, expectedMillis = 90000)\n"
+                        + "public class InvoiceSample { static final String jobPropertiesFile = \"invoice/job.properties\"; }"),
+                source("HierarchySample", "@DomainWorkflow(jobPropertiesFile = \"dealer_hierarchy/job.properties\", "
+                        + "sourceDataFile = \"/source\", targetDataFile = \"/target\", domain = \"hierarchy\")\n"
+                        + "public class HierarchySample { }"),
+                source("AbstractSample", "@DomainWorkflow(jobPropertiesFile = \"x/job.properties\", "
+                        + "sourceDataFile = \"/source\", targetDataFile = \"/target\")\n"
+                        + "public abstract class AbstractSample { }"),
+                source("PlainSample", "public class PlainSample {\n"
+                        + "  @DomainWorkflow(jobPropertiesFile = \"x/job.properties\", sourceDataFile = \"/source\", "
+                        + "targetDataFile = \"/target\") static class Fixture { } }")));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()},
+                DomainTestIndexTest.class.getClassLoader())) {
+
+            DomainTestIndex index = new DomainTestIndex();
+            index.read(loader.findResource(DomainTestIndexProcessor.indexResource).openStream());
+
+            Assert.assertEquals(2, index.getEntries().size());
+            DomainTestIndex.Entry invoice = index.getEntry("sample.InvoiceSample");
+            Assert.assertEquals("invoice", invoice.getDomain());
+            Assert.assertEquals("invoice/job.properties", invoice.getJobPropertiesFile());
+            Assert.assertEquals(Arrays.asList("ddsw_qa.invoice_current", "ddsw_qa.invoice_line"), invoice.getTables());
+            Assert.assertEquals(90000, invoice.getExpectedMillis());
+
+            DomainTestIndex.Entry hierarchy = index.getEntry("sample.HierarchySample");
+            Assert.assertEquals("hierarchy", hierarchy.getDomain());
+            Assert.assertEquals(Collections.<String>emptyList(), hierarchy.getTables());
+            Assert.assertEquals(-1, hierarchy.getExpectedMillis());
+            Assert.assertEquals(Arrays.asList("hierarchy", "invoice"), Arrays.asList(index.getDomains().toArray()));
+
+            Class<?>[] testClasses = index.getTestClasses(loader);
+            Assert.assertEquals("sample.HierarchySample", testClasses[0].getName());
+            Assert.assertEquals("invoice/job.properties",
+                    testClasses[1].getAnnotation(DomainWorkflow.class).jobPropertiesFile());
+        }
+    }
+
+    @Test
+    public void testRejectsClassesTheSuiteCannotRun() throws Exception {
+
+        Assert.assertFalse(compile(temp.newFolder("classes"),
+                source("HiddenSample", "@DomainWorkflow(jobPropertiesFile = \"x/job.properties\", "
+                        + "sourceDataFile = \"/source\", targetDataFile = \"/target\")\n"
+                        + "class HiddenSample { }")));
+    }
+
+    private File source(String name, String body) throws Exception {
+
+        File file = new File(temp.getRoot(), "src/sample/" + name + ".java");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), ("package sample;\nimport com.cat.ddsw.base.pipeline.DomainWorkflow;\n" + body)
+                .getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static boolean compile(File classes, File... sources) throws Exception {
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics,
+                    Arrays.asList("-d", classes.getPath(), "-classpath", System.getProperty("java.class.path")),
+                    null, files.getJavaFileObjects(sources));
+            task.setProcessors(Collections.singletonList(new DomainTestIndexProcessor()));
+            boolean compiled = task.call();
+            System.out.println("DomainTestIndexTest: " + diagnostics.getDiagnostics());
+            return compiled;
+        }
+    }
+}
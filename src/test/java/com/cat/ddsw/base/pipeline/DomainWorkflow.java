@@ -0,0 +1,50 @@
+package com.cat.ddsw.base.pipeline;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The Domain Workflow a Test class verifies, so the {@link PipelinedSuiteExecutor} can stage the Test data and run
+ * the Workflow ahead of the class. Same values the class passes to DomainFixtureRegistry.acquire(...).
+ *
+ * ####IMPORTANT####
+ * #Annotated classes are listed in the {@link DomainTestIndex} while they compile, DDSWParallelSuite runs every class
+ * # in it. There is nothing to register by hand.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DomainWorkflow {
+
+    /**
+     * Relative Path to the DOMAIN Specific Job Properties, e.g. "invoice/job.properties".
+     */
+    String jobPropertiesFile();
+
+    String sourceDataFile();
+
+    String targetDataFile();
+
+    /**
+     * Optional staging manifest on the classpath with more Test data of the Domain, see StagingManifest.
+     * Staged together with the source and target above.
+     */
+    String stagingManifest() default "";
+
+    /**
+     * Name of the Domain, the directory of the jobPropertiesFile when empty, e.g. "invoice".
+     */
+    String domain() default "";
+
+    /**
+     * Hive tables the class verifies, e.g. "ddsw_qa.invoice_current".
+     */
+    String[] tables() default {};
+
+    /**
+     * Expected duration of the class with its staging and Workflow in ms, used to order the classes until the
+     * DurationHistory has samples of its own. -1 when unknown.
+     */
+    long expectedMillis() default -1;
+}
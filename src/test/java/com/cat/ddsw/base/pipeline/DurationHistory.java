@@ -0,0 +1,174 @@
+package com.cat.ddsw.base.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Durations of earlier runs, one entry per phase (e.g. "WORKFLOW.invoice/job.properties") with the last few samples.
+ *
+ * ####IMPORTANT####
+ * #The file is given by the "ddsw.history.file" System Property from oozie-test/build.gradle. It lives under .gradle
+ * # so "gradle clean" does not throw it away. Every fork merges its samples into it under a file lock.
+ */
+public class DurationHistory {
+
+    public static final String historyFileKey = "ddsw.history.file";
+
+    /**
+     * Samples kept per entry, the median is taken over these.
+     */
+    private static final int maxSamples = 10;
+
+    /**
+     * A run this much slower than the median is reported, once the median has enough samples behind it.
+     */
+    private static final double regressionFactor = 1.5;
+    private static final int minSamplesForRegression = 3;
+
+    private final File file;
+    private final Map<String, List<Long>> samples;
+
+    DurationHistory(File file, Map<String, List<Long>> samples) {
+        this.file = file;
+        this.samples = samples;
+    }
+
+    /**
+     * History of this build's project, empty when there is none yet.
+     */
+    public static DurationHistory load() throws IOException {
+        return load(new File(System.getProperty(historyFileKey, ".gradle/ddsw-durations.properties")));
+    }
+
+    public static DurationHistory load(File file) throws IOException {
+
+        if (!file.exists()) {
+            return new DurationHistory(file, new HashMap<String, List<Long>>());
+        }
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = access.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                return new DurationHistory(file, read(channel));
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Median of the recorded samples, -1 when the entry has none.
+     */
+    public synchronized long getMedian(String key) {
+
+        List<Long> recorded = samples.get(key);
+        if (recorded == null || recorded.isEmpty()) {
+            return -1;
+        }
+        List<Long> sorted = new ArrayList<>(recorded);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        return sorted.size() % 2 == 1 ? sorted.get(middle) : (sorted.get(middle - 1) + sorted.get(middle)) / 2;
+    }
+
+    public synchronized int getSampleCount(String key) {
+        List<Long> recorded = samples.get(key);
+        return recorded == null ? 0 : recorded.size();
+    }
+
+    /**
+     * Warning text when the duration is a regression against the median of the entry, null when it is not.
+     */
+    public String checkRegression(String key, long millis) {
+
+        int count = getSampleCount(key);
+        long median = getMedian(key);
+        if (count < minSamplesForRegression || millis <= median * regressionFactor) {
+            return null;
+        }
+        return key + " took " + millis + " ms, median " + median + " ms over the last " + count + " runs";
+    }
+
+    /**
+     * Adds the samples of this run and writes them to the file, keeping what other forks wrote meanwhile.
+     */
+    public synchronized void record(Map<String, Long> durations) throws IOException {
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = access.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                Map<String, List<Long>> merged = read(channel);
+                for (Map.Entry<String, Long> duration : durations.entrySet()) {
+                    List<Long> recorded = merged.get(duration.getKey());
+                    if (recorded == null) {
+                        recorded = new ArrayList<>();
+                        merged.put(duration.getKey(), recorded);
+                    }
+                    recorded.add(duration.getValue());
+                    while (recorded.size() > maxSamples) {
+                        recorded.remove(0);
+                    }
+                }
+
+                Properties properties = new Properties();
+                for (Map.Entry<String, List<Long>> entry : merged.entrySet()) {
+                    StringBuilder value = new StringBuilder();
+                    for (Long sample : entry.getValue()) {
+                        value.append(value.length() == 0 ? "" : ",").append(sample);
+                    }
+                    properties.setProperty(entry.getKey(), value.toString());
+                }
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                properties.store(content, "DDSW phase durations in ms, oldest first");
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(content.toByteArray()), 0);
+
+                samples.clear();
+                samples.putAll(merged);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static Map<String, List<Long>> read(FileChannel channel) throws IOException {
+
+        Properties properties = new Properties();
+        if (channel.size() > 0) {
+            ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            channel.read(content, 0);
+            properties.load(new ByteArrayInputStream(content.array()));
+        }
+
+        Map<String, List<Long>> samples = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            List<Long> recorded = new ArrayList<>();
+            for (String sample : properties.getProperty(key).split(",")) {
+                try {
+                    recorded.add(Long.parseLong(sample.trim()));
+                } catch (NumberFormatException e) {
+                    // Hand edited or truncated entry, skip the sample
+                }
+            }
+            samples.put(key, recorded);
+        }
+        return samples;
+    }
+}
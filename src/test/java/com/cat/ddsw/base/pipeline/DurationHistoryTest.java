@@ -0,0 +1,104 @@
+package com.cat.ddsw.base.pipeline;
+
+import com.cat.ddsw.base.fixture.DomainFixtureRegistry;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DurationHistory samples and the LPT order PipelinedSuiteExecutor derives from them.
+ */
+public class DurationHistoryTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testMedianAndTrim() throws Exception {
+
+        File file = new File(temp.getRoot(), "history/durations.properties");
+        DurationHistory history = DurationHistory.load(file);
+        Assert.assertEquals(-1, history.getMedian("VERIFY.a"));
+
+        for (long millis = 1; millis <= 12; millis++) {
+            history.record(Collections.singletonMap("VERIFY.a", millis * 100));
+        }
+        history.record(Collections.singletonMap("VERIFY.b", 7L));
+
+        DurationHistory reloaded = DurationHistory.load(file);
+        // Only the last 10 samples (300 .. 1200) are kept
+        Assert.assertEquals(10, reloaded.getSampleCount("VERIFY.a"));
+        Assert.assertEquals(750, reloaded.getMedian("VERIFY.a"));
+        Assert.assertEquals(7, reloaded.getMedian("VERIFY.b"));
+    }
+
+    @Test
+    public void testRecordKeepsOtherForks() throws Exception {
+
+        File file = temp.newFile("durations.properties");
+        DurationHistory first = DurationHistory.load(file);
+        DurationHistory second = DurationHistory.load(file);
+
+        first.record(Collections.singletonMap("WORKFLOW.invoice/job.properties", 1000L));
+        second.record(Collections.singletonMap("WORKFLOW.dealer_inventory/job.properties", 2000L));
+
+        DurationHistory reloaded = DurationHistory.load(file);
+        Assert.assertEquals(1000, reloaded.getMedian("WORKFLOW.invoice/job.properties"));
+        Assert.assertEquals(2000, reloaded.getMedian("WORKFLOW.dealer_inventory/job.properties"));
+    }
+
+    @Test
+    public void testRegression() throws Exception {
+
+        DurationHistory history = DurationHistory.load(temp.newFile("durations.properties"));
+        history.record(Collections.singletonMap("VERIFY.a", 100L));
+        history.record(Collections.singletonMap("VERIFY.a", 100L));
+        Assert.assertNull("too few samples", history.checkRegression("VERIFY.a", 1000));
+
+        history.record(Collections.singletonMap("VERIFY.a", 120L));
+        Assert.assertNull(history.checkRegression("VERIFY.a", 140));
+        Assert.assertNotNull(history.checkRegression("VERIFY.a", 1000));
+    }
+
+    @Test
+    public void testLongestExpectedFirst() throws Exception {
+
+        DurationHistory history = DurationHistory.load(temp.newFile("durations.properties"));
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("VERIFY." + Short.class.getName(), 100L);
+        durations.put("VERIFY." + Long.class.getName(), 5000L);
+        durations.put("VERIFY." + Integer.class.getName(), 1000L);
+        history.record(durations);
+
+        Map<PipelineStage, Integer> threads = new EnumMap<>(PipelineStage.class);
+        threads.put(PipelineStage.VERIFY, 1);
+        SuitePipeline pipeline = new SuitePipeline(threads);
+        PipelinedSuiteExecutor executor = new PipelinedSuiteExecutor(pipeline, DomainFixtureRegistry.get(), history);
+
+        final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+        for (final Class<?> testClass : new Class<?>[]{Short.class, Integer.class, Byte.class, Long.class}) {
+            executor.add(testClass, new Runnable() {
+                @Override
+                public void run() {
+                    ran.add(testClass.getSimpleName());
+                }
+            });
+        }
+        executor.start();
+        pipeline.await();
+        pipeline.shutdown();
+        DomainFixtureRegistry.get().setCleanupExecutor(null);
+
+        // Byte has no history and goes first
+        Assert.assertEquals("[Byte, Long, Integer, Short]", ran.toString());
+    }
+}
@@ -0,0 +1,105 @@
+package com.cat.ddsw.base.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One node of the {@link SuitePipeline} graph, run on the pool of its stage once all its dependencies are done.
+ *
+ * A phase runs even when a dependency failed, so it can report the failure (a Test class still has to tell JUnit
+ * its Tests failed). Phases that should be skipped check {@link #getDependencyFailure()} first.
+ */
+public abstract class PipelinePhase {
+
+    private final String name;
+    private final PipelineStage stage;
+
+    final List<PipelinePhase> dependencies = new ArrayList<>();
+    final List<PipelinePhase> dependents = new ArrayList<>();
+    int pendingDependencies = 0;
+
+    SuitePipeline pipeline = null;
+    boolean deferred = false;
+
+    private volatile boolean done = false;
+    private volatile Throwable failure = null;
+    private volatile long startedAt = 0;
+    private volatile long finishedAt = 0;
+
+    protected PipelinePhase(String name, PipelineStage stage) {
+        this.name = name;
+        this.stage = stage;
+    }
+
+    /**
+     * The work of the phase. The phase is done when this returns, unless {@link #deferCompletion()} was called.
+     */
+    protected abstract void execute() throws Exception;
+
+    /**
+     * Keeps the phase running after execute() returns, for work that finishes on another thread
+     * (e.g. a Workflow notification). {@link #complete(Throwable)} must follow.
+     */
+    protected void deferCompletion() {
+        deferred = true;
+    }
+
+    /**
+     * Ends a deferred phase, failure is null when it succeeded.
+     */
+    protected void complete(Throwable failure) {
+        pipeline.completed(this, failure);
+    }
+
+    /**
+     * First failure among the dependencies, null when they all succeeded.
+     */
+    protected Throwable getDependencyFailure() {
+
+        for (PipelinePhase dependency : dependencies) {
+            if (dependency.getFailure() != null) {
+                return dependency.getFailure();
+            }
+        }
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PipelineStage getStage() {
+        return stage;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void started() {
+        startedAt = System.currentTimeMillis();
+    }
+
+    void finished(Throwable failure) {
+        this.failure = failure;
+        this.finishedAt = System.currentTimeMillis();
+        this.done = true;
+    }
+
+    @Override
+    public String toString() {
+        return stage + " " + name + (done ? " (" + (finishedAt - startedAt) + " ms" + (failure == null ? ")" : ", failed)") : "");
+    }
+}
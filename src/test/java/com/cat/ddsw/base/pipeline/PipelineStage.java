@@ -0,0 +1,50 @@
+package com.cat.ddsw.base.pipeline;
+
+/**
+ * Kinds of work in a Domain's lifecycle, each stage runs on its own pool.
+ *
+ * ####IMPORTANT####
+ * #Pool sizes follow what each stage waits on, not the CPU count, and can be set in oozie.properties,
+ * # PIPELINE_STAGING_THREADS=4, PIPELINE_WORKFLOW_THREADS=2, PIPELINE_VERIFY_THREADS=4, PIPELINE_CLEANUP_THREADS=2
+ */
+public enum PipelineStage {
+
+    /**
+     * HDFS copies of the Test data, bound by NameNode and DataNode round trips.
+     */
+    STAGING("PIPELINE_STAGING_THREADS", 4),
+
+    /**
+     * Workflow submissions. Threads only submit, completion comes back through the Oozie job notification.
+     */
+    WORKFLOW("PIPELINE_WORKFLOW_THREADS", 2),
+
+    /**
+     * The Test classes themselves, mostly waiting on HiveServer2 queries.
+     */
+    VERIFY("PIPELINE_VERIFY_THREADS", 4),
+
+    /**
+     * Partition drops and other cleanup of released Domains.
+     */
+    CLEANUP("PIPELINE_CLEANUP_THREADS", 2);
+
+    private final String threadsKey;
+    private final int defaultThreads;
+
+    PipelineStage(String threadsKey, int defaultThreads) {
+        this.threadsKey = threadsKey;
+        this.defaultThreads = defaultThreads;
+    }
+
+    /**
+     * Key of the pool size in oozie.properties.
+     */
+    public String getThreadsKey() {
+        return threadsKey;
+    }
+
+    public int getDefaultThreads() {
+        return defaultThreads;
+    }
+}
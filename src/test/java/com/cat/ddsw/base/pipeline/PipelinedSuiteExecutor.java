@@ -0,0 +1,401 @@
+package com.cat.ddsw.base.pipeline;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.fixture.DomainFixtureRegistry;
+import com.cat.ddsw.base.fixture.DomainRun;
+import com.cat.ddsw.base.golden.GoldenStore;
+import com.cat.ddsw.base.oozie.WorkflowCallback;
+import com.cat.ddsw.base.oozie.WorkflowHandle;
+import com.cat.ddsw.base.selection.ChangeSelection;
+import com.cat.ddsw.base.selection.DomainFingerprinter;
+import com.cat.ddsw.base.selection.FingerprintHistory;
+import com.cat.ddsw.base.staging.StagingManifest;
+import com.cat.ddsw.base.timing.PhaseSummary;
+import com.cat.ddsw.base.timing.PhaseTimeline;
+import com.cat.ddsw.base.timing.PhaseTimer;
+import org.junit.runners.model.RunnerScheduler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the Test classes of a Suite as a pipeline of Domain lifecycles instead of whole classes on one pool.
+ *
+ * Every class annotated with {@link DomainWorkflow} becomes STAGING -> WORKFLOW -> VERIFY, where VERIFY runs the
+ * class itself (its @BeforeClass then finds the Domain COMPLETED in the DomainFixtureRegistry). Classes of the same
+ * Domain share the STAGING and WORKFLOW phases. Cleanup of released Domains goes to the CLEANUP pool. All Domains
+ * are staged and submitted as soon as the Suite starts, so the Suite takes about as long as its slowest Workflow.
+ *
+ * Used as the RunnerScheduler of the Suite, together with the Suite handing each child to {@link #add(Class, Runnable)}.
+ *
+ * ####IMPORTANT####
+ * #The classes are started longest expected first (LPT), from the phase durations of earlier runs in the
+ * # {@link DurationHistory}. Classes without history are ordered by the expectedMillis declared in their
+ * # {@link DomainTestIndex} entry, classes without either go first. After the run the durations are recorded and any phase
+ * # much slower than its median is reported as a WARNING.
+ * #At the end the {@link PhaseTimeline} of the fork is written and the p50/p95 per phase over recent runs printed.
+ * #With a {@link ChangeSelection} set, classes unchanged since their last green run are skipped before anything is
+ * # staged, and the classes that passed are recorded as green at the end.
+ */
+public class PipelinedSuiteExecutor implements RunnerScheduler {
+
+    private final SuitePipeline pipeline;
+    private final DomainFixtureRegistry registry;
+    private final DurationHistory history;
+    private final Map<String, PipelinePhase> workflows = new HashMap<>();
+    private final List<QueuedClass> queued = new ArrayList<>();
+    private volatile ChangeSelection selection = null;
+
+    public PipelinedSuiteExecutor(SuitePipeline pipeline, DomainFixtureRegistry registry, DurationHistory history) {
+        this.pipeline = pipeline;
+        this.registry = registry;
+        this.history = history;
+        registry.setCleanupExecutor(pipeline.getPool(PipelineStage.CLEANUP));
+    }
+
+    /**
+     * Executor with the pool sizes from oozie.properties and the build's DomainFixtureRegistry.
+     */
+    public static PipelinedSuiteExecutor create() throws IOException {
+
+        DomainFixtureRegistry registry = DomainFixtureRegistry.get();
+        PipelinedSuiteExecutor executor = new PipelinedSuiteExecutor(SuitePipeline.create(DDSWProperties.get()),
+                registry, DurationHistory.load());
+        try {
+            executor.setChangeSelection(new ChangeSelection(
+                    new DomainFingerprinter(registry.getHdfsStager().getFileSystem(), GoldenStore.get().getDirectory()),
+                    FingerprintHistory.load(), ChangeSelection.isFullRunRequested()));
+        } catch (IOException e) {
+            // Every class runs
+            e.printStackTrace();
+        }
+        return executor;
+    }
+
+    public SuitePipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Skips the classes unchanged since their last green run, null runs every class.
+     */
+    public void setChangeSelection(ChangeSelection selection) {
+        this.selection = selection;
+    }
+
+    public ChangeSelection getChangeSelection() {
+        return selection;
+    }
+
+    /**
+     * Queues the Test class, the queued classes are started in LPT order when the Suite has handed over all of them.
+     *
+     * @param runClass runs the class and reports to JUnit, must not throw
+     */
+    public synchronized void add(Class<?> testClass, Runnable runClass) {
+        add(testClass, runClass, null);
+    }
+
+    /**
+     * @param skipClass reports the class as skipped when the ChangeSelection leaves it out, null to always run it
+     */
+    public synchronized void add(Class<?> testClass, Runnable runClass, Runnable skipClass) {
+        queued.add(new QueuedClass(testClass, runClass, skipClass));
+    }
+
+    /**
+     * The children are queued by {@link #add(Class, Runnable)}, scheduling runs them right away.
+     */
+    @Override
+    public void schedule(Runnable childStatement) {
+        childStatement.run();
+    }
+
+    /**
+     * Starts the queued classes and waits for every phase and the cleanup of every released Domain.
+     */
+    @Override
+    public void finished() {
+        try {
+            start();
+            pipeline.await();
+            pipeline.shutdown();
+            registry.flushCleanup();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Got interrupted", e);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            registry.setCleanupExecutor(null);
+        }
+
+        record();
+        recordSelection();
+        writeTimeline();
+    }
+
+    /**
+     * Starts the queued classes, longest expected first.
+     */
+    synchronized List<PipelinePhase> start() {
+
+        List<QueuedClass> ordered = new ArrayList<>();
+        for (QueuedClass queuedClass : queued) {
+            if (skip(queuedClass)) {
+                queuedClass.skipClass.run();
+                continue;
+            }
+            queuedClass.expectedMillis = expectedMillis(queuedClass.testClass);
+            ordered.add(queuedClass);
+        }
+        queued.clear();
+        // Stable, so classes without history keep the declaration order
+        Collections.sort(ordered, new Comparator<QueuedClass>() {
+            @Override
+            public int compare(QueuedClass a, QueuedClass b) {
+                return Long.compare(b.expectedMillis, a.expectedMillis);
+            }
+        });
+
+        List<PipelinePhase> started = new ArrayList<>();
+        for (final QueuedClass queuedClass : ordered) {
+            System.out.println("PipelinedSuiteExecutor: starting " + name(queuedClass.testClass) + ", expected "
+                    + (queuedClass.expectedMillis == Long.MAX_VALUE ? "unknown" : queuedClass.expectedMillis + " ms"));
+
+            DomainWorkflow domainWorkflow = domainWorkflow(queuedClass.testClass);
+            PipelinePhase workflow = domainWorkflow == null ? null : workflow(domainWorkflow);
+            started.add(pipeline.add(new PipelinePhase(name(queuedClass.testClass), PipelineStage.VERIFY) {
+                @Override
+                protected void execute() {
+                    if (getDependencyFailure() != null && selection != null) {
+                        selection.failed(queuedClass.testClass);
+                    }
+                    try (PhaseTimer timer = PhaseTimeline.get().start(PhaseTimeline.testClass, getName())) {
+                        queuedClass.runClass.run();
+                        timer.succeeded();
+                    }
+                }
+            }, workflow));
+        }
+        return started;
+    }
+
+    /**
+     * Median durations of the class and its Domain phases added up. When any of them has no history the expectedMillis
+     * of the DomainTestIndex entry, Long.MAX_VALUE if that is unknown too.
+     */
+    long expectedMillis(Class<?> testClass) {
+
+        List<String> keys = new ArrayList<>();
+        keys.add(key(PipelineStage.VERIFY, name(testClass)));
+        DomainWorkflow domainWorkflow = domainWorkflow(testClass);
+        if (domainWorkflow != null) {
+            keys.add(key(PipelineStage.STAGING, domainWorkflow.jobPropertiesFile()));
+            keys.add(key(PipelineStage.WORKFLOW, domainWorkflow.jobPropertiesFile()));
+        }
+
+        long expected = 0;
+        for (String key : keys) {
+            long median = history.getMedian(key);
+            if (median < 0) {
+                return declaredMillis(testClass);
+            }
+            expected += median;
+        }
+        return expected;
+    }
+
+    private static long declaredMillis(Class<?> testClass) {
+
+        DomainTestIndex.Entry entry = testClass == null ? null : DomainTestIndex.get().getEntry(testClass.getName());
+        return entry == null || entry.getExpectedMillis() < 0 ? Long.MAX_VALUE : entry.getExpectedMillis();
+    }
+
+    private void record() {
+
+        Map<String, Long> durations = new LinkedHashMap<>();
+        for (PipelinePhase phase : pipeline.getPhases()) {
+            System.out.println("PipelinedSuiteExecutor: " + phase);
+            if (!phase.isDone() || phase.getFailure() != null) {
+                continue;
+            }
+            String key = key(phase.getStage(), phase.getName());
+            long millis = phase.getFinishedAt() - phase.getStartedAt();
+            String regression = history.checkRegression(key, millis);
+            if (regression != null) {
+                System.out.println("PipelinedSuiteExecutor: WARNING regression, " + regression);
+            }
+            durations.put(key, millis);
+        }
+
+        try {
+            history.record(durations);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void recordSelection() {
+
+        if (selection == null) {
+            return;
+        }
+        try {
+            selection.record();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * True when the ChangeSelection leaves the class out and it can be reported as skipped.
+     */
+    private boolean skip(QueuedClass queuedClass) {
+
+        DomainWorkflow domainWorkflow = domainWorkflow(queuedClass.testClass);
+        return selection != null && domainWorkflow != null && queuedClass.skipClass != null
+                && !selection.select(queuedClass.testClass, domainWorkflow);
+    }
+
+    private static void writeTimeline() {
+
+        try {
+            PhaseSummary summary = PhaseTimeline.get().write();
+            System.out.println("PipelinedSuiteExecutor: phase durations over the last " + summary.getRuns() + " runs\n"
+                    + summary);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String key(PipelineStage stage, String name) {
+        return stage + "." + name;
+    }
+
+    private static String name(Class<?> testClass) {
+        return testClass == null ? "suite child" : testClass.getName();
+    }
+
+    private static DomainWorkflow domainWorkflow(Class<?> testClass) {
+        return testClass == null ? null : testClass.getAnnotation(DomainWorkflow.class);
+    }
+
+    private synchronized PipelinePhase workflow(final DomainWorkflow domainWorkflow) {
+
+        PipelinePhase workflow = workflows.get(domainWorkflow.jobPropertiesFile());
+        if (workflow != null) {
+            return workflow;
+        }
+
+        final DomainPhases domain = new DomainPhases(domainWorkflow);
+        PipelinePhase staging = pipeline.add(new PipelinePhase(domainWorkflow.jobPropertiesFile(), PipelineStage.STAGING) {
+            @Override
+            protected void execute() throws Exception {
+                domain.stage();
+            }
+        });
+        workflow = pipeline.add(new PipelinePhase(domainWorkflow.jobPropertiesFile(), PipelineStage.WORKFLOW) {
+            @Override
+            protected void execute() throws Exception {
+                if (getDependencyFailure() != null) {
+                    throw new IOException("Staging failed", getDependencyFailure());
+                }
+                domain.submit(this);
+            }
+        }, staging);
+
+        workflows.put(domainWorkflow.jobPropertiesFile(), workflow);
+        return workflow;
+    }
+
+    private static class QueuedClass {
+
+        private final Class<?> testClass;
+        private final Runnable runClass;
+        private final Runnable skipClass;
+        private long expectedMillis;
+
+        QueuedClass(Class<?> testClass, Runnable runClass, Runnable skipClass) {
+            this.testClass = testClass;
+            this.runClass = runClass;
+            this.skipClass = skipClass;
+        }
+    }
+
+    /**
+     * The DomainRun of one Domain, handed from the STAGING to the WORKFLOW phase.
+     */
+    private class DomainPhases {
+
+        private final DomainWorkflow domainWorkflow;
+        private volatile DomainRun run = null;
+
+        DomainPhases(DomainWorkflow domainWorkflow) {
+            this.domainWorkflow = domainWorkflow;
+        }
+
+        void stage() throws Exception {
+
+            DomainRun run = registry.begin(domainWorkflow.jobPropertiesFile());
+            if (run.isCompleted()) {
+                // Another fork already ran it in this build
+                run.close();
+                return;
+            }
+            try {
+                StagingManifest manifest = new StagingManifest()
+                        .addHdfs(domainWorkflow.sourceDataFile(), domainWorkflow.targetDataFile());
+                if (!domainWorkflow.stagingManifest().isEmpty()) {
+                    manifest.addAll(StagingManifest.load(domainWorkflow.stagingManifest(), DDSWProperties.get()));
+                }
+                run.stage(manifest);
+            } catch (Exception e) {
+                run.close();
+                throw e;
+            }
+            this.run = run;
+        }
+
+        void submit(final PipelinePhase phase) throws Exception {
+
+            if (run == null) {
+                return;
+            }
+
+            WorkflowHandle handle;
+            try {
+                handle = run.submit();
+            } catch (Exception e) {
+                run.close();
+                throw e;
+            }
+
+            phase.deferCompletion();
+            handle.addCallback(new WorkflowCallback() {
+                @Override
+                public void completed(WorkflowHandle completed) {
+                    Exception failure = null;
+                    try {
+                        run.finish(completed);
+                    } catch (IOException e) {
+                        failure = e;
+                    } finally {
+                        try {
+                            run.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    phase.complete(failure);
+                }
+            });
+        }
+    }
+}
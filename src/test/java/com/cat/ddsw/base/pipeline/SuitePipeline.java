@@ -0,0 +1,164 @@
+package com.cat.ddsw.base.pipeline;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.DaemonThreadFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dependency graph of {@link PipelinePhase}s, each phase runs on the pool of its {@link PipelineStage}.
+ *
+ * Phases can be added while the graph runs, as long as their dependencies were added before. A phase is handed to
+ * its pool as soon as the last dependency is done, so the stages of different Domains overlap: Domain B is staged
+ * while the Workflow of Domain A runs, and A is verified while B is submitted.
+ */
+public class SuitePipeline {
+
+    private final Map<PipelineStage, ExecutorService> pools = new EnumMap<>(PipelineStage.class);
+    private final List<PipelinePhase> phases = new ArrayList<>();
+    private int running = 0;
+
+    public SuitePipeline(Map<PipelineStage, Integer> threads) {
+
+        for (PipelineStage stage : PipelineStage.values()) {
+            Integer size = threads.get(stage);
+            pools.put(stage, Executors.newFixedThreadPool(size == null ? stage.getDefaultThreads() : Math.max(1, size),
+                    new DaemonThreadFactory("ddsw-" + stage.name().toLowerCase())));
+        }
+    }
+
+    /**
+     * Pipeline with the pool sizes from oozie.properties.
+     */
+    public static SuitePipeline create(DDSWProperties properties) {
+
+        Map<PipelineStage, Integer> threads = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            threads.put(stage, properties.getInt(stage.getThreadsKey(), stage.getDefaultThreads()));
+        }
+        System.out.println("SuitePipeline: pool sizes " + threads);
+        return new SuitePipeline(threads);
+    }
+
+    public ExecutorService getPool(PipelineStage stage) {
+        return pools.get(stage);
+    }
+
+    /**
+     * Adds the phase, it starts once the given phases are done (right away without any).
+     * Null dependencies are skipped.
+     */
+    public <P extends PipelinePhase> P add(P phase, PipelinePhase... dependsOn) {
+
+        boolean ready;
+        synchronized (this) {
+            if (phase.pipeline != null) {
+                throw new IllegalStateException("Phase already added: " + phase);
+            }
+            phase.pipeline = this;
+            for (PipelinePhase dependency : dependsOn) {
+                if (dependency == null) {
+                    continue;
+                }
+                if (dependency.pipeline != this) {
+                    throw new IllegalArgumentException("Dependency not in this pipeline: " + dependency);
+                }
+                phase.dependencies.add(dependency);
+                if (!dependency.isDone()) {
+                    dependency.dependents.add(phase);
+                    phase.pendingDependencies++;
+                }
+            }
+            phases.add(phase);
+            running++;
+            ready = phase.pendingDependencies == 0;
+        }
+
+        if (ready) {
+            start(phase);
+        }
+        return phase;
+    }
+
+    /**
+     * Blocks until every phase added so far is done.
+     */
+    public synchronized void await() throws InterruptedException {
+        while (running > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Phases added so far, in the order they were added.
+     */
+    public synchronized List<PipelinePhase> getPhases() {
+        return new ArrayList<>(phases);
+    }
+
+    /**
+     * Stops the pools after the work already handed to them, in stage order.
+     */
+    public void shutdown() throws InterruptedException {
+
+        for (PipelineStage stage : PipelineStage.values()) {
+            ExecutorService pool = pools.get(stage);
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void completed(PipelinePhase phase, Throwable failure) {
+
+        List<PipelinePhase> ready = new ArrayList<>();
+        synchronized (this) {
+            if (phase.isDone()) {
+                return;
+            }
+            phase.finished(failure);
+            for (PipelinePhase dependent : phase.dependents) {
+                if (--dependent.pendingDependencies == 0) {
+                    ready.add(dependent);
+                }
+            }
+            running--;
+            notifyAll();
+        }
+
+        if (failure != null) {
+            System.out.println("SuitePipeline: " + phase + " " + failure);
+        }
+        for (PipelinePhase dependent : ready) {
+            start(dependent);
+        }
+    }
+
+    private void start(final PipelinePhase phase) {
+
+        pools.get(phase.getStage()).execute(new Runnable() {
+            @Override
+            public void run() {
+
+                phase.started();
+                Throwable failure = null;
+                try {
+                    phase.execute();
+                } catch (Exception e) {
+                    failure = e;
+                } catch (Error e) {
+                    completed(phase, e);
+                    throw e;
+                }
+                if (failure != null || !phase.deferred) {
+                    completed(phase, failure);
+                }
+            }
+        });
+    }
+}
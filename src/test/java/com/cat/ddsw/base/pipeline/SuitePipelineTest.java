@@ -0,0 +1,141 @@
+package com.cat.ddsw.base.pipeline;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling of the SuitePipeline graph, with sleeps standing in for HDFS copies, Workflows and queries.
+ */
+public class SuitePipelineTest {
+
+    private SuitePipeline pipeline;
+
+    @Before
+    public void setUp() {
+        Map<PipelineStage, Integer> threads = new EnumMap<>(PipelineStage.class);
+        threads.put(PipelineStage.STAGING, 2);
+        threads.put(PipelineStage.WORKFLOW, 1);
+        threads.put(PipelineStage.VERIFY, 2);
+        pipeline = new SuitePipeline(threads);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testDomainsOverlap() throws Exception {
+
+        long started = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            PipelinePhase staging = pipeline.add(new SleepPhase("stage" + i, PipelineStage.STAGING, 100));
+            PipelinePhase workflow = pipeline.add(new DeferredPhase("workflow" + i, 300), staging);
+            pipeline.add(new SleepPhase("verify" + i, PipelineStage.VERIFY, 100), workflow);
+        }
+        pipeline.await();
+        long elapsed = System.currentTimeMillis() - started;
+
+        // Strictly one domain after the other would take 4 * 500 ms, one WORKFLOW thread is enough to
+        // keep all four Workflows in flight
+        Assert.assertTrue("took " + elapsed + " ms", elapsed < 1200);
+
+        for (PipelinePhase phase : pipeline.getPhases()) {
+            Assert.assertTrue(phase.toString(), phase.isDone());
+            Assert.assertNull(phase.toString(), phase.getFailure());
+            for (PipelinePhase dependency : phase.dependencies) {
+                Assert.assertTrue(phase + " started before " + dependency,
+                        phase.getStartedAt() >= dependency.getFinishedAt());
+            }
+        }
+    }
+
+    @Test
+    public void testFailureReachesDependents() throws Exception {
+
+        PipelinePhase staging = pipeline.add(new PipelinePhase("stage", PipelineStage.STAGING) {
+            @Override
+            protected void execute() throws Exception {
+                throw new IllegalStateException("copy failed");
+            }
+        });
+        final Throwable[] seen = new Throwable[1];
+        PipelinePhase verify = pipeline.add(new PipelinePhase("verify", PipelineStage.VERIFY) {
+            @Override
+            protected void execute() {
+                seen[0] = getDependencyFailure();
+            }
+        }, staging);
+
+        pipeline.await();
+        Assert.assertNotNull(staging.getFailure());
+        Assert.assertNull(verify.getFailure());
+        Assert.assertSame(staging.getFailure(), seen[0]);
+    }
+
+    @Test
+    public void testAddAfterDependencyDone() throws Exception {
+
+        PipelinePhase staging = pipeline.add(new SleepPhase("stage", PipelineStage.STAGING, 0));
+        pipeline.await();
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        pipeline.add(new PipelinePhase("verify", PipelineStage.VERIFY) {
+            @Override
+            protected void execute() {
+                ran.countDown();
+            }
+        }, staging, null);
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+        pipeline.await();
+        Assert.assertEquals(2, pipeline.getPhases().size());
+    }
+
+    private static class SleepPhase extends PipelinePhase {
+
+        private final long millis;
+
+        SleepPhase(String name, PipelineStage stage, long millis) {
+            super(name, stage);
+            this.millis = millis;
+        }
+
+        @Override
+        protected void execute() throws Exception {
+            Thread.sleep(millis);
+        }
+    }
+
+    /**
+     * Finishes on a timer thread, like a Workflow finishing through its notification.
+     */
+    private static class DeferredPhase extends PipelinePhase {
+
+        private final long millis;
+
+        DeferredPhase(String name, long millis) {
+            super(name, PipelineStage.WORKFLOW);
+            this.millis = millis;
+        }
+
+        @Override
+        protected void execute() {
+            deferCompletion();
+            new Timer(true).schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    complete(null);
+                }
+            }, millis);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.cat.ddsw.base.selection;
+
+import com.cat.ddsw.base.golden.GoldenStore;
+import com.cat.ddsw.base.pipeline.DomainWorkflow;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which Domain Test classes of a Suite run: a class whose {@link DomainFingerprint} equals the one of its
+ * last green run is skipped, it would stage the same Test data, run the same Workflow and compare against the same
+ * goldens. After the run the fingerprints of the classes that passed are recorded in the {@link FingerprintHistory}
+ * and failed classes are forgotten, so they run again next time whatever changed.
+ *
+ * ####IMPORTANT####
+ * #Skipped classes are reported to JUnit as ignored. Classes without @DomainWorkflow always run.
+ * #"gradle test -PfullRun" sets the "ddsw.selection.full" System Property and runs every class, e.g. after a change
+ * # on the cluster the fingerprint does not cover (Hive tables, the Oozie sharelib). Updating the goldens runs
+ * # every class as well.
+ * #A class whose fingerprint can't be taken (e.g. HDFS not reachable) runs.
+ */
+public class ChangeSelection {
+
+    public static final String fullRunKey = "ddsw.selection.full";
+
+    private final DomainFingerprinter fingerprinter;
+    private final FingerprintHistory history;
+    private final boolean fullRun;
+
+    private final Map<String, DomainFingerprint> running = new HashMap<>();
+    private final Set<String> failed = new HashSet<>();
+
+    public ChangeSelection(DomainFingerprinter fingerprinter, FingerprintHistory history, boolean fullRun) {
+        this.fingerprinter = fingerprinter;
+        this.history = history;
+        this.fullRun = fullRun;
+    }
+
+    /**
+     * True when the build asks for every class to run, from the System Properties.
+     */
+    public static boolean isFullRunRequested() {
+        return Boolean.getBoolean(fullRunKey) || GoldenStore.get().isUpdate();
+    }
+
+    public boolean isFullRun() {
+        return fullRun;
+    }
+
+    /**
+     * Takes the fingerprint of the class and tells whether it has to run.
+     */
+    public boolean select(Class<?> testClass, DomainWorkflow domainWorkflow) {
+
+        String name = testClass.getName();
+        DomainFingerprint fingerprint;
+        try {
+            fingerprint = fingerprinter.fingerprint(testClass, domainWorkflow);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("ChangeSelection: running " + name + ", could not take its fingerprint: " + e);
+            return true;
+        }
+
+        Map<String, String> green = history.getGreen(name);
+        List<String> changed = fingerprint.changedParts(green);
+        if (!fullRun && changed.isEmpty()) {
+            System.out.println("ChangeSelection: skipping " + name + ", unchanged since its last green run");
+            return false;
+        }
+
+        synchronized (this) {
+            running.put(name, fingerprint);
+        }
+        System.out.println("ChangeSelection: running " + name + ", "
+                + (fullRun ? "full run" : green == null ? "no green run recorded" : "changed " + changed));
+        return true;
+    }
+
+    /**
+     * Keeps the class from being recorded as green in this run.
+     */
+    public synchronized void failed(Class<?> testClass) {
+        if (testClass != null) {
+            failed.add(testClass.getName());
+        }
+    }
+
+    /**
+     * Listener for the Suite's RunNotifier, a failed Test (or one whose assumption failed) keeps its class from being
+     * recorded as green.
+     */
+    public RunListener getListener() {
+        return new RunListener() {
+            @Override
+            public void testFailure(Failure failure) {
+                failed(failure.getDescription().getTestClass());
+            }
+
+            @Override
+            public void testAssumptionFailure(Failure failure) {
+                failed(failure.getDescription().getTestClass());
+            }
+        };
+    }
+
+    /**
+     * Records the fingerprints of the classes that ran and passed, and forgets the ones that failed.
+     */
+    public synchronized void record() throws IOException {
+
+        Map<String, DomainFingerprint> passed = new HashMap<>(running);
+        passed.keySet().removeAll(failed);
+        history.record(passed, failed);
+        System.out.println("ChangeSelection: recorded " + passed.size() + " green and " + failed.size()
+                + " failed Test classes");
+    }
+}
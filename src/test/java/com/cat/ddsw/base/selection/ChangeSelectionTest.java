@@ -0,0 +1,140 @@
+package com.cat.ddsw.base.selection;
+
+import com.cat.ddsw.base.pipeline.DomainWorkflow;
+import com.cat.ddsw.base.staging.StagingManifest;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * DomainFingerprinter parts and the ChangeSelection decisions, on the local FileSystem.
+ */
+public class ChangeSelectionTest {
+
+    @DomainWorkflow(jobPropertiesFile = "invoice/job.properties", sourceDataFile = "/ddsw/test_data/invoice.xml",
+            targetDataFile = "/ddsw/raw/invoice.xml.complete")
+    static class DomainTest {
+    }
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FileSystem fileSystem;
+    private File golden;
+    private File fingerprints;
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = FileSystem.getLocal(new Configuration());
+        golden = temp.newFolder("golden");
+        fingerprints = new File(temp.getRoot(), "fingerprints.properties");
+    }
+
+    @Test
+    public void testUnchangedClassIsSkipped() throws Exception {
+
+        ChangeSelection selection = selection(false);
+        Assert.assertTrue("no green run yet", selection.select(DomainTest.class, domainWorkflow()));
+        selection.record();
+
+        selection = selection(false);
+        Assert.assertFalse(selection.select(DomainTest.class, domainWorkflow()));
+        Assert.assertTrue("full run", selection(true).select(DomainTest.class, domainWorkflow()));
+
+        write(new File(golden, "invoice/invoice_current_table_count.golden"), "object=0a1b\n");
+        Assert.assertTrue("golden changed", selection(false).select(DomainTest.class, domainWorkflow()));
+    }
+
+    @Test
+    public void testFailedClassRunsAgain() throws Exception {
+
+        ChangeSelection selection = selection(false);
+        selection.select(DomainTest.class, domainWorkflow());
+        selection.record();
+
+        selection = selection(true);
+        selection.select(DomainTest.class, domainWorkflow());
+        selection.failed(DomainTest.class);
+        selection.record();
+
+        Assert.assertNull(FingerprintHistory.load(fingerprints).getGreen(DomainTest.class.getName()));
+        Assert.assertTrue(selection(false).select(DomainTest.class, domainWorkflow()));
+    }
+
+    @Test
+    public void testClassWithAFailedTestIsNotGreen() throws Exception {
+
+        ChangeSelection selection = selection(false);
+        selection.select(DomainTest.class, domainWorkflow());
+        selection.getListener().testFailure(new Failure(Description.createTestDescription(DomainTest.class,
+                "testContent"), new IOException("Hive not reachable")));
+        selection.record();
+
+        Assert.assertNull(FingerprintHistory.load(fingerprints).getGreen(DomainTest.class.getName()));
+    }
+
+    @Test
+    public void testChangedInputChangesItsPart() throws Exception {
+
+        File app = temp.newFolder("app");
+        File lib = temp.newFolder("lib");
+        File source = new File(temp.getRoot(), "test_data/invoice.xml");
+        write(new File(app, "workflow.xml"), "<workflow-app/>");
+        write(new File(lib, "ddsw.jar"), "jar");
+        write(source, "<Invoice/>");
+
+        Properties jobProperties = new Properties();
+        jobProperties.setProperty("domainType", "invoice");
+        jobProperties.setProperty("oozie.wf.application.path", app.toURI().toString());
+        jobProperties.setProperty("DDSWLibraryPath", lib.toURI().toString());
+        StagingManifest manifest = new StagingManifest().addHdfs(source.getPath(), "/ddsw/raw/invoice.xml.complete");
+
+        DomainFingerprint before = fingerprinter().fingerprint(jobProperties, manifest, DomainTest.class);
+        Assert.assertEquals("none", before.getParts().get("DDSWCommonPath"));
+        Assert.assertTrue(fingerprinter().fingerprint(jobProperties, manifest, DomainTest.class)
+                .changedParts(before.getParts()).isEmpty());
+
+        write(new File(app, "workflow.xml"), "<workflow-app name=\"invoice\"/>");
+        Assert.assertEquals(Collections.singletonList("oozie.wf.application.path"),
+                fingerprinter().fingerprint(jobProperties, manifest, DomainTest.class).changedParts(before.getParts()));
+
+        write(new File(app, "workflow.xml"), "<workflow-app/>");
+        write(source, "<Invoice><Line/></Invoice>");
+        Assert.assertTrue(fingerprinter().fingerprint(jobProperties, manifest, DomainTest.class)
+                .changedParts(before.getParts()).contains("testData"));
+
+        jobProperties.setProperty("inputSplitValue", "1024");
+        Assert.assertTrue(fingerprinter().fingerprint(jobProperties, manifest, DomainTest.class)
+                .changedParts(before.getParts()).contains("job.properties"));
+    }
+
+    private ChangeSelection selection(boolean fullRun) throws IOException {
+        return new ChangeSelection(fingerprinter(), FingerprintHistory.load(fingerprints), fullRun);
+    }
+
+    private DomainFingerprinter fingerprinter() throws IOException {
+        return new DomainFingerprinter(fileSystem, golden);
+    }
+
+    private static DomainWorkflow domainWorkflow() {
+        return DomainTest.class.getAnnotation(DomainWorkflow.class);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
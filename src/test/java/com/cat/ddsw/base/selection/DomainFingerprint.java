@@ -0,0 +1,51 @@
+package com.cat.ddsw.base.selection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Fingerprint of everything a Domain Test class depends on, one SHA-256 per part, e.g. "job.properties",
+ * "oozie.wf.application.path" or "golden". See {@link DomainFingerprinter} for the parts.
+ */
+public class DomainFingerprint {
+
+    private final Map<String, String> parts;
+
+    public DomainFingerprint(Map<String, String> parts) {
+        this.parts = Collections.unmodifiableMap(new LinkedHashMap<>(parts));
+    }
+
+    public Map<String, String> getParts() {
+        return parts;
+    }
+
+    /**
+     * Parts that differ from the recorded ones, all of them when nothing was recorded.
+     */
+    public List<String> changedParts(Map<String, String> recorded) {
+
+        if (recorded == null) {
+            return new ArrayList<>(parts.keySet());
+        }
+        Set<String> all = new TreeSet<>(parts.keySet());
+        all.addAll(recorded.keySet());
+        List<String> changed = new ArrayList<>();
+        for (String part : all) {
+            String value = parts.get(part);
+            if (value == null || !value.equals(recorded.get(part))) {
+                changed.add(part);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public String toString() {
+        return parts.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package com.cat.ddsw.base.selection;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.pipeline.DomainWorkflow;
+import com.cat.ddsw.base.staging.StagingEntry;
+import com.cat.ddsw.base.staging.StagingManifest;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Takes the {@link DomainFingerprint} of a Domain Test class from its inputs:
+ *  job.properties              the Domain Specific job.properties, by value
+ *  oozie.wf.application.path   the Workflow app directory on HDFS
+ *  DDSWLibraryPath             the shared jars on HDFS
+ *  DDSWCommonPath              the shared scripts on HDFS
+ *  testData                    the source of every Test data file staged for the Domain
+ *  golden                      the goldens of the Domain in the GoldenStore, golden/&lt;domainType&gt;
+ *  testClass                   the compiled Test class itself
+ *
+ * HDFS files are taken by their HDFS checksum, which the DataNodes build from the stored block checksums without
+ * reading the data. Files without a checksum (the local FileSystem) are taken by length and modification time.
+ * A directory shared by several Domains is only listed once.
+ */
+public class DomainFingerprinter {
+
+    static final String[] workflowPathKeys = {"oozie.wf.application.path", "DDSWLibraryPath", "DDSWCommonPath"};
+
+    private final FileSystem fileSystem;
+    private final FileSystem localFileSystem;
+    private final File goldenDirectory;
+    private final Map<String, String> directories = new HashMap<>();
+
+    /**
+     * @param fileSystem the HDFS the Workflows and Test data are on
+     */
+    public DomainFingerprinter(FileSystem fileSystem, File goldenDirectory) throws IOException {
+        this.fileSystem = fileSystem;
+        this.localFileSystem = FileSystem.getLocal(fileSystem.getConf());
+        this.goldenDirectory = goldenDirectory;
+    }
+
+    public DomainFingerprint fingerprint(Class<?> testClass, DomainWorkflow domainWorkflow) throws IOException {
+
+        StagingManifest manifest = new StagingManifest()
+                .addHdfs(domainWorkflow.sourceDataFile(), domainWorkflow.targetDataFile());
+        if (!domainWorkflow.stagingManifest().isEmpty()) {
+            manifest.addAll(StagingManifest.load(domainWorkflow.stagingManifest(), DDSWProperties.get()));
+        }
+        return fingerprint(DDSWProperties.loadResource(domainWorkflow.jobPropertiesFile()), manifest, testClass);
+    }
+
+    public DomainFingerprint fingerprint(Properties jobProperties, StagingManifest manifest, Class<?> testClass)
+            throws IOException {
+
+        Map<String, String> parts = new LinkedHashMap<>();
+
+        MessageDigest properties = sha256();
+        for (String key : new TreeSet<>(jobProperties.stringPropertyNames())) {
+            update(properties, key + "=" + jobProperties.getProperty(key));
+        }
+        parts.put("job.properties", hex(properties.digest()));
+
+        for (String key : workflowPathKeys) {
+            String value = jobProperties.getProperty(key);
+            parts.put(key, value == null ? "none" : directory(value.trim()));
+        }
+
+        MessageDigest testData = sha256();
+        for (StagingEntry entry : manifest.getEntries()) {
+            update(testData, entry.toString());
+            if (entry.isLocal()) {
+                addFiles(testData, localFileSystem, new Path(entry.getSource()));
+            } else {
+                addFiles(testData, fileSystem, path(entry.getSource()));
+            }
+        }
+        parts.put("testData", hex(testData.digest()));
+
+        String domain = jobProperties.getProperty("domainType", "").trim();
+        parts.put("golden", golden(new File(goldenDirectory, domain)));
+        parts.put("testClass", testClass(testClass));
+
+        return new DomainFingerprint(parts);
+    }
+
+    /**
+     * Fingerprint of the files under the directory, taken once per directory.
+     */
+    private synchronized String directory(String location) throws IOException {
+
+        String fingerprint = directories.get(location);
+        if (fingerprint == null) {
+            MessageDigest digest = sha256();
+            addFiles(digest, fileSystem, path(location));
+            fingerprint = hex(digest.digest());
+            directories.put(location, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Adds every file under the path (or the path itself when it is a file) in name order, a missing path as such.
+     */
+    private static void addFiles(MessageDigest digest, FileSystem fileSystem, Path path) throws IOException {
+
+        if (!fileSystem.exists(path)) {
+            update(digest, "missing " + path);
+            return;
+        }
+
+        List<LocatedFileStatus> files = new ArrayList<>();
+        RemoteIterator<LocatedFileStatus> listing = fileSystem.listFiles(path, true);
+        while (listing.hasNext()) {
+            files.add(listing.next());
+        }
+        Collections.sort(files, new Comparator<LocatedFileStatus>() {
+            @Override
+            public int compare(LocatedFileStatus a, LocatedFileStatus b) {
+                return a.getPath().toString().compareTo(b.getPath().toString());
+            }
+        });
+
+        String root = fileSystem.makeQualified(path).toString();
+        for (LocatedFileStatus file : files) {
+            String name = file.getPath().toString();
+            update(digest, name.startsWith(root) ? name.substring(root.length()) : name);
+            FileChecksum checksum = fileSystem.getFileChecksum(file.getPath());
+            if (checksum == null) {
+                update(digest, file.getLen() + "@" + file.getModificationTime());
+            } else {
+                update(digest, checksum.getAlgorithmName());
+                digest.update(checksum.getBytes());
+            }
+        }
+    }
+
+    /**
+     * The path part only, the nameNode of job.properties (e.g. the HA nameservice) need not be the one the
+     * FileSystem was opened with.
+     */
+    private static Path path(String location) {
+
+        String path = URI.create(location).getPath();
+        return new Path(path == null || path.isEmpty() ? location : path);
+    }
+
+    private static String golden(File directory) throws IOException {
+
+        MessageDigest digest = sha256();
+        File[] files = directory.listFiles();
+        List<File> indexes = new ArrayList<>();
+        for (File file : files == null ? new File[0] : files) {
+            if (file.isFile() && file.getName().endsWith(".golden")) {
+                indexes.add(file);
+            }
+        }
+        Collections.sort(indexes);
+        for (File index : indexes) {
+            // The index holds the SHA-256 of the rows, no need to read the object
+            update(digest, index.getName());
+            digest.update(Files.readAllBytes(index.toPath()));
+        }
+        return hex(digest.digest());
+    }
+
+    private static String testClass(Class<?> testClass) throws IOException {
+
+        String name = testClass.getName();
+        InputStream in = testClass.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class");
+        if (in == null) {
+            return "none";
+        }
+        MessageDigest digest = sha256();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return hex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package com.cat.ddsw.base.selection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The {@link DomainFingerprint} of the last green run of every Domain Test class, one entry per part
+ * (e.g. "com.cat.ddsw.oozietest.InvoiceOozieTest#golden").
+ *
+ * ####IMPORTANT####
+ * #The file is given by the "ddsw.fingerprint.file" System Property from oozie-test/build.gradle. It lives under .gradle
+ * # so "gradle clean" does not throw it away. Every fork merges its classes into it under a file lock.
+ */
+public class FingerprintHistory {
+
+    public static final String fingerprintFileKey = "ddsw.fingerprint.file";
+
+    private final File file;
+    private final Map<String, Map<String, String>> green;
+
+    FingerprintHistory(File file, Map<String, Map<String, String>> green) {
+        this.file = file;
+        this.green = green;
+    }
+
+    /**
+     * History of this build's project, empty when there is none yet.
+     */
+    public static FingerprintHistory load() throws IOException {
+        return load(new File(System.getProperty(fingerprintFileKey, ".gradle/ddsw-fingerprints.properties")));
+    }
+
+    public static FingerprintHistory load(File file) throws IOException {
+
+        if (!file.exists()) {
+            return new FingerprintHistory(file, new HashMap<String, Map<String, String>>());
+        }
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = access.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                return new FingerprintHistory(file, read(channel));
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Parts of the fingerprint the class last passed with, null when it has not passed since it last failed.
+     */
+    public synchronized Map<String, String> getGreen(String testClass) {
+        return green.get(testClass);
+    }
+
+    /**
+     * Records the fingerprints the classes passed with and forgets the failed classes, keeping what other forks wrote
+     * meanwhile.
+     */
+    public synchronized void record(Map<String, DomainFingerprint> passed, Collection<String> failed)
+            throws IOException {
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = access.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                Map<String, Map<String, String>> merged = read(channel);
+                for (Map.Entry<String, DomainFingerprint> entry : passed.entrySet()) {
+                    merged.put(entry.getKey(), new LinkedHashMap<>(entry.getValue().getParts()));
+                }
+                for (String testClass : failed) {
+                    merged.remove(testClass);
+                }
+
+                Properties properties = new Properties();
+                for (Map.Entry<String, Map<String, String>> entry : merged.entrySet()) {
+                    for (Map.Entry<String, String> part : entry.getValue().entrySet()) {
+                        properties.setProperty(entry.getKey() + "#" + part.getKey(), part.getValue());
+                    }
+                }
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                properties.store(content, "DDSW fingerprints of the last green run, per Test class and part");
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(content.toByteArray()), 0);
+
+                green.clear();
+                green.putAll(merged);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static Map<String, Map<String, String>> read(FileChannel channel) throws IOException {
+
+        Properties properties = new Properties();
+        if (channel.size() > 0) {
+            ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+            channel.read(content, 0);
+            properties.load(new ByteArrayInputStream(content.array()));
+        }
+
+        Map<String, Map<String, String>> green = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int separator = key.indexOf('#');
+            if (separator < 0) {
+                // Hand edited entry, skip it
+                continue;
+            }
+            String testClass = key.substring(0, separator);
+            Map<String, String> parts = green.get(testClass);
+            if (parts == null) {
+                parts = new HashMap<>();
+                green.put(testClass, parts);
+            }
+            parts.put(key.substring(separator + 1), properties.getProperty(key));
+        }
+        return green;
+    }
+}
@@ -0,0 +1,237 @@
+package com.cat.ddsw.base.staging;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.local.LocalCluster;
+import com.cat.ddsw.base.DaemonThreadFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Stages a {@link StagingManifest} of Test data onto HDFS, a few files at a time, skipping unchanged targets.
+ *
+ * A target is left alone when it already has the content of the source: HDFS to HDFS copies compare the HDFS file
+ * checksums, uploads from the local disk (and files without a comparable checksum) compare the length and then an
+ * MD5 of both streams. Reading the target back is still cheaper than writing it again with full replication.
+ * Files are written under a temporary name and renamed, so a Workflow watching the target never sees half a file.
+ * Rewritten entries (see StagingEntry.rewrite) are compared and copied with the content as rewritten.
+ *
+ * ####IMPORTANT####
+ * #STAGING_THREADS in oozie.properties sets how many files are copied at once (default 4).
+ * #The HDFS is HDFS_HOST:HDFS_PORT of oozie.properties, accessed as OOZIE_USER. In local mode the local HDFS.
+ */
+public class HdfsStager {
+
+    private static final String copyingSuffix = "._COPYING_";
+    private static final int bufferSize = 64 * 1024;
+
+    private final FileSystem fileSystem;
+    private final FileSystem localFileSystem;
+    private final int threads;
+
+    /**
+     * @param fileSystem the HDFS (or any Hadoop FileSystem, e.g. the local one in Tests)
+     */
+    public HdfsStager(FileSystem fileSystem, int threads) throws IOException {
+        this.fileSystem = fileSystem;
+        this.localFileSystem = FileSystem.getLocal(fileSystem.getConf());
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Stager for the HDFS in oozie.properties.
+     */
+    public static HdfsStager create(DDSWProperties properties) throws IOException {
+
+        if (LocalCluster.isEnabled(properties)) {
+            return new HdfsStager(LocalCluster.start(properties).getFileSystem(), properties.getInt("STAGING_THREADS", 4));
+        }
+        URI uri = URI.create("hdfs://" + properties.getProperty("HDFS_HOST") + ":" + properties.getProperty("HDFS_PORT"));
+        FileSystem fileSystem;
+        try {
+            fileSystem = FileSystem.get(uri, new Configuration(), properties.getProperty("OOZIE_USER"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted connecting to " + uri, e);
+        }
+        return new HdfsStager(fileSystem, properties.getInt("STAGING_THREADS", 4));
+    }
+
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    /**
+     * Copies every entry whose target is missing or different, failures of single entries are collected in the
+     * report instead of stopping the others.
+     */
+    public StagingReport stage(StagingManifest manifest) throws IOException {
+
+        final StagingReport report = new StagingReport();
+        long started = System.currentTimeMillis();
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, manifest.getEntries().size())),
+                new DaemonThreadFactory("ddsw-staging"));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final StagingEntry entry : manifest.getEntries()) {
+                futures.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (isUpToDate(entry)) {
+                                report.skipped(entry);
+                            } else {
+                                report.copied(entry, copy(entry));
+                            }
+                        } catch (IOException e) {
+                            report.failed(entry, e);
+                        } catch (RuntimeException e) {
+                            report.failed(entry, e);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted staging Test data", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Staging Test data failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        report.setElapsedMillis(System.currentTimeMillis() - started);
+        System.out.println("HdfsStager: " + report);
+        return report;
+    }
+
+    /**
+     * True when the target exists with the same content as the source.
+     */
+    boolean isUpToDate(StagingEntry entry) throws IOException {
+
+        Path target = new Path(entry.getTarget());
+        if (!fileSystem.exists(target)) {
+            return false;
+        }
+
+        FileSystem sourceFileSystem = entry.isLocal() ? localFileSystem : fileSystem;
+        Path source = new Path(entry.getSource());
+
+        if (!entry.isCompressed() && !entry.isRewritten()) {
+            if (!entry.isLocal()) {
+                FileChecksum sourceChecksum = fileSystem.getFileChecksum(source);
+                FileChecksum targetChecksum = fileSystem.getFileChecksum(target);
+                if (sourceChecksum != null && targetChecksum != null
+                        && sourceChecksum.getAlgorithmName().equals(targetChecksum.getAlgorithmName())) {
+                    return sourceChecksum.equals(targetChecksum);
+                }
+            }
+            if (sourceFileSystem.getFileStatus(source).getLen() != fileSystem.getFileStatus(target).getLen()) {
+                return false;
+            }
+        }
+
+        byte[] sourceDigest;
+        try (InputStream in = open(sourceFileSystem, entry)) {
+            sourceDigest = md5(in);
+        }
+        byte[] targetDigest;
+        try (InputStream in = fileSystem.open(target, bufferSize)) {
+            targetDigest = md5(entry.isCompressed() ? new GZIPInputStream(in, bufferSize) : in);
+        } catch (ZipException e) {
+            // Not (valid) gzip, e.g. a target written before compression was switched on
+            return false;
+        }
+        return Arrays.equals(sourceDigest, targetDigest);
+    }
+
+    /**
+     * @return bytes read from the source
+     */
+    long copy(StagingEntry entry) throws IOException {
+
+        FileSystem sourceFileSystem = entry.isLocal() ? localFileSystem : fileSystem;
+        Path target = new Path(entry.getTarget());
+        Path copying = new Path(target.getParent(), target.getName() + copyingSuffix);
+
+        long bytes = 0;
+        try (InputStream in = open(sourceFileSystem, entry)) {
+            OutputStream out = fileSystem.create(copying, true, bufferSize);
+            if (entry.isCompressed()) {
+                out = new GZIPOutputStream(out, bufferSize);
+            }
+            try {
+                byte[] buffer = new byte[bufferSize];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    bytes += read;
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            fileSystem.delete(copying, false);
+            throw e;
+        }
+
+        if (fileSystem.exists(target)) {
+            fileSystem.delete(target, false);
+        }
+        if (!fileSystem.rename(copying, target)) {
+            fileSystem.delete(copying, false);
+            throw new IOException("Could not rename " + copying + " to " + target);
+        }
+        return bytes;
+    }
+
+    /**
+     * The content of the source as it is staged.
+     */
+    private static InputStream open(FileSystem sourceFileSystem, StagingEntry entry) throws IOException {
+
+        InputStream in = sourceFileSystem.open(new Path(entry.getSource()), bufferSize);
+        return entry.isRewritten() ? new ReplacingInputStream(in, entry.getWord(), entry.getReplacement()) : in;
+    }
+
+    private static byte[] md5(InputStream in) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (DigestInputStream digestIn = new DigestInputStream(in, digest)) {
+            byte[] buffer = new byte[bufferSize];
+            while (digestIn.read(buffer) != -1) {
+                // Digest only
+            }
+        }
+        return digest.digest();
+    }
+}
@@ -0,0 +1,139 @@
+package com.cat.ddsw.base.staging;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HdfsStager on the local Hadoop FileSystem standing in for HDFS.
+ */
+public class HdfsStagerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private HdfsStager stager;
+    private File hdfsSource;
+    private File localSource;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        stager = new HdfsStager(FileSystem.getLocal(new Configuration()), 3);
+        hdfsSource = temp.newFolder("hdfs_source");
+        localSource = temp.newFolder("local_source");
+        target = temp.newFolder("raw");
+    }
+
+    @Test
+    public void testSkipsUnchangedTargets() throws Exception {
+
+        StagingManifest manifest = new StagingManifest();
+        for (int i = 0; i < 5; i++) {
+            manifest.addHdfs(write(hdfsSource, "domain" + i + ".xml", "<dealer code=\"ZZZZ\" n=\"" + i + "\"/>"),
+                    new File(target, "domain" + i + ".complete").getPath());
+        }
+        manifest.addLocal(write(localSource, "local.xml", "<local/>"), new File(target, "local.complete").getPath());
+
+        StagingReport first = stager.stage(manifest);
+        Assert.assertTrue(first.toString(), first.isSuccess());
+        Assert.assertEquals(6, first.getCopied().size());
+        Assert.assertEquals("<dealer code=\"ZZZZ\" n=\"3\"/>", read(new File(target, "domain3.complete")));
+
+        write(hdfsSource, "domain2.xml", "<dealer code=\"ZZZZ\" n=\"changed\"/>");
+        StagingReport second = stager.stage(manifest);
+        Assert.assertTrue(second.toString(), second.isSuccess());
+        Assert.assertEquals(1, second.getCopied().size());
+        Assert.assertEquals(5, second.getSkipped().size());
+        Assert.assertEquals("<dealer code=\"ZZZZ\" n=\"changed\"/>", read(new File(target, "domain2.complete")));
+
+        // Same length, different content
+        write(localSource, "local.xml", "<LOCAL/>");
+        Assert.assertEquals(1, stager.stage(manifest).getCopied().size());
+        Assert.assertFalse(new File(target, "local.complete._COPYING_").exists());
+    }
+
+    @Test
+    public void testCompressedUpload() throws Exception {
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("<row dealer=\"ZZZZ\" line=\"").append(i).append("\"/>\n");
+        }
+        File gz = new File(target, "big.complete.gz");
+        StagingManifest manifest = new StagingManifest()
+                .addLocal(write(localSource, "big.xml", content.toString()), gz.getPath(), true);
+
+        Assert.assertEquals(1, stager.stage(manifest).getCopied().size());
+        Assert.assertTrue(gz.length() < content.length() / 4);
+        try (InputStream in = new GZIPInputStream(new FileInputStream(gz))) {
+            byte[] bytes = new byte[content.length() + 1];
+            int total = 0;
+            int read;
+            while ((read = in.read(bytes, total, bytes.length - total)) > 0) {
+                total += read;
+            }
+            Assert.assertEquals(content.toString(), new String(bytes, 0, total, StandardCharsets.UTF_8));
+        }
+
+        Assert.assertEquals(1, stager.stage(manifest).getSkipped().size());
+    }
+
+    @Test
+    public void testRewritesWholeWords() throws Exception {
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            content.append("<row dealer=\"ZZZZ\" part=\"XZZZZ\" store=\"ZZZZ1\" line=\"").append(i).append("\"/>\n");
+        }
+        content.append("ZZZZ");
+        String source = write(hdfsSource, "big.xml", content.toString());
+        StagingManifest manifest = new StagingManifest()
+                .add(new StagingEntry(source, new File(target, "ZZZZ_big.complete").getPath(), false, false)
+                        .rewrite(new File(target, "ZQ01_big.complete").getPath(), "ZZZZ", "ZQ01"));
+
+        StagingReport first = stager.stage(manifest);
+        Assert.assertTrue(first.toString(), first.isSuccess());
+        Assert.assertFalse(new File(target, "ZZZZ_big.complete").exists());
+        String expected = content.toString().replace("\"ZZZZ\"", "\"ZQ01\"");
+        Assert.assertEquals(expected.substring(0, expected.length() - 4) + "ZQ01",
+                read(new File(target, "ZQ01_big.complete")));
+
+        Assert.assertEquals(1, stager.stage(manifest).getSkipped().size());
+    }
+
+    @Test
+    public void testMissingSourceIsReported() throws Exception {
+
+        StagingManifest manifest = new StagingManifest()
+                .addHdfs(new File(hdfsSource, "missing.xml").getPath(), new File(target, "missing.complete").getPath())
+                .addHdfs(write(hdfsSource, "present.xml", "<present/>"), new File(target, "present.complete").getPath());
+
+        StagingReport report = stager.stage(manifest);
+        Assert.assertFalse(report.isSuccess());
+        Assert.assertEquals(1, report.getFailures().size());
+        Assert.assertEquals(1, report.getCopied().size());
+    }
+
+    private static String write(File directory, String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
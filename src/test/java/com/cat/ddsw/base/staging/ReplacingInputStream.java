@@ -0,0 +1,125 @@
+package com.cat.ddsw.base.staging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Replaces a word while the stream is read, e.g. the dealer code in staged Test data. Only whole words are
+ * replaced: an occurrence next to an ASCII letter or digit is part of a longer value and left alone.
+ *
+ * Works on the bytes, so the word must be ASCII and the content ASCII compatible (utf-8, iso-8859-1).
+ */
+class ReplacingInputStream extends InputStream {
+
+    private static final int chunkSize = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] word;
+    private final byte[] replacement;
+
+    private final byte[] buffer;
+    private int buffered = 0;
+    private boolean eof = false;
+    private int previous = -1;
+
+    private byte[] output = new byte[0];
+    private int outputPosition = 0;
+
+    ReplacingInputStream(InputStream in, String word, String replacement) {
+        this.in = in;
+        this.word = word.getBytes(StandardCharsets.US_ASCII);
+        this.replacement = replacement.getBytes(StandardCharsets.US_ASCII);
+        this.buffer = new byte[chunkSize + this.word.length + 1];
+    }
+
+    @Override
+    public int read() throws IOException {
+        return fill() ? output[outputPosition++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, output.length - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, count);
+        outputPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return output.length - outputPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+
+        while (outputPosition == output.length) {
+            if (eof && buffered == 0) {
+                return false;
+            }
+            if (!eof) {
+                int read = in.read(buffer, buffered, buffer.length - buffered);
+                if (read == -1) {
+                    eof = true;
+                } else {
+                    buffered += read;
+                }
+            }
+
+            // Keep the bytes a word and the byte after it could still span until more is read
+            int limit = eof ? buffered : buffered - word.length;
+            ByteArrayOutputStream replaced = new ByteArrayOutputStream(Math.max(0, limit) + 64);
+            int i = 0;
+            while (i < limit) {
+                if (isWordAt(i)) {
+                    replaced.write(replacement, 0, replacement.length);
+                    previous = word[word.length - 1];
+                    i += word.length;
+                } else {
+                    replaced.write(buffer[i]);
+                    previous = buffer[i];
+                    i++;
+                }
+            }
+            System.arraycopy(buffer, i, buffer, 0, buffered - i);
+            buffered -= i;
+            output = replaced.toByteArray();
+            outputPosition = 0;
+        }
+        return true;
+    }
+
+    private boolean isWordAt(int position) {
+
+        if (position + word.length > buffered || isWordByte(previous)) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (buffer[position + i] != word[i]) {
+                return false;
+            }
+        }
+        int after = position + word.length;
+        return after == buffered || !isWordByte(buffer[after]);
+    }
+
+    static boolean isWordByte(int b) {
+        return (b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+    }
+}
@@ -0,0 +1,79 @@
+package com.cat.ddsw.base.staging;
+
+/**
+ * One Test data file to stage: a source on HDFS or on the local disk, and the HDFS target the Workflow picks up.
+ */
+public class StagingEntry {
+
+    private final String source;
+    private final String target;
+    private final boolean local;
+    private final boolean compressed;
+    private final String word;
+    private final String replacement;
+
+    public StagingEntry(String source, String target, boolean local, boolean compressed) {
+        this(source, target, local, compressed, null, null);
+    }
+
+    private StagingEntry(String source, String target, boolean local, boolean compressed, String word,
+                         String replacement) {
+        this.source = source;
+        this.target = target;
+        this.local = local;
+        this.compressed = compressed;
+        this.word = word;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Same entry staged to another target, with the word replaced in the content on the way (whole words only, see
+     * ReplacingInputStream).
+     */
+    public StagingEntry rewrite(String target, String word, String replacement) {
+        return new StagingEntry(source, target, local, compressed, word, replacement);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * True when the source is on the local disk and gets uploaded.
+     */
+    public boolean isLocal() {
+        return local;
+    }
+
+    /**
+     * True when the upload is gzip compressed on the way, only for Workflows that read gzip input.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * True when the content is changed on the way, see {@link #rewrite(String, String, String)}.
+     */
+    public boolean isRewritten() {
+        return word != null;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public String getReplacement() {
+        return replacement;
+    }
+
+    @Override
+    public String toString() {
+        return (local ? "local:" : "") + source + " -> " + target + (compressed ? " (gzip)" : "")
+                + (word == null ? "" : " (" + word + " -> " + replacement + ")");
+    }
+}
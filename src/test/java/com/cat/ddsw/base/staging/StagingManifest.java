@@ -0,0 +1,108 @@
+package com.cat.ddsw.base.staging;
+
+import com.cat.ddsw.base.DDSWProperties;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Source and target pairs of Test data staged together by the {@link HdfsStager}.
+ *
+ * ####IMPORTANT####
+ * #A manifest file on the classpath (e.g. "invoice/staging.manifest") has one entry per line,
+ * #  [local:|hdfs:]source target [gzip]
+ * #Relative HDFS sources are under OOZIE_HDFS_DATA_SOURCE, relative local sources under OOZIE_LOCAL_DATA_SOURCE and
+ * # relative targets under OOZIE_HDFS_DATA_TARGET of oozie.properties. Lines starting with # are comments.
+ * #gzip only for Workflows that read gzip input, the target name should then end with .gz.
+ */
+public class StagingManifest {
+
+    private final List<StagingEntry> entries = new ArrayList<>();
+
+    public StagingManifest addHdfs(String source, String target) {
+        entries.add(new StagingEntry(source, target, false, false));
+        return this;
+    }
+
+    public StagingManifest addLocal(String source, String target) {
+        return addLocal(source, target, false);
+    }
+
+    public StagingManifest addLocal(String source, String target, boolean compressed) {
+        entries.add(new StagingEntry(source, target, true, compressed));
+        return this;
+    }
+
+    public StagingManifest add(StagingEntry entry) {
+        entries.add(entry);
+        return this;
+    }
+
+    public StagingManifest addAll(StagingManifest manifest) {
+        entries.addAll(manifest.entries);
+        return this;
+    }
+
+    public List<StagingEntry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Reads a manifest file from the classpath, with relative paths resolved against oozie.properties.
+     */
+    public static StagingManifest load(String resource, DDSWProperties properties) throws IOException {
+
+        InputStream in = StagingManifest.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Staging manifest not found on the classpath: " + resource);
+        }
+
+        StagingManifest manifest = new StagingManifest();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\\s+");
+                if (fields.length < 2 || fields.length > 3 || (fields.length == 3 && !fields[2].equals("gzip"))) {
+                    throw new IOException(resource + ":" + number + ": expected \"source target [gzip]\" but got " + line);
+                }
+
+                String target = resolve(fields[1], properties.getProperty("OOZIE_HDFS_DATA_TARGET", ""));
+                if (fields[0].startsWith("local:")) {
+                    manifest.addLocal(resolve(fields[0].substring("local:".length()),
+                            properties.getProperty("OOZIE_LOCAL_DATA_SOURCE", "")), target, fields.length == 3);
+                } else if (fields.length == 3) {
+                    throw new IOException(resource + ":" + number + ": gzip is only supported for local sources");
+                } else {
+                    String source = fields[0].startsWith("hdfs:") ? fields[0].substring("hdfs:".length()) : fields[0];
+                    manifest.addHdfs(resolve(source, properties.getProperty("OOZIE_HDFS_DATA_SOURCE", "")), target);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    private static String resolve(String path, String base) {
+
+        if (path.startsWith("/") || base.isEmpty()) {
+            return path;
+        }
+        return base.endsWith("/") ? base + path : base + "/" + path;
+    }
+}
@@ -0,0 +1,70 @@
+package com.cat.ddsw.base.staging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one {@link HdfsStager#stage(StagingManifest)} call.
+ */
+public class StagingReport {
+
+    private final List<StagingEntry> copied = new ArrayList<>();
+    private final List<StagingEntry> skipped = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+    private long bytesCopied = 0;
+    private long elapsedMillis = 0;
+
+    synchronized void copied(StagingEntry entry, long bytes) {
+        copied.add(entry);
+        bytesCopied += bytes;
+    }
+
+    synchronized void skipped(StagingEntry entry) {
+        skipped.add(entry);
+    }
+
+    synchronized void failed(StagingEntry entry, Exception cause) {
+        failures.add(entry + ": " + cause);
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public synchronized boolean isSuccess() {
+        return failures.isEmpty();
+    }
+
+    public synchronized List<StagingEntry> getCopied() {
+        return Collections.unmodifiableList(new ArrayList<>(copied));
+    }
+
+    /**
+     * Entries whose target already had the same content.
+     */
+    public synchronized List<StagingEntry> getSkipped() {
+        return Collections.unmodifiableList(new ArrayList<>(skipped));
+    }
+
+    public synchronized List<String> getFailures() {
+        return Collections.unmodifiableList(new ArrayList<>(failures));
+    }
+
+    public synchronized long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    @Override
+    public synchronized String toString() {
+
+        StringBuilder report = new StringBuilder();
+        report.append(copied.size()).append(" copied (").append(bytesCopied).append(" bytes), ")
+                .append(skipped.size()).append(" unchanged, ")
+                .append(failures.size()).append(" failed in ").append(elapsedMillis).append(" ms");
+        for (String failure : failures) {
+            report.append("\n  ").append(failure);
+        }
+        return report.toString();
+    }
+}
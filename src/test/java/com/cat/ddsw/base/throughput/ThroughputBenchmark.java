@@ -0,0 +1,396 @@
+package com.cat.ddsw.base.throughput;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.cat.ddsw.base.generator.DomainXmlGenerator;
+import com.cat.ddsw.base.oozie.FakeOozieServer;
+import com.cat.ddsw.base.oozie.JobNotificationListener;
+import com.cat.ddsw.base.oozie.WorkflowHandle;
+import com.cat.ddsw.base.oozie.WorkflowSubmitter;
+import com.cat.ddsw.base.staging.HdfsStager;
+import com.cat.ddsw.base.staging.StagingManifest;
+import com.cat.ddsw.base.staging.StagingReport;
+import com.cat.ddsw.base.timing.PhaseEvent;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.OozieClientException;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Drives many ddsw_domain_ingest Workflows at once to find how many files per hour the cluster sustains, for every
+ * combination of the job.properties values in the {@link ThroughputPlan} sweep.
+ *
+ * Workflows arrive at the planned rate, the Domains taking turns. Each arrival stages its own copy of a generated
+ * Domain XML file into DDSWRawDir (when recordsPerFile is set) and submits through the {@link WorkflowSubmitter}
+ * like the Domain Tests do, so the CAPACITY_WORKFLOWS limit applies. Per Workflow it measures
+ *  staging     arrival to the file being in place
+ *  queue       file in place to the Job start time Oozie reports, including the wait for a capacity slot
+ *  run         Job start time to completion
+ *  endToEnd    arrival to completion
+ * and reports the percentiles per sweep point with the {@link com.cat.ddsw.base.timing.PhaseSummary} the timeline uses.
+ *
+ * ####IMPORTANT####
+ * #Run with "gradle throughputBenchmark", see oozie-test/build.gradle. -PthroughputMode=fake runs against a
+ * # FakeOozieServer with the local disk standing in for HDFS, for trying a plan without the cluster.
+ * #Results are printed and written to &lt;workDirectory&gt;/throughput-&lt;time&gt;.csv.
+ * #Swept properties must exist in every Domain's job.properties, a typo fails the run instead of measuring nothing.
+ * #Nothing is cleaned up, use a dealer code no Test filters on (the generated files use ZZZZ).
+ */
+public class ThroughputBenchmark {
+
+    public static final String staging = "staging";
+    public static final String queue = "queue";
+    public static final String run = "run";
+    public static final String endToEnd = "endToEnd";
+
+    private final WorkflowSubmitter submitter;
+    private final ThroughputPlan plan;
+    private final Map<String, String> overrides = new LinkedHashMap<>();
+    private final Map<String, File> generated = new HashMap<>();
+    private HdfsStager stager = null;
+
+    public ThroughputBenchmark(WorkflowSubmitter submitter, ThroughputPlan plan) {
+        this.submitter = submitter;
+        this.plan = plan;
+    }
+
+    /**
+     * Command line, [planResource] [fake|cluster], e.g. throughput.properties fake
+     */
+    public static void main(String[] args) throws Exception {
+
+        ThroughputPlan plan = ThroughputPlan.load(args.length > 0 && !args[0].isEmpty() ? args[0] : "throughput.properties");
+        if (args.length > 1 && !args[1].isEmpty()) {
+            plan.setFake(args[1].equals("fake"));
+        }
+
+        FakeOozieServer oozie = null;
+        WorkflowSubmitter submitter;
+        HdfsStager stager;
+        if (plan.isFake()) {
+            oozie = new FakeOozieServer();
+            oozie.setNodes(plan.getFakeNodes());
+            oozie.setNodeDurationMillis(plan.getFakeNodeDurationMillis());
+            submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                    new JobNotificationListener("localhost", 0), 1000, 10000, System.getProperty("user.name"));
+            stager = new HdfsStager(FileSystem.getLocal(new Configuration()), 4);
+        } else {
+            DDSWProperties properties = DDSWProperties.get();
+            submitter = WorkflowSubmitter.create(properties);
+            stager = HdfsStager.create(properties);
+        }
+
+        ThroughputBenchmark benchmark = new ThroughputBenchmark(submitter, plan);
+        benchmark.setStager(stager);
+        if (plan.isFake()) {
+            benchmark.override("DDSWRawDir", new File(plan.getWorkDirectory(), "raw").getAbsolutePath());
+        }
+
+        try {
+            List<ThroughputResult> results = benchmark.run();
+            File report = benchmark.write(results);
+            System.out.println("ThroughputBenchmark: wrote " + report);
+        } finally {
+            submitter.shutdown();
+            if (oozie != null) {
+                oozie.stop();
+            }
+        }
+    }
+
+    /**
+     * Copies files into DDSWRawDir before each submission, without a stager nothing is staged.
+     */
+    public void setStager(HdfsStager stager) {
+        this.stager = stager;
+    }
+
+    /**
+     * Sets a job.properties value for every Workflow of every sweep point, e.g. DDSWRawDir for the local disk.
+     */
+    public void override(String key, String value) {
+        overrides.put(key, value);
+    }
+
+    /**
+     * Every sweep point one after the other, each starting on an idle cluster.
+     */
+    public List<ThroughputResult> run() throws IOException {
+
+        List<ThroughputResult> results = new ArrayList<>();
+        for (Map<String, String> point : plan.getSweepPoints()) {
+            System.out.println("ThroughputBenchmark: " + plan.getInstances() + " Workflows at "
+                    + plan.getArrivalsPerMinute() + "/min with " + ThroughputResult.label(point));
+            ThroughputResult result = run(point);
+            System.out.println(result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Submits the planned Workflows with the point's job.properties values and waits for all of them.
+     */
+    public ThroughputResult run(Map<String, String> point) throws IOException {
+
+        List<String> domains = plan.getDomains();
+        Map<String, Properties> jobConfs = new HashMap<>();
+        for (String domain : domains) {
+            jobConfs.put(domain, jobConf(domain, point));
+        }
+
+        int instances = plan.getInstances();
+        long[] offsets = arrivalOffsets(instances, plan.getArrivalsPerMinute(), plan.isPoisson(), plan.getSeed());
+        String batch = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
+
+        CountDownLatch submitted = new CountDownLatch(instances);
+        List<Instance> arrivals = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            String domain = domains.get(i % domains.size());
+            arrivals.add(new Instance(i, jobConfs.get(domain), generated.get(domain), batch, submitted));
+        }
+
+        // Submission blocks at the capacity limit, so arrivals are handed to their own threads to stay on time
+        ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory("ddsw-throughput-clock"));
+        final ExecutorService workers = Executors.newCachedThreadPool(new DaemonThreadFactory("ddsw-throughput"));
+        long deadline;
+        try {
+            for (int i = 0; i < instances; i++) {
+                final Instance instance = arrivals.get(i);
+                clock.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        workers.execute(instance);
+                    }
+                }, offsets[i], TimeUnit.MILLISECONDS);
+            }
+
+            deadline = System.currentTimeMillis() + offsets[instances - 1] + plan.getTimeoutMillis();
+            await(submitted, deadline);
+            for (Instance instance : arrivals) {
+                instance.await(deadline);
+            }
+        } finally {
+            clock.shutdownNow();
+            workers.shutdownNow();
+        }
+
+        List<PhaseEvent> events = new ArrayList<>();
+        List<String> jobIds = new ArrayList<>();
+        int succeeded = 0;
+        long firstArrival = Long.MAX_VALUE;
+        long lastCompletion = 0;
+        for (Instance instance : arrivals) {
+            if (instance.handle != null) {
+                jobIds.add(instance.handle.getJobId());
+            }
+            instance.addEvents(events, ThroughputResult.label(point));
+            if (instance.arrivedAt > 0) {
+                firstArrival = Math.min(firstArrival, instance.arrivedAt);
+            }
+            if (instance.status == WorkflowJob.Status.SUCCEEDED) {
+                succeeded++;
+                lastCompletion = Math.max(lastCompletion, instance.handle.getCompletedAt());
+            }
+        }
+        return new ThroughputResult(point, events, jobIds, instances, succeeded,
+                firstArrival == Long.MAX_VALUE ? 0 : firstArrival, lastCompletion);
+    }
+
+    /**
+     * Prints the results as one csv line per sweep point.
+     */
+    public File write(List<ThroughputResult> results) throws IOException {
+
+        File directory = new File(plan.getWorkDirectory());
+        directory.mkdirs();
+        File report = new File(directory, "throughput-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + ".csv");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8)) {
+            writer.write(ThroughputResult.csvHeader);
+            writer.write('\n');
+            for (ThroughputResult result : results) {
+                writer.write(result.toCsv());
+                writer.write('\n');
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Milliseconds from the start of the run to each arrival, evenly spaced or with exponential gaps.
+     */
+    static long[] arrivalOffsets(int instances, double perMinute, boolean poisson, long seed) {
+
+        long[] offsets = new long[instances];
+        double mean = 60000.0 / perMinute;
+        Random random = new Random(seed);
+        double at = 0;
+        for (int i = 0; i < instances; i++) {
+            offsets[i] = Math.round(at);
+            at += poisson ? -Math.log(1 - random.nextDouble()) * mean : mean;
+        }
+        return offsets;
+    }
+
+    private Properties jobConf(String domain, Map<String, String> point) throws IOException {
+
+        Properties conf = submitter.createJobConf(domain);
+        for (String key : point.keySet()) {
+            if (conf.getProperty(key) == null) {
+                throw new IOException("Swept property " + key + " is not in " + domain);
+            }
+        }
+        conf.putAll(overrides);
+        conf.putAll(point);
+
+        if (stager != null && plan.getRecordsPerFile() > 0 && !generated.containsKey(domain)) {
+            String domainType = conf.getProperty("domainType", "").trim();
+            File file = new File(plan.getWorkDirectory(), domainType + "-" + plan.getRecordsPerFile() + ".xml");
+            if (!file.exists()) {
+                DomainXmlGenerator generator = new DomainXmlGenerator(conf, DomainXmlGenerator.layout(domainType),
+                        plan.getSeed());
+                System.out.println("ThroughputBenchmark: generated " + generator.generate(file, plan.getRecordsPerFile()));
+            }
+            generated.put(domain, file);
+        }
+        return conf;
+    }
+
+    private static void await(CountDownLatch latch, long deadline) throws IOException {
+        try {
+            latch.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the Workflows to be submitted", e);
+        }
+    }
+
+    /**
+     * One Workflow of the run, from its arrival to its completion.
+     */
+    private class Instance implements Runnable {
+
+        private final int index;
+        private final Properties jobConf;
+        private final File source;
+        private final String batch;
+        private final CountDownLatch submitted;
+        private final String subject;
+
+        private volatile long arrivedAt = 0;
+        private volatile long stagedAt = 0;
+        private volatile WorkflowHandle handle = null;
+        private WorkflowJob.Status status = null;
+
+        Instance(int index, Properties jobConf, File source, String batch, CountDownLatch submitted) {
+            this.index = index;
+            this.jobConf = jobConf;
+            this.source = source;
+            this.batch = batch;
+            this.submitted = submitted;
+            this.subject = jobConf.getProperty("domainType", "domain").trim() + "#" + index;
+        }
+
+        @Override
+        public void run() {
+
+            arrivedAt = System.currentTimeMillis();
+            try {
+                if (source != null) {
+                    String rawDir = URI.create(jobConf.getProperty("DDSWRawDir").trim()).getPath();
+                    String target = rawDir + "/" + jobConf.getProperty("domainType").trim() + "_throughput_" + batch
+                            + "_" + index + ".xml.complete";
+                    StagingReport report = stager.stage(new StagingManifest().addLocal(source.getAbsolutePath(), target));
+                    if (!report.isSuccess()) {
+                        throw new IOException("Staging " + target + " failed, " + report.getFailures());
+                    }
+                }
+                stagedAt = System.currentTimeMillis();
+                handle = submitter.submit(jobConf);
+            } catch (Exception e) {
+                System.out.println("ThroughputBenchmark: " + subject + " was not submitted, " + e.getMessage());
+            } finally {
+                submitted.countDown();
+            }
+        }
+
+        void await(long deadline) throws IOException {
+
+            if (handle == null) {
+                return;
+            }
+            try {
+                status = handle.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                System.out.println("ThroughputBenchmark: " + subject + " still running at the timeout, killing "
+                        + handle.getJobId());
+                handle.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for " + handle.getJobId(), e);
+            }
+        }
+
+        void addEvents(List<PhaseEvent> events, String point) {
+
+            String thread = "instance-" + index;
+            if (arrivedAt == 0) {
+                // Never arrived within the timeout
+                events.add(new PhaseEvent(point, "throughput", thread, endToEnd, subject, 0, 0, 0, 0, true));
+                return;
+            }
+            boolean staged = stagedAt > 0;
+            long bytes = source == null ? 0 : source.length();
+            events.add(new PhaseEvent(point, "throughput", thread, staging, subject, arrivedAt,
+                    staged ? stagedAt : arrivedAt, staged ? bytes : 0, 0, !staged));
+            if (handle == null) {
+                events.add(new PhaseEvent(point, "throughput", thread, endToEnd, subject, arrivedAt, arrivedAt, 0, 0,
+                        true));
+                return;
+            }
+
+            boolean failed = status != WorkflowJob.Status.SUCCEEDED;
+            long completedAt = handle.getCompletedAt() > 0 ? handle.getCompletedAt() : System.currentTimeMillis();
+            long runningAt = stagedAt;
+            try {
+                Date startTime = submitter.getClient().getJobInfo(handle.getJobId()).getStartTime();
+                if (startTime != null) {
+                    // Clocks of the Oozie server and this machine differ a little
+                    runningAt = Math.max(stagedAt, Math.min(completedAt, startTime.getTime()));
+                }
+            } catch (OozieClientException e) {
+                // Only the split between queue and run is lost
+            }
+            events.add(new PhaseEvent(point, "throughput", thread, queue, subject, stagedAt, runningAt, 0, 0, false));
+            events.add(new PhaseEvent(point, "throughput", thread, run, subject, runningAt, completedAt, 0, 0, failed));
+            events.add(new PhaseEvent(point, "throughput", thread, endToEnd, subject, arrivedAt, completedAt, bytes, 0,
+                    failed));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.cat.ddsw.base.throughput;
+
+import com.cat.ddsw.base.oozie.FakeOozieServer;
+import com.cat.ddsw.base.oozie.JobNotificationListener;
+import com.cat.ddsw.base.oozie.WorkflowSubmitter;
+import com.cat.ddsw.base.staging.HdfsStager;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.oozie.client.OozieClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * ThroughputBenchmark against the FakeOozieServer, with the local disk standing in for HDFS.
+ */
+public class ThroughputBenchmarkTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeOozieServer oozie;
+    private WorkflowSubmitter submitter;
+    private Properties plan;
+
+    @Before
+    public void setUp() throws Exception {
+
+        oozie = new FakeOozieServer();
+        oozie.setNodes("xmlIngest", "alterTables");
+        oozie.setNodeDurationMillis(50);
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()),
+                new JobNotificationListener("localhost", 0), 20, 200, "test");
+
+        plan = new Properties();
+        plan.setProperty("domains", "invoice/job.properties,dealer_inventory/job.properties");
+        plan.setProperty("instances", "6");
+        plan.setProperty("arrivalsPerMinute", "1200");
+        plan.setProperty("timeoutMinutes", "1");
+        plan.setProperty("workDirectory", temp.getRoot().getPath());
+    }
+
+    @After
+    public void tearDown() {
+        submitter.shutdown();
+        oozie.stop();
+    }
+
+    @Test
+    public void testSweepPoints() throws Exception {
+
+        plan.setProperty("sweep.inputSplitValue", "134217728,268435456");
+        plan.setProperty("sweep.containerMapMemValue+mapperJVMHeapValue", "8000+-Xmx6000m, 12000+-Xmx10000m");
+
+        List<Map<String, String>> points = new ThroughputPlan(plan).getSweepPoints();
+        Assert.assertEquals(4, points.size());
+        Assert.assertEquals("containerMapMemValue=8000 mapperJVMHeapValue=-Xmx6000m inputSplitValue=134217728",
+                ThroughputResult.label(points.get(0)));
+        Assert.assertEquals("containerMapMemValue=12000 mapperJVMHeapValue=-Xmx10000m inputSplitValue=268435456",
+                ThroughputResult.label(points.get(3)));
+
+        Assert.assertEquals(Collections.singletonList(Collections.<String, String>emptyMap()),
+                new ThroughputPlan(new Properties()).getSweepPoints());
+    }
+
+    @Test
+    public void testEveryPointRunsAllInstances() throws Exception {
+
+        plan.setProperty("sweep.inputSplitValue", "134217728,268435456");
+        ThroughputBenchmark benchmark = new ThroughputBenchmark(submitter, new ThroughputPlan(plan));
+
+        List<ThroughputResult> results = benchmark.run();
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(12, oozie.getSubmittedJobs());
+
+        for (ThroughputResult result : results) {
+            Assert.assertEquals(6, result.getSucceeded());
+            Assert.assertEquals(0, result.getFailed());
+            Assert.assertEquals(6, result.getSummary().getCount(ThroughputBenchmark.endToEnd));
+            Assert.assertTrue(result.getPercentile(ThroughputBenchmark.run, 0.5) >= 100);
+            Assert.assertTrue(result.getPercentile(ThroughputBenchmark.endToEnd, 0.95)
+                    >= result.getPercentile(ThroughputBenchmark.run, 0.5));
+            Assert.assertTrue(result.getFilesPerHour() > 0);
+            for (String jobId : result.getJobIds()) {
+                Assert.assertEquals(result.getPoint().get("inputSplitValue"),
+                        oozie.getJobConf(jobId).getProperty("inputSplitValue"));
+            }
+        }
+
+        File report = benchmark.write(results);
+        Assert.assertEquals(3, Files.readAllLines(report.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testStagesOneFilePerWorkflow() throws Exception {
+
+        plan.setProperty("recordsPerFile", "20");
+        File raw = temp.newFolder("raw");
+        ThroughputBenchmark benchmark = new ThroughputBenchmark(submitter, new ThroughputPlan(plan));
+        benchmark.setStager(new HdfsStager(FileSystem.getLocal(new Configuration()), 2));
+        benchmark.override("DDSWRawDir", raw.getAbsolutePath());
+
+        ThroughputResult result = benchmark.run(Collections.<String, String>emptyMap());
+        Assert.assertEquals(6, result.getSucceeded());
+        // The local FileSystem writes a .crc file next to every file
+        Assert.assertEquals(6, raw.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".xml.complete");
+            }
+        }).length);
+        Assert.assertEquals(6, result.getSummary().getCount(ThroughputBenchmark.staging));
+    }
+
+    @Test
+    public void testFailedWorkflowsAreCounted() throws Exception {
+
+        oozie.failNode("alterTables", 2);
+        ThroughputResult result = new ThroughputBenchmark(submitter, new ThroughputPlan(plan))
+                .run(Collections.<String, String>emptyMap());
+
+        Assert.assertEquals(4, result.getSucceeded());
+        Assert.assertEquals(2, result.getFailed());
+        Assert.assertEquals(6, result.getSummary().getCount(ThroughputBenchmark.run));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownSweptProperty() throws Exception {
+        new ThroughputBenchmark(submitter, new ThroughputPlan(plan))
+                .run(Collections.singletonMap("inputSplitValu", "1"));
+    }
+
+    @Test
+    public void testPoissonArrivals() {
+
+        long[] fixed = ThroughputBenchmark.arrivalOffsets(4, 60, false, 1);
+        Assert.assertArrayEquals(new long[]{0, 1000, 2000, 3000}, fixed);
+
+        long[] poisson = ThroughputBenchmark.arrivalOffsets(1000, 60, true, 1);
+        Assert.assertArrayEquals(poisson, ThroughputBenchmark.arrivalOffsets(1000, 60, true, 1));
+        // Mean gap of a second, give or take
+        Assert.assertTrue(poisson[999] > 900 * 1000 && poisson[999] < 1100 * 1000);
+    }
+}
@@ -0,0 +1,134 @@
+package com.cat.ddsw.base.throughput;
+
+import com.cat.ddsw.base.DDSWProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * What a {@link ThroughputBenchmark} submits: which Domains, how many Workflows, how fast, and the job.properties
+ * values to sweep.
+ *
+ * ####IMPORTANT####
+ * #Settings of a plan file on the classpath (e.g. "throughput.properties"),
+ * # domains=invoice/job.properties,dealer_inventory/job.properties   Domains take turns, one per arrival
+ * # instances=20                 Workflows per sweep point
+ * # arrivalsPerMinute=6          fixed interval, or arrival=poisson for exponential gaps (seeded by seed=42)
+ * # recordsPerFile=100000        size of the generated XML staged for every Workflow, 0 stages nothing
+ * # timeoutMinutes=120           per sweep point, Workflows still running then count as failed
+ * # workDirectory=build/ddsw-throughput
+ * # fake=true                    FakeOozieServer and the local disk instead of the cluster, with
+ * #                               fake.nodes=xmlIngest,alterTables and fake.nodeDurationMillis=1000
+ * #Every sweep.* line is one dimension of the sweep, the points are all combinations of the dimensions:
+ * # sweep.inputSplitValue=134217728,268435456
+ * #Properties that only make sense together are swept as one dimension, joined with + in the key and the values:
+ * # sweep.containerMapMemValue+mapperJVMHeapValue=8000+-Xmx6000m,12000+-Xmx10000m
+ * #Without sweep lines there is one point with the values of the job.properties.
+ */
+public class ThroughputPlan {
+
+    public static final String sweepPrefix = "sweep.";
+
+    private final Properties plan;
+
+    public ThroughputPlan(Properties plan) {
+        this.plan = plan;
+    }
+
+    public static ThroughputPlan load(String resource) throws IOException {
+        return new ThroughputPlan(DDSWProperties.loadResource(resource));
+    }
+
+    public List<String> getDomains() {
+
+        List<String> domains = new ArrayList<>();
+        for (String domain : plan.getProperty("domains", "invoice/job.properties").split(",")) {
+            if (!domain.trim().isEmpty()) {
+                domains.add(domain.trim());
+            }
+        }
+        return domains;
+    }
+
+    public int getInstances() {
+        return Integer.parseInt(plan.getProperty("instances", "10").trim());
+    }
+
+    public double getArrivalsPerMinute() {
+        return Double.parseDouble(plan.getProperty("arrivalsPerMinute", "6").trim());
+    }
+
+    public boolean isPoisson() {
+        return "poisson".equalsIgnoreCase(plan.getProperty("arrival", "fixed").trim());
+    }
+
+    public long getSeed() {
+        return Long.parseLong(plan.getProperty("seed", "42").trim());
+    }
+
+    public long getRecordsPerFile() {
+        return Long.parseLong(plan.getProperty("recordsPerFile", "0").trim());
+    }
+
+    public long getTimeoutMillis() {
+        return Long.parseLong(plan.getProperty("timeoutMinutes", "120").trim()) * 60000;
+    }
+
+    public String getWorkDirectory() {
+        return plan.getProperty("workDirectory", "build/ddsw-throughput").trim();
+    }
+
+    public boolean isFake() {
+        return Boolean.parseBoolean(plan.getProperty("fake", "false").trim());
+    }
+
+    public void setFake(boolean fake) {
+        plan.setProperty("fake", String.valueOf(fake));
+    }
+
+    public String[] getFakeNodes() {
+        return plan.getProperty("fake.nodes", "xmlIngest,alterTables").trim().split("\\s*,\\s*");
+    }
+
+    public long getFakeNodeDurationMillis() {
+        return Long.parseLong(plan.getProperty("fake.nodeDurationMillis", "1000").trim());
+    }
+
+    /**
+     * job.properties overrides of every sweep point, in a stable order.
+     */
+    public List<Map<String, String>> getSweepPoints() throws IOException {
+
+        List<Map<String, String>> points = new ArrayList<>();
+        points.add(new LinkedHashMap<String, String>());
+
+        for (String key : new TreeSet<>(plan.stringPropertyNames())) {
+            if (!key.startsWith(sweepPrefix)) {
+                continue;
+            }
+            String[] names = key.substring(sweepPrefix.length()).split("\\+");
+            List<Map<String, String>> combined = new ArrayList<>();
+            for (String value : plan.getProperty(key).split(",")) {
+                // The values may contain + themselves only in the last property, e.g. a JVM option
+                String[] values = value.trim().split("\\+", names.length);
+                if (values.length != names.length) {
+                    throw new IOException(key + " needs " + names.length + " values joined with +, got " + value);
+                }
+                for (Map<String, String> point : points) {
+                    Map<String, String> next = new LinkedHashMap<>(point);
+                    for (int i = 0; i < names.length; i++) {
+                        next.put(names[i].trim(), values[i].trim());
+                    }
+                    combined.add(next);
+                }
+            }
+            points = combined;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,120 @@
+package com.cat.ddsw.base.throughput;
+
+import com.cat.ddsw.base.timing.PhaseEvent;
+import com.cat.ddsw.base.timing.PhaseSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Throughput and latency percentiles of one sweep point of a {@link ThroughputBenchmark}.
+ *
+ * Files per hour are the succeeded Workflows over the time from the first arrival to the last completion, so they
+ * only show what the cluster sustains when the arrival rate is above it.
+ */
+public class ThroughputResult {
+
+    static final String csvHeader = "point,instances,succeeded,failed,files_per_hour,queue_p50_ms,queue_p95_ms,"
+            + "run_p50_ms,run_p95_ms,end_to_end_p50_ms,end_to_end_p95_ms,end_to_end_p99_ms";
+
+    private final Map<String, String> point;
+    private final List<PhaseEvent> events;
+    private final List<String> jobIds;
+    private final PhaseSummary summary;
+    private final int instances;
+    private final int succeeded;
+    private final long firstArrival;
+    private final long lastCompletion;
+
+    ThroughputResult(Map<String, String> point, List<PhaseEvent> events, List<String> jobIds, int instances,
+                     int succeeded, long firstArrival, long lastCompletion) {
+        this.point = point;
+        this.events = events;
+        this.jobIds = jobIds;
+        this.summary = new PhaseSummary(events);
+        this.instances = instances;
+        this.succeeded = succeeded;
+        this.firstArrival = firstArrival;
+        this.lastCompletion = lastCompletion;
+    }
+
+    /**
+     * "inputSplitValue=134217728 containerMapMemValue=8000", or "job.properties" when nothing was overridden.
+     */
+    public static String label(Map<String, String> point) {
+
+        if (point.isEmpty()) {
+            return "job.properties";
+        }
+        StringBuilder label = new StringBuilder();
+        for (Map.Entry<String, String> entry : point.entrySet()) {
+            if (label.length() > 0) {
+                label.append(' ');
+            }
+            label.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return label.toString();
+    }
+
+    public Map<String, String> getPoint() {
+        return point;
+    }
+
+    public PhaseSummary getSummary() {
+        return summary;
+    }
+
+    public List<PhaseEvent> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Oozie Job ids of the Workflows that were submitted, in arrival order.
+     */
+    public List<String> getJobIds() {
+        return Collections.unmodifiableList(new ArrayList<>(jobIds));
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return instances - succeeded;
+    }
+
+    public double getFilesPerHour() {
+        long millis = lastCompletion - firstArrival;
+        return millis <= 0 ? 0 : succeeded * 3600000.0 / millis;
+    }
+
+    /**
+     * Nearest rank percentile in ms of ThroughputBenchmark.queue, run or endToEnd.
+     */
+    public long getPercentile(String phase, double percentile) {
+        return summary.getPercentile(phase, percentile);
+    }
+
+    String toCsv() {
+
+        return "\"" + label(point).replace("\"", "'") + "\"," + instances + "," + succeeded + "," + getFailed() + ","
+                + String.format("%.1f", getFilesPerHour()) + ","
+                + getPercentile(ThroughputBenchmark.queue, 0.5) + "," + getPercentile(ThroughputBenchmark.queue, 0.95) + ","
+                + getPercentile(ThroughputBenchmark.run, 0.5) + "," + getPercentile(ThroughputBenchmark.run, 0.95) + ","
+                + getPercentile(ThroughputBenchmark.endToEnd, 0.5) + ","
+                + getPercentile(ThroughputBenchmark.endToEnd, 0.95) + ","
+                + getPercentile(ThroughputBenchmark.endToEnd, 0.99);
+    }
+
+    @Override
+    public String toString() {
+        return label(point) + ": " + succeeded + "/" + instances + " succeeded, "
+                + String.format("%.1f", getFilesPerHour()) + " files/hour\n" + summary;
+    }
+}
@@ -0,0 +1,113 @@
+package com.cat.ddsw.base.timing;
+
+/**
+ * One timed phase of one run, a line of the timeline.
+ */
+public class PhaseEvent {
+
+    static final String csvHeader = "run,fork,thread,phase,subject,started_at,finished_at,millis,bytes,rows,failed";
+
+    private final String run;
+    private final String fork;
+    private final String thread;
+    private final String phase;
+    private final String subject;
+    private final long startedAt;
+    private final long finishedAt;
+    private final long bytes;
+    private final long rows;
+    private final boolean failed;
+
+    public PhaseEvent(String run, String fork, String thread, String phase, String subject, long startedAt,
+                      long finishedAt, long bytes, long rows, boolean failed) {
+        this.run = run;
+        this.fork = fork;
+        this.thread = thread;
+        this.phase = phase;
+        this.subject = subject;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+        this.bytes = bytes;
+        this.rows = rows;
+        this.failed = failed;
+    }
+
+    public String getRun() {
+        return run;
+    }
+
+    public String getFork() {
+        return fork;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getMillis() {
+        return finishedAt - startedAt;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    String toCsv() {
+        return clean(run) + "," + clean(fork) + "," + clean(thread) + "," + clean(phase) + "," + clean(subject) + ","
+                + startedAt + "," + finishedAt + "," + getMillis() + "," + bytes + "," + rows + "," + failed;
+    }
+
+    /**
+     * Event of a timeline line, null for the header or a line that does not parse.
+     */
+    static PhaseEvent fromCsv(String line) {
+
+        String[] fields = line.split(",", -1);
+        if (fields.length != 11 || line.equals(csvHeader)) {
+            return null;
+        }
+        try {
+            return new PhaseEvent(fields[0], fields[1], fields[2], fields[3], fields[4], Long.parseLong(fields[5]),
+                    Long.parseLong(fields[6]), Long.parseLong(fields[8]), Long.parseLong(fields[9]),
+                    Boolean.parseBoolean(fields[10]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Subjects are table, Domain and class names, anything that would break the CSV is blanked out.
+     */
+    private static String clean(String value) {
+        return value == null ? "" : value.replaceAll("[,\"\\r\\n]", " ");
+    }
+
+    @Override
+    public String toString() {
+        return phase + " " + subject + " " + getMillis() + " ms" + (failed ? " (failed)" : "");
+    }
+}
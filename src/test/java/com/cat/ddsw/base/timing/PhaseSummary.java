@@ -0,0 +1,116 @@
+package com.cat.ddsw.base.timing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Duration percentiles per phase over the events of several runs, failed phases are counted but not timed.
+ */
+public class PhaseSummary {
+
+    private final Map<String, Row> rows = new TreeMap<>();
+    private final int runs;
+
+    public PhaseSummary(List<PhaseEvent> events) {
+
+        List<String> seenRuns = new ArrayList<>();
+        for (PhaseEvent event : events) {
+            if (!seenRuns.contains(event.getRun())) {
+                seenRuns.add(event.getRun());
+            }
+            Row row = rows.get(event.getPhase());
+            if (row == null) {
+                row = new Row(event.getPhase());
+                rows.put(event.getPhase(), row);
+            }
+            row.add(event);
+        }
+        this.runs = seenRuns.size();
+    }
+
+    /**
+     * Nearest rank percentile of the phase in ms, -1 when it has no successful sample.
+     */
+    public long getPercentile(String phase, double percentile) {
+        Row row = rows.get(phase);
+        return row == null ? -1 : row.percentile(percentile);
+    }
+
+    public int getCount(String phase) {
+        Row row = rows.get(phase);
+        return row == null ? 0 : row.millis.size() + row.failed;
+    }
+
+    public int getRuns() {
+        return runs;
+    }
+
+    /**
+     * Comma separated, one line per phase, for spreadsheets.
+     */
+    public String toCsv() {
+
+        StringBuilder csv = new StringBuilder("phase,count,failed,p50_ms,p95_ms,max_ms,bytes,rows\n");
+        for (Row row : rows.values()) {
+            csv.append(row.phase).append(',').append(row.millis.size()).append(',').append(row.failed).append(',')
+                    .append(row.percentile(0.5)).append(',').append(row.percentile(0.95)).append(',')
+                    .append(row.percentile(1.0)).append(',').append(row.bytes).append(',').append(row.rows).append('\n');
+        }
+        return csv.toString();
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("%-16s %7s %7s %10s %10s %10s %14s %12s%n", "phase (" + runs + " runs)", "count",
+                "failed", "p50 ms", "p95 ms", "max ms", "bytes", "rows"));
+        for (Row row : rows.values()) {
+            table.append(String.format("%-16s %7d %7d %10d %10d %10d %14d %12d%n", row.phase, row.millis.size(),
+                    row.failed, row.percentile(0.5), row.percentile(0.95), row.percentile(1.0), row.bytes, row.rows));
+        }
+        return table.toString();
+    }
+
+    private static class Row {
+
+        private final String phase;
+        private final List<Long> millis = new ArrayList<>();
+        private int failed = 0;
+        private long bytes = 0;
+        private long rows = 0;
+        private boolean sorted = true;
+
+        Row(String phase) {
+            this.phase = phase;
+        }
+
+        void add(PhaseEvent event) {
+
+            if (event.isFailed()) {
+                failed++;
+                return;
+            }
+            millis.add(event.getMillis());
+            bytes += event.getBytes();
+            rows += event.getRows();
+            sorted = false;
+        }
+
+        long percentile(double percentile) {
+
+            if (millis.isEmpty()) {
+                return -1;
+            }
+            if (!sorted) {
+                Collections.sort(millis);
+                sorted = true;
+            }
+            int rank = (int) Math.ceil(percentile * millis.size());
+            return millis.get(Math.min(millis.size(), Math.max(1, rank)) - 1);
+        }
+    }
+}
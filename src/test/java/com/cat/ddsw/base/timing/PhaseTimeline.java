@@ -0,0 +1,258 @@
+package com.cat.ddsw.base.timing;
+
+import com.cat.ddsw.base.fixture.DomainFixtureRegistry;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Start and end of every phase of every Domain in this JVM (staging, Workflow queue and run, Hive fetch, comparison,
+ * cleanup, Test classes), with bytes moved, rows fetched and the thread and fork it ran on.
+ *
+ * At the end of the Suite the timeline is written per fork as CSV and as JSON in the Chrome trace event format
+ * (load it in chrome://tracing or https://ui.perfetto.dev to see the phases of all threads side by side). The events
+ * are also added to a history file and a summary with p50/p95 per phase over the recent runs is printed.
+ *
+ * ####IMPORTANT####
+ * #Output directory is the "ddsw.timeline.dir" System Property (default build/ddsw-timeline), the history is
+ * # "ddsw.timeline.history" (default .gradle/ddsw-timeline.csv), both set in oozie-test/build.gradle.
+ * #Runs are told apart by the build id, forks by the Gradle test worker id.
+ */
+public class PhaseTimeline {
+
+    public static final String timelineDirectoryKey = "ddsw.timeline.dir";
+    public static final String historyFileKey = "ddsw.timeline.history";
+
+    public static final String staging = "STAGING";
+    public static final String workflowQueue = "WORKFLOW_QUEUE";
+    public static final String workflowRun = "WORKFLOW_RUN";
+    public static final String hiveFetch = "HIVE_FETCH";
+    public static final String compare = "COMPARE";
+    public static final String cleanup = "CLEANUP";
+    public static final String testClass = "TEST_CLASS";
+    public static final String testMethod = "TEST_METHOD";
+
+    /**
+     * Runs kept in the history, the percentiles are taken over these.
+     */
+    private static final int maxRuns = 20;
+
+    private static PhaseTimeline instance = null;
+
+    private final String run;
+    private final String fork;
+    private final File directory;
+    private final File historyFile;
+
+    // Guarded by this
+    private final List<PhaseEvent> events = new ArrayList<>();
+    private int historyWritten = 0;
+
+    PhaseTimeline(String run, String fork, File directory, File historyFile) {
+        this.run = run;
+        this.fork = fork;
+        this.directory = directory;
+        this.historyFile = historyFile;
+    }
+
+    public static synchronized PhaseTimeline get() {
+
+        if (instance == null) {
+            String fork = System.getProperty("org.gradle.test.worker", ManagementFactory.getRuntimeMXBean().getName());
+            instance = new PhaseTimeline(
+                    System.getProperty(DomainFixtureRegistry.buildIdKey, "local-" + System.currentTimeMillis()),
+                    "fork-" + fork,
+                    new File(System.getProperty(timelineDirectoryKey, "build/ddsw-timeline")),
+                    new File(System.getProperty(historyFileKey, ".gradle/ddsw-timeline.csv")));
+
+            // Phases that end after the Suite (e.g. the last cleanup) still make it to the files
+            final PhaseTimeline timeline = instance;
+            Runtime.getRuntime().addShutdownHook(new Thread("ddsw-timeline-flush") {
+                @Override
+                public void run() {
+                    try {
+                        timeline.write();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        return instance;
+    }
+
+    public String getRun() {
+        return run;
+    }
+
+    public String getFork() {
+        return fork;
+    }
+
+    /**
+     * Starts timing a phase on the calling thread.
+     *
+     * @param subject Domain, table or Test class the phase works on
+     */
+    public PhaseTimer start(String phase, String subject) {
+        return new PhaseTimer(this, phase, subject);
+    }
+
+    public synchronized void record(PhaseEvent event) {
+        events.add(event);
+    }
+
+    /**
+     * Records a phase timed elsewhere, e.g. from the timestamps of a Workflow Job.
+     */
+    public void record(String phase, String subject, long startedAt, long finishedAt, boolean failed) {
+        record(new PhaseEvent(run, fork, Thread.currentThread().getName(), phase, subject, startedAt, finishedAt, 0, 0,
+                failed));
+    }
+
+    public synchronized List<PhaseEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
+    /**
+     * Writes the timeline of this fork, adds the new events to the history and summarizes the history.
+     */
+    public synchronized PhaseSummary write() throws IOException {
+
+        directory.mkdirs();
+        String name = fork.replaceAll("[^A-Za-z0-9._-]", "_");
+
+        try (Writer csv = new OutputStreamWriter(new FileOutputStream(new File(directory, "timeline-" + name + ".csv")),
+                StandardCharsets.UTF_8)) {
+            csv.write(PhaseEvent.csvHeader);
+            csv.write('\n');
+            for (PhaseEvent event : events) {
+                csv.write(event.toCsv());
+                csv.write('\n');
+            }
+        }
+        try (Writer json = new OutputStreamWriter(new FileOutputStream(new File(directory, "timeline-" + name + ".json")),
+                StandardCharsets.UTF_8)) {
+            json.write(traceEvents(events).toJSONString());
+        }
+
+        PhaseSummary summary = new PhaseSummary(appendHistory(events.subList(historyWritten, events.size())));
+        historyWritten = events.size();
+
+        try (Writer csv = new OutputStreamWriter(new FileOutputStream(new File(directory, "summary.csv")),
+                StandardCharsets.UTF_8)) {
+            csv.write(summary.toCsv());
+        }
+        return summary;
+    }
+
+    /**
+     * Adds the events under a file lock, keeping what other forks wrote and dropping the oldest runs.
+     *
+     * @return all events in the history
+     */
+    private List<PhaseEvent> appendHistory(List<PhaseEvent> added) throws IOException {
+
+        File parent = historyFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (RandomAccessFile access = new RandomAccessFile(historyFile, "rw")) {
+            FileChannel channel = access.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                List<PhaseEvent> history = read(channel);
+                history.addAll(added);
+
+                Set<String> runs = new LinkedHashSet<>();
+                for (PhaseEvent event : history) {
+                    runs.add(event.getRun());
+                }
+                List<String> kept = new ArrayList<>(runs);
+                kept = kept.subList(Math.max(0, kept.size() - maxRuns), kept.size());
+
+                List<PhaseEvent> trimmed = new ArrayList<>();
+                StringBuilder content = new StringBuilder(PhaseEvent.csvHeader).append('\n');
+                for (PhaseEvent event : history) {
+                    if (kept.contains(event.getRun())) {
+                        trimmed.add(event);
+                        content.append(event.toCsv()).append('\n');
+                    }
+                }
+                channel.truncate(0);
+                channel.write(ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)), 0);
+                return trimmed;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private static List<PhaseEvent> read(FileChannel channel) throws IOException {
+
+        List<PhaseEvent> history = new ArrayList<>();
+        if (channel.size() == 0) {
+            return history;
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        channel.read(content, 0);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(content.array()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PhaseEvent event = PhaseEvent.fromCsv(line);
+                if (event != null) {
+                    history.add(event);
+                }
+            }
+        }
+        return history;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject traceEvents(List<PhaseEvent> events) {
+
+        JSONArray traceEvents = new JSONArray();
+        for (PhaseEvent event : events) {
+            JSONObject args = new JSONObject();
+            args.put("subject", event.getSubject());
+            args.put("bytes", event.getBytes());
+            args.put("rows", event.getRows());
+            args.put("failed", event.isFailed());
+
+            JSONObject traceEvent = new JSONObject();
+            traceEvent.put("name", event.getPhase() + " " + event.getSubject());
+            traceEvent.put("cat", event.getPhase());
+            traceEvent.put("ph", "X");
+            traceEvent.put("ts", event.getStartedAt() * 1000);
+            traceEvent.put("dur", event.getMillis() * 1000);
+            traceEvent.put("pid", event.getFork());
+            traceEvent.put("tid", event.getThread());
+            traceEvent.put("args", args);
+            traceEvents.add(traceEvent);
+        }
+
+        JSONObject trace = new JSONObject();
+        trace.put("traceEvents", traceEvents);
+        trace.put("displayTimeUnit", "ms");
+        return trace;
+    }
+}
@@ -0,0 +1,111 @@
+package com.cat.ddsw.base.timing;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PhaseTimelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void timerRecordsBytesRowsAndFailure() throws Exception {
+
+        PhaseTimeline timeline = timeline("run-1");
+
+        try (PhaseTimer timer = timeline.start(PhaseTimeline.hiveFetch, "ddsw_qa.invoice_current")) {
+            timer.addRows(5);
+            timer.addBytes(120);
+            timer.succeeded();
+        }
+        try (PhaseTimer timer = timeline.start(PhaseTimeline.staging, "invoice")) {
+            timer.addBytes(1);
+        }
+
+        List<PhaseEvent> events = timeline.getEvents();
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(5, events.get(0).getRows());
+        Assert.assertEquals(120, events.get(0).getBytes());
+        Assert.assertFalse(events.get(0).isFailed());
+        Assert.assertEquals(Thread.currentThread().getName(), events.get(0).getThread());
+        Assert.assertTrue(events.get(1).isFailed());
+    }
+
+    @Test
+    public void writesCsvAndTraceEvents() throws Exception {
+
+        PhaseTimeline timeline = timeline("run-1");
+        timeline.record(PhaseTimeline.workflowRun, "invoice, current", 1000, 4000, false);
+
+        timeline.write();
+
+        List<String> csv = Files.readAllLines(new File(folder.getRoot(), "timeline/timeline-fork-1.csv").toPath(),
+                StandardCharsets.UTF_8);
+        Assert.assertEquals(PhaseEvent.csvHeader, csv.get(0));
+        PhaseEvent event = PhaseEvent.fromCsv(csv.get(1));
+        Assert.assertEquals("invoice  current", event.getSubject());
+        Assert.assertEquals(3000, event.getMillis());
+
+        String json = new String(Files.readAllBytes(new File(folder.getRoot(), "timeline/timeline-fork-1.json").toPath()),
+                StandardCharsets.UTF_8);
+        JSONObject traceEvent = (JSONObject) ((JSONArray) ((JSONObject) JSONValue.parse(json)).get("traceEvents")).get(0);
+        Assert.assertEquals("X", traceEvent.get("ph"));
+        Assert.assertEquals(1000000L, traceEvent.get("ts"));
+        Assert.assertEquals(3000000L, traceEvent.get("dur"));
+    }
+
+    @Test
+    public void summaryIsTakenOverRuns() throws Exception {
+
+        for (int run = 1; run <= 20; run++) {
+            PhaseTimeline timeline = timeline("run-" + run);
+            timeline.record(PhaseTimeline.workflowRun, "invoice", 0, run * 100, false);
+            timeline.record(PhaseTimeline.hiveFetch, "invoice_current", 0, 10, run == 20);
+            timeline.write();
+        }
+
+        PhaseSummary summary = timeline("run-21").write();
+        Assert.assertEquals(20, summary.getRuns());
+        Assert.assertEquals(1000, summary.getPercentile(PhaseTimeline.workflowRun, 0.5));
+        Assert.assertEquals(1900, summary.getPercentile(PhaseTimeline.workflowRun, 0.95));
+        Assert.assertEquals(20, summary.getCount(PhaseTimeline.hiveFetch));
+        Assert.assertEquals(10, summary.getPercentile(PhaseTimeline.hiveFetch, 0.95));
+
+        // Only the last 20 runs are kept
+        PhaseTimeline latest = timeline("run-21");
+        latest.record(PhaseTimeline.workflowRun, "invoice", 0, 5000, false);
+        summary = latest.write();
+        Assert.assertEquals(20, summary.getRuns());
+        Assert.assertEquals(5000, summary.getPercentile(PhaseTimeline.workflowRun, 1.0));
+        Assert.assertEquals(1100, summary.getPercentile(PhaseTimeline.workflowRun, 0.5));
+    }
+
+    @Test
+    public void nearestRankPercentile() {
+
+        List<PhaseEvent> events = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            events.add(new PhaseEvent("run", "fork", "main", PhaseTimeline.compare, "t", 0, i, 0, 0, false));
+        }
+        PhaseSummary summary = new PhaseSummary(events);
+        Assert.assertEquals(5, summary.getPercentile(PhaseTimeline.compare, 0.5));
+        Assert.assertEquals(10, summary.getPercentile(PhaseTimeline.compare, 0.95));
+        Assert.assertEquals(-1, summary.getPercentile(PhaseTimeline.cleanup, 0.5));
+    }
+
+    private PhaseTimeline timeline(String run) {
+        return new PhaseTimeline(run, "fork-1", new File(folder.getRoot(), "timeline"),
+                new File(folder.getRoot(), "history.csv"));
+    }
+}
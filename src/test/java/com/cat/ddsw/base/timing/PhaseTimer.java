@@ -0,0 +1,56 @@
+package com.cat.ddsw.base.timing;
+
+import java.io.Closeable;
+
+/**
+ * Times one phase from creation to close, used with try-with-resources. The phase counts as failed unless
+ * {@link #succeeded()} was called before the close.
+ */
+public class PhaseTimer implements Closeable {
+
+    private final PhaseTimeline timeline;
+    private final String phase;
+    private final String subject;
+    private final String thread;
+    private final long startedAt;
+
+    private long bytes = 0;
+    private long rows = 0;
+    private boolean succeeded = false;
+    private boolean closed = false;
+
+    PhaseTimer(PhaseTimeline timeline, String phase, String subject) {
+        this.timeline = timeline;
+        this.phase = phase;
+        this.subject = subject;
+        this.thread = Thread.currentThread().getName();
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void addBytes(long bytes) {
+        this.bytes += bytes;
+    }
+
+    public void addRows(long rows) {
+        this.rows += rows;
+    }
+
+    public void succeeded() {
+        this.succeeded = true;
+    }
+
+    @Override
+    public void close() {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        timeline.record(new PhaseEvent(timeline.getRun(), timeline.getFork(), thread, phase, subject, startedAt,
+                System.currentTimeMillis(), bytes, rows, !succeeded));
+    }
+}
@@ -0,0 +1,156 @@
+package com.cat.ddsw.base.trace;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counters and task durations of MapReduce jobs from the REST API of YARN: the application master through the
+ * ResourceManager proxy while the job runs, the JobHistory server once it is done.
+ *
+ * Plain HTTP and json-simple, so the framework needs neither the MapReduce client jars nor a YARN configuration.
+ */
+public class MapReduceRest {
+
+    /**
+     * Counters kept of each job, the TaskCounter, JobCounter and FileSystemCounter names.
+     * FILE_BYTES_WRITTEN is the local disk the tasks wrote, which is mostly spills.
+     */
+    static final Set<String> keptCounters = new HashSet<>(Arrays.asList(
+            "MAP_INPUT_RECORDS", "MAP_OUTPUT_RECORDS", "REDUCE_INPUT_RECORDS", "REDUCE_OUTPUT_RECORDS",
+            "SPILLED_RECORDS", "FILE_BYTES_WRITTEN", "HDFS_BYTES_READ", "HDFS_BYTES_WRITTEN",
+            "GC_TIME_MILLIS", "CPU_MILLISECONDS", "PHYSICAL_MEMORY_BYTES", "COMMITTED_HEAP_BYTES",
+            "TOTAL_LAUNCHED_MAPS", "TOTAL_LAUNCHED_REDUCES", "NUM_FAILED_MAPS", "NUM_FAILED_REDUCES"));
+
+    private static final int timeoutMillis = 10000;
+
+    private final String resourceManagerUrl;
+    private final String historyUrl;
+
+    /**
+     * @param resourceManagerUrl e.g. http://rm:8088, null to only ask the history server
+     * @param historyUrl         e.g. http://jhs:19888, null to only ask the application masters
+     */
+    public MapReduceRest(String resourceManagerUrl, String historyUrl) {
+        this.resourceManagerUrl = trim(resourceManagerUrl);
+        this.historyUrl = trim(historyUrl);
+    }
+
+    /**
+     * The kept counters of the job by name, totals over its map and reduce tasks.
+     *
+     * @return null when neither the application master nor the history server knows the job (yet)
+     */
+    public Map<String, Long> getCounters(String mapReduceJobId) {
+
+        JSONObject json = get(mapReduceJobId, "/counters");
+        JSONObject jobCounters = json == null ? null : (JSONObject) json.get("jobCounters");
+        if (jobCounters == null || jobCounters.get("counterGroup") == null) {
+            return null;
+        }
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for (Object group : (JSONArray) jobCounters.get("counterGroup")) {
+            Object groupCounters = ((JSONObject) group).get("counter");
+            if (groupCounters == null) {
+                continue;
+            }
+            for (Object counter : (JSONArray) groupCounters) {
+                String name = (String) ((JSONObject) counter).get("name");
+                Object value = ((JSONObject) counter).get("totalCounterValue");
+                if (keptCounters.contains(name) && value instanceof Number) {
+                    counters.put(name, ((Number) value).longValue());
+                }
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Elapsed times of the map tasks in ms, empty when the job is unknown.
+     */
+    public List<Long> getMapTaskMillis(String mapReduceJobId) {
+
+        List<Long> millis = new ArrayList<>();
+        JSONObject json = get(mapReduceJobId, "/tasks?type=m");
+        JSONObject tasks = json == null ? null : (JSONObject) json.get("tasks");
+        if (tasks == null || tasks.get("task") == null) {
+            return millis;
+        }
+        for (Object task : (JSONArray) tasks.get("task")) {
+            Object elapsed = ((JSONObject) task).get("elapsedTime");
+            if (elapsed instanceof Number && ((Number) elapsed).longValue() > 0) {
+                millis.add(((Number) elapsed).longValue());
+            }
+        }
+        return millis;
+    }
+
+    /**
+     * The resource of the job from the application master, from the history server when that has nothing.
+     * The ResourceManager proxy redirects to the history server by itself once the application is done.
+     */
+    private JSONObject get(String mapReduceJobId, String resource) {
+
+        if (resourceManagerUrl != null) {
+            String application = mapReduceJobId.replaceFirst("^job_", "application_");
+            JSONObject json = read(resourceManagerUrl + "/proxy/" + application + "/ws/v1/mapreduce/jobs/"
+                    + mapReduceJobId + resource);
+            if (json != null) {
+                return json;
+            }
+        }
+        return historyUrl == null ? null
+                : read(historyUrl + "/ws/v1/history/mapreduce/jobs/" + mapReduceJobId + resource);
+    }
+
+    private static JSONObject read(String url) {
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setRequestProperty("Accept", "application/json");
+            if (connection.getResponseCode() != 200) {
+                return null;
+            }
+            try (InputStream in = connection.getInputStream();
+                 Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                Object json = new JSONParser().parse(reader);
+                return json instanceof JSONObject ? (JSONObject) json : null;
+            }
+        } catch (IOException | ParseException | ClassCastException e) {
+            // The proxy answers with an HTML page for applications it does not know
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static String trim(String url) {
+
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+        return url.trim().replaceAll("/+$", "");
+    }
+}
@@ -0,0 +1,79 @@
+package com.cat.ddsw.base.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The most recent events of one Domain's Workflow in a ring buffer of fixed size, the oldest are overwritten.
+ *
+ * The last COUNTERS event of every MapReduce job is kept aside as well, so a long job log can not push the
+ * counters out of the report.
+ */
+public class TraceBuffer {
+
+    private final String domain;
+    private final TraceEvent[] events;
+
+    // Guarded by this
+    private int next = 0;
+    private int size = 0;
+    private long dropped = 0;
+    private final Map<String, TraceEvent> latestCounters = new LinkedHashMap<>();
+
+    public TraceBuffer(String domain, int capacity) {
+        this.domain = domain;
+        this.events = new TraceEvent[Math.max(1, capacity)];
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public synchronized void add(TraceEvent event) {
+
+        if (size == events.length) {
+            dropped++;
+        } else {
+            size++;
+        }
+        events[next] = event;
+        next = (next + 1) % events.length;
+
+        if (event.getKind().equals(TraceEvent.counters)) {
+            latestCounters.put(event.getSource(), event);
+        }
+    }
+
+    /**
+     * The buffered events, oldest first.
+     */
+    public synchronized List<TraceEvent> getEvents() {
+
+        List<TraceEvent> snapshot = new ArrayList<>(size);
+        int first = (next - size + events.length) % events.length;
+        for (int i = 0; i < size; i++) {
+            snapshot.add(events[(first + i) % events.length]);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Events overwritten since the Workflow started.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Last COUNTERS event by MapReduce job id, in the order the jobs were first seen.
+     */
+    public synchronized Map<String, TraceEvent> getLatestCounters() {
+        return new LinkedHashMap<>(latestCounters);
+    }
+
+    public int getCapacity() {
+        return events.length;
+    }
+}
@@ -0,0 +1,85 @@
+package com.cat.ddsw.base.trace;
+
+import org.json.simple.JSONObject;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One observation of a running Workflow: a status change of the job or of an action, a job log line, or the
+ * counters of one of its MapReduce jobs.
+ */
+public class TraceEvent {
+
+    public static final String status = "STATUS";
+    public static final String action = "ACTION";
+    public static final String log = "LOG";
+    public static final String counters = "COUNTERS";
+
+    private final long time;
+    private final String kind;
+    private final String source;
+    private final String message;
+    private final Map<String, Long> values;
+
+    public TraceEvent(long time, String kind, String source, String message, Map<String, Long> values) {
+        this.time = time;
+        this.kind = kind;
+        this.source = source;
+        this.message = message;
+        this.values = values == null ? Collections.<String, Long>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<>(values));
+    }
+
+    public TraceEvent(String kind, String source, String message) {
+        this(System.currentTimeMillis(), kind, source, message, null);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Workflow Job, action name or MapReduce job id the event is about.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Counter values of a COUNTERS event by counter name, empty for the other kinds.
+     */
+    public Map<String, Long> getValues() {
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    JSONObject toJson() {
+
+        JSONObject json = new JSONObject();
+        json.put("time", time);
+        json.put("kind", kind);
+        json.put("source", source);
+        if (message != null) {
+            json.put("message", message);
+        }
+        if (!values.isEmpty()) {
+            json.put("values", new JSONObject(values));
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return time + " " + kind + " " + source + (message == null ? "" : " " + message) + (values.isEmpty() ? "" : " " + values);
+    }
+}
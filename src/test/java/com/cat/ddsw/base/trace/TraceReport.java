@@ -0,0 +1,240 @@
+package com.cat.ddsw.base.trace;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The trace of one Workflow written as JSON when it failed or was slow: the job, why it was reported, the memory
+ * settings it ran with, per MapReduce job the last counters with warnings about skew and memory pressure, and the
+ * buffered events.
+ *
+ * ####IMPORTANT####
+ * #Warnings are raised when
+ * # - GC took more than 10% of the CPU time of the tasks (heap too small for the data, see mapperJVMHeapValue)
+ * # - the tasks used more than 90% of containerMapMemValue on average (close to being killed by YARN)
+ * # - records were spilled more than 1.5 times each on average (sort buffer too small)
+ * # - the slowest map task took more than 3 times the median one (skewed input splits)
+ */
+public class TraceReport {
+
+    /**
+     * job.properties values the report repeats, the YARN container and JVM sizes of the Workflow.
+     */
+    static final String[] memorySettings = {"containerMapMemValue", "mapperJVMHeapValue", "containerReduceMemValue",
+            "reducerJVMHeapValue", "inputSplitValue"};
+
+    static final double maxGcShare = 0.1;
+    static final double maxContainerShare = 0.9;
+    static final double maxSpillsPerRecord = 1.5;
+    static final double maxMapSkew = 3.0;
+
+    private static final Pattern heapPattern = Pattern.compile("-Xmx(\\d+)([kKmMgG]?)");
+
+    private final String jobId;
+    private final String status;
+    private final String reason;
+    private final long submittedAt;
+    private final long completedAt;
+    private final TraceBuffer buffer;
+    private final Properties jobConf;
+    private final Map<String, List<Long>> mapTaskMillis = new LinkedHashMap<>();
+    private final List<String> warnings = new ArrayList<>();
+
+    public TraceReport(String jobId, String status, String reason, long submittedAt, long completedAt,
+                       TraceBuffer buffer, Properties jobConf) {
+        this.jobId = jobId;
+        this.status = status;
+        this.reason = reason;
+        this.submittedAt = submittedAt;
+        this.completedAt = completedAt;
+        this.buffer = buffer;
+        this.jobConf = jobConf;
+    }
+
+    /**
+     * Elapsed times of the map tasks of a MapReduce job, for the skew warning.
+     */
+    public void setMapTaskMillis(String mapReduceJobId, List<Long> millis) {
+        mapTaskMillis.put(mapReduceJobId, millis);
+    }
+
+    /**
+     * Warnings of the last {@link #toJson()}, e.g. "job_..._0001: GC took 23% of the task CPU time".
+     */
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    @SuppressWarnings("unchecked")
+    public JSONObject toJson() {
+
+        warnings.clear();
+        JSONObject json = new JSONObject();
+        json.put("domain", buffer.getDomain());
+        json.put("jobId", jobId);
+        json.put("status", status);
+        json.put("reason", reason);
+        json.put("submittedAt", submittedAt);
+        json.put("completedAt", completedAt);
+        json.put("millis", completedAt - submittedAt);
+
+        JSONObject settings = new JSONObject();
+        for (String key : memorySettings) {
+            if (jobConf.getProperty(key) != null) {
+                settings.put(key, jobConf.getProperty(key).trim());
+            }
+        }
+        json.put("settings", settings);
+
+        JSONArray jobs = new JSONArray();
+        for (TraceEvent counters : buffer.getLatestCounters().values()) {
+            jobs.add(mapReduceJson(counters));
+        }
+        json.put("mapReduceJobs", jobs);
+        JSONArray warningsJson = new JSONArray();
+        warningsJson.addAll(warnings);
+        json.put("warnings", warningsJson);
+
+        JSONArray events = new JSONArray();
+        for (TraceEvent event : buffer.getEvents()) {
+            events.add(event.toJson());
+        }
+        json.put("bufferCapacity", (long) buffer.getCapacity());
+        json.put("droppedEvents", buffer.getDropped());
+        json.put("events", events);
+        return json;
+    }
+
+    /**
+     * Writes the report as directory/<domain>-<jobId>.json.
+     */
+    public File write(File directory) throws IOException {
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        File file = new File(directory, buffer.getDomain() + "-" + jobId + ".json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(toJson().toJSONString());
+        }
+        return file;
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject mapReduceJson(TraceEvent counters) {
+
+        String id = counters.getSource();
+        Map<String, Long> values = counters.getValues();
+        long tasks = value(values, "TOTAL_LAUNCHED_MAPS") + value(values, "TOTAL_LAUNCHED_REDUCES");
+
+        JSONObject diagnostics = new JSONObject();
+        double gcShare = ratio(value(values, "GC_TIME_MILLIS"), value(values, "CPU_MILLISECONDS"));
+        diagnostics.put("gcShareOfCpu", gcShare);
+        if (gcShare > maxGcShare) {
+            warnings.add(String.format("%s: GC took %.0f%% of the task CPU time, heap %s", id, gcShare * 100,
+                    jobConf.getProperty("mapperJVMHeapValue", "unknown")));
+        }
+
+        double spillsPerRecord = ratio(value(values, "SPILLED_RECORDS"), value(values, "MAP_OUTPUT_RECORDS"));
+        diagnostics.put("spillsPerRecord", spillsPerRecord);
+        if (spillsPerRecord > maxSpillsPerRecord) {
+            warnings.add(String.format("%s: records were spilled %.1f times each, %d bytes to local disk", id,
+                    spillsPerRecord, value(values, "FILE_BYTES_WRITTEN")));
+        }
+
+        if (tasks > 0) {
+            long physicalMb = value(values, "PHYSICAL_MEMORY_BYTES") / tasks / (1024 * 1024);
+            long heapMb = value(values, "COMMITTED_HEAP_BYTES") / tasks / (1024 * 1024);
+            diagnostics.put("physicalMbPerTask", physicalMb);
+            diagnostics.put("committedHeapMbPerTask", heapMb);
+
+            long containerMb = parseLong(jobConf.getProperty("containerMapMemValue"));
+            if (containerMb > 0 && physicalMb > containerMb * maxContainerShare) {
+                warnings.add(String.format("%s: tasks used %d MB of the containerMapMemValue %d MB", id, physicalMb,
+                        containerMb));
+            }
+            long maxHeapMb = heapMb(jobConf.getProperty("mapperJVMHeapValue"));
+            if (maxHeapMb > 0) {
+                diagnostics.put("committedHeapShare", ratio(heapMb, maxHeapMb));
+            }
+        }
+
+        List<Long> millis = mapTaskMillis.get(id);
+        if (millis != null && !millis.isEmpty()) {
+            List<Long> sorted = new ArrayList<>(millis);
+            Collections.sort(sorted);
+            long median = sorted.get(sorted.size() / 2);
+            long slowest = sorted.get(sorted.size() - 1);
+            double skew = ratio(slowest, median);
+            diagnostics.put("mapTasks", (long) sorted.size());
+            diagnostics.put("medianMapMillis", median);
+            diagnostics.put("slowestMapMillis", slowest);
+            diagnostics.put("mapSkew", skew);
+            if (skew > maxMapSkew) {
+                warnings.add(String.format("%s: slowest of %d map tasks took %.1f times the median (%d ms), "
+                        + "input splits are skewed", id, sorted.size(), skew, median));
+            }
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("id", id);
+        json.put("observedAt", counters.getTime());
+        json.put("counters", new JSONObject(values));
+        json.put("diagnostics", diagnostics);
+        return json;
+    }
+
+    /**
+     * Maximum heap of a -Xmx option in MB, -1 when there is none.
+     */
+    static long heapMb(String javaOpts) {
+
+        Matcher matcher = javaOpts == null ? null : heapPattern.matcher(javaOpts);
+        if (matcher == null || !matcher.find()) {
+            return -1;
+        }
+        long size = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2).toLowerCase()) {
+            case "k":
+                return size / 1024;
+            case "m":
+                return size;
+            case "g":
+                return size * 1024;
+            default:
+                return size / (1024 * 1024);
+        }
+    }
+
+    private static long value(Map<String, Long> values, String name) {
+        Long value = values.get(name);
+        return value == null ? 0 : value;
+    }
+
+    private static double ratio(long part, long whole) {
+        return whole <= 0 ? 0 : (double) part / whole;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.cat.ddsw.base.trace;
+
+import com.cat.ddsw.base.oozie.WorkflowHandle;
+import org.apache.oozie.client.OozieClientException;
+import org.apache.oozie.client.WorkflowAction;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * The trace of one running Workflow, see {@link WorkflowTracer}. Each poll adds only what is new since the one
+ * before: status changes, job log lines past the last one seen, and the counters of the MapReduce jobs that are
+ * running or just ended.
+ */
+public class WorkflowTrace {
+
+    private final WorkflowTracer tracer;
+    private final String jobId;
+    private final TraceBuffer buffer;
+    private final Properties jobConf;
+    private final String historyKey;
+
+    // Guarded by this
+    private ScheduledFuture<?> polling = null;
+    private String jobStatus = null;
+    private final Map<String, String> actionStatus = new HashMap<>();
+    private int logLines = 0;
+    private boolean finished = false;
+
+    WorkflowTrace(WorkflowTracer tracer, String jobId, TraceBuffer buffer, Properties jobConf, String historyKey) {
+        this.tracer = tracer;
+        this.jobId = jobId;
+        this.buffer = buffer;
+        this.jobConf = jobConf;
+        this.historyKey = historyKey;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public TraceBuffer getBuffer() {
+        return buffer;
+    }
+
+    synchronized void setPolling(ScheduledFuture<?> polling) {
+        this.polling = polling;
+    }
+
+    /**
+     * Adds what changed since the last poll to the buffer. Never throws, a failed poll only leaves a gap.
+     */
+    synchronized void poll() {
+
+        if (finished) {
+            return;
+        }
+        try {
+            WorkflowJob job = tracer.getClient().getJobInfo(jobId);
+            String status = job.getStatus() + " run " + job.getRun();
+            if (!status.equals(jobStatus)) {
+                buffer.add(new TraceEvent(TraceEvent.status, jobId, status));
+                jobStatus = status;
+            }
+
+            Set<String> mapReduceJobs = new LinkedHashSet<>();
+            for (WorkflowAction action : job.getActions()) {
+                String state = action.getStatus() + (action.getExternalStatus() == null ? ""
+                        : " " + action.getExternalStatus());
+                boolean changed = !state.equals(actionStatus.put(action.getName(), state));
+                if (changed) {
+                    buffer.add(new TraceEvent(TraceEvent.action, action.getName(), describe(action)));
+                }
+                // Once more after the action ended, for the final counters
+                if (changed || action.getStatus() == WorkflowAction.Status.RUNNING) {
+                    addMapReduceJobs(action, mapReduceJobs);
+                }
+            }
+
+            tailLog();
+
+            MapReduceRest mapReduce = tracer.getMapReduce();
+            if (mapReduce != null) {
+                for (String mapReduceJob : mapReduceJobs) {
+                    Map<String, Long> counters = mapReduce.getCounters(mapReduceJob);
+                    if (counters != null) {
+                        buffer.add(new TraceEvent(System.currentTimeMillis(), TraceEvent.counters, mapReduceJob,
+                                null, counters));
+                    }
+                }
+            }
+        } catch (OozieClientException | RuntimeException e) {
+            System.out.println("WorkflowTrace: polling " + jobId + " failed, " + e);
+        }
+    }
+
+    /**
+     * Stops polling after a last poll, and writes the report when the Workflow failed or was slow.
+     *
+     * @return the report, null when the Workflow is not reported
+     */
+    public File finish(WorkflowHandle handle) {
+
+        ScheduledFuture<?> toCancel;
+        synchronized (this) {
+            toCancel = polling;
+        }
+        if (toCancel != null) {
+            toCancel.cancel(false);
+        }
+        poll();
+        synchronized (this) {
+            finished = true;
+        }
+
+        String reason = tracer.reportReason(handle, historyKey);
+        if (reason == null) {
+            return null;
+        }
+
+        TraceReport report = new TraceReport(jobId, String.valueOf(handle.getStatus()), reason,
+                handle.getSubmittedAt(), handle.getCompletedAt(), buffer, jobConf);
+        MapReduceRest mapReduce = tracer.getMapReduce();
+        if (mapReduce != null) {
+            for (String mapReduceJob : buffer.getLatestCounters().keySet()) {
+                report.setMapTaskMillis(mapReduceJob, mapReduce.getMapTaskMillis(mapReduceJob));
+            }
+        }
+        try {
+            File file = report.write(tracer.getDirectory());
+            System.out.println("WorkflowTrace: " + buffer.getDomain() + " Workflow " + jobId + " " + reason
+                    + ", trace in " + file);
+            for (String warning : report.getWarnings()) {
+                System.out.println("WorkflowTrace: WARNING " + warning);
+            }
+            return file;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Adds the job log lines past the ones already seen. Oozie only serves the whole log, a shorter one starts over.
+     */
+    private void tailLog() throws OozieClientException {
+
+        String log = tracer.getClient().getJobLog(jobId);
+        if (log == null || log.isEmpty()) {
+            return;
+        }
+        String[] lines = log.split("\r?\n");
+        if (lines.length < logLines) {
+            logLines = 0;
+        }
+        for (int i = logLines; i < lines.length; i++) {
+            if (!lines[i].trim().isEmpty()) {
+                buffer.add(new TraceEvent(TraceEvent.log, jobId, lines[i]));
+            }
+        }
+        logLines = lines.length;
+    }
+
+    /**
+     * The launcher job of the action and the jobs it started, e.g. the ones of a Hive script.
+     */
+    private static void addMapReduceJobs(WorkflowAction action, Set<String> mapReduceJobs) {
+
+        String ids = (action.getExternalId() == null ? "" : action.getExternalId()) + ","
+                + (action.getExternalChildIDs() == null ? "" : action.getExternalChildIDs());
+        for (String id : ids.split(",")) {
+            if (id.trim().startsWith("job_")) {
+                mapReduceJobs.add(id.trim());
+            }
+        }
+    }
+
+    private static String describe(WorkflowAction action) {
+
+        StringBuilder description = new StringBuilder(action.getType() + " " + action.getStatus());
+        if (action.getExternalId() != null) {
+            description.append(" ").append(action.getExternalId());
+        }
+        if (action.getExternalStatus() != null) {
+            description.append(" ").append(action.getExternalStatus());
+        }
+        if (action.getErrorCode() != null) {
+            description.append(" [").append(action.getErrorCode()).append("] ").append(action.getErrorMessage());
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.cat.ddsw.base.trace;
+
+import com.cat.ddsw.base.DDSWProperties;
+import com.cat.ddsw.base.DaemonThreadFactory;
+import com.cat.ddsw.base.oozie.WorkflowHandle;
+import com.cat.ddsw.base.pipeline.DurationHistory;
+import com.cat.ddsw.base.pipeline.PipelineStage;
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.WorkflowJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the running Workflows: action status, new job log lines and the counters of their MapReduce jobs are
+ * polled every few seconds into a bounded {@link TraceBuffer} per Domain. When a Workflow fails or is slow the
+ * buffer is written as a {@link TraceReport}, so the evidence is there without digging through the Oozie UI and the
+ * YARN logs afterwards, and without running the Workflow again.
+ *
+ * ####IMPORTANT####
+ * #Settings in oozie.properties (all optional),
+ * # TRACE_ENABLED=true, TRACE_POLL_MILLIS=15000, TRACE_BUFFER_EVENTS=2000
+ * # YARN_RM_WEBAPP_URL, MR_HISTORY_WEBAPP_URL     where the MapReduce counters come from, no counters without them
+ * # TRACE_SLOW_MILLIS=0                           a Workflow running longer is slow, 0 to only compare with the
+ * #                                               DurationHistory like the PipelinedSuiteExecutor does
+ * #Reports go to the "ddsw.trace.dir" System Property (default build/ddsw-traces) set in oozie-test/build.gradle.
+ */
+public class WorkflowTracer {
+
+    public static final String traceDirectoryKey = "ddsw.trace.dir";
+
+    private final OozieClient client;
+    private final MapReduceRest mapReduce;
+    private final ScheduledExecutorService poller;
+    private final long pollMillis;
+    private final int bufferEvents;
+    private final File directory;
+    private long slowMillis = 0;
+    private DurationHistory history = null;
+
+    /**
+     * @param mapReduce null to trace without counters
+     */
+    public WorkflowTracer(OozieClient client, MapReduceRest mapReduce, long pollMillis, int bufferEvents,
+                          File directory) {
+        this.client = client;
+        this.mapReduce = mapReduce;
+        this.pollMillis = pollMillis;
+        this.bufferEvents = bufferEvents;
+        this.directory = directory;
+        this.poller = Executors.newScheduledThreadPool(1, new DaemonThreadFactory("ddsw-trace"));
+    }
+
+    /**
+     * Tracer with the settings from oozie.properties and the phase durations of earlier runs, null when disabled.
+     */
+    public static WorkflowTracer create(DDSWProperties properties, OozieClient client) {
+
+        if (!properties.getBoolean("TRACE_ENABLED", true)) {
+            return null;
+        }
+        String resourceManagerUrl = properties.getProperty("YARN_RM_WEBAPP_URL", "");
+        String historyUrl = properties.getProperty("MR_HISTORY_WEBAPP_URL", "");
+        WorkflowTracer tracer = new WorkflowTracer(client,
+                resourceManagerUrl.isEmpty() && historyUrl.isEmpty() ? null
+                        : new MapReduceRest(resourceManagerUrl, historyUrl),
+                properties.getLong("TRACE_POLL_MILLIS", 15000),
+                properties.getInt("TRACE_BUFFER_EVENTS", 2000),
+                new File(System.getProperty(traceDirectoryKey, "build/ddsw-traces")));
+        tracer.setSlowMillis(properties.getLong("TRACE_SLOW_MILLIS", 0));
+        try {
+            tracer.setDurationHistory(DurationHistory.load());
+        } catch (IOException e) {
+            // Only the absolute TRACE_SLOW_MILLIS tells slow Workflows
+            e.printStackTrace();
+        }
+        return tracer;
+    }
+
+    /**
+     * A Workflow running longer than this is reported, 0 for no absolute limit.
+     */
+    public void setSlowMillis(long slowMillis) {
+        this.slowMillis = slowMillis;
+    }
+
+    /**
+     * A Workflow that is a regression against its median in the history is reported, null to not compare.
+     */
+    public void setDurationHistory(DurationHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * Starts following the submitted Workflow of the Domain, {@link WorkflowTrace#finish(WorkflowHandle)} ends it.
+     *
+     * @param jobPropertiesFile the Domain's job.properties, names its Workflow phase in the DurationHistory
+     */
+    public WorkflowTrace trace(String domain, String jobPropertiesFile, WorkflowHandle handle, Properties jobConf) {
+
+        final WorkflowTrace trace = new WorkflowTrace(this, handle.getJobId(),
+                new TraceBuffer(domain, bufferEvents), jobConf, PipelineStage.WORKFLOW + "." + jobPropertiesFile);
+        trace.setPolling(poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                trace.poll();
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS));
+        return trace;
+    }
+
+    OozieClient getClient() {
+        return client;
+    }
+
+    MapReduceRest getMapReduce() {
+        return mapReduce;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Why the finished Workflow is reported, null when it is not.
+     */
+    String reportReason(WorkflowHandle handle, String historyKey) {
+
+        if (handle.getStatus() == WorkflowJob.Status.SUCCEEDED) {
+            long millis = handle.getCompletedAt() - handle.getSubmittedAt();
+            if (slowMillis > 0 && millis > slowMillis) {
+                return "slow, " + millis + " ms is over TRACE_SLOW_MILLIS " + slowMillis + " ms";
+            }
+            String regression = history == null ? null : history.checkRegression(historyKey, millis);
+            return regression == null ? null : "slow, " + regression;
+        }
+        return "ended " + handle.getStatus();
+    }
+
+    public void shutdown() {
+        poller.shutdownNow();
+    }
+}
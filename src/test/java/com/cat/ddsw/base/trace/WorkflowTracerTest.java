@@ -0,0 +1,187 @@
+package com.cat.ddsw.base.trace;
+
+import com.cat.ddsw.base.oozie.FakeOozieServer;
+import com.cat.ddsw.base.oozie.OozieRest;
+import com.cat.ddsw.base.oozie.WorkflowHandle;
+import com.cat.ddsw.base.oozie.WorkflowSubmitter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.oozie.client.OozieClient;
+import org.apache.oozie.client.WorkflowJob;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * WorkflowTracer following Workflows of the FakeOozieServer, with a fake YARN REST API serving the counters.
+ */
+public class WorkflowTracerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private FakeOozieServer oozie;
+    private HttpServer yarn;
+    private WorkflowSubmitter submitter;
+    private WorkflowTracer tracer;
+
+    @Before
+    public void setUp() throws Exception {
+
+        oozie = new FakeOozieServer();
+        oozie.setNodes("xmlIngest", "alterTables");
+        oozie.setNodeDurationMillis(200);
+
+        yarn = HttpServer.create(new InetSocketAddress("localhost", 0), 16);
+        yarn.createContext("/proxy", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String uri = exchange.getRequestURI().toString();
+                if (uri.endsWith("/counters")) {
+                    OozieRest.respond(exchange, 200, "application/json", counters());
+                } else if (uri.endsWith("/tasks?type=m")) {
+                    OozieRest.respond(exchange, 200, "application/json",
+                            "{\"tasks\":{\"task\":[{\"elapsedTime\":1000},{\"elapsedTime\":1100},{\"elapsedTime\":9000}]}}");
+                } else {
+                    OozieRest.respond(exchange, 404, "text/html", "<html/>");
+                }
+            }
+        });
+        yarn.start();
+
+        submitter = new WorkflowSubmitter(new OozieClient(oozie.getOozieUrl()), null, 20, 100, "test");
+        tracer = new WorkflowTracer(submitter.getClient(),
+                new MapReduceRest("http://localhost:" + yarn.getAddress().getPort() + "/", null), 50, 100,
+                temp.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        tracer.shutdown();
+        submitter.shutdown();
+        yarn.stop(0);
+        oozie.stop();
+    }
+
+    @Test
+    public void testReportsFailedWorkflow() throws Exception {
+
+        oozie.failNode("alterTables", 1);
+        Properties jobConf = jobConf();
+        WorkflowHandle handle = submitter.submit(jobConf);
+        WorkflowTrace trace = tracer.trace("invoice", "invoice/job.properties", handle, jobConf);
+        Assert.assertEquals(WorkflowJob.Status.KILLED, submitter.await(handle));
+
+        File file = trace.finish(handle);
+        Assert.assertEquals(new File(temp.getRoot(), "invoice-" + handle.getJobId() + ".json"), file);
+        JSONObject report = read(file);
+        Assert.assertEquals("KILLED", report.get("status"));
+        Assert.assertEquals("ended KILLED", report.get("reason"));
+        Assert.assertEquals("-Xmx6000m", ((JSONObject) report.get("settings")).get("mapperJVMHeapValue"));
+
+        String events = report.get("events").toString();
+        Assert.assertTrue(events, events.contains("[JA018] Main class exit code [1]"));
+        Assert.assertTrue(events, events.contains("INFO action xmlIngest OK"));
+
+        JSONArray jobs = (JSONArray) report.get("mapReduceJobs");
+        Assert.assertEquals(2, jobs.size());
+        JSONObject diagnostics = (JSONObject) ((JSONObject) jobs.get(0)).get("diagnostics");
+        Assert.assertEquals(0.25, (Double) diagnostics.get("gcShareOfCpu"), 0.001);
+        Assert.assertEquals(7000L, diagnostics.get("physicalMbPerTask"));
+        Assert.assertEquals(1100L, diagnostics.get("medianMapMillis"));
+
+        String warnings = report.get("warnings").toString();
+        Assert.assertTrue(warnings, warnings.contains("GC took 25% of the task CPU time, heap -Xmx6000m"));
+        Assert.assertTrue(warnings, warnings.contains("tasks used 7000 MB of the containerMapMemValue 7500 MB"));
+        Assert.assertTrue(warnings, warnings.contains("input splits are skewed"));
+        Assert.assertFalse(warnings, warnings.contains("spilled"));
+    }
+
+    @Test
+    public void testReportsSlowWorkflowOnly() throws Exception {
+
+        Properties jobConf = jobConf();
+        WorkflowHandle handle = submitter.submit(jobConf);
+        WorkflowTrace trace = tracer.trace("invoice", "invoice/job.properties", handle, jobConf);
+        Assert.assertEquals(WorkflowJob.Status.SUCCEEDED, submitter.await(handle));
+        Assert.assertNull(trace.finish(handle));
+
+        tracer.setSlowMillis(1);
+        handle = submitter.submit(jobConf);
+        trace = tracer.trace("invoice", "invoice/job.properties", handle, jobConf);
+        submitter.await(handle);
+        JSONObject report = read(trace.finish(handle));
+        Assert.assertTrue(String.valueOf(report.get("reason")).startsWith("slow, "));
+    }
+
+    @Test
+    public void testBufferKeepsLatestEvents() {
+
+        TraceBuffer buffer = new TraceBuffer("invoice", 3);
+        buffer.add(new TraceEvent(1, TraceEvent.counters, "job_1", null, Collections.singletonMap("GC_TIME_MILLIS", 5L)));
+        for (int i = 2; i <= 5; i++) {
+            buffer.add(new TraceEvent(i, TraceEvent.log, "wf", "line " + i, null));
+        }
+
+        List<TraceEvent> events = buffer.getEvents();
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals("line 3", events.get(0).getMessage());
+        Assert.assertEquals("line 5", events.get(2).getMessage());
+        Assert.assertEquals(2, buffer.getDropped());
+        Assert.assertEquals(5L, (long) buffer.getLatestCounters().get("job_1").getValues().get("GC_TIME_MILLIS"));
+
+        Assert.assertEquals(10000, TraceReport.heapMb("-Xmx10000m"));
+        Assert.assertEquals(2048, TraceReport.heapMb("-server -Xmx2g"));
+        Assert.assertEquals(-1, TraceReport.heapMb(null));
+    }
+
+    private Properties jobConf() {
+
+        Properties jobConf = submitter.getClient().createConfiguration();
+        jobConf.setProperty(OozieClient.APP_PATH, "hdfs://nameservice1/projects/ddsw/qa/code/oozie/invoice");
+        jobConf.setProperty(OozieClient.RERUN_FAIL_NODES, "false");
+        jobConf.setProperty("containerMapMemValue", "7500");
+        jobConf.setProperty("mapperJVMHeapValue", "-Xmx6000m");
+        return jobConf;
+    }
+
+    /**
+     * Two map tasks of 7000 MB each, a quarter of their CPU time in GC.
+     */
+    private static String counters() {
+        return "{\"jobCounters\":{\"counterGroup\":["
+                + "{\"counterGroupName\":\"org.apache.hadoop.mapreduce.TaskCounter\",\"counter\":["
+                + "{\"name\":\"MAP_OUTPUT_RECORDS\",\"totalCounterValue\":1000},"
+                + "{\"name\":\"SPILLED_RECORDS\",\"totalCounterValue\":1000},"
+                + "{\"name\":\"GC_TIME_MILLIS\",\"totalCounterValue\":2500},"
+                + "{\"name\":\"CPU_MILLISECONDS\",\"totalCounterValue\":10000},"
+                + "{\"name\":\"PHYSICAL_MEMORY_BYTES\",\"totalCounterValue\":14680064000},"
+                + "{\"name\":\"VIRTUAL_MEMORY_BYTES\",\"totalCounterValue\":1}]},"
+                + "{\"counterGroupName\":\"org.apache.hadoop.mapreduce.JobCounter\",\"counter\":["
+                + "{\"name\":\"TOTAL_LAUNCHED_MAPS\",\"totalCounterValue\":2}]}]}}";
+    }
+
+    private static JSONObject read(File file) throws Exception {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return (JSONObject) new JSONParser().parse(reader);
+        }
+    }
+}
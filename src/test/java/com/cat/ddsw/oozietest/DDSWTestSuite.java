@@ -0,0 +1,16 @@
+package com.cat.ddsw.oozietest;
+
+import com.cat.ddsw.base.DDSWParallelSuite;
+import org.junit.runner.RunWith;
+
+/**
+ * Entry of the Domain Tests, "gradle test" runs only this class.
+ *
+ * ####IMPORTANT####
+ * #Every Test Case Class annotated with @DomainWorkflow runs inside it through the DDSWParallelSuite, there is no
+ * # @Suite.SuiteClasses Block to maintain, the classes come from the DomainTestIndex.
+ * #To run a single Domain Test from the IDE run its class directly, it acquires its Domain itself.
+ */
+@RunWith(DDSWParallelSuite.class)
+public class DDSWTestSuite {
+}
@@ -1,8 +1,15 @@
 package com.cat.ddsw.oozietest;
 
-import com.oozierunner.core.FileManager;
-import com.oozierunner.core.OozieRunner;
-import org.apache.oozie.client.OozieClientException;
+import com.cat.ddsw.base.cleanup.CleanupQueue;
+import com.cat.ddsw.base.compare.ComparisonResult;
+import com.cat.ddsw.base.compare.TableSpec;
+import com.cat.ddsw.base.fixture.DealerPartition;
+import com.cat.ddsw.base.fixture.DomainFixture;
+import com.cat.ddsw.base.fixture.DomainFixtureRegistry;
+import com.cat.ddsw.base.fixture.FixtureCleanup;
+import com.cat.ddsw.base.hive.HiveResultVerifier;
+import com.cat.ddsw.base.hive.TableVerification;
+import com.cat.ddsw.base.pipeline.DomainWorkflow;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -13,31 +20,42 @@ import java.io.IOException;
 /**
  * Created by hpatel on 8/31/2015.
  */
+@DomainWorkflow(jobPropertiesFile = DealerHierarchyOozieTest.jobPropertiesFile, sourceDataFile = DealerHierarchyOozieTest.sourceDataFile,
+        targetDataFile = DealerHierarchyOozieTest.targetDataFile, tables = "ddsw_qa.dealer_hierarchy_current")
 public class DealerHierarchyOozieTest {
 
     /**
      *
      * ####IMPORTANT####
      * #Relative Path to the DOMAIN Specific Job Properties is required as below
+     * #@DomainWorkflow on the class refers to it and to the Data Files below, DDSWParallelSuite uses them to
+     * # stage the Test data and run the Workflow ahead of the class
      */
-    private static final String jobPropertiesFile = "dealer_hierarchy/job.properties";
+    static final String jobPropertiesFile = "dealer_hierarchy/job.properties";
 
     /**
      *
      * ####IMPORTANT####
      * #Relative Path to the Expected and Actual Data Path should be Drequired as below
-     *  1. Expected - Expected Test Results in a File must be provided against "Each Query" under the Test Case (One Record Per Line)
-     *  2. Actual - OozieRunner Framework will execute the Query under the Test Case and save result data into the file under this path (One Record Per Line)
+     *  1. Golden - Expected Test Results of "Each Query" under the Test Case are goldens of the GoldenStore under
+     *     src/test/resources/golden/<DOMAIN_NAME>, kept compressed with a digest that confirms a matching result without
+     *     reading them. Record them from a known good run with "gradle test -PupdateGoldens"
+     *  2. Actual - HiveResultVerifier streams the Query result straight into the comparison. Only when it does not match,
+     *     the result data is saved into the file under this path (One Record Per Line)
      *
      * ####IMPORTANT####
-     * #New Line Characters under the Expected file will break the Content Comparision.
-     * # So make sure the Expected Result files are free of New Line Character at the end of the "Last Record"
+     * #Content Comparision is done by HiveResultVerifier and ignores the Record order (Hive returns rows in no fixed order).
+     * # Duplicate Records must appear the same number of times in the Expected and Actual files.
      *
      */
     private static final String actualDataPath = "src/test/resources/dealer_hierarchy/actual";
-    private static final String expectedDataPath = "src/test/resources/dealer_hierarchy/expected";
+    private static final String goldenPath = "dealer_hierarchy";
 
-    private static OozieRunner oozieRunner = null;
+    private static DomainFixture domainFixture = null;
+
+    private static HiveResultVerifier hiveResultVerifier = null;
+
+    private static TableVerification dealerHierarchyCurrentTable = null;
 
     /**
      *
@@ -45,104 +63,87 @@ public class DealerHierarchyOozieTest {
      * #Naming convention must be maintained for DOMAIN Specific Properties below
      * #Provide Test Data Source and Target Files for each Domain with Keys as "<DOMAIN_NAME>.test_data_source_file" AND "<DOMAIN_NAME>.test_data_target_file"
      * #Also, assumption is that the Test Data Target File is monitored by individual Domain Workflows for processing
+     * #The ZZZZ dealer in the file names and contents is staged as the dealer of the build, see DealerPartition
      *
      */
-    private static final String sourceDataFile = "/projects/ddsw/qa/data/cicd/test_data/dealer_hierarchy/ZZZZ_Dealer_Hierarchy.xml_88888888_0001_1429071717.complete.xml";
-    private static final String targetDataFile = "/projects/ddsw/qa/data/raw/nas/dealer_hierarchy/ZZZZ_Dealer_Hierarchy.xml_88888888_0001_1429071717.complete";
+    static final String sourceDataFile = "/projects/ddsw/qa/data/cicd/test_data/dealer_hierarchy/ZZZZ_Dealer_Hierarchy.xml_88888888_0001_1429071717.complete.xml";
+    static final String targetDataFile = "/projects/ddsw/qa/data/raw/nas/dealer_hierarchy/ZZZZ_Dealer_Hierarchy.xml_88888888_0001_1429071717.complete";
 
     /**
-     * Encoding utf-8 is required for File Content comparison to work in Windows.
-     * OozieRunner.executeQuery, FileManager.getFileContent and FileManager.contentEquals methods requires this information.
+     *
+     * ####IMPORTANT####
+     * #Typed Column Spec of the Content Query, one entry per selected column in the order of the Expected file.
+     * #DECIMAL columns are compared by value, so "1.0" equals "1.00".
      */
-    String encoding = "utf-8";
+    public static final TableSpec dealerHierarchyCurrentSpec = new TableSpec("ddsw_qa.dealer_hierarchy_current")
+            .columns("file_name", "gen_id", "dms_system", "dms_version", "transmit_by", "record_status",
+                    "dealer_updt_ind", "store_number", "part_type", "store_name", "inventory_store_number",
+                    "cat_emrg_dealer_code", "cat_stock_dealer_code", "stock_replen_store_number",
+                    "stock_replen_lead_time", "lst_updt_by_id", "exp_stock_plan_lead_time", "dealer_code")
+            .decimal("stock_replen_lead_time", "exp_stock_plan_lead_time");
 
     /**
      *
      * ****IMPORTANT****
      * Every Test case that needs to submit Oozie workflow Job needs this @BeforeClass annotation with,
-     *  1. Create Instance of OozieRunner with supplying Domain specific Job Properties file
-     *  2. Call CopyHDFSData with Source and Target Data Files on HDFS (If Test data is expected in a specific HDFS location prior to running the Workflow Job
-     *  3. Submit the actual Workflow Job
+     *  1. Acquire the Domain Fixture from DomainFixtureRegistry with supplying Domain specific Job Properties file
+     *     and the Source and Target Data Files on HDFS (If Test data is expected in a specific HDFS location prior to running the Workflow Job)
+     *  2. The Registry copies the Test data and submits the actual Workflow Job only once per build for the Domain,
+     *     across Test classes and Gradle forks.
+     *  3. Create the HiveResultVerifier the Test cases use to check the Query results
+     *  4. Register the Count and Content checks of a table together, they run on one Hive session with one Query
+     *     when the first Test case asks for its result
      */
     @BeforeClass
-    public static void initialize() {
+    public static void initialize() throws Exception {
 
         System.out.println("DealerHierarchyOozieTest@BeforeClass...");
 
-        try {
-            oozieRunner = new OozieRunner(jobPropertiesFile);
-
-            oozieRunner.copyHDFSData(sourceDataFile, targetDataFile);
-            oozieRunner.submitOozieJob();
-
-        } catch (OozieClientException e) {
+        domainFixture = DomainFixtureRegistry.get().acquire(jobPropertiesFile, sourceDataFile, targetDataFile);
 
-            e.printStackTrace();
-        } catch (IOException e) {
+        hiveResultVerifier = new HiveResultVerifier(DomainFixtureRegistry.get().getHiveQueryExecutor(), "utf-8");
 
-            e.printStackTrace();
-        }
+        dealerHierarchyCurrentTable = hiveResultVerifier.table(dealerHierarchyCurrentSpec, DealerPartition.get().where())
+                .goldenCount(goldenPath + "/dealer_hierarchy_current_table_count", actualDataPath + "/dealer_hierarchy_current_table_count.csv")
+                .goldenContent(goldenPath + "/dealer_hierarchy_current_table_content", actualDataPath + "/dealer_hierarchy_current_table_content.csv");
     }
 
     @Test
-    public void testDealerHierarchyCoreTableCount() {
+    public void testDealerHierarchyCoreTableCount() throws IOException {
 
         System.out.println("DealerHierarchyOozieTest@testDealerHierarchyCoreTableCount...");
-        String expectedDataFile = expectedDataPath + "/dealer_hierarchy_current_table_count.csv";
-        String actualDataFile = actualDataPath + "/dealer_hierarchy_current_table_count.csv";
-
-        String query = "select count(*) from ddsw_qa.dealer_hierarchy_current where dealer_code ='ZZZZ'";
-
-        try {
-            oozieRunner.executeHiveQuery(query, actualDataFile, "\t", encoding);
 
-            Assert.assertTrue(FileManager.contentEquals(actualDataFile, expectedDataFile, encoding));
-        } catch (OozieClientException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ComparisonResult result = dealerHierarchyCurrentTable.getCountResult();
+        Assert.assertTrue(result.toString(), result.isMatch());
     }
 
     @Test
-    public void testDealerHierarchyCoreTableContent() {
+    public void testDealerHierarchyCoreTableContent() throws IOException {
 
         System.out.println("DealerHierarchyOozieTest@testDealerHierarchyCoreTableContent...");
-        String expectedDataFile = expectedDataPath + "/dealer_hierarchy_current_table_content.csv";
-        String actualDataFile = actualDataPath + "/dealer_hierarchy_current_table_content.csv";
 
         /**
          *
          *####IMPORTANT####
-         * Timestamp fields would break the Content Comparision if they represents current time or change dynamically.
-         * So, it may be okay to just skip the Timestamp fields from Select Queries if possible!!!
+         * The Select Query is built from the Typed Column Spec and compared column by column.
+         * Timestamp fields that represent current time or change dynamically can be skipped from the Content Comparision
+         * with TableSpec.ignore(...) (or given a tolerance) instead of removing them from the Select Query.
          *
          */
 
-        String query = "select " +
-                "file_name, gen_id, dms_system, dms_version, transmit_by, record_status, dealer_updt_ind, store_number, " +
-                "part_type, store_name, inventory_store_number, cat_emrg_dealer_code, cat_stock_dealer_code, " +
-                "stock_replen_store_number, stock_replen_lead_time, lst_updt_by_id, exp_stock_plan_lead_time, dealer_code" +
-                " from ddsw_qa.dealer_hierarchy_current where dealer_code ='ZZZZ'";
-
-        try {
-            oozieRunner.executeHiveQuery(query, actualDataFile, "\t", encoding);
-
-            Assert.assertTrue(FileManager.contentEquals(actualDataFile, expectedDataFile, encoding));
-        } catch (OozieClientException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ComparisonResult result = dealerHierarchyCurrentTable.getContentResult();
+        Assert.assertTrue(result.toString(), result.isMatch());
     }
 
     /**
      *
      * ****IMPORTANT****
      * Every Test case that needs to perform Cleanup of Test data etc at the end of the Test must provide this @AfterClass annotation with,
-     *  1. Create Instance of OozieRunner with supplying Domain specific Job Properties file
-     *  2. Call CopyHDFSData with Source and Target Data Files on HDFS (If Test data is expected in a specific HDFS location prior to running the Workflow Job
-     *  3. Submit the actual Workflow Job
+     *  1. Delete the Actual Data Path of the Test class
+     *  2. Release the Domain Fixture with the FixtureCleanup of the Domain. The Registry runs it once the last Test class
+     *     in the build that uses the Domain has released it.
+     *  3. Cleanup is only queued here. Partition drops of the same table are coalesced into one statement and run in the
+     *     background, the Suite waits for all of it once at the end.
      */
     @AfterClass
     public static void cleanup() {
@@ -150,15 +151,21 @@ public class DealerHierarchyOozieTest {
 
         try {
 
-            //Delete Actual Data Path where Test Result Files were stored
-            oozieRunner.deleteDirectoryContent(actualDataPath);
+            //Delete Actual Data Path where Test Result Files were stored, in the background
+            DomainFixtureRegistry.get().getCleanupQueue().deleteDirectoryContent(actualDataPath);
+
+            //Delete this build's Fake Dealer Partition in Each Table the Workflow has created Fake Data in
+            DomainFixtureRegistry.get().release(domainFixture, new FixtureCleanup() {
+                @Override
+                public void cleanup(CleanupQueue cleanupQueue) {
 
-            //Delete Fake Dealer Partition in Each Table the Workflow has created Fake Data in
-            oozieRunner.dropPartition("dealer_hierarchy_core", "dealer_code='ZZZZ'");
+                    cleanupQueue.dropPartition("dealer_hierarchy_core", DealerPartition.get().where());
 
-            oozieRunner.dropPartition("dealer_hierarchy_current", "dealer_code='ZZZZ'");
+                    cleanupQueue.dropPartition("dealer_hierarchy_current", DealerPartition.get().where());
+                }
+            });
 
-        } catch (OozieClientException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }